@@ -0,0 +1,116 @@
+/*
+ * Batch bill generation throughput at several pool sizes.
+ */
+
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import model.BatchBilling;
+import model.BillBatch;
+import model.RentalRecord;
+import model.User;
+import model.vehicles.AbstractVehicle;
+import model.vehicles.Bicycle;
+import model.vehicles.Car;
+import model.vehicles.MotorBike;
+
+/**
+ * Computes a month-end batch of bills with {@link BatchBilling} on fork-join pools of
+ * 1, 4 and all available cores, and prints bills per second for each. Nothing is
+ * rendered; the benchmark covers the computation stage only.
+ *
+ * Usage: BatchBillingBenchmark [rentalCount]
+ *
+ * @author roys4
+ * @version Winter 2021
+ */
+public final class BatchBillingBenchmark {
+
+    /**
+     * Default number of rentals in the batch.
+     */
+    private static final int DEFAULT_RENTALS = 500_000;
+
+    /**
+     * Distinct users renting.
+     */
+    private static final int USERS = 10_000;
+
+    /**
+     * Longest rental in days.
+     */
+    private static final int MAX_DAYS = 31;
+
+    /**
+     * Mid-size pool tried between one and all cores.
+     */
+    private static final int FOUR_CORES = 4;
+
+    /**
+     * Untimed runs per pool size.
+     */
+    private static final int WARMUPS = 3;
+
+    /**
+     * Timed runs per pool size.
+     */
+    private static final int RUNS = 5;
+
+    /**
+     * A private constructor, to prevent external instantiation.
+     */
+    private BatchBillingBenchmark() {
+
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param theArgs optional number of rentals
+     */
+    public static void main(final String[] theArgs) {
+        final int rentals = BenchmarkSupport.intArg(theArgs, 0, DEFAULT_RENTALS);
+        final List<RentalRecord> records = records(rentals);
+        final int cores = Runtime.getRuntime().availableProcessors();
+
+        System.out.println("Rentals: " + rentals + ", cores: " + cores);
+        final int[] sizes = {1, FOUR_CORES, cores};
+        for (final int size : sizes) {
+            final ForkJoinPool pool = new ForkJoinPool(size);
+            final BatchBilling billing = new BatchBilling(pool, BatchBilling.DEFAULT_THRESHOLD);
+            final double nanos = BenchmarkSupport.measure("batch billing, " + size + " threads", WARMUPS, RUNS, () -> {
+                final BillBatch batch = billing.compute(records);
+                return batch.getMyTotals().getMyTotal();
+            });
+            System.out.printf("%-40s %,12.0f bills/s%n", "", rentals / (nanos / BenchmarkSupport.NANOS_PER_SECOND));
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Generates rental records over a small fleet and many users.
+     *
+     * @param theCount number of records
+     * @return the records
+     */
+    private static List<RentalRecord> records(final int theCount) {
+        final AbstractVehicle[] fleet = {new Car("Fiat", "V100", true, false, false, false),
+                                         new Car("BMW", "V102", true, true, true, true),
+                                         new MotorBike("Bike2", "B101", true, true),
+                                         new Bicycle("Cruiser", "C101", true, "Cruiser")};
+        final User[] users = new User[USERS];
+        for (int i = 0; i < users.length; i++) {
+            users[i] = new User("user" + i, "Password#" + i, i % 2 == 0);
+        }
+        final Random random = new Random(1);
+        final List<RentalRecord> records = new ArrayList<RentalRecord>(theCount);
+        for (int i = 0; i < theCount; i++) {
+            records.add(new RentalRecord(i + 1, users[random.nextInt(users.length)],
+                                         fleet[random.nextInt(fleet.length)], 1 + random.nextInt(MAX_DAYS)));
+        }
+        return records;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Shared timing helpers for the Rentz benchmarks.
+ */
+
+package benchmarks;
+
+import java.util.function.Supplier;
+
+/**
+ * Minimal warm-up / measure harness shared by the benchmark mains. Each
+ * benchmark is a plain class with a main method so it can be launched straight
+ * from the IDE without any extra libraries on the class path.
+ * 
+ * @author roys4
+ * @version Winter 2021
+ */
+public final class BenchmarkSupport {
+
+    /**
+     * Nanoseconds in a millisecond.
+     */
+    public static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    /**
+     * Nanoseconds in a second.
+     */
+    public static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+    /**
+     * Sink for benchmark results so the JIT cannot drop the measured work.
+     */
+    private static volatile int mySink;
+
+    /**
+     * A private constructor, to prevent external instantiation.
+     */
+    private BenchmarkSupport() {
+
+    }
+
+    /**
+     * Runs a body a number of times to warm up, then times it and prints the average.
+     * 
+     * @param theName label printed with the result
+     * @param theWarmups number of untimed runs
+     * @param theRuns number of timed runs
+     * @param theBody the work to measure
+     * @return average nanoseconds per run
+     */
+    public static double measure(final String theName, final int theWarmups, final int theRuns,
+                                 final Supplier<?> theBody) {
+        for (int i = 0; i < theWarmups; i++) {
+            consume(theBody.get());
+        }
+        final long start = System.nanoTime();
+        for (int i = 0; i < theRuns; i++) {
+            consume(theBody.get());
+        }
+        final double average = (System.nanoTime() - start) / (double) theRuns;
+        System.out.printf("%-40s %12.3f ms/op%n", theName, average / NANOS_PER_MILLI);
+        return average;
+    }
+
+    /**
+     * Keeps a result alive.
+     * 
+     * @param theResult any benchmark result
+     */
+    public static void consume(final Object theResult) {
+        mySink += System.identityHashCode(theResult);
+    }
+
+    /**
+     * Keeps a primitive result alive.
+     * 
+     * @param theResult any benchmark result
+     */
+    public static void consume(final long theResult) {
+        mySink += (int) theResult;
+    }
+
+    /**
+     * Reads an optional integer command line argument.
+     * 
+     * @param theArgs command line arguments
+     * @param theIndex argument position
+     * @param theDefault value to use when the argument is missing
+     * @return the parsed argument or the default
+     */
+    public static int intArg(final String[] theArgs, final int theIndex, final int theDefault) {
+        int result = theDefault;
+        if (theArgs.length > theIndex) {
+            result = Integer.parseInt(theArgs[theIndex]);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Compares fixed-point billing with the BigDecimal bill computation.
+ */
+
+package benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import model.BillAmounts;
+import model.BillingEngine;
+import utility.Money;
+
+/**
+ * Times a hot loop of bill computations with {@link BillingEngine} and with the
+ * BigDecimal math Bill used before, and reports the bytes each loop allocated on
+ * the calling thread (via the HotSpot thread MXBean where available).
+ *
+ * Usage: BillingEngineBenchmark [billCount]
+ *
+ * @author roys4
+ * @version Winter 2021
+ */
+public final class BillingEngineBenchmark {
+
+    /**
+     * Default number of bills per run.
+     */
+    private static final int DEFAULT_BILLS = 10_000_000;
+
+    /**
+     * Untimed runs.
+     */
+    private static final int WARMUPS = 3;
+
+    /**
+     * Timed runs.
+     */
+    private static final int RUNS = 3;
+
+    /**
+     * Longest rental in the loop.
+     */
+    private static final int MAX_DAYS = 30;
+
+    /**
+     * Daily rates cycled through by the loop.
+     */
+    private static final BigDecimal[] RATES = {new BigDecimal("30.0000"), new BigDecimal("43.0000"),
+                                               new BigDecimal("20.0000"), new BigDecimal("10.1000")};
+
+    /**
+     * A private constructor, to prevent external instantiation.
+     */
+    private BillingEngineBenchmark() {
+
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param theArgs optional bill count
+     */
+    public static void main(final String[] theArgs) {
+        final int bills = BenchmarkSupport.intArg(theArgs, 0, DEFAULT_BILLS);
+        final long[] units = new long[RATES.length];
+        for (int i = 0; i < RATES.length; i++) {
+            units[i] = Money.rateToUnits(RATES[i]);
+        }
+        final BillAmounts amounts = new BillAmounts();
+
+        System.out.println("Bills per run: " + bills);
+        BenchmarkSupport.measure("BillingEngine (long units)", WARMUPS, RUNS, () -> engineLoop(units, bills, amounts));
+        BenchmarkSupport.measure("BigDecimal", WARMUPS, RUNS, () -> bigDecimalLoop(bills));
+
+        final long before = allocatedBytes();
+        BenchmarkSupport.consume(engineLoop(units, bills, amounts));
+        final long engineBytes = allocatedBytes() - before;
+        final long middle = allocatedBytes();
+        BenchmarkSupport.consume(bigDecimalLoop(bills));
+        final long bigDecimalBytes = allocatedBytes() - middle;
+        System.out.printf("Allocated: BillingEngine %,d bytes, BigDecimal %,d bytes%n", engineBytes,
+                          bigDecimalBytes);
+    }
+
+    /**
+     * Computes bills with the fixed-point engine.
+     *
+     * @param theRates daily rates in units
+     * @param theBills number of bills
+     * @param theAmounts reused result holder
+     * @return sum of totals, to keep the work alive
+     */
+    private static long engineLoop(final long[] theRates, final int theBills, final BillAmounts theAmounts) {
+        long sum = 0;
+        for (int i = 0; i < theBills; i++) {
+            BillingEngine.compute(theRates[i & (theRates.length - 1)], 1 + i % MAX_DAYS, (i & 1) == 0,
+                                  theAmounts);
+            sum += theAmounts.getMyTotal();
+        }
+        return sum;
+    }
+
+    /**
+     * Computes bills with the BigDecimal math Bill used before BillingEngine.
+     *
+     * @param theBills number of bills
+     * @return sum of totals' hash codes, to keep the work alive
+     */
+    private static long bigDecimalLoop(final int theBills) {
+        long sum = 0;
+        for (int i = 0; i < theBills; i++) {
+            BigDecimal rentalAmount = RATES[i & (RATES.length - 1)].multiply(new BigDecimal(1 + i % MAX_DAYS));
+            final BigDecimal insurance = rentalAmount.multiply(new BigDecimal("0.01"));
+            rentalAmount = rentalAmount.add(insurance);
+            if ((i & 1) == 0) {
+                rentalAmount = rentalAmount.subtract(insurance);
+            }
+            final BigDecimal tax = rentalAmount.multiply(new BigDecimal("0.10"));
+            sum += rentalAmount.add(tax).hashCode();
+        }
+        return sum;
+    }
+
+    /**
+     * Bytes allocated so far by the current thread.
+     *
+     * @return allocated bytes, or 0 if the JVM does not report them
+     */
+    private static long allocatedBytes() {
+        long result = 0;
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+            result = ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return result;
+    }
+}
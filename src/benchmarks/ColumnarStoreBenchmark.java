@@ -0,0 +1,139 @@
+/*
+ * Heap footprint and scan speed of heap vehicles versus the off-heap column store.
+ */
+
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+import model.vehicles.AbstractVehicle;
+import model.vehicles.Car;
+import model.vehicles.ColumnarVehicleStore;
+import model.vehicles.VehicleType;
+
+/**
+ * Builds the same fleet as heap vehicles and as a {@link ColumnarVehicleStore},
+ * prints the heap used after garbage collection for each (and the store's direct
+ * memory), then times a full availability scan and ID lookups on both.
+ *
+ * Vehicle names repeat over a small set of models, as in a real fleet.
+ *
+ * Usage: ColumnarStoreBenchmark [fleetSize]
+ *
+ * @author roys4
+ * @version Winter 2021
+ */
+public final class ColumnarStoreBenchmark {
+
+    /**
+     * Default fleet size.
+     */
+    private static final int DEFAULT_FLEET = 2_000_000;
+
+    /**
+     * Distinct model names.
+     */
+    private static final int MODELS = 64;
+
+    /**
+     * Every nth vehicle is rented.
+     */
+    private static final int RENTED_EVERY = 3;
+
+    /**
+     * Untimed runs per variant.
+     */
+    private static final int WARMUPS = 2;
+
+    /**
+     * Timed runs per variant.
+     */
+    private static final int RUNS = 5;
+
+    /**
+     * Bytes in a megabyte.
+     */
+    private static final long MEGABYTE = 1L << 20;
+
+    /**
+     * A private constructor, to prevent external instantiation.
+     */
+    private ColumnarStoreBenchmark() {
+
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param theArgs optional fleet size
+     */
+    public static void main(final String[] theArgs) {
+        final int size = BenchmarkSupport.intArg(theArgs, 0, DEFAULT_FLEET);
+        System.out.println("Fleet: " + size);
+
+        final long baseline = usedHeap();
+        final List<AbstractVehicle> heap = new ArrayList<AbstractVehicle>(size);
+        for (int i = 0; i < size; i++) {
+            heap.add(new Car("Model" + i % MODELS, "V" + i, i % RENTED_EVERY != 0, (i & 1) != 0,
+                             (i & 2) != 0, false));
+        }
+        final long heapBytes = usedHeap() - baseline;
+        System.out.printf("heap vehicles:  %,8d MB heap%n", heapBytes / MEGABYTE);
+        final int[] ids = new int[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = heap.get(i).getMyVehicleID();
+        }
+        timeScan("heap scan", heap.size(), heap::get);
+
+        final ColumnarVehicleStore store = new ColumnarVehicleStore();
+        store.addAll(heap);
+        heap.clear();
+        final long storeHeap = usedHeap() - baseline;
+        System.out.printf("column store:   %,8d MB heap, %,d MB direct, %,d strings%n", storeHeap / MEGABYTE,
+                          store.offHeapBytes() / MEGABYTE, store.distinctStrings());
+        timeScan("column scan", store.size(), store::view);
+        BenchmarkSupport.measure("column lookups", WARMUPS, RUNS, () -> {
+            long sum = 0;
+            for (final int id : ids) {
+                sum += store.findByID(id).getFeatureMask();
+            }
+            return sum;
+        });
+        BenchmarkSupport.consume(store.add(VehicleType.CAR, "Model0", "extra", true, 0, null));
+    }
+
+    /**
+     * Times counting available cars through vehicle accessors.
+     *
+     * @param theName label
+     * @param theSize number of vehicles
+     * @param theVehicles vehicle by index
+     */
+    private static void timeScan(final String theName, final int theSize,
+                                 final IntFunction<AbstractVehicle> theVehicles) {
+        BenchmarkSupport.measure(theName, WARMUPS, RUNS, () -> {
+            int available = 0;
+            for (int i = 0; i < theSize; i++) {
+                final AbstractVehicle vehicle = theVehicles.apply(i);
+                if (vehicle.isAvailable() && vehicle.getVehicleType() == VehicleType.CAR) {
+                    available++;
+                }
+            }
+            return available;
+        });
+    }
+
+    /**
+     * Heap in use after a full collection.
+     *
+     * @return bytes
+     */
+    private static long usedHeap() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
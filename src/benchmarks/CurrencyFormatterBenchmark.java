@@ -0,0 +1,101 @@
+/*
+ * Compares CurrencyFormatter with a NumberFormat created per call.
+ */
+
+package benchmarks;
+
+import java.math.BigDecimal;
+import java.text.NumberFormat;
+import java.util.Locale;
+import java.util.Random;
+import utility.CurrencyFormatter;
+import utility.Money;
+
+/**
+ * Formats a set of bill amounts in US dollars the way Bill and AbstractVehicle did
+ * before (NumberFormat.getCurrencyInstance on every call), through
+ * {@link CurrencyFormatter} from BigDecimal, and through CurrencyFormatter from
+ * {@link Money} units. A plain main harness stands in for JMH, which this tree does
+ * not have.
+ *
+ * Usage: CurrencyFormatterBenchmark [formatCount]
+ *
+ * @author roys4
+ * @version Winter 2021
+ */
+public final class CurrencyFormatterBenchmark {
+
+    /**
+     * Default number of amounts formatted per run.
+     */
+    private static final int DEFAULT_COUNT = 2_000_000;
+
+    /**
+     * Distinct amounts; the runs cycle through them.
+     */
+    private static final int DISTINCT = 1 << 12;
+
+    /**
+     * Largest amount in units ($100,000).
+     */
+    private static final long MAX_UNITS = 100_000L * Money.UNITS_PER_DOLLAR;
+
+    /**
+     * Untimed runs per formatter.
+     */
+    private static final int WARMUPS = 3;
+
+    /**
+     * Timed runs per formatter.
+     */
+    private static final int RUNS = 5;
+
+    /**
+     * A private constructor, to prevent external instantiation.
+     */
+    private CurrencyFormatterBenchmark() {
+
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param theArgs optional number of amounts per run
+     */
+    public static void main(final String[] theArgs) {
+        final int count = BenchmarkSupport.intArg(theArgs, 0, DEFAULT_COUNT);
+        final long[] units = new long[DISTINCT];
+        final BigDecimal[] amounts = new BigDecimal[DISTINCT];
+        final Random random = new Random(1);
+        for (int i = 0; i < DISTINCT; i++) {
+            units[i] = (long) (random.nextDouble() * MAX_UNITS);
+            amounts[i] = Money.toBigDecimal(units[i]);
+        }
+
+        System.out.println("Amounts per run: " + count);
+        BenchmarkSupport.measure("NumberFormat per call", WARMUPS, RUNS, () -> {
+            long length = 0;
+            for (int i = 0; i < count; i++) {
+                length += NumberFormat.getCurrencyInstance(Locale.US).format(amounts[i & (DISTINCT - 1)]).length();
+            }
+            return length;
+        });
+        BenchmarkSupport.measure("CurrencyFormatter.format(BigDecimal)", WARMUPS, RUNS, () -> {
+            long length = 0;
+            for (int i = 0; i < count; i++) {
+                length += CurrencyFormatter.US.format(amounts[i & (DISTINCT - 1)]).length();
+            }
+            return length;
+        });
+        BenchmarkSupport.measure("CurrencyFormatter.appendUnits", WARMUPS, RUNS, () -> {
+            final StringBuilder buffer = new StringBuilder();
+            long length = 0;
+            for (int i = 0; i < count; i++) {
+                buffer.setLength(0);
+                CurrencyFormatter.US.appendUnits(buffer, units[i & (DISTINCT - 1)]);
+                length += buffer.length();
+            }
+            return length;
+        });
+    }
+}
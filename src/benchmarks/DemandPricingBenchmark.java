@@ -0,0 +1,151 @@
+/*
+ * Demand pricing lookup cost as the fleet grows.
+ */
+
+package benchmarks;
+
+import java.util.Random;
+import model.DemandPricing;
+import model.VehicleInventory;
+import model.vehicles.AbstractVehicle;
+import model.vehicles.Bicycle;
+import model.vehicles.BicycleType;
+import model.vehicles.Car;
+import model.vehicles.MotorBike;
+
+/**
+ * Measures nanoseconds per {@link DemandPricing#rateUnits} lookup over fleets of
+ * increasing size with about 60% of the fleet rented. Lookups run once with the
+ * default recompute interval and once recomputing on every lookup; both should stay
+ * flat as the fleet grows, since utilization comes from counters, not a scan.
+ *
+ * Usage: DemandPricingBenchmark [largestFleet] [lookupsPerRun]
+ *
+ * @author roys4
+ * @version Winter 2021
+ */
+public final class DemandPricingBenchmark {
+
+    /**
+     * Default largest fleet.
+     */
+    private static final int DEFAULT_LARGEST_FLEET = 2_000_000;
+
+    /**
+     * Default lookups per run.
+     */
+    private static final int DEFAULT_LOOKUPS = 10_000_000;
+
+    /**
+     * Smallest fleet tried.
+     */
+    private static final int SMALLEST_FLEET = 1_000;
+
+    /**
+     * Fleet growth between sizes.
+     */
+    private static final int GROWTH = 10;
+
+    /**
+     * Percentage of the fleet rented.
+     */
+    private static final int RENTED_PERCENT = 60;
+
+    /**
+     * Percent in a whole.
+     */
+    private static final int PERCENT = 100;
+
+    /**
+     * Vehicle kinds generated.
+     */
+    private static final int KINDS = 3;
+
+    /**
+     * Untimed runs per configuration.
+     */
+    private static final int WARMUPS = 2;
+
+    /**
+     * Timed runs per configuration.
+     */
+    private static final int RUNS = 3;
+
+    /**
+     * A private constructor, to prevent external instantiation.
+     */
+    private DemandPricingBenchmark() {
+
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param theArgs optional largest fleet and lookups per run
+     */
+    public static void main(final String[] theArgs) {
+        final int largest = BenchmarkSupport.intArg(theArgs, 0, DEFAULT_LARGEST_FLEET);
+        final int lookups = BenchmarkSupport.intArg(theArgs, 1, DEFAULT_LOOKUPS);
+        for (long size = SMALLEST_FLEET; size <= largest; size *= GROWTH) {
+            run((int) size, lookups);
+        }
+    }
+
+    /**
+     * Builds a fleet and times lookups on it.
+     *
+     * @param theSize fleet size
+     * @param theLookups lookups per run
+     */
+    private static void run(final int theSize, final int theLookups) {
+        final VehicleInventory inventory = new VehicleInventory();
+        final AbstractVehicle[] fleet = new AbstractVehicle[theSize];
+        final Random random = new Random(1);
+        for (int i = 0; i < theSize; i++) {
+            final int kind = i % KINDS;
+            if (kind == 0) {
+                fleet[i] = new Car("Car", "V" + i, true, random.nextBoolean(), random.nextBoolean(), false);
+            } else if (kind == 1) {
+                fleet[i] = new MotorBike("Bike", "B" + i, true, random.nextBoolean());
+            } else {
+                fleet[i] = new Bicycle("Cycle", "C" + i, true, BicycleType.CRUISER);
+            }
+            inventory.add(fleet[i]);
+            if (random.nextInt(PERCENT) < RENTED_PERCENT) {
+                inventory.setAvailable(fleet[i].getMyVehicleID(), false);
+            }
+        }
+
+        final DemandPricing timed = new DemandPricing(inventory);
+        final DemandPricing eager = new DemandPricing(inventory, 0, DemandPricing.DEFAULT_THRESHOLD / 2,
+                                                      DemandPricing.DEFAULT_MAX_SURGE);
+        System.out.println("Fleet: " + theSize);
+        report("  default interval", timed, fleet, theLookups);
+        report("  recompute every lookup", eager, fleet, theLookups);
+    }
+
+    /**
+     * Times lookups and prints the cost of one.
+     *
+     * @param theName label
+     * @param thePricing pricing under test
+     * @param theFleet the vehicles
+     * @param theLookups lookups per run
+     */
+    private static void report(final String theName, final DemandPricing thePricing,
+                               final AbstractVehicle[] theFleet, final int theLookups) {
+        final double nanos = BenchmarkSupport.measure(theName, WARMUPS, RUNS, () -> {
+            long sum = 0;
+            int index = 0;
+            for (int i = 0; i < theLookups; i++) {
+                sum += thePricing.rateUnits(theFleet[index]);
+                index++;
+                if (index == theFleet.length) {
+                    index = 0;
+                }
+            }
+            return sum;
+        });
+        System.out.printf("%-40s %12.1f ns/lookup%n", "", nanos / theLookups);
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Compares the classic and memory-mapped user file loaders.
+ */
+
+package benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import utility.FileLoader;
+
+/**
+ * Generates a large user file and times {@link FileLoader#readItemsFromFile(String)}
+ * against {@link FileLoader#readItemsFromFileMapped(String)}.
+ * 
+ * Usage: FileLoaderBenchmark [userCount]
+ * 
+ * @author roys4
+ * @version Winter 2021
+ */
+public final class FileLoaderBenchmark {
+
+    /**
+     * Default number of user lines to generate.
+     */
+    private static final int DEFAULT_USERS = 2_000_000;
+
+    /**
+     * Untimed runs per loader.
+     */
+    private static final int WARMUPS = 3;
+
+    /**
+     * Timed runs per loader.
+     */
+    private static final int RUNS = 5;
+
+    /**
+     * A private constructor, to prevent external instantiation.
+     */
+    private FileLoaderBenchmark() {
+
+    }
+
+    /**
+     * Runs the benchmark.
+     * 
+     * @param theArgs optional user count
+     * @throws IOException if the temporary user file cannot be written
+     */
+    public static void main(final String[] theArgs) throws IOException {
+        final int users = BenchmarkSupport.intArg(theArgs, 0, DEFAULT_USERS);
+        final Path file = Files.createTempFile("registeredusers", ".txt");
+        try {
+            try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                for (int i = 0; i < users; i++) {
+                    out.write("user" + i + ",Passw0rd!" + i + "," + (i % 2 == 0));
+                    out.newLine();
+                }
+            }
+            final String name = file.toString();
+            System.out.println("Users: " + users);
+            BenchmarkSupport.measure("BufferedReader + split", WARMUPS, RUNS,
+                () -> FileLoader.readItemsFromFile(name));
+            BenchmarkSupport.measure("memory-mapped, parallel chunks", WARMUPS, RUNS,
+                () -> FileLoader.readItemsFromFileMapped(name));
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Bulk fleet import timings for the text and binary formats.
+ */
+
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import model.Registration;
+import model.RentalManager;
+import model.vehicles.AbstractVehicle;
+import model.vehicles.Bicycle;
+import model.vehicles.BicycleType;
+import model.vehicles.Car;
+import model.vehicles.MotorBike;
+import utility.FleetLoader;
+import utility.PhaseTimings;
+
+/**
+ * Writes a generated fleet in both formats and loads each into a fresh
+ * RentalManager several times, printing the per-phase timings of every run.
+ *
+ * Usage: FleetLoaderBenchmark [fleetSize]
+ *
+ * @author roys4
+ * @version Winter 2021
+ */
+public final class FleetLoaderBenchmark {
+
+    /**
+     * Default fleet size.
+     */
+    private static final int DEFAULT_FLEET = 500_000;
+
+    /**
+     * Loads per format; the first one is a warm-up.
+     */
+    private static final int RUNS = 4;
+
+    /**
+     * Vehicle kinds generated.
+     */
+    private static final int KINDS = 3;
+
+    /**
+     * A private constructor, to prevent external instantiation.
+     */
+    private FleetLoaderBenchmark() {
+
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param theArgs optional fleet size
+     * @throws IOException if the temporary files cannot be written or read
+     */
+    public static void main(final String[] theArgs) throws IOException {
+        final int size = BenchmarkSupport.intArg(theArgs, 0, DEFAULT_FLEET);
+        final List<AbstractVehicle> fleet = new ArrayList<AbstractVehicle>(size);
+        final BicycleType[] cycleTypes = BicycleType.values();
+        for (int i = 0; i < size; i++) {
+            final int kind = i % KINDS;
+            if (kind == 0) {
+                fleet.add(new Car("Car" + i, "V" + i, true, (i & 1) != 0, (i & 2) != 0, (i & 4) != 0));
+            } else if (kind == 1) {
+                fleet.add(new MotorBike("Bike" + i, "B" + i, true, (i & 1) != 0));
+            } else {
+                fleet.add(new Bicycle("Cycle" + i, "C" + i, true, cycleTypes[i % cycleTypes.length]));
+            }
+        }
+        final Path text = Files.createTempFile("fleet", ".txt");
+        final Path binary = Files.createTempFile("fleet", ".bin");
+        try {
+            FleetLoader.writeText(text, fleet);
+            FleetLoader.writeBinary(binary, fleet);
+            fleet.clear();
+            System.out.printf("Fleet: %d vehicles, text %,d bytes, binary %,d bytes%n", size,
+                              Files.size(text), Files.size(binary));
+            load("text", text);
+            load("binary", binary);
+        } finally {
+            Files.delete(text);
+            Files.delete(binary);
+        }
+    }
+
+    /**
+     * Loads a file into fresh rental managers and prints each run's timings.
+     *
+     * @param theName format name
+     * @param theFile the fleet file
+     * @throws IOException if the file cannot be read
+     */
+    private static void load(final String theName, final Path theFile) throws IOException {
+        for (int run = 0; run < RUNS; run++) {
+            final RentalManager manager =
+                new RentalManager(new Registration(new HashMap<>(), theUser -> null));
+            final PhaseTimings timings = manager.loadFleet(theFile);
+            final String label;
+            if (run == 0) {
+                label = theName + " (warm-up)";
+            } else {
+                label = theName;
+            }
+            System.out.printf("%-18s %s%n", label, timings);
+            BenchmarkSupport.consume(manager.getMyVehicleList().size());
+        }
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Memory and wake-up latency of many idle operator sessions.
+ */
+
+package benchmarks;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import model.Registration;
+import model.RentalManager;
+import model.RentalSession;
+import model.SessionThreadServer;
+import utility.LatencyStats;
+import utility.SessionExecutors;
+
+/**
+ * Starts a number of sessions that each block waiting for their operator's first
+ * line, the way a thread-per-session server holds idle connections, and compares
+ * executors: a virtual thread per session (where the runtime has them), the fixed
+ * pool {@link SessionThreadServer} falls back to, and a platform thread per session.
+ *
+ * Once the sessions are parked, the benchmark records the heap, resident memory
+ * and live thread count they added. It then hands every session its line, in
+ * session order, and records per session the time from handing over the line to
+ * the reply. In a fixed pool only as many sessions as there are threads can wait
+ * at once, so the others only start (and see their line) once earlier sessions
+ * have finished. Sockets are left out, so the count is not limited by file
+ * descriptors.
+ *
+ * Usage: IdleSessionBenchmark [sessions] [platformThreadSessions] (defaults 100000
+ * and 10000; a platform thread per session is capped by the process thread limit)
+ *
+ * @author roys4
+ * @version Winter 2021
+ */
+public final class IdleSessionBenchmark {
+
+    /**
+     * Default number of sessions.
+     */
+    private static final int DEFAULT_SESSIONS = 100_000;
+
+    /**
+     * Default number of sessions when each gets a platform thread.
+     */
+    private static final int DEFAULT_PLATFORM_SESSIONS = 10_000;
+
+    /**
+     * Line every session receives.
+     */
+    private static final String LINE = "2";
+
+    /**
+     * Milliseconds between checks whether the sessions are parked.
+     */
+    private static final int POLL_MILLIS = 10;
+
+    /**
+     * Bytes per megabyte.
+     */
+    private static final double BYTES_PER_MB = 1024.0 * 1024.0;
+
+    /**
+     * Bytes per kilobyte, the unit of VmRSS.
+     */
+    private static final int BYTES_PER_KB = 1024;
+
+    /**
+     * Linux status file of this process.
+     */
+    private static final Path PROC_STATUS = Paths.get("/proc/self/status");
+
+    /**
+     * Users, never consulted by the first line.
+     */
+    private static final Registration REGISTRATION =
+        new Registration(new HashMap<>(), theUser -> CompletableFuture.completedFuture(null));
+
+    /**
+     * Fleet, never consulted by the first line.
+     */
+    private static final RentalManager MANAGER = new RentalManager(REGISTRATION);
+
+    /**
+     * A private constructor, to prevent external instantiation.
+     */
+    private IdleSessionBenchmark() {
+
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param theArgs optional session counts
+     * @throws InterruptedException if interrupted while waiting for sessions
+     * @throws IOException if the process status cannot be read
+     */
+    public static void main(final String[] theArgs) throws InterruptedException, IOException {
+        final int sessions = BenchmarkSupport.intArg(theArgs, 0, DEFAULT_SESSIONS);
+        final int platformSessions = Math.min(sessions,
+                                              BenchmarkSupport.intArg(theArgs, 1, DEFAULT_PLATFORM_SESSIONS));
+        final int poolThreads = SessionThreadServer.DEFAULT_FALLBACK_THREADS;
+
+        final ExecutorService virtual = SessionExecutors.newVirtualThreadExecutor();
+        if (virtual == null) {
+            System.out.println("virtual thread per session: not available on Java "
+                               + Runtime.version().feature() + ", skipped");
+        } else {
+            run("virtual thread per session", virtual, sessions, sessions);
+        }
+        run("fixed pool of " + poolThreads, Executors.newFixedThreadPool(poolThreads), sessions, poolThreads);
+        run("platform thread per session", Executors.newCachedThreadPool(), platformSessions, platformSessions);
+    }
+
+    /**
+     * Parks sessions on an executor, measures them, then wakes each with one line.
+     *
+     * @param theName executor description
+     * @param theExecutor runs the sessions; shut down afterwards
+     * @param theSessions number of sessions
+     * @param theConcurrent sessions the executor can park at once
+     * @throws InterruptedException if interrupted while waiting for sessions
+     * @throws IOException if the process status cannot be read
+     */
+    private static void run(final String theName, final ExecutorService theExecutor, final int theSessions,
+                            final int theConcurrent) throws InterruptedException, IOException {
+        final long heapBefore = usedHeap();
+        final long rssBefore = residentBytes();
+        final int threadsBefore = ManagementFactory.getThreadMXBean().getThreadCount();
+
+        final List<CompletableFuture<String>> inboxes = new ArrayList<CompletableFuture<String>>(theSessions);
+        final long[] sentAt = new long[theSessions];
+        final long[] latency = new long[theSessions];
+        final AtomicInteger parked = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(theSessions);
+        final long startNanos = System.nanoTime();
+        for (int i = 0; i < theSessions; i++) {
+            final int session = i;
+            inboxes.add(new CompletableFuture<String>());
+            theExecutor.execute(() -> serve(session, inboxes, sentAt, latency, parked, done));
+        }
+        final int expected = Math.min(theSessions, theConcurrent);
+        while (parked.get() < expected) {
+            Thread.sleep(POLL_MILLIS);
+        }
+        final long parkNanos = System.nanoTime() - startNanos;
+        final long heap = usedHeap() - heapBefore;
+        final long rss = residentBytes() - rssBefore;
+        final int threads = ManagementFactory.getThreadMXBean().getThreadCount() - threadsBefore;
+
+        final long wakeStart = System.nanoTime();
+        for (int i = 0; i < theSessions; i++) {
+            sentAt[i] = System.nanoTime();
+            inboxes.get(i).complete(LINE);
+        }
+        done.await();
+        final long wakeNanos = System.nanoTime() - wakeStart;
+        theExecutor.shutdown();
+        theExecutor.awaitTermination(1, TimeUnit.MINUTES);
+
+        final LatencyStats stats = new LatencyStats();
+        for (final long nanos : latency) {
+            stats.record(nanos);
+        }
+        System.out.printf("%s: %,d sessions, %,d parked at once in %.0f ms%n", theName, theSessions, expected,
+                          parkNanos / BenchmarkSupport.NANOS_PER_MILLI);
+        System.out.printf("  memory: heap +%.1f MB, resident +%.1f MB, threads +%,d (%,d bytes/parked session)%n",
+                          heap / BYTES_PER_MB, rss / BYTES_PER_MB, threads, Math.max(heap, rss) / expected);
+        System.out.printf("  wake-up: all replied in %.0f ms, %s%n", wakeNanos / BenchmarkSupport.NANOS_PER_MILLI,
+                          stats);
+    }
+
+    /**
+     * One session: greets, parks until its line arrives, replies.
+     *
+     * @param theSession session number
+     * @param theInboxes first line of every session
+     * @param theSentAt when each line was handed over
+     * @param theLatency time to each reply
+     * @param theParked counts parked sessions
+     * @param theDone counts finished sessions
+     */
+    private static void serve(final int theSession, final List<CompletableFuture<String>> theInboxes,
+                              final long[] theSentAt, final long[] theLatency, final AtomicInteger theParked,
+                              final CountDownLatch theDone) {
+        final RentalSession session = new RentalSession(REGISTRATION, MANAGER);
+        BenchmarkSupport.consume(session.start());
+        theParked.incrementAndGet();
+        try {
+            BenchmarkSupport.consume(session.handle(theInboxes.get(theSession).get()));
+            theLatency[theSession] = System.nanoTime() - theSentAt[theSession];
+        } catch (final ExecutionException e) {
+            e.printStackTrace();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        theDone.countDown();
+    }
+
+    /**
+     * Heap in use after a collection.
+     *
+     * @return bytes
+     */
+    private static long usedHeap() {
+        System.gc();
+        final Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Resident memory of the process, from /proc (Linux only).
+     *
+     * @return bytes, or 0 where /proc is not available
+     * @throws IOException if the status file cannot be read
+     */
+    private static long residentBytes() throws IOException {
+        long result = 0;
+        if (Files.isReadable(PROC_STATUS)) {
+            for (final String line : Files.readAllLines(PROC_STATUS, StandardCharsets.US_ASCII)) {
+                if (line.startsWith("VmRSS:")) {
+                    result = Long.parseLong(line.replaceAll("[^0-9]", "")) * BYTES_PER_KB;
+                }
+            }
+        }
+        return result;
+    }
+}
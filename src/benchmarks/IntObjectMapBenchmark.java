@@ -0,0 +1,164 @@
+/*
+ * Memory and lookup cost of IntObjectMap versus boxed-key hash maps.
+ */
+
+package benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import utility.IntObjectMap;
+
+/**
+ * For each size, fills an {@link IntObjectMap}, a HashMap and a ConcurrentHashMap
+ * with the same IDs, printing the heap each one uses after garbage collection
+ * (values are shared, so only keys, entries and tables are counted) and the
+ * average time of a random successful lookup.
+ *
+ * IDs are spread the way block-leased IDs are: runs of consecutive IDs.
+ *
+ * Usage: IntObjectMapBenchmark [size...] (default 10000 1000000 10000000;
+ * the largest size wants a heap of about 2 GB, e.g. -Xmx3g)
+ *
+ * @author roys4
+ * @version Winter 2021
+ */
+public final class IntObjectMapBenchmark {
+
+    /**
+     * Default sizes.
+     */
+    private static final int[] DEFAULT_SIZES = {10_000, 1_000_000, 10_000_000};
+
+    /**
+     * Lookups per timed run.
+     */
+    private static final int LOOKUPS = 1 << 22;
+
+    /**
+     * Untimed runs per map.
+     */
+    private static final int WARMUPS = 3;
+
+    /**
+     * Timed runs per map.
+     */
+    private static final int RUNS = 5;
+
+    /**
+     * IDs per leased block.
+     */
+    private static final int BLOCK = 64;
+
+    /**
+     * Multiplier of the lookup index generator.
+     */
+    private static final int LCG_MULTIPLIER = 1_664_525;
+
+    /**
+     * Increment of the lookup index generator.
+     */
+    private static final int LCG_INCREMENT = 1_013_904_223;
+
+    /**
+     * The shared value.
+     */
+    private static final Object VALUE = new Object();
+
+    /**
+     * A private constructor, to prevent external instantiation.
+     */
+    private IntObjectMapBenchmark() {
+
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param theArgs optional sizes
+     */
+    public static void main(final String[] theArgs) {
+        int[] sizes = DEFAULT_SIZES;
+        if (theArgs.length > 0) {
+            sizes = new int[theArgs.length];
+            for (int i = 0; i < theArgs.length; i++) {
+                sizes[i] = BenchmarkSupport.intArg(theArgs, i, 0);
+            }
+        }
+        for (final int size : sizes) {
+            final int[] keys = new int[size];
+            for (int i = 0; i < size; i++) {
+                // Every other block is skipped, as when several threads lease blocks
+                keys[i] = (i / BLOCK) * 2 * BLOCK + i % BLOCK + 1;
+            }
+            System.out.printf("%n%,d entries%n", size);
+            run("IntObjectMap", keys, () -> {
+                final IntObjectMap<Object> map = new IntObjectMap<Object>();
+                for (final int key : keys) {
+                    map.put(key, VALUE);
+                }
+                return map;
+            }, theMap -> theKey -> ((IntObjectMap<?>) theMap).get(theKey));
+            run("HashMap<Integer, V>", keys, () -> {
+                final Map<Integer, Object> map = new HashMap<Integer, Object>();
+                for (final int key : keys) {
+                    map.put(key, VALUE);
+                }
+                return map;
+            }, theMap -> theKey -> ((Map<?, ?>) theMap).get(theKey));
+            run("ConcurrentHashMap<Integer, V>", keys, () -> {
+                final Map<Integer, Object> map = new ConcurrentHashMap<Integer, Object>();
+                for (final int key : keys) {
+                    map.put(key, VALUE);
+                }
+                return map;
+            }, theMap -> theKey -> ((Map<?, ?>) theMap).get(theKey));
+        }
+    }
+
+    /**
+     * Builds one map, prints its footprint and times random lookups.
+     *
+     * @param theName map label
+     * @param theKeys keys in the map
+     * @param theBuilder fills a new map
+     * @param theLookup lookup function over a built map
+     */
+    private static void run(final String theName, final int[] theKeys, final Supplier<Object> theBuilder,
+                            final Function<Object, IntFunction<Object>> theLookup) {
+        final long before = usedHeap();
+        final Object map = theBuilder.get();
+        final long bytes = usedHeap() - before;
+        final IntFunction<Object> lookup = theLookup.apply(map);
+        final double nanos = BenchmarkSupport.measure(theName + " lookups", WARMUPS, RUNS, () -> {
+            int found = 0;
+            int seed = 1;
+            for (int i = 0; i < LOOKUPS; i++) {
+                seed = seed * LCG_MULTIPLIER + LCG_INCREMENT;
+                if (lookup.apply(theKeys[(seed >>> 1) % theKeys.length]) != null) {
+                    found++;
+                }
+            }
+            return found;
+        });
+        System.out.printf("    %,d bytes (%.1f per entry), %.1f ns per lookup%n", bytes,
+                          (double) bytes / theKeys.length, nanos / LOOKUPS);
+        BenchmarkSupport.consume(map);
+    }
+
+    /**
+     * Heap in use after a full collection.
+     *
+     * @return bytes
+     */
+    private static long usedHeap() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
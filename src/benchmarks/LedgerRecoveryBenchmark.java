@@ -0,0 +1,202 @@
+/*
+ * Rental ledger recovery time against ledger size.
+ */
+
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+import model.Registration;
+import model.RentalManager;
+import model.User;
+import model.vehicles.Car;
+import utility.PhaseTimings;
+import utility.RentalLedger;
+import utility.RentalLedger.BillEntry;
+
+/**
+ * Writes ledgers of increasing size (random rentals of a fleet, two thirds of them
+ * dropped off again), snapshots the files as a crash would leave them, and times a
+ * RentalManager recovering from the snapshot: once from the last periodic
+ * checkpoint plus the events after it, and once with the checkpoint removed so the
+ * whole log is replayed.
+ *
+ * Usage: LedgerRecoveryBenchmark [eventCount...] (default 100000 1000000 3000000;
+ * the largest wants a heap of about 2 GB)
+ *
+ * @author roys4
+ * @version Winter 2021
+ */
+public final class LedgerRecoveryBenchmark {
+
+    /**
+     * Default ledger sizes, in events.
+     */
+    private static final int[] DEFAULT_EVENTS = {100_000, 1_000_000, 3_000_000};
+
+    /**
+     * Vehicles in the fleet.
+     */
+    private static final int FLEET = 10_000;
+
+    /**
+     * Daily rate of every rental.
+     */
+    private static final long RATE_UNITS = 300_000L;
+
+    /**
+     * Out of this many rentals, all but one are dropped off.
+     */
+    private static final int DROP_CYCLE = 3;
+
+    /**
+     * Recoveries timed per snapshot; the first is a warm-up.
+     */
+    private static final int RUNS = 3;
+
+    /**
+     * The renting user.
+     */
+    private static final String USER = "bench";
+
+    /**
+     * A private constructor, to prevent external instantiation.
+     */
+    private LedgerRecoveryBenchmark() {
+
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param theArgs optional ledger sizes
+     * @throws IOException if the temporary ledgers cannot be written or read
+     */
+    public static void main(final String[] theArgs) throws IOException {
+        int[] sizes = DEFAULT_EVENTS;
+        if (theArgs.length > 0) {
+            sizes = new int[theArgs.length];
+            for (int i = 0; i < theArgs.length; i++) {
+                sizes[i] = BenchmarkSupport.intArg(theArgs, i, 0);
+            }
+        }
+        for (final int size : sizes) {
+            final Path directory = Files.createTempDirectory("ledger");
+            try {
+                final Path crashed = write(directory, size);
+                System.out.printf("%n%,d events, %,d byte log%n", size, Files.size(crashed));
+                recover("checkpoint + tail", crashed);
+                Files.delete(crashed.resolveSibling(crashed.getFileName() + ".ckpt"));
+                recover("full replay", crashed);
+            } finally {
+                deleteTree(directory);
+            }
+        }
+    }
+
+    /**
+     * Writes a ledger and copies it as a crash would leave it, without a final checkpoint.
+     *
+     * @param theDirectory working directory
+     * @param theEvents number of events
+     * @return the copied log
+     * @throws IOException if the ledger cannot be written or copied
+     */
+    private static Path write(final Path theDirectory, final int theEvents) throws IOException {
+        final Path log = theDirectory.resolve("live.ledger");
+        final Random random = new Random(1);
+        final boolean[] rented = new boolean[FLEET];
+        final long start = System.nanoTime();
+        try (RentalLedger ledger = RentalLedger.open(log)) {
+            CompletableFuture<Void> last = CompletableFuture.completedFuture(null);
+            int billID = 1;
+            for (int i = 0; i < theEvents; i++) {
+                final int vehicle = random.nextInt(FLEET);
+                if (rented[vehicle] && billID % DROP_CYCLE != 0) {
+                    last = ledger.recordDrop(vin(vehicle));
+                    rented[vehicle] = false;
+                } else {
+                    last = ledger.recordRent(new BillEntry(billID++, USER, vin(vehicle), 1, RATE_UNITS));
+                    rented[vehicle] = true;
+                }
+            }
+            last.join();
+            final double seconds = (System.nanoTime() - start) / BenchmarkSupport.NANOS_PER_SECOND;
+            System.out.printf("%n%-18s %,.0f events per second%n", "write", theEvents / seconds);
+            final Path crashed = theDirectory.resolve("crashed.ledger");
+            Files.copy(log, crashed);
+            final Path checkpoint = log.resolveSibling(log.getFileName() + ".ckpt");
+            if (Files.exists(checkpoint)) {
+                Files.copy(checkpoint, crashed.resolveSibling(crashed.getFileName() + ".ckpt"));
+            }
+            return crashed;
+        }
+    }
+
+    /**
+     * Recovers a RentalManager from a ledger several times and prints the timings.
+     *
+     * @param theName label
+     * @param theLog the ledger, copied before every run so runs start alike
+     * @throws IOException if the ledger cannot be read
+     */
+    private static void recover(final String theName, final Path theLog) throws IOException {
+        final Map<String, User> users = new HashMap<String, User>();
+        users.put(USER, new User(USER, "Benchmark1!"));
+        for (int run = 0; run < RUNS; run++) {
+            final Path copy = theLog.resolveSibling("run.ledger");
+            final Path checkpoint = theLog.resolveSibling(theLog.getFileName() + ".ckpt");
+            final Path copyCheckpoint = copy.resolveSibling(copy.getFileName() + ".ckpt");
+            Files.copy(theLog, copy, StandardCopyOption.REPLACE_EXISTING);
+            Files.deleteIfExists(copyCheckpoint);
+            if (Files.exists(checkpoint)) {
+                Files.copy(checkpoint, copyCheckpoint);
+            }
+            final RentalManager manager = new RentalManager(new Registration(users, theUser -> null));
+            for (int i = 0; i < FLEET; i++) {
+                manager.addVehicle(new Car("Car", vin(i), true, false, false, false));
+            }
+            final long start = System.nanoTime();
+            final PhaseTimings timings = manager.openLedger(copy);
+            final long total = System.nanoTime() - start;
+            manager.closeLedger();
+            String label = theName;
+            if (run == 0) {
+                label = theName + " (warm-up)";
+            }
+            System.out.printf("%-30s %8.1f ms  %s%n", label, total / BenchmarkSupport.NANOS_PER_MILLI, timings);
+        }
+    }
+
+    /**
+     * VIN of a fleet vehicle.
+     *
+     * @param theIndex vehicle index
+     * @return its VIN
+     */
+    private static String vin(final int theIndex) {
+        return "V" + theIndex;
+    }
+
+    /**
+     * Deletes a directory and the files in it.
+     *
+     * @param theDirectory the directory
+     * @throws IOException if a file cannot be deleted
+     */
+    private static void deleteTree(final Path theDirectory) throws IOException {
+        try (Stream<Path> files = Files.list(theDirectory)) {
+            for (final Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(theDirectory);
+    }
+}
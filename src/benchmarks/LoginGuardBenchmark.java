@@ -0,0 +1,149 @@
+/*
+ * Cost of the login rate limit check under concurrent logins.
+ */
+
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import model.LoginGuard;
+
+/**
+ * Measures nanoseconds per {@link LoginGuard#tryAcquire} at 1 and 32 threads,
+ * once with a guard that never throttles (every call charges both buckets) and
+ * once with the default limits (most calls are refused).
+ *
+ * Usage: LoginGuardBenchmark [secondsPerRun]
+ *
+ * @author roys4
+ * @version Winter 2021
+ */
+public final class LoginGuardBenchmark {
+
+    /**
+     * Default seconds per run.
+     */
+    private static final int DEFAULT_SECONDS = 2;
+
+    /**
+     * Thread counts tried.
+     */
+    private static final int[] THREADS = {1, 32};
+
+    /**
+     * Distinct user names.
+     */
+    private static final int USERS = 100_000;
+
+    /**
+     * Distinct sources.
+     */
+    private static final int SOURCES = 1_000;
+
+    /**
+     * Burst of the permissive guard.
+     */
+    private static final int OPEN_BURST = 1_000_000;
+
+    /**
+     * Milliseconds in a second.
+     */
+    private static final int MILLIS_PER_SECOND = 1000;
+
+    /**
+     * A private constructor, to prevent external instantiation.
+     */
+    private LoginGuardBenchmark() {
+
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param theArgs optional seconds per run
+     * @throws InterruptedException if interrupted while waiting for workers
+     */
+    public static void main(final String[] theArgs) throws InterruptedException {
+        final int seconds = BenchmarkSupport.intArg(theArgs, 0, DEFAULT_SECONDS);
+        final String[] users = new String[USERS];
+        for (int i = 0; i < USERS; i++) {
+            users[i] = "user" + i;
+        }
+        final String[] sources = new String[SOURCES];
+        for (int i = 0; i < SOURCES; i++) {
+            sources[i] = "10.0." + (i >>> Byte.SIZE) + "." + (i & (1 << Byte.SIZE) - 1);
+        }
+        final LoginGuard open = new LoginGuard(OPEN_BURST, 1, OPEN_BURST, 1, TimeUnit.NANOSECONDS,
+                                               LoginGuard.DEFAULT_SLOTS);
+        final LoginGuard defaults = new LoginGuard();
+        for (final int threads : THREADS) {
+            run("permissive", open, users, sources, threads, seconds);
+            run("default", defaults, users, sources, threads, seconds);
+        }
+    }
+
+    /**
+     * Calls tryAcquire with random keys on a number of threads for a fixed time.
+     *
+     * @param theName label of the guard
+     * @param theGuard the guard
+     * @param theUsers user names
+     * @param theSources sources
+     * @param theThreads number of threads
+     * @param theSeconds run time
+     * @throws InterruptedException if interrupted while waiting for workers
+     */
+    private static void run(final String theName, final LoginGuard theGuard, final String[] theUsers,
+                            final String[] theSources, final int theThreads, final int theSeconds)
+        throws InterruptedException {
+        final AtomicLong calls = new AtomicLong();
+        final AtomicLong allowed = new AtomicLong();
+        final CountDownLatch start = new CountDownLatch(1);
+        final long deadline = System.currentTimeMillis() + (long) theSeconds * MILLIS_PER_SECOND;
+        final List<Thread> workers = new ArrayList<Thread>();
+        for (int t = 0; t < theThreads; t++) {
+            final Thread worker = new Thread(() -> {
+                long done = 0;
+                long passed = 0;
+                awaitQuietly(start);
+                while (System.currentTimeMillis() < deadline) {
+                    final ThreadLocalRandom random = ThreadLocalRandom.current();
+                    if (theGuard.tryAcquire(theUsers[random.nextInt(theUsers.length)],
+                                            theSources[random.nextInt(theSources.length)])) {
+                        passed++;
+                    }
+                    done++;
+                }
+                calls.addAndGet(done);
+                allowed.addAndGet(passed);
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        start.countDown();
+        for (final Thread worker : workers) {
+            worker.join();
+        }
+        // Wall time per call across all threads, i.e. the inverse of total throughput
+        final double nanosPerCall = theSeconds * BenchmarkSupport.NANOS_PER_SECOND / calls.get();
+        System.out.printf("%-10s %3d threads: %,13d checks per second, %7.1f ns per check, %,d allowed%n",
+                          theName, theThreads, calls.get() / theSeconds, nanosPerCall, allowed.get());
+    }
+
+    /**
+     * Waits for a latch, restoring the interrupt flag if interrupted.
+     *
+     * @param theLatch the latch
+     */
+    private static void awaitQuietly(final CountDownLatch theLatch) {
+        try {
+            theLatch.await();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Login throughput at each password hashing cost.
+ */
+
+package benchmarks;
+
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import model.CredentialCache;
+import model.PasswordHasher;
+import model.Registration;
+import model.User;
+
+/**
+ * Times single-threaded logins through {@link Registration#authenticate} for users
+ * stored with PBKDF2 hashes of increasing iteration counts, and prints logins per
+ * second per core. Every login at a cost misses the credential cache (TTL 0);
+ * a last run shows repeated logins served from the cache, and one shows a legacy
+ * plaintext user for comparison.
+ *
+ * Usage: PasswordHashBenchmark [iterations...] (default 10000 100000 210000 600000 1000000)
+ *
+ * @author roys4
+ * @version Winter 2021
+ */
+public final class PasswordHashBenchmark {
+
+    /**
+     * Default iteration counts.
+     */
+    private static final int[] DEFAULT_COSTS = {10_000, 100_000, 210_000, 600_000, 1_000_000};
+
+    /**
+     * PBKDF2 iterations timed per run, spread over as many logins as that takes.
+     */
+    private static final long ITERATIONS_PER_RUN = 6_000_000L;
+
+    /**
+     * Logins per run when no hash is computed.
+     */
+    private static final int CHEAP_LOGINS = 1_000_000;
+
+    /**
+     * Untimed runs per cost.
+     */
+    private static final int WARMUPS = 1;
+
+    /**
+     * Timed runs per cost.
+     */
+    private static final int RUNS = 3;
+
+    /**
+     * Password of every user.
+     */
+    private static final String PASSWORD = "Benchmark1!Pass";
+
+    /**
+     * Name of the benchmark user.
+     */
+    private static final String USER = "bench";
+
+    /**
+     * A private constructor, to prevent external instantiation.
+     */
+    private PasswordHashBenchmark() {
+
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param theArgs optional iteration counts
+     */
+    public static void main(final String[] theArgs) {
+        int[] costs = DEFAULT_COSTS;
+        if (theArgs.length > 0) {
+            costs = new int[theArgs.length];
+            for (int i = 0; i < theArgs.length; i++) {
+                costs[i] = Integer.parseInt(theArgs[i]);
+            }
+        }
+        System.out.println("Logins per second on one core (default cost " + PasswordHasher.DEFAULT_ITERATIONS
+                           + ", set with -D" + PasswordHasher.ITERATIONS_PROPERTY + ")");
+        for (final int cost : costs) {
+            final PasswordHasher hasher = new PasswordHasher(cost);
+            final Registration registration = registration(hasher, 0);
+            registration.register(registration.newUser(USER, PASSWORD, false));
+            final int logins = (int) Math.max(1, ITERATIONS_PER_RUN / cost);
+            report(cost + " iterations", logins, registration);
+        }
+
+        final PasswordHasher hasher = new PasswordHasher(PasswordHasher.DEFAULT_ITERATIONS);
+        final Registration cached = registration(hasher, CredentialCache.DEFAULT_TTL_SECONDS);
+        cached.register(cached.newUser(USER, PASSWORD, false));
+        cached.authenticate(USER, PASSWORD);
+        report("cached login", CHEAP_LOGINS, cached);
+
+        final Registration legacy = registration(hasher, 0);
+        legacy.register(new User(USER, PASSWORD, false));
+        report("legacy plaintext", CHEAP_LOGINS, legacy);
+    }
+
+    /**
+     * Creates an in-memory registration.
+     *
+     * @param theHasher password hasher
+     * @param theTtlSeconds credential cache lifetime
+     * @return the registration
+     */
+    private static Registration registration(final PasswordHasher theHasher, final int theTtlSeconds) {
+        return new Registration(new HashMap<String, User>(), theUser -> CompletableFuture.completedFuture(null),
+                                theHasher, new CredentialCache(CredentialCache.DEFAULT_MAX_ENTRIES,
+                                                               theTtlSeconds, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Times logins and prints the rate.
+     *
+     * @param theName label
+     * @param theLogins logins per run
+     * @param theRegistration registration holding the benchmark user
+     */
+    private static void report(final String theName, final int theLogins, final Registration theRegistration) {
+        final double nanos = BenchmarkSupport.measure(theName + " x" + theLogins, WARMUPS, RUNS, () -> {
+            int ok = 0;
+            for (int i = 0; i < theLogins; i++) {
+                if (theRegistration.authenticate(USER, PASSWORD)) {
+                    ok++;
+                }
+            }
+            if (ok != theLogins) {
+                throw new IllegalStateException("Login failed");
+            }
+            return ok;
+        });
+        System.out.printf("%-40s %,12.0f logins/s%n", "", theLogins * BenchmarkSupport.NANOS_PER_SECOND / nanos);
+    }
+}
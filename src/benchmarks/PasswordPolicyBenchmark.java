@@ -0,0 +1,180 @@
+/*
+ * Compares the table-driven password validator with the old list-based checks.
+ */
+
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import model.PasswordPolicy;
+
+/**
+ * Validates a corpus of generated passwords with {@link PasswordPolicy#DEFAULT} and
+ * with a copy of the List&lt;Character&gt; based checks Registration used before.
+ *
+ * Usage: PasswordPolicyBenchmark [passwordCount]
+ *
+ * @author roys4
+ * @version Winter 2021
+ */
+public final class PasswordPolicyBenchmark {
+
+    /**
+     * Default corpus size.
+     */
+    private static final int DEFAULT_PASSWORDS = 10_000_000;
+
+    /**
+     * Distinct passwords generated; the corpus cycles through them.
+     */
+    private static final int DISTINCT_PASSWORDS = 1 << 20;
+
+    /**
+     * Longest generated password.
+     */
+    private static final int MAX_LENGTH = 44;
+
+    /**
+     * Untimed runs per validator.
+     */
+    private static final int WARMUPS = 2;
+
+    /**
+     * Timed runs per validator.
+     */
+    private static final int RUNS = 3;
+
+    /**
+     * First printable ASCII character.
+     */
+    private static final int FIRST_PRINTABLE = 32;
+
+    /**
+     * Number of printable ASCII characters.
+     */
+    private static final int PRINTABLE = 95;
+
+    /**
+     * A private constructor, to prevent external instantiation.
+     */
+    private PasswordPolicyBenchmark() {
+
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param theArgs optional corpus size
+     */
+    public static void main(final String[] theArgs) {
+        final int count = BenchmarkSupport.intArg(theArgs, 0, DEFAULT_PASSWORDS);
+        final String[] distinct = new String[DISTINCT_PASSWORDS];
+        final Random random = new Random(1);
+        for (int i = 0; i < distinct.length; i++) {
+            final char[] chars = new char[1 + random.nextInt(MAX_LENGTH)];
+            for (int j = 0; j < chars.length; j++) {
+                chars[j] = (char) (FIRST_PRINTABLE + random.nextInt(PRINTABLE));
+            }
+            distinct[i] = new String(chars);
+        }
+
+        System.out.println("Passwords: " + count);
+        BenchmarkSupport.measure("PasswordPolicy lookup table", WARMUPS, RUNS, () -> {
+            int valid = 0;
+            for (int i = 0; i < count; i++) {
+                if (PasswordPolicy.DEFAULT.isValid(distinct[i & (DISTINCT_PASSWORDS - 1)])) {
+                    valid++;
+                }
+            }
+            return valid;
+        });
+        BenchmarkSupport.measure("legacy List<Character> checks", WARMUPS, RUNS, () -> {
+            int valid = 0;
+            for (int i = 0; i < count; i++) {
+                if (LegacyChecks.hasStrongPassword(distinct[i & (DISTINCT_PASSWORDS - 1)])) {
+                    valid++;
+                }
+            }
+            return valid;
+        });
+    }
+
+    /**
+     * The password checks Registration used before PasswordPolicy, kept only as a baseline.
+     */
+    private static final class LegacyChecks {
+
+        /**
+         * Special ascii characters.
+         */
+        private static final List<Character> SPECIAL = special();
+
+        /**
+         * A private constructor, to prevent external instantiation.
+         */
+        private LegacyChecks() {
+
+        }
+
+        /**
+         * Old strength check.
+         *
+         * @param thePassword the password
+         * @return true if strong
+         */
+        static boolean hasStrongPassword(final String thePassword) {
+            final int min = 10;
+            final int max = 40;
+            return thePassword.length() >= min && thePassword.length() <= max
+                   && !thePassword.contains(" ") && contains(thePassword, SPECIAL)
+                   && contains(thePassword, range('A', 'Z')) && contains(thePassword, range('0', '9'));
+        }
+
+        /**
+         * Checks whether any password character is in a list.
+         *
+         * @param thePassword the password
+         * @param theChars the characters to look for
+         * @return true if one is found
+         */
+        private static boolean contains(final String thePassword, final List<Character> theChars) {
+            boolean result = false;
+            for (int i = 0; i < thePassword.length(); i++) {
+                if (theChars.contains(thePassword.charAt(i))) {
+                    result = true;
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Old special character list.
+         *
+         * @return the list
+         */
+        private static List<Character> special() {
+            final List<Character> chars = new ArrayList<Character>();
+            chars.addAll(range('!', '/'));
+            chars.addAll(range(':', '@'));
+            chars.addAll(range('[', '`'));
+            chars.addAll(range('{', (char) (FIRST_PRINTABLE + PRINTABLE)));
+            return chars;
+        }
+
+        /**
+         * Builds a fresh list of a character range, like the old asciiCharacters.
+         *
+         * @param theStart first character
+         * @param theEnd last character
+         * @return the list
+         */
+        private static List<Character> range(final char theStart, final char theEnd) {
+            final List<Character> chars = new ArrayList<Character>();
+            for (char c = theStart; c <= theEnd; c++) {
+                chars.add(c);
+            }
+            return chars;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Concurrent rent/drop throughput over a large fleet.
+ */
+
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import model.VehicleInventory;
+import model.vehicles.AbstractVehicle;
+import model.vehicles.Car;
+
+/**
+ * Measures rent/drop cycles per second at increasing thread counts. Each cycle
+ * runs the same state transitions and index updates as RentalManager.rent and
+ * RentalManager.drop on a random vehicle; bill printing is left out so the
+ * console does not serialize the threads. Failed reservations (another thread
+ * already holds the vehicle) are counted as contention.
+ *
+ * Usage: RentDropBenchmark [fleetSize] [secondsPerRun]
+ *
+ * @author roys4
+ * @version Winter 2021
+ */
+public final class RentDropBenchmark {
+
+    /**
+     * Default fleet size.
+     */
+    private static final int DEFAULT_FLEET = 500_000;
+
+    /**
+     * Default seconds per thread count.
+     */
+    private static final int DEFAULT_SECONDS = 2;
+
+    /**
+     * Largest thread count tried.
+     */
+    private static final int MAX_THREADS = 64;
+
+    /**
+     * Milliseconds in a second.
+     */
+    private static final int MILLIS_PER_SECOND = 1000;
+
+    /**
+     * A private constructor, to prevent external instantiation.
+     */
+    private RentDropBenchmark() {
+
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param theArgs optional fleet size and seconds per run
+     * @throws InterruptedException if interrupted while waiting for workers
+     */
+    public static void main(final String[] theArgs) throws InterruptedException {
+        final int fleetSize = BenchmarkSupport.intArg(theArgs, 0, DEFAULT_FLEET);
+        final int seconds = BenchmarkSupport.intArg(theArgs, 1, DEFAULT_SECONDS);
+        final VehicleInventory inventory = new VehicleInventory();
+        final AbstractVehicle[] fleet = new AbstractVehicle[fleetSize];
+        for (int i = 0; i < fleetSize; i++) {
+            fleet[i] = new Car("Car" + i, "V" + i, true, false, false, false);
+            inventory.add(fleet[i]);
+        }
+
+        System.out.println("Fleet: " + fleetSize);
+        for (int threads = 1; threads <= MAX_THREADS; threads *= 2) {
+            run(inventory, fleet, threads, seconds);
+        }
+    }
+
+    /**
+     * Runs rent/drop cycles on a number of threads for a fixed time.
+     *
+     * @param theInventory the fleet index
+     * @param theFleet the vehicles
+     * @param theThreads number of threads
+     * @param theSeconds run time
+     * @throws InterruptedException if interrupted while waiting for workers
+     */
+    private static void run(final VehicleInventory theInventory, final AbstractVehicle[] theFleet,
+                            final int theThreads, final int theSeconds) throws InterruptedException {
+        final AtomicLong cycles = new AtomicLong();
+        final AtomicLong contended = new AtomicLong();
+        final CountDownLatch start = new CountDownLatch(1);
+        final long deadline = System.currentTimeMillis() + (long) theSeconds * MILLIS_PER_SECOND;
+        final List<Thread> workers = new ArrayList<Thread>();
+        for (int t = 0; t < theThreads; t++) {
+            final Thread worker = new Thread(() -> {
+                long done = 0;
+                long lost = 0;
+                awaitQuietly(start);
+                while (System.currentTimeMillis() < deadline) {
+                    final AbstractVehicle vehicle =
+                        theFleet[ThreadLocalRandom.current().nextInt(theFleet.length)];
+                    if (vehicle.tryReserve()) {
+                        theInventory.setAvailable(vehicle.getMyVehicleID(), false);
+                        vehicle.confirmRental();
+                        if (vehicle.tryReturn()) {
+                            theInventory.setAvailable(vehicle.getMyVehicleID(), true);
+                            vehicle.completeReturn();
+                        }
+                        done++;
+                    } else {
+                        lost++;
+                    }
+                }
+                cycles.addAndGet(done);
+                contended.addAndGet(lost);
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        start.countDown();
+        for (final Thread worker : workers) {
+            worker.join();
+        }
+        System.out.printf("%3d threads: %,15d rent/drop per second, %,d contended%n", theThreads,
+                          cycles.get() / theSeconds, contended.get());
+    }
+
+    /**
+     * Waits for a latch, restoring the interrupt flag if interrupted.
+     *
+     * @param theLatch the latch
+     */
+    private static void awaitQuietly(final CountDownLatch theLatch) {
+        try {
+            theLatch.await();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
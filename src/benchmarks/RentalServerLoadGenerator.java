@@ -0,0 +1,413 @@
+/*
+ * Many concurrent sessions against the rental server.
+ */
+
+package benchmarks;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import model.CredentialCache;
+import model.LoginGuard;
+import model.PasswordHasher;
+import model.Registration;
+import model.RentalManager;
+import model.RentalServer;
+import model.User;
+import model.vehicles.Car;
+import utility.LatencyStats;
+
+/**
+ * Opens a number of TCP sessions to a {@link RentalServer}, waits until every one
+ * of them is connected and greeted, and then drives all of them at once through
+ * login, renting their own vehicle, dropping it off and exiting. Each client line
+ * is timed until the server's next prompt, per step of the dialogue.
+ *
+ * All clients share one selector thread. The server side gets an in-memory user
+ * list and fleet (one user and one car per session), so the numbers show the
+ * session handling rather than the disk.
+ *
+ * Every session logs in from the same address, which the login limits of a
+ * production server would throttle after {@value LoginGuard#DEFAULT_SOURCE_BURST}
+ * logins, so the in-process server runs with {@link LoginGuard#UNLIMITED} and says
+ * so. Against a server started any other way, run the clients from several hosts or
+ * expect throttled logins to fail their sessions.
+ *
+ * Each session takes a socket on both ends, so 10,000 sessions in one process need
+ * about 20,000 file descriptors. Where that exceeds the limit, run the server and
+ * the clients as separate processes.
+ *
+ * Usage: RentalServerLoadGenerator [sessions] (server and clients in-process)
+ *     or RentalServerLoadGenerator --serve PORT [sessions]
+ *     or RentalServerLoadGenerator --connect HOST PORT [sessions]
+ *
+ * @author roys4
+ * @version Winter 2021
+ */
+public final class RentalServerLoadGenerator {
+
+    /**
+     * Default number of sessions.
+     */
+    private static final int DEFAULT_SESSIONS = 10_000;
+
+    /**
+     * Option that only runs the server.
+     */
+    private static final String SERVE_OPTION = "--serve";
+
+    /**
+     * Option that only runs the clients.
+     */
+    private static final String CONNECT_OPTION = "--connect";
+
+    /**
+     * Most connections being set up at once.
+     */
+    private static final int CONNECT_WINDOW = 512;
+
+    /**
+     * Password of every load user.
+     */
+    private static final String PASSWORD = "L0ad!Passw0rd";
+
+    /**
+     * Name of the dialogue step each script line answers, for the report.
+     */
+    private static final String[] STEP_NAMES = {
+        "signin menu", "user name", "login", "choose rent", "rent vehicle", "rent days",
+        "continue", "choose drop", "drop-off", "exit"};
+
+    /**
+     * Size of the shared read buffer.
+     */
+    private static final int READ_BUFFER_BYTES = 1 << 16;
+
+    /**
+     * A private constructor, to prevent external instantiation.
+     */
+    private RentalServerLoadGenerator() {
+
+    }
+
+    /**
+     * Runs the load generator.
+     *
+     * @param theArgs mode and session count, see the class comment
+     * @throws IOException if a socket fails
+     * @throws InterruptedException if interrupted while serving
+     */
+    public static void main(final String[] theArgs) throws IOException, InterruptedException {
+        if (theArgs.length >= 2 && SERVE_OPTION.equals(theArgs[0])) {
+            final int sessions = BenchmarkSupport.intArg(theArgs, 2, DEFAULT_SESSIONS);
+            final RentalServer server = startServer(sessions, new InetSocketAddress(Integer.parseInt(theArgs[1])));
+            System.out.println("Serving " + sessions + " load users on " + server.getMyAddress());
+            server.awaitClose();
+        } else if (theArgs.length >= 3 && CONNECT_OPTION.equals(theArgs[0])) {
+            final int sessions = BenchmarkSupport.intArg(theArgs, 3, DEFAULT_SESSIONS);
+            drive(new InetSocketAddress(theArgs[1], Integer.parseInt(theArgs[2])), sessions);
+        } else {
+            final int sessions = BenchmarkSupport.intArg(theArgs, 0, DEFAULT_SESSIONS);
+            try (RentalServer server = startServer(sessions,
+                                                   new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+                drive(server.getMyAddress(), sessions);
+            }
+        }
+    }
+
+    /**
+     * Starts a server with one user and one vehicle per session.
+     *
+     * @param theSessions number of sessions to provide for
+     * @param theAddress listening address
+     * @return the started server
+     * @throws IOException if the address cannot be bound
+     */
+    private static RentalServer startServer(final int theSessions, final InetSocketAddress theAddress)
+        throws IOException {
+        System.out.println("Login limits are off: every session logs in from one address");
+        final Registration registration =
+            new Registration(new ConcurrentHashMap<String, User>(),
+                             theUser -> CompletableFuture.completedFuture(null), PasswordHasher.DEFAULT,
+                             new CredentialCache(CredentialCache.DEFAULT_MAX_ENTRIES,
+                                                 CredentialCache.DEFAULT_TTL_SECONDS, TimeUnit.SECONDS),
+                             LoginGuard.UNLIMITED);
+        final RentalManager manager = new RentalManager(registration);
+        for (int i = 0; i < theSessions; i++) {
+            registration.register(new User(userName(i), PASSWORD, false));
+            manager.addVehicle(new Car("Load" + i, vin(i), true, false, false, false));
+        }
+        return new RentalServer(registration, manager, theAddress).start();
+    }
+
+    /**
+     * Connects every session, then runs every session's script concurrently and reports.
+     *
+     * @param theAddress server address
+     * @param theSessions number of sessions
+     * @throws IOException if a socket fails
+     */
+    private static void drive(final InetSocketAddress theAddress, final int theSessions) throws IOException {
+        final LatencyStats[] stats = new LatencyStats[STEP_NAMES.length];
+        for (int i = 0; i < stats.length; i++) {
+            stats[i] = new LatencyStats();
+        }
+        final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_BYTES);
+        try (Selector selector = Selector.open()) {
+            final Client[] clients = new Client[theSessions];
+            final long connectStart = System.nanoTime();
+            int opened = 0;
+            int greeted = 0;
+            while (greeted < theSessions) {
+                while (opened < theSessions && opened - greeted < CONNECT_WINDOW) {
+                    clients[opened] = new Client(opened, theAddress, selector);
+                    opened++;
+                }
+                selector.select();
+                for (final SelectionKey key : selector.selectedKeys()) {
+                    final Client client = (Client) key.attachment();
+                    if (key.isConnectable()) {
+                        client.finishConnect(key);
+                    } else if (client.read(readBuffer, stats)) {
+                        greeted++;
+                    }
+                }
+                selector.selectedKeys().clear();
+            }
+            final long connectNanos = System.nanoTime() - connectStart;
+            System.out.printf("%,d sessions open and greeted in %.1f ms%n", theSessions,
+                              connectNanos / BenchmarkSupport.NANOS_PER_MILLI);
+
+            final long runStart = System.nanoTime();
+            for (final Client client : clients) {
+                client.sendNext();
+            }
+            int finished = 0;
+            while (finished < theSessions) {
+                selector.select();
+                for (final SelectionKey key : selector.selectedKeys()) {
+                    if (((Client) key.attachment()).read(readBuffer, stats)) {
+                        finished++;
+                    }
+                }
+                selector.selectedKeys().clear();
+            }
+            final long runNanos = System.nanoTime() - runStart;
+            report(clients, stats, runNanos);
+        }
+    }
+
+    /**
+     * Prints throughput and per-step latency.
+     *
+     * @param theClients the finished clients
+     * @param theStats latency per step
+     * @param theNanos time to run every script
+     */
+    private static void report(final Client[] theClients, final LatencyStats[] theStats, final long theNanos) {
+        final LatencyStats all = new LatencyStats();
+        for (final LatencyStats step : theStats) {
+            all.addAll(step);
+        }
+        int completed = 0;
+        for (final Client client : theClients) {
+            if (client.myCompleted) {
+                completed++;
+            }
+        }
+        System.out.printf("%,d of %,d sessions completed, %,d requests in %.1f ms: %,.0f requests/s%n",
+                          completed, theClients.length, all.getCount(),
+                          theNanos / BenchmarkSupport.NANOS_PER_MILLI,
+                          all.getCount() * BenchmarkSupport.NANOS_PER_SECOND / theNanos);
+        System.out.printf("%-14s %s%n", "all", all);
+        for (int i = 0; i < STEP_NAMES.length; i++) {
+            System.out.printf("%-14s %s%n", STEP_NAMES[i], theStats[i]);
+        }
+    }
+
+    /**
+     * User name of a session.
+     *
+     * @param theSession session number
+     * @return the user name
+     */
+    private static String userName(final int theSession) {
+        return "load" + theSession;
+    }
+
+    /**
+     * VIN of a session's vehicle.
+     *
+     * @param theSession session number
+     * @return the VIN
+     */
+    private static String vin(final int theSession) {
+        return "LOAD" + theSession;
+    }
+
+    /**
+     * One scripted session.
+     */
+    private static final class Client {
+
+        /**
+         * Length of the line prefixes that are looked at.
+         */
+        private static final int HEAD_LENGTH = 3;
+
+        /**
+         * Lines the session sends, one per server prompt.
+         */
+        private final String[] myScript;
+
+        /**
+         * The socket.
+         */
+        private final SocketChannel myChannel;
+
+        /**
+         * First characters of the line being received.
+         */
+        private final byte[] myHead = new byte[HEAD_LENGTH];
+
+        /**
+         * Bytes received of the current line.
+         */
+        private int myColumn;
+
+        /**
+         * Script lines sent.
+         */
+        private int myStep;
+
+        /**
+         * When the last script line was sent.
+         */
+        private long mySentAt;
+
+        /**
+         * Set when the server said BYE after the whole script.
+         */
+        private boolean myCompleted;
+
+        /**
+         * Starts connecting.
+         *
+         * @param theSession session number
+         * @param theAddress server address
+         * @param theSelector client selector
+         * @throws IOException if the socket cannot be opened
+         */
+        Client(final int theSession, final InetSocketAddress theAddress, final Selector theSelector)
+            throws IOException {
+            final String vin = vin(theSession);
+            myScript = new String[] {"2", userName(theSession), PASSWORD, "1", vin, "1", "true", "2", vin,
+                                     "false"};
+            myChannel = SocketChannel.open();
+            myChannel.configureBlocking(false);
+            myChannel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            int ops = SelectionKey.OP_READ;
+            if (!myChannel.connect(theAddress)) {
+                ops = SelectionKey.OP_CONNECT;
+            }
+            myChannel.register(theSelector, ops, this);
+        }
+
+        /**
+         * Completes a pending connect and starts reading.
+         *
+         * @param theKey the client's key
+         * @throws IOException if the connection was refused
+         */
+        void finishConnect(final SelectionKey theKey) throws IOException {
+            if (myChannel.finishConnect()) {
+                theKey.interestOps(SelectionKey.OP_READ);
+            }
+        }
+
+        /**
+         * Reads what arrived and answers every complete reply with the next script line.
+         *
+         * @param theBuffer shared read buffer
+         * @param theStats latency per step
+         * @return true if a reply completed the greeting (before the script runs) or
+         *         the session ended
+         * @throws IOException if the socket fails
+         */
+        boolean read(final ByteBuffer theBuffer, final LatencyStats[] theStats) throws IOException {
+            theBuffer.clear();
+            final int count = myChannel.read(theBuffer);
+            theBuffer.flip();
+            boolean result = false;
+            while (theBuffer.hasRemaining()) {
+                final byte b = theBuffer.get();
+                if (b == '\n') {
+                    result |= endLine(theStats);
+                    myColumn = 0;
+                } else {
+                    if (myColumn < HEAD_LENGTH) {
+                        myHead[myColumn] = b;
+                    }
+                    myColumn++;
+                }
+            }
+            if (count < 0 && myChannel.isOpen()) {
+                // The server hung up before BYE; the session counts as ended but not completed
+                myChannel.close();
+                result = true;
+            }
+            return result;
+        }
+
+        /**
+         * Handles the end of a received line.
+         *
+         * @param theStats latency per step
+         * @return true if the line completed the greeting or ended the session
+         * @throws IOException if the socket fails
+         */
+        private boolean endLine(final LatencyStats[] theStats) throws IOException {
+            final boolean prompt = myColumn >= 2 && myHead[0] == '?' && myHead[1] == ' ';
+            final boolean bye = myColumn == HEAD_LENGTH && myHead[0] == 'B' && myHead[1] == 'Y'
+                                && myHead[2] == 'E';
+            if ((prompt || bye) && myStep > 0) {
+                theStats[myStep - 1].record(System.nanoTime() - mySentAt);
+            }
+            final boolean scriptLeft = myStep < myScript.length;
+            if (prompt && myStep > 0 && scriptLeft) {
+                sendNext();
+            }
+            // Out of script lines means the dialogue went differently than planned
+            final boolean ended = bye || prompt && !scriptLeft;
+            if (ended) {
+                myCompleted = bye && !scriptLeft;
+                myChannel.close();
+            }
+            return ended || prompt && myStep == 0;
+        }
+
+        /**
+         * Sends the next script line.
+         *
+         * @throws IOException if the socket fails
+         */
+        void sendNext() throws IOException {
+            final ByteBuffer line = ByteBuffer.wrap((myScript[myStep] + '\n').getBytes(StandardCharsets.UTF_8));
+            mySentAt = System.nanoTime();
+            myStep++;
+            // A short line always fits the socket buffer, so this does not spin in practice
+            while (line.hasRemaining()) {
+                myChannel.write(line);
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Batch Billing: parallel bill generation.
+ */
+
+package model;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Computes the bills of many rentals in parallel on a fork-join pool.
+ * 
+ * The records are split in halves until a range is no longer than the threshold;
+ * each leaf creates and computes its bills with {@link BillingEngine} and sums their
+ * amounts, and the partial sums are added up as the halves join. Bills are written
+ * to disjoint ranges of one array, so the line items keep the input order without
+ * any locking.
+ * 
+ * @author roys4
+ * @version Winter 2021
+ */
+public final class BatchBilling {
+
+    /**
+     * Default number of records a task computes without splitting.
+     */
+    public static final int DEFAULT_THRESHOLD = 2048;
+
+    /**
+     * Pool the bills are computed on.
+     */
+    private final ForkJoinPool myPool;
+
+    /**
+     * Largest range computed without splitting.
+     */
+    private final int myThreshold;
+
+    /**
+     * Creates a batch biller on the common fork-join pool.
+     */
+    public BatchBilling() {
+        this(ForkJoinPool.commonPool(), DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Creates a batch biller.
+     * 
+     * @param thePool pool the bills are computed on
+     * @param theThreshold largest number of records a task computes without splitting
+     */
+    public BatchBilling(final ForkJoinPool thePool, final int theThreshold) {
+        if (theThreshold <= 0) {
+            throw new IllegalArgumentException();
+        }
+        myPool = Objects.requireNonNull(thePool);
+        myThreshold = theThreshold;
+    }
+
+    /**
+     * Computes a bill for every record.
+     * 
+     * @param theRecords rentals to bill
+     * @return the bills in iteration order of theRecords, and their totals
+     */
+    public BillBatch compute(final Collection<RentalRecord> theRecords) {
+        final RentalRecord[] records = theRecords.toArray(new RentalRecord[0]);
+        final Bill[] bills = new Bill[records.length];
+        final BillAmounts totals = myPool.invoke(new BillTask(records, bills, 0, records.length, myThreshold));
+        return new BillBatch(Arrays.asList(bills), totals);
+    }
+
+    /**
+     * Computes the bills of a range of records and returns the sum of their amounts.
+     */
+    private static final class BillTask extends RecursiveTask<BillAmounts> {
+
+        /**
+         * Serialization version.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * All records of the batch.
+         */
+        private final RentalRecord[] myRecords;
+
+        /**
+         * Bills of the batch, filled in by index.
+         */
+        private final Bill[] myBills;
+
+        /**
+         * First index of the range.
+         */
+        private final int myFrom;
+
+        /**
+         * End of the range (exclusive).
+         */
+        private final int myTo;
+
+        /**
+         * Largest range computed without splitting.
+         */
+        private final int myThreshold;
+
+        /**
+         * Creates a task for a range.
+         * 
+         * @param theRecords all records
+         * @param theBills bills, filled in by index
+         * @param theFrom first index
+         * @param theTo end index (exclusive)
+         * @param theThreshold largest range computed without splitting
+         */
+        BillTask(final RentalRecord[] theRecords, final Bill[] theBills, final int theFrom, final int theTo,
+                 final int theThreshold) {
+            myRecords = theRecords;
+            myBills = theBills;
+            myFrom = theFrom;
+            myTo = theTo;
+            myThreshold = theThreshold;
+        }
+
+        @Override
+        protected BillAmounts compute() {
+            final BillAmounts result;
+            if (myTo - myFrom <= myThreshold) {
+                result = new BillAmounts();
+                for (int i = myFrom; i < myTo; i++) {
+                    final Bill bill = myRecords[i].toBill();
+                    result.add(bill.computeAmount());
+                    myBills[i] = bill;
+                }
+            } else {
+                final int middle = (myFrom + myTo) >>> 1;
+                final BillTask left = new BillTask(myRecords, myBills, myFrom, middle, myThreshold);
+                left.fork();
+                result = new BillTask(myRecords, myBills, middle, myTo, myThreshold).compute();
+                result.add(left.join());
+            }
+            return result;
+        }
+    }
+}
@@ -6,12 +6,16 @@
 package model;
 
 import java.math.BigDecimal;
-import java.text.NumberFormat;
-import java.util.Locale;
 import model.vehicles.AbstractVehicle;
+import utility.CurrencyFormatter;
+import utility.Money;
 
 public class Bill {
     
+    /**Each thread's renderer for console bills. */
+    private static final ThreadLocal<BillRenderer> CONSOLE_RENDERER =
+        ThreadLocal.withInitial(() -> new BillRenderer(BillFormat.TEXT));
+    
     /**A unique Bill ID. */
     private final int myBillID;
     
@@ -24,9 +28,15 @@ public class Bill {
     /**Number of days vehicle is rented. */
     private final int myNumDays;
     
+    /**Daily rate charged, in fixed-point units. */
+    private final long myDailyRateUnits;
+    
     /**Total rental cost for rented vehicle. */
     private BigDecimal myBillAmount;
     
+    /**Computed amounts of this bill in fixed-point units. */
+    private final BillAmounts myAmounts = new BillAmounts();
+    
     /**
      * Generates a Bill with all relevant user information to calculate total rental cost.
      * @param theBillID Bill ID number
@@ -36,10 +46,24 @@ public class Bill {
      */
     public Bill(final int theBillID, final User thePrimaryUser,
                 final AbstractVehicle theVehicle, final int theNumDays) {
+        this(theBillID, thePrimaryUser, theVehicle, theNumDays, theVehicle.getMyRentalAmountUnits());
+    }
+    
+    /**
+     * Generates a Bill charged at a given daily rate instead of the vehicle's own rate.
+     * @param theBillID Bill ID number
+     * @param thePrimaryUser User who is renting a car
+     * @param theVehicle Vehicle user is renting
+     * @param theNumDays Number of days user renting vehicle
+     * @param theDailyRateUnits Daily rate in fixed-point units, e.g. from {@link DemandPricing}
+     */
+    public Bill(final int theBillID, final User thePrimaryUser,
+                final AbstractVehicle theVehicle, final int theNumDays, final long theDailyRateUnits) {
         myBillID = theBillID;
         myPrimaryUser = thePrimaryUser;
         myVehicle = theVehicle;
         myNumDays = theNumDays;
+        myDailyRateUnits = theDailyRateUnits;
         myBillAmount = BigDecimal.ZERO;
     }
     
@@ -47,44 +71,26 @@ public class Bill {
      * Computes the total cost renting out a vehicle and then displays it on console.
      */
     public void computeAndPrintAmount() {
-        //Print Header
-        final String asteriskLine = "**********************";
-        System.out.println(asteriskLine);
-        System.out.println("Rental Bill Summary");
-        System.out.println(asteriskLine);
-        
-        //Print vehicle info
-        final String[] vehicleInfo = {"User Name: " + myPrimaryUser.getMyName(), "----Vehicle Information---",
-                                      "VehicleName " + myVehicle.getMyName(), "vehicleID " + myVehicle.getMyVehicleID(),
-                                      "VehicleType " + myVehicle.getMyVIN(), "VIN " + myVehicle.getMyVIN()};
-        for (final String item : vehicleInfo) {
-            System.out.println(item);
-        }
-        
+        computeAmount();
+        printAmount();
+    }
+    
+    /**
+     * Computes the total cost of renting out a vehicle without printing anything.
+     * @return the computed amounts
+     */
+    public BillAmounts computeAmount() {
         //Calculate insurance cost, VIP discount, and total Bill amount
-        BigDecimal rentalAmount = myVehicle.getMyRentalAmount().multiply(new BigDecimal(myNumDays));
-        final BigDecimal insurance = rentalAmount.multiply(new BigDecimal("0.01"));
-        rentalAmount = rentalAmount.add(insurance);
-        BigDecimal vipDiscount = BigDecimal.ZERO;
-        if (myPrimaryUser.isVIP()) {
-            vipDiscount = insurance;
-            rentalAmount = rentalAmount.subtract(vipDiscount);
-        }
-        final BigDecimal tax = rentalAmount.multiply(new BigDecimal("0.10"));
-        rentalAmount = rentalAmount.add(tax);
-        myBillAmount = rentalAmount;
-        
-        //Print Cost Information
-        final String[] costInfo = {"----Cost Information----", "RentalPerDay:", "Cost per Day: " + myVehicle.getMyRentalPrice(),
-                                   "No.of Rental days: " + myNumDays, "Total Amount: " + dollarFormat(myBillAmount.subtract(tax)),
-                                   "Insurance: " + dollarFormat(insurance), "VIPDiscount: -" + dollarFormat(vipDiscount),
-                                   "Tax: " + dollarFormat(tax), "Total Rent: " + dollarFormat(myBillAmount)};
-        for (final String item : costInfo) {
-            System.out.println(item);
-        }
-        
-        //Print last line of Bill
-        System.out.println(asteriskLine);
+        BillingEngine.compute(myDailyRateUnits, myNumDays, myPrimaryUser.isVIP(), myAmounts);
+        myBillAmount = Money.toBigDecimal(myAmounts.getMyTotal());
+        return myAmounts;
+    }
+    
+    /**
+     * Displays the bill on console with a single print; {@link #computeAmount()} must have been called.
+     */
+    public void printAmount() {
+        System.out.print(CONSOLE_RENDERER.get().render(this));
     }
     
     /**
@@ -93,8 +99,7 @@ public class Bill {
      * @return Daily rental cost of vehicle in dollars.
      */
     public String dollarFormat(final BigDecimal theCost) {
-        final NumberFormat nf = NumberFormat.getCurrencyInstance(Locale.US);
-        return nf.format(theCost);
+        return CurrencyFormatter.US.format(theCost);
     }
     
     /**
@@ -105,6 +110,38 @@ public class Bill {
         return myBillID;
     }
     
+    /**
+     * Get the user the bill is for.
+     * @return User who rented the vehicle
+     */
+    public User getMyPrimaryUser() {
+        return myPrimaryUser;
+    }
+    
+    /**
+     * Get the rented vehicle.
+     * @return Vehicle the bill is for
+     */
+    public AbstractVehicle getMyVehicle() {
+        return myVehicle;
+    }
+    
+    /**
+     * Get number of rental days.
+     * @return Number of days vehicle is rented
+     */
+    public int getMyNumDays() {
+        return myNumDays;
+    }
+    
+    /**
+     * Get the daily rate charged.
+     * @return Daily rate in fixed-point units
+     */
+    public long getMyDailyRateUnits() {
+        return myDailyRateUnits;
+    }
+    
     /**
      * Get total rental cost.
      * @return Total cost of vehicle rental.
@@ -112,5 +149,13 @@ public class Bill {
     public BigDecimal getMyBillAmount() {
         return myBillAmount;
     }
+    
+    /**
+     * Get the computed amounts in fixed-point units.
+     * @return Amounts of the last computation, all zero before {@link #computeAmount()}
+     */
+    public BillAmounts getMyAmounts() {
+        return myAmounts;
+    }
 
 }
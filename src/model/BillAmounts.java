@@ -0,0 +1,117 @@
+/*
+ * Bill Amounts: reusable holder for computed bill totals.
+ */
+
+package model;
+
+import utility.Money;
+
+/**
+ * The amounts of one bill in {@link Money} units. Instances are mutable so a caller
+ * computing many bills can reuse one holder and allocate nothing per bill.
+ * 
+ * @author roys4
+ * @version Winter 2021
+ */
+public final class BillAmounts {
+
+    /** Daily rate times number of days. */
+    private long myRental;
+
+    /** Insurance charge. */
+    private long myInsurance;
+
+    /** VIP discount (the insurance charge for VIP users, otherwise 0). */
+    private long myVIPDiscount;
+
+    /** Amount before tax. */
+    private long mySubtotal;
+
+    /** Tax on the subtotal. */
+    private long myTax;
+
+    /** Amount including tax. */
+    private long myTotal;
+
+    /**
+     * Stores the result of a bill computation.
+     * 
+     * @param theRental daily rate times number of days
+     * @param theInsurance insurance charge
+     * @param theVIPDiscount VIP discount
+     * @param theSubtotal amount before tax
+     * @param theTax tax
+     * @param theTotal amount including tax
+     */
+    void set(final long theRental, final long theInsurance, final long theVIPDiscount,
+             final long theSubtotal, final long theTax, final long theTotal) {
+        myRental = theRental;
+        myInsurance = theInsurance;
+        myVIPDiscount = theVIPDiscount;
+        mySubtotal = theSubtotal;
+        myTax = theTax;
+        myTotal = theTotal;
+    }
+
+    /**
+     * Adds another bill's amounts to these, for totals over many bills.
+     * 
+     * @param theOther amounts to add
+     */
+    void add(final BillAmounts theOther) {
+        myRental = Math.addExact(myRental, theOther.myRental);
+        myInsurance = Math.addExact(myInsurance, theOther.myInsurance);
+        myVIPDiscount = Math.addExact(myVIPDiscount, theOther.myVIPDiscount);
+        mySubtotal = Math.addExact(mySubtotal, theOther.mySubtotal);
+        myTax = Math.addExact(myTax, theOther.myTax);
+        myTotal = Math.addExact(myTotal, theOther.myTotal);
+    }
+
+    /**
+     * Daily rate times number of days.
+     * @return rental in units
+     */
+    public long getMyRental() {
+        return myRental;
+    }
+
+    /**
+     * Insurance charge.
+     * @return insurance in units
+     */
+    public long getMyInsurance() {
+        return myInsurance;
+    }
+
+    /**
+     * VIP discount.
+     * @return discount in units
+     */
+    public long getMyVIPDiscount() {
+        return myVIPDiscount;
+    }
+
+    /**
+     * Amount before tax.
+     * @return subtotal in units
+     */
+    public long getMySubtotal() {
+        return mySubtotal;
+    }
+
+    /**
+     * Tax.
+     * @return tax in units
+     */
+    public long getMyTax() {
+        return myTax;
+    }
+
+    /**
+     * Amount including tax.
+     * @return total in units
+     */
+    public long getMyTotal() {
+        return myTotal;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Bill Batch: result of batch bill generation.
+ */
+
+package model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.WritableByteChannel;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The computed bills of a batch, in input order, and the sums of their amounts.
+ * 
+ * Computing a batch prints nothing; rendering with {@link #render} or
+ * {@link #printBills()} is a separate, optional stage.
+ * 
+ * @author roys4
+ * @version Winter 2021
+ */
+public final class BillBatch {
+
+    /**
+     * Computed bills in input order.
+     */
+    private final List<Bill> myBills;
+
+    /**
+     * Sums of every bill's amounts.
+     */
+    private final BillAmounts myTotals;
+
+    /**
+     * Creates a batch result.
+     * 
+     * @param theBills computed bills in input order
+     * @param theTotals sums of their amounts
+     */
+    BillBatch(final List<Bill> theBills, final BillAmounts theTotals) {
+        myBills = Collections.unmodifiableList(theBills);
+        myTotals = theTotals;
+    }
+
+    /**
+     * Get the line items.
+     * @return unmodifiable list of computed bills in input order
+     */
+    public List<Bill> getMyBills() {
+        return myBills;
+    }
+
+    /**
+     * Get the batch totals.
+     * @return sums of the amounts of every bill
+     */
+    public BillAmounts getMyTotals() {
+        return myTotals;
+    }
+
+    /**
+     * Number of bills in the batch.
+     * @return bill count
+     */
+    public int size() {
+        return myBills.size();
+    }
+
+    /**
+     * Renders every bill of the batch in input order.
+     * 
+     * @param theFormat output format
+     * @param theOut where to write
+     * @throws IOException if theOut fails
+     */
+    public void render(final BillFormat theFormat, final Appendable theOut) throws IOException {
+        new BillRenderer(theFormat).renderAll(myBills, theOut);
+    }
+
+    /**
+     * Renders every bill of the batch in input order, UTF-8 encoded.
+     * 
+     * @param theFormat output format
+     * @param theOut where to write
+     * @throws IOException if theOut fails
+     */
+    public void render(final BillFormat theFormat, final WritableByteChannel theOut) throws IOException {
+        new BillRenderer(theFormat).renderAll(myBills, theOut);
+    }
+
+    /**
+     * Displays every bill of the batch on console, in input order.
+     */
+    public void printBills() {
+        try {
+            render(BillFormat.TEXT, System.out);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
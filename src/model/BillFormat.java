@@ -0,0 +1,240 @@
+/*
+ * Bill Format: output formats of the bill renderer.
+ */
+
+package model;
+
+import utility.CurrencyFormatter;
+import utility.Money;
+
+/**
+ * Output formats of {@link BillRenderer}. Each format has a template that is
+ * compiled once, text written before and after a list of bills, and its own rules
+ * for escaping text and writing money.
+ * 
+ * Placeholders have the form ${name}; see {@link BillTemplate} for the names.
+ * 
+ * @author roys4
+ * @version Winter 2021
+ */
+public enum BillFormat {
+
+    /**
+     * The console bill printed by {@link Bill#printAmount()}; money is in US dollars.
+     */
+    TEXT(lines("**********************",
+               "Rental Bill Summary",
+               "**********************",
+               "User Name: ${user}",
+               "----Vehicle Information---",
+               "VehicleName ${vehicleName}",
+               "vehicleID ${vehicleID}",
+               "VehicleType ${vin}",
+               "VIN ${vin}",
+               "----Cost Information----",
+               "RentalPerDay:",
+               "Cost per Day: ${rate}",
+               "No.of Rental days: ${days}",
+               "Total Amount: ${subtotal}",
+               "Insurance: ${insurance}",
+               "VIPDiscount: -${vipDiscount}",
+               "Tax: ${tax}",
+               "Total Rent: ${total}",
+               "**********************"), "", "", ""),
+
+    /**
+     * One comma separated row per bill under a header row; money has two decimals.
+     */
+    CSV("${billID},${user},${vip},${vehicleID},${vehicleName},${vin},${vehicleType},${rate},${days},"
+        + "${rental},${insurance},${vipDiscount},${subtotal},${tax},${total}" + System.lineSeparator(),
+        "billID,user,vip,vehicleID,vehicleName,vin,vehicleType,rate,days,"
+        + "rental,insurance,vipDiscount,subtotal,tax,total" + System.lineSeparator(), "", ""),
+
+    /**
+     * One object per bill in a JSON array; money is a number with two decimals.
+     */
+    JSON("{\"billID\":${billID},\"user\":${user},\"vip\":${vip},\"vehicleID\":${vehicleID},"
+         + "\"vehicleName\":${vehicleName},\"vin\":${vin},\"vehicleType\":${vehicleType},\"rate\":${rate},"
+         + "\"days\":${days},\"rental\":${rental},\"insurance\":${insurance},"
+         + "\"vipDiscount\":${vipDiscount},\"subtotal\":${subtotal},\"tax\":${tax},\"total\":${total}}",
+         "[", ",", "]");
+
+    /**
+     * Largest character that must be escaped in JSON strings.
+     */
+    private static final char LAST_CONTROL = 0x1f;
+
+    /**
+     * Hex digits for JSON escapes.
+     */
+    private static final String HEX = "0123456789abcdef";
+
+    /**
+     * Shift of the high nibble of an escaped character.
+     */
+    private static final int NIBBLE = 4;
+
+    /**
+     * Mask of a nibble.
+     */
+    private static final int NIBBLE_MASK = 0xf;
+
+    /**
+     * Cents in a dollar.
+     */
+    private static final long CENTS_PER_DOLLAR = 100;
+
+    /**
+     * Decimal radix.
+     */
+    private static final int TEN = 10;
+
+    /**
+     * Compiled template of one bill.
+     */
+    private final BillTemplate myTemplate;
+
+    /**
+     * Text written before a list of bills.
+     */
+    private final String myPrefix;
+
+    /**
+     * Text written between two bills.
+     */
+    private final String mySeparator;
+
+    /**
+     * Text written after a list of bills.
+     */
+    private final String mySuffix;
+
+    /**
+     * Creates a format.
+     * 
+     * @param thePattern template of one bill
+     * @param thePrefix text before a list of bills
+     * @param theSeparator text between bills
+     * @param theSuffix text after a list of bills
+     */
+    BillFormat(final String thePattern, final String thePrefix, final String theSeparator,
+               final String theSuffix) {
+        myTemplate = BillTemplate.compile(thePattern);
+        myPrefix = thePrefix;
+        mySeparator = theSeparator;
+        mySuffix = theSuffix;
+    }
+
+    /**
+     * Get the compiled template.
+     * @return template of one bill
+     */
+    BillTemplate getMyTemplate() {
+        return myTemplate;
+    }
+
+    /**
+     * Get the list prefix.
+     * @return text before a list of bills
+     */
+    String getMyPrefix() {
+        return myPrefix;
+    }
+
+    /**
+     * Get the separator.
+     * @return text between two bills
+     */
+    String getMySeparator() {
+        return mySeparator;
+    }
+
+    /**
+     * Get the list suffix.
+     * @return text after a list of bills
+     */
+    String getMySuffix() {
+        return mySuffix;
+    }
+
+    /**
+     * Appends a text value, escaped and quoted as this format requires.
+     * 
+     * @param theBuffer buffer to append to
+     * @param theText the value
+     */
+    void appendText(final StringBuilder theBuffer, final String theText) {
+        if (this == JSON) {
+            theBuffer.append('"');
+            for (int i = 0; i < theText.length(); i++) {
+                final char c = theText.charAt(i);
+                if (c == '"' || c == '\\') {
+                    theBuffer.append('\\').append(c);
+                } else if (c <= LAST_CONTROL) {
+                    theBuffer.append("\\u00").append(HEX.charAt(c >> NIBBLE)).append(HEX.charAt(c & NIBBLE_MASK));
+                } else {
+                    theBuffer.append(c);
+                }
+            }
+            theBuffer.append('"');
+        } else if (this == CSV && needsQuotes(theText)) {
+            theBuffer.append('"');
+            for (int i = 0; i < theText.length(); i++) {
+                final char c = theText.charAt(i);
+                if (c == '"') {
+                    theBuffer.append('"');
+                }
+                theBuffer.append(c);
+            }
+            theBuffer.append('"');
+        } else {
+            theBuffer.append(theText);
+        }
+    }
+
+    /**
+     * Appends an amount of money as this format writes it: US currency for TEXT,
+     * otherwise a plain number rounded half even to cents.
+     * 
+     * @param theBuffer buffer to append to
+     * @param theUnits the amount in {@link Money} units
+     */
+    void appendMoney(final StringBuilder theBuffer, final long theUnits) {
+        if (this == TEXT) {
+            CurrencyFormatter.US.appendUnits(theBuffer, theUnits);
+        } else {
+            final long cents = Money.toCents(theUnits);
+            if (cents < 0) {
+                theBuffer.append('-');
+            }
+            final long fraction = Math.abs(cents % CENTS_PER_DOLLAR);
+            theBuffer.append(Math.abs(cents / CENTS_PER_DOLLAR)).append('.')
+                     .append((char) ('0' + fraction / TEN)).append((char) ('0' + fraction % TEN));
+        }
+    }
+
+    /**
+     * Checks whether a CSV field must be quoted.
+     * 
+     * @param theText the field
+     * @return true if it holds a comma, quote or line break
+     */
+    private static boolean needsQuotes(final String theText) {
+        boolean result = false;
+        for (int i = 0; !result && i < theText.length(); i++) {
+            final char c = theText.charAt(i);
+            result = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        return result;
+    }
+
+    /**
+     * Joins lines with the platform line separator, ending with one.
+     * 
+     * @param theLines the lines
+     * @return the joined text
+     */
+    private static String lines(final String... theLines) {
+        return String.join(System.lineSeparator(), theLines) + System.lineSeparator();
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Bill Renderer: buffered bill output.
+ */
+
+package model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * Renders computed bills in a {@link BillFormat} into a reusable buffer and writes the
+ * buffer to an Appendable or, UTF-8 encoded, to a WritableByteChannel in large chunks
+ * instead of one write per line.
+ * 
+ * A renderer reuses its buffers and is not thread-safe; use one per thread. Money
+ * is written through the shared {@link utility.CurrencyFormatter}, which needs no
+ * per-call format objects.
+ * 
+ * @author roys4
+ * @version Winter 2021
+ */
+public final class BillRenderer {
+
+    /**
+     * Buffered characters after which a list of bills is written out.
+     */
+    private static final int FLUSH_THRESHOLD = 1 << 16;
+
+    /**
+     * Initial buffer capacity, enough for one bill.
+     */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * Output format.
+     */
+    private final BillFormat myFormat;
+
+    /**
+     * Reusable text buffer.
+     */
+    private final StringBuilder myBuffer = new StringBuilder(INITIAL_CAPACITY);
+
+    /**
+     * Reusable encoder for channel output.
+     */
+    private final CharsetEncoder myEncoder = StandardCharsets.UTF_8.newEncoder();
+
+    /**
+     * Reusable byte buffer for channel output, created on first use.
+     */
+    private ByteBuffer myBytes;
+
+    /**
+     * Creates a renderer.
+     * 
+     * @param theFormat output format
+     */
+    public BillRenderer(final BillFormat theFormat) {
+        myFormat = Objects.requireNonNull(theFormat);
+    }
+
+    /**
+     * Get the output format.
+     * @return the format
+     */
+    public BillFormat getMyFormat() {
+        return myFormat;
+    }
+
+    /**
+     * Renders one computed bill.
+     * 
+     * @param theBill the bill
+     * @return the rendered bill
+     */
+    public String render(final Bill theBill) {
+        myBuffer.setLength(0);
+        myFormat.getMyTemplate().appendTo(myBuffer, theBill, myFormat);
+        return myBuffer.toString();
+    }
+
+    /**
+     * Renders one computed bill to an Appendable with a single append.
+     * 
+     * @param theBill the bill
+     * @param theOut where to write
+     * @throws IOException if theOut fails
+     */
+    public void render(final Bill theBill, final Appendable theOut) throws IOException {
+        myBuffer.setLength(0);
+        myFormat.getMyTemplate().appendTo(myBuffer, theBill, myFormat);
+        drain(theOut);
+    }
+
+    /**
+     * Renders one computed bill to a channel.
+     * 
+     * @param theBill the bill
+     * @param theOut where to write
+     * @throws IOException if theOut fails
+     */
+    public void render(final Bill theBill, final WritableByteChannel theOut) throws IOException {
+        myBuffer.setLength(0);
+        myFormat.getMyTemplate().appendTo(myBuffer, theBill, myFormat);
+        drain(theOut);
+    }
+
+    /**
+     * Renders computed bills, with the format's list prefix, separators and suffix,
+     * to an Appendable in chunks.
+     * 
+     * @param theBills the bills
+     * @param theOut where to write
+     * @throws IOException if theOut fails
+     */
+    public void renderAll(final Iterable<Bill> theBills, final Appendable theOut) throws IOException {
+        myBuffer.setLength(0);
+        myBuffer.append(myFormat.getMyPrefix());
+        boolean first = true;
+        for (final Bill bill : theBills) {
+            if (!first) {
+                myBuffer.append(myFormat.getMySeparator());
+            }
+            first = false;
+            myFormat.getMyTemplate().appendTo(myBuffer, bill, myFormat);
+            if (myBuffer.length() >= FLUSH_THRESHOLD) {
+                drain(theOut);
+            }
+        }
+        myBuffer.append(myFormat.getMySuffix());
+        drain(theOut);
+    }
+
+    /**
+     * Renders computed bills, with the format's list prefix, separators and suffix,
+     * to a channel in chunks.
+     * 
+     * @param theBills the bills
+     * @param theOut where to write
+     * @throws IOException if theOut fails
+     */
+    public void renderAll(final Iterable<Bill> theBills, final WritableByteChannel theOut) throws IOException {
+        myBuffer.setLength(0);
+        myBuffer.append(myFormat.getMyPrefix());
+        boolean first = true;
+        for (final Bill bill : theBills) {
+            if (!first) {
+                myBuffer.append(myFormat.getMySeparator());
+            }
+            first = false;
+            myFormat.getMyTemplate().appendTo(myBuffer, bill, myFormat);
+            if (myBuffer.length() >= FLUSH_THRESHOLD) {
+                drain(theOut);
+            }
+        }
+        myBuffer.append(myFormat.getMySuffix());
+        drain(theOut);
+    }
+
+    /**
+     * Writes and clears the text buffer.
+     * 
+     * @param theOut where to write
+     * @throws IOException if theOut fails
+     */
+    private void drain(final Appendable theOut) throws IOException {
+        theOut.append(myBuffer);
+        myBuffer.setLength(0);
+    }
+
+    /**
+     * Encodes, writes and clears the text buffer.
+     * 
+     * @param theOut where to write
+     * @throws IOException if theOut fails or the text cannot be encoded
+     */
+    private void drain(final WritableByteChannel theOut) throws IOException {
+        if (myBytes == null) {
+            myBytes = ByteBuffer.allocate(FLUSH_THRESHOLD);
+        }
+        final CharBuffer chars = CharBuffer.wrap(myBuffer);
+        myEncoder.reset();
+        CoderResult result = myEncoder.encode(chars, myBytes, true);
+        while (result.isOverflow()) {
+            writeBytes(theOut);
+            result = myEncoder.encode(chars, myBytes, true);
+        }
+        if (result.isError()) {
+            result.throwException();
+        }
+        while (myEncoder.flush(myBytes).isOverflow()) {
+            writeBytes(theOut);
+        }
+        writeBytes(theOut);
+        myBuffer.setLength(0);
+    }
+
+    /**
+     * Writes and clears the byte buffer.
+     * 
+     * @param theOut where to write
+     * @throws IOException if theOut fails
+     */
+    private void writeBytes(final WritableByteChannel theOut) throws IOException {
+        myBytes.flip();
+        while (myBytes.hasRemaining()) {
+            theOut.write(myBytes);
+        }
+        myBytes.clear();
+    }
+}
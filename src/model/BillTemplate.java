@@ -0,0 +1,227 @@
+/*
+ * Bill Template: precompiled bill layout.
+ */
+
+package model;
+
+import java.util.ArrayList;
+import java.util.List;
+import model.vehicles.AbstractVehicle;
+
+/**
+ * A bill layout compiled once into literal text and the fields between them, so
+ * rendering a bill is a walk over two arrays with no parsing.
+ * 
+ * Placeholders have the form ${name}, where name is one of billID, user, vip,
+ * vehicleID, vehicleName, vin, vehicleType, rate, days, rental, insurance,
+ * vipDiscount, subtotal, tax and total.
+ * 
+ * @author roys4
+ * @version Winter 2021
+ */
+final class BillTemplate {
+
+    /**
+     * Start of a placeholder.
+     */
+    private static final String OPEN = "${";
+
+    /**
+     * End of a placeholder.
+     */
+    private static final String CLOSE = "}";
+
+    /**
+     * Literal text; entry i comes before field i, and the last entry ends the template.
+     */
+    private final String[] myLiterals;
+
+    /**
+     * Fields in template order.
+     */
+    private final Field[] myFields;
+
+    /**
+     * Creates a compiled template.
+     * 
+     * @param theLiterals literal text around the fields
+     * @param theFields fields in order
+     */
+    private BillTemplate(final String[] theLiterals, final Field[] theFields) {
+        myLiterals = theLiterals;
+        myFields = theFields;
+    }
+
+    /**
+     * Compiles a template.
+     * 
+     * @param thePattern text with ${name} placeholders
+     * @return the compiled template
+     * @throws IllegalArgumentException if a placeholder is unknown or not closed
+     */
+    static BillTemplate compile(final String thePattern) {
+        final List<String> literals = new ArrayList<String>();
+        final List<Field> fields = new ArrayList<Field>();
+        int start = 0;
+        int open = thePattern.indexOf(OPEN);
+        while (open >= 0) {
+            final int close = thePattern.indexOf(CLOSE, open);
+            if (close < 0) {
+                throw new IllegalArgumentException("Unclosed placeholder at " + open);
+            }
+            literals.add(thePattern.substring(start, open));
+            fields.add(Field.named(thePattern.substring(open + OPEN.length(), close)));
+            start = close + CLOSE.length();
+            open = thePattern.indexOf(OPEN, start);
+        }
+        literals.add(thePattern.substring(start));
+        return new BillTemplate(literals.toArray(new String[0]), fields.toArray(new Field[0]));
+    }
+
+    /**
+     * Appends a computed bill.
+     * 
+     * @param theBuffer buffer to append to
+     * @param theBill the bill
+     * @param theFormat escaping and money rules
+     */
+    void appendTo(final StringBuilder theBuffer, final Bill theBill, final BillFormat theFormat) {
+        for (int i = 0; i < myFields.length; i++) {
+            theBuffer.append(myLiterals[i]);
+            appendField(theBuffer, myFields[i], theBill, theFormat);
+        }
+        theBuffer.append(myLiterals[myFields.length]);
+    }
+
+    /**
+     * Appends one field of a bill.
+     * 
+     * @param theBuffer buffer to append to
+     * @param theField the field
+     * @param theBill the bill
+     * @param theFormat escaping and money rules
+     */
+    private static void appendField(final StringBuilder theBuffer, final Field theField, final Bill theBill,
+                                    final BillFormat theFormat) {
+        final AbstractVehicle vehicle = theBill.getMyVehicle();
+        final BillAmounts amounts = theBill.getMyAmounts();
+        switch (theField) {
+            case BILL_ID:
+                theBuffer.append(theBill.getMyBillID());
+                break;
+            case USER:
+                theFormat.appendText(theBuffer, theBill.getMyPrimaryUser().getMyName());
+                break;
+            case VIP:
+                theBuffer.append(theBill.getMyPrimaryUser().isVIP());
+                break;
+            case VEHICLE_ID:
+                theBuffer.append(vehicle.getMyVehicleID());
+                break;
+            case VEHICLE_NAME:
+                theFormat.appendText(theBuffer, vehicle.getMyName());
+                break;
+            case VIN:
+                theFormat.appendText(theBuffer, vehicle.getMyVIN());
+                break;
+            case VEHICLE_TYPE:
+                theFormat.appendText(theBuffer, vehicle.getVehicleType().name());
+                break;
+            case RATE:
+                theFormat.appendMoney(theBuffer, theBill.getMyDailyRateUnits());
+                break;
+            case DAYS:
+                theBuffer.append(theBill.getMyNumDays());
+                break;
+            case RENTAL:
+                theFormat.appendMoney(theBuffer, amounts.getMyRental());
+                break;
+            case INSURANCE:
+                theFormat.appendMoney(theBuffer, amounts.getMyInsurance());
+                break;
+            case VIP_DISCOUNT:
+                theFormat.appendMoney(theBuffer, amounts.getMyVIPDiscount());
+                break;
+            case SUBTOTAL:
+                theFormat.appendMoney(theBuffer, amounts.getMySubtotal());
+                break;
+            case TAX:
+                theFormat.appendMoney(theBuffer, amounts.getMyTax());
+                break;
+            case TOTAL:
+            default:
+                theFormat.appendMoney(theBuffer, amounts.getMyTotal());
+                break;
+        }
+    }
+
+    /**
+     * Bill fields a template can refer to.
+     */
+    private enum Field {
+        /** Bill ID. */
+        BILL_ID("billID"),
+        /** User name. */
+        USER("user"),
+        /** VIP status of the user. */
+        VIP("vip"),
+        /** Vehicle ID. */
+        VEHICLE_ID("vehicleID"),
+        /** Vehicle name. */
+        VEHICLE_NAME("vehicleName"),
+        /** Vehicle VIN. */
+        VIN("vin"),
+        /** Vehicle type. */
+        VEHICLE_TYPE("vehicleType"),
+        /** Daily rate. */
+        RATE("rate"),
+        /** Number of rental days. */
+        DAYS("days"),
+        /** Rate times days. */
+        RENTAL("rental"),
+        /** Insurance. */
+        INSURANCE("insurance"),
+        /** VIP discount. */
+        VIP_DISCOUNT("vipDiscount"),
+        /** Rental plus insurance less discount. */
+        SUBTOTAL("subtotal"),
+        /** Tax. */
+        TAX("tax"),
+        /** Amount due. */
+        TOTAL("total");
+
+        /**
+         * Placeholder name.
+         */
+        private final String myName;
+
+        /**
+         * Creates a field.
+         * 
+         * @param theName placeholder name
+         */
+        Field(final String theName) {
+            myName = theName;
+        }
+
+        /**
+         * Looks up a field by placeholder name.
+         * 
+         * @param theName the placeholder name
+         * @return the field
+         * @throws IllegalArgumentException if no field has that name
+         */
+        static Field named(final String theName) {
+            Field result = null;
+            for (final Field field : values()) {
+                if (field.myName.equals(theName)) {
+                    result = field;
+                }
+            }
+            if (result == null) {
+                throw new IllegalArgumentException("Unknown placeholder: " + theName);
+            }
+            return result;
+        }
+    }
+}
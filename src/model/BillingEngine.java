@@ -0,0 +1,98 @@
+/*
+ * Billing Engine: fixed-point bill computation.
+ */
+
+package model;
+
+import utility.Money;
+
+/**
+ * Computes bill amounts in {@link Money} units using only long arithmetic.
+ * 
+ * The rules match the original BigDecimal computation in Bill: the rental is the
+ * daily rate times the number of days, insurance is 1% of the rental, VIP users get
+ * the insurance back as a discount, and 10% tax is charged on the rest. With daily
+ * rates of at most four decimal places every step is exact, so the results equal
+ * the BigDecimal ones. Nothing is allocated.
+ * 
+ * Amounts beyond a long are not billed; {@link #canCompute(long, int)} tells, before
+ * a rental is accepted, whether {@link #compute(long, int, boolean, BillAmounts)}
+ * would overflow.
+ * 
+ * @author roys4
+ * @version Winter 2021
+ */
+public final class BillingEngine {
+
+    /**
+     * Insurance rate, as a divisor of the rental (1%).
+     */
+    private static final long INSURANCE_DIVISOR = 100;
+
+    /**
+     * Tax rate, as a divisor of the subtotal (10%).
+     */
+    private static final long TAX_DIVISOR = 10;
+
+    /**
+     * A private constructor, to prevent external instantiation.
+     */
+    private BillingEngine() {
+
+    }
+
+    /**
+     * Computes a bill.
+     * 
+     * @param theDailyRate daily rate in units, with at most {@link Money#RATE_SCALE} decimals
+     * @param theNumDays number of rental days
+     * @param theVIP whether the renter is a VIP
+     * @param theResult holder receiving the amounts
+     * @throws ArithmeticException if the amounts overflow a long
+     */
+    public static void compute(final long theDailyRate, final int theNumDays, final boolean theVIP,
+                               final BillAmounts theResult) {
+        final long rental = Math.multiplyExact(theDailyRate, theNumDays);
+        final long insurance = rental / INSURANCE_DIVISOR;
+        long vipDiscount = 0;
+        if (theVIP) {
+            vipDiscount = insurance;
+        }
+        final long subtotal = Math.addExact(rental, insurance) - vipDiscount;
+        final long tax = subtotal / TAX_DIVISOR;
+        theResult.set(rental, insurance, vipDiscount, subtotal, tax, Math.addExact(subtotal, tax));
+    }
+
+    /**
+     * Checks whether a bill can be computed without overflowing a long, for VIPs
+     * and everyone else alike.
+     * 
+     * @param theDailyRate daily rate in units
+     * @param theNumDays number of rental days
+     * @return true if {@link #compute(long, int, boolean, BillAmounts)} does not throw
+     */
+    public static boolean canCompute(final long theDailyRate, final int theNumDays) {
+        final long rental = theDailyRate * theNumDays;
+        boolean result = Math.multiplyHigh(theDailyRate, theNumDays) == rental >> (Long.SIZE - 1);
+        if (result) {
+            // Without the VIP discount the subtotal and the total are largest
+            final long insurance = rental / INSURANCE_DIVISOR;
+            final long subtotal = rental + insurance;
+            final long tax = subtotal / TAX_DIVISOR;
+            result = !overflows(rental, insurance, subtotal) && !overflows(subtotal, tax, subtotal + tax);
+        }
+        return result;
+    }
+
+    /**
+     * Checks whether a long addition overflowed, like {@link Math#addExact(long, long)}.
+     * 
+     * @param theFirst first addend
+     * @param theSecond second addend
+     * @param theSum their wrapped sum
+     * @return true if the sum overflowed
+     */
+    private static boolean overflows(final long theFirst, final long theSecond, final long theSum) {
+        return ((theFirst ^ theSum) & (theSecond ^ theSum)) < 0;
+    }
+}
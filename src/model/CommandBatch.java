@@ -0,0 +1,325 @@
+/*
+ * Non-interactive command runner for the Vehicle Rental System.
+ *
+ * TCSS 305 - Rentz
+ */
+
+package model;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import model.vehicles.AbstractVehicle;
+import utility.LatencyStats;
+
+/**
+ * Runs a file of commands through the same Registration and RentalManager calls the
+ * interactive menus use, without prompts, for load tests and nightly reconciliation.
+ *
+ * One command per line, fields separated by white space; blank lines and lines
+ * starting with # are skipped:
+ * <pre>
+ * register USER PASSWORD [VIP]   registers a user (password must meet the policy) and logs in
+ * login USER PASSWORD            logs in
+ * rent VEHICLE DAYS              rents a vehicle, by VIN or vehicle ID, for the logged-in user
+ * drop VEHICLE                   drops off a vehicle, by VIN or vehicle ID
+ * </pre>
+ * Every command prints one result line, "OK" or "FAIL" followed by the command,
+ * plus whatever the call itself prints (bills). Latency of each call is recorded
+ * per command and reported by {@link #printReport(long)}.
+ *
+ * A command file is trusted input, so its logins are not rate-limited: they run
+ * under {@link LoginGuard#UNLIMITED}, sharing the users of the given Registration.
+ *
+ * @author roys4
+ * @version Winter 2021
+ */
+public final class CommandBatch {
+
+    /**
+     * Register command.
+     */
+    public static final String REGISTER = "register";
+
+    /**
+     * Login command.
+     */
+    public static final String LOGIN = "login";
+
+    /**
+     * Rent command.
+     */
+    public static final String RENT = "rent";
+
+    /**
+     * Drop-off command.
+     */
+    public static final String DROP = "drop";
+
+    /**
+     * Login source of batch logins.
+     */
+    public static final String BATCH_SOURCE = "batch";
+
+    /**
+     * Starts a comment line.
+     */
+    private static final String COMMENT = "#";
+
+    /**
+     * Separates fields.
+     */
+    private static final String FIELDS = "\\s+";
+
+    /**
+     * Fields of a rent command.
+     */
+    private static final int RENT_FIELDS = 3;
+
+    /**
+     * Most fields of a register command.
+     */
+    private static final int REGISTER_FIELDS = 4;
+
+    /**
+     * Index of the third field.
+     */
+    private static final int THIRD = 2;
+
+    /**
+     * Index of the fourth field.
+     */
+    private static final int FOURTH = 3;
+
+    /**
+     * Nanoseconds in a second.
+     */
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+    /**
+     * Users.
+     */
+    private final Registration myRegistration;
+
+    /**
+     * Fleet and bills.
+     */
+    private final RentalManager myRentalManager;
+
+    /**
+     * Result lines and the report.
+     */
+    private final PrintStream myOut;
+
+    /**
+     * Latency of every command, by command name.
+     */
+    private final Map<String, LatencyStats> myStats = new TreeMap<String, LatencyStats>();
+
+    /**
+     * Latency of all commands.
+     */
+    private final LatencyStats myAllStats = new LatencyStats();
+
+    /**
+     * The logged-in user, or null.
+     */
+    private String myUser;
+
+    /**
+     * Number of failed commands.
+     */
+    private int myFailures;
+
+    /**
+     * Creates a batch runner.
+     *
+     * @param theRegistration users; logins through it are not limited
+     * @param theRentalManager fleet and bills
+     * @param theOut where results go; should be buffered
+     */
+    public CommandBatch(final Registration theRegistration, final RentalManager theRentalManager,
+                        final PrintStream theOut) {
+        myRegistration = theRegistration.withLoginGuard(LoginGuard.UNLIMITED);
+        myRentalManager = Objects.requireNonNull(theRentalManager);
+        myOut = Objects.requireNonNull(theOut);
+    }
+
+    /**
+     * Runs every command of a file.
+     *
+     * @param theCommands the command file
+     * @return number of commands run
+     * @throws IOException if the file cannot be read
+     */
+    public int run(final Path theCommands) throws IOException {
+        try (BufferedReader in = Files.newBufferedReader(theCommands, StandardCharsets.UTF_8)) {
+            return run(in);
+        }
+    }
+
+    /**
+     * Runs every command read from a reader.
+     *
+     * @param theCommands command lines
+     * @return number of commands run
+     * @throws IOException if the reader fails
+     */
+    public int run(final BufferedReader theCommands) throws IOException {
+        int result = 0;
+        String line = theCommands.readLine();
+        while (line != null) {
+            final String trimmed = line.trim();
+            if (!trimmed.isEmpty() && !trimmed.startsWith(COMMENT)) {
+                execute(trimmed);
+                result++;
+            }
+            line = theCommands.readLine();
+        }
+        return result;
+    }
+
+    /**
+     * Runs one command and prints its result line.
+     *
+     * @param theCommand a non-empty command line
+     * @return true if the command succeeded
+     */
+    public boolean execute(final String theCommand) {
+        final String[] fields = theCommand.trim().split(FIELDS);
+        final String name = fields[0].toLowerCase(Locale.ROOT);
+        final long start = System.nanoTime();
+        boolean result;
+        try {
+            result = dispatch(name, fields);
+        } catch (final IllegalArgumentException | IllegalStateException e) {
+            // Malformed commands and rentals the ledger could not record
+            result = false;
+        }
+        final long elapsed = System.nanoTime() - start;
+        myStats.computeIfAbsent(name, theName -> new LatencyStats()).record(elapsed);
+        myAllStats.record(elapsed);
+        if (result) {
+            myOut.append("OK ");
+        } else {
+            myOut.append("FAIL ");
+            myFailures++;
+        }
+        myOut.append(theCommand).append(System.lineSeparator());
+        return result;
+    }
+
+    /**
+     * Number of failed commands so far.
+     *
+     * @return failure count
+     */
+    public int getMyFailures() {
+        return myFailures;
+    }
+
+    /**
+     * Latency of the commands run so far.
+     *
+     * @param theCommand a command name, or null for all commands
+     * @return the samples; empty if the command never ran
+     */
+    public LatencyStats getMyStats(final String theCommand) {
+        LatencyStats result = myAllStats;
+        if (theCommand != null) {
+            result = myStats.getOrDefault(theCommand, new LatencyStats());
+        }
+        return result;
+    }
+
+    /**
+     * Prints command count, failures, throughput and latency percentiles.
+     *
+     * @param theElapsedNanos wall-clock time of the whole batch
+     */
+    public void printReport(final long theElapsedNanos) {
+        final double seconds = theElapsedNanos / NANOS_PER_SECOND;
+        myOut.println(RentalManager.ASTERISK_LINE);
+        myOut.printf(Locale.ROOT, "Commands: %d, failed: %d, %.3f s, %.0f commands/s%n", myAllStats.getCount(),
+                     myFailures, seconds, myAllStats.getCount() / seconds);
+        for (final Map.Entry<String, LatencyStats> entry : myStats.entrySet()) {
+            myOut.printf(Locale.ROOT, "%-9s %s%n", entry.getKey(), entry.getValue());
+        }
+        myOut.printf(Locale.ROOT, "%-9s %s%n", "all", myAllStats);
+        myOut.flush();
+    }
+
+    /**
+     * Runs a parsed command.
+     *
+     * @param theName lower case command name
+     * @param theFields all fields, the name first
+     * @return true if the command succeeded
+     * @throws IllegalArgumentException if the command is malformed
+     */
+    private boolean dispatch(final String theName, final String[] theFields) {
+        final boolean result;
+        if (REGISTER.equals(theName) && theFields.length >= THIRD + 1 && theFields.length <= REGISTER_FIELDS) {
+            result = register(theFields);
+        } else if (LOGIN.equals(theName) && theFields.length == THIRD + 1) {
+            result = myRegistration.attemptLogin(theFields[1], theFields[THIRD], BATCH_SOURCE)
+                         == LoginResult.SUCCESS
+                     && myRegistration.login(theFields[1], theFields[THIRD]);
+            if (result) {
+                myUser = theFields[1];
+            }
+        } else if (RENT.equals(theName) && theFields.length == RENT_FIELDS) {
+            final AbstractVehicle vehicle = findVehicle(theFields[1]);
+            result = myUser != null && vehicle != null
+                     && myRentalManager.rent(vehicle.getMyVehicleID(), myUser,
+                                             Integer.parseInt(theFields[THIRD]), myRentalManager.nextBillID());
+        } else if (DROP.equals(theName) && theFields.length == THIRD) {
+            final AbstractVehicle vehicle = findVehicle(theFields[1]);
+            result = vehicle != null && myRentalManager.drop(vehicle.getMyVehicleID());
+        } else {
+            throw new IllegalArgumentException("Unknown command");
+        }
+        return result;
+    }
+
+    /**
+     * Registers a user with the default password policy and logs them in.
+     *
+     * @param theFields register, user, password and optional VIP flag
+     * @return true if the user was registered
+     */
+    private boolean register(final String[] theFields) {
+        boolean vip = false;
+        if (theFields.length == REGISTER_FIELDS) {
+            vip = Boolean.parseBoolean(theFields[FOURTH]);
+        }
+        final boolean result =
+            PasswordPolicy.DEFAULT.isValid(theFields[THIRD])
+            && myRegistration.register(myRegistration.newUser(theFields[1], theFields[THIRD], vip));
+        if (result) {
+            myUser = theFields[1];
+        }
+        return result;
+    }
+
+    /**
+     * Finds a vehicle by VIN, or by vehicle ID if no VIN matches.
+     *
+     * @param theVehicle VIN or vehicle ID
+     * @return the vehicle, or null
+     */
+    private AbstractVehicle findVehicle(final String theVehicle) {
+        AbstractVehicle result = myRentalManager.findByVIN(theVehicle);
+        if (result == null && !theVehicle.isEmpty() && theVehicle.chars().allMatch(Character::isDigit)) {
+            result = myRentalManager.findByID(Integer.parseInt(theVehicle));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Short-lived cache of verified logins for the Vehicle Rental System.
+ *
+ * TCSS 305 - Rentz
+ */
+
+package model;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Remembers, for a bounded number of users and a short time, that a password was
+ * verified against a stored credential, so a repeated login skips the slow hash.
+ *
+ * Nothing reversible is kept: an entry holds an HMAC of the user name, password and
+ * stored credential under a key that exists only in this process. A login hits the
+ * cache only with the same password and the same stored credential, so a changed
+ * password misses. Entries expire a fixed time after they were verified; when the
+ * cache is full, the least recently used entry is dropped.
+ *
+ * @author roys4
+ * @version Winter 2021
+ */
+public final class CredentialCache {
+
+    /**
+     * Default maximum number of users.
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 10_000;
+
+    /**
+     * Default entry lifetime in seconds.
+     */
+    public static final int DEFAULT_TTL_SECONDS = 300;
+
+    /**
+     * JCA name of the MAC.
+     */
+    private static final String ALGORITHM = "HmacSHA256";
+
+    /**
+     * Key bytes.
+     */
+    private static final int KEY_BYTES = 32;
+
+    /**
+     * Load factor of the entry map.
+     */
+    private static final float LOAD_FACTOR = 0.75f;
+
+    /**
+     * Separates the MAC inputs, a byte that cannot occur in UTF-8 text.
+     */
+    private static final int FIELD_SEPARATOR = 0xFF;
+
+    /**
+     * Process-local MAC key.
+     */
+    private final SecretKeySpec myKey;
+
+    /**
+     * MAC per thread, since instances are not thread-safe.
+     */
+    private final ThreadLocal<Mac> myMac;
+
+    /**
+     * Entry lifetime in nanoseconds.
+     */
+    private final long myTtlNanos;
+
+    /**
+     * Entries by user name in access order; guarded by itself.
+     */
+    private final Map<String, Entry> myEntries;
+
+    /**
+     * Creates a cache.
+     *
+     * @param theMaxEntries most users remembered
+     * @param theTtl entry lifetime
+     * @param theUnit unit of theTtl
+     */
+    public CredentialCache(final int theMaxEntries, final long theTtl, final TimeUnit theUnit) {
+        if (theMaxEntries <= 0 || theTtl < 0) {
+            throw new IllegalArgumentException();
+        }
+        final byte[] key = new byte[KEY_BYTES];
+        new SecureRandom().nextBytes(key);
+        myKey = new SecretKeySpec(key, ALGORITHM);
+        myMac = ThreadLocal.withInitial(this::newMac);
+        myTtlNanos = theUnit.toNanos(theTtl);
+        myEntries = new LinkedHashMap<String, Entry>(Math.min(theMaxEntries, DEFAULT_MAX_ENTRIES), LOAD_FACTOR,
+                                                     true) {
+            /** Class version. */
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Entry> theEldest) {
+                return size() > theMaxEntries;
+            }
+        };
+    }
+
+    /**
+     * Checks whether a password was recently verified against a stored credential.
+     *
+     * @param theUserName the user name
+     * @param thePassword the password
+     * @param theStored the user's stored credential
+     * @return true if a live entry matches
+     */
+    public boolean isVerified(final String theUserName, final String thePassword, final String theStored) {
+        final Entry entry;
+        synchronized (myEntries) {
+            entry = myEntries.get(theUserName);
+        }
+        boolean result = false;
+        if (entry != null) {
+            result = System.nanoTime() - entry.myVerifiedAt < myTtlNanos
+                     && MessageDigest.isEqual(entry.myTag, tag(theUserName, thePassword, theStored));
+        }
+        return result;
+    }
+
+    /**
+     * Remembers that a password was verified against a stored credential.
+     *
+     * @param theUserName the user name
+     * @param thePassword the verified password
+     * @param theStored the user's stored credential
+     */
+    public void put(final String theUserName, final String thePassword, final String theStored) {
+        final Entry entry = new Entry(tag(theUserName, thePassword, theStored), System.nanoTime());
+        synchronized (myEntries) {
+            myEntries.put(theUserName, entry);
+        }
+    }
+
+    /**
+     * Forgets a user.
+     *
+     * @param theUserName the user name
+     */
+    public void invalidate(final String theUserName) {
+        synchronized (myEntries) {
+            myEntries.remove(theUserName);
+        }
+    }
+
+    /**
+     * Number of remembered users, live or expired.
+     *
+     * @return entry count
+     */
+    public int size() {
+        synchronized (myEntries) {
+            return myEntries.size();
+        }
+    }
+
+    /**
+     * MAC of a login.
+     *
+     * @param theUserName the user name
+     * @param thePassword the password
+     * @param theStored the stored credential
+     * @return the tag
+     */
+    private byte[] tag(final String theUserName, final String thePassword, final String theStored) {
+        final Mac mac = myMac.get();
+        mac.update(theUserName.getBytes(StandardCharsets.UTF_8));
+        mac.update((byte) FIELD_SEPARATOR);
+        mac.update(thePassword.getBytes(StandardCharsets.UTF_8));
+        mac.update((byte) FIELD_SEPARATOR);
+        mac.update(theStored.getBytes(StandardCharsets.UTF_8));
+        return mac.doFinal();
+    }
+
+    /**
+     * Creates a MAC with this cache's key.
+     *
+     * @return the MAC
+     */
+    private Mac newMac() {
+        try {
+            final Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(myKey);
+            return mac;
+        } catch (final GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        }
+    }
+
+    /**
+     * One verified login.
+     */
+    private static final class Entry {
+
+        /**
+         * MAC of the login.
+         */
+        private final byte[] myTag;
+
+        /**
+         * When it was verified, on the System.nanoTime clock.
+         */
+        private final long myVerifiedAt;
+
+        /**
+         * Creates an entry.
+         *
+         * @param theTag MAC of the login
+         * @param theVerifiedAt when it was verified
+         */
+        Entry(final byte[] theTag, final long theVerifiedAt) {
+            myTag = theTag;
+            myVerifiedAt = theVerifiedAt;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Demand Pricing: daily rates that follow fleet utilization.
+ */
+
+package model;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import model.vehicles.AbstractVehicle;
+import model.vehicles.VehicleType;
+import utility.Money;
+
+/**
+ * Raises daily rates of a vehicle type when a large share of that type is rented.
+ * 
+ * The utilization of a type is the fraction of its vehicles that are not available,
+ * read from the per-type counters of a {@link VehicleInventory}. Below the threshold
+ * the vehicle's own rate applies; above it the rate rises linearly up to the maximum
+ * surge when every vehicle of the type is out. Surged rates are rounded to cents.
+ * 
+ * Multipliers are recomputed at most once per interval, by whichever lookup finds
+ * them stale, in time proportional to the number of vehicle types; every other lookup
+ * is two array reads and a multiplication, whatever the size of the fleet.
+ * 
+ * @author roys4
+ * @version Winter 2021
+ */
+public final class DemandPricing {
+
+    /**
+     * Basis points in one (100%).
+     */
+    public static final int BASIS_POINTS = 10_000;
+
+    /**
+     * Default recompute interval in milliseconds.
+     */
+    public static final long DEFAULT_INTERVAL_MILLIS = 1000;
+
+    /**
+     * Default utilization, in basis points, above which rates rise.
+     */
+    public static final int DEFAULT_THRESHOLD = 7_000;
+
+    /**
+     * Default rate increase, in basis points, at full utilization.
+     */
+    public static final int DEFAULT_MAX_SURGE = 5_000;
+
+    /**
+     * All vehicle types, indexed by ordinal.
+     */
+    private static final VehicleType[] TYPES = VehicleType.values();
+
+    /**
+     * Counters the utilization is read from.
+     */
+    private final VehicleInventory myInventory;
+
+    /**
+     * Nanoseconds between recomputations.
+     */
+    private final long myIntervalNanos;
+
+    /**
+     * Utilization in basis points above which rates rise.
+     */
+    private final int myThreshold;
+
+    /**
+     * Rate increase in basis points at full utilization.
+     */
+    private final int myMaxSurge;
+
+    /**
+     * System.nanoTime of the last recomputation.
+     */
+    private final AtomicLong myLastRecompute = new AtomicLong();
+
+    /**
+     * Rate multiplier in basis points per type ordinal; replaced, never modified.
+     */
+    private volatile int[] myMultipliers;
+
+    /**
+     * Creates demand pricing with the default interval, threshold and surge.
+     * 
+     * @param theInventory the fleet whose utilization drives the rates
+     */
+    public DemandPricing(final VehicleInventory theInventory) {
+        this(theInventory, DEFAULT_INTERVAL_MILLIS, DEFAULT_THRESHOLD, DEFAULT_MAX_SURGE);
+    }
+
+    /**
+     * Creates demand pricing.
+     * 
+     * @param theInventory the fleet whose utilization drives the rates
+     * @param theIntervalMillis milliseconds between recomputations, 0 to recompute on every lookup
+     * @param theThreshold utilization in basis points above which rates rise
+     * @param theMaxSurge rate increase in basis points at full utilization
+     */
+    public DemandPricing(final VehicleInventory theInventory, final long theIntervalMillis,
+                         final int theThreshold, final int theMaxSurge) {
+        if (theIntervalMillis < 0 || theThreshold < 0 || theThreshold >= BASIS_POINTS || theMaxSurge < 0) {
+            throw new IllegalArgumentException();
+        }
+        myInventory = Objects.requireNonNull(theInventory);
+        myIntervalNanos = TimeUnit.MILLISECONDS.toNanos(theIntervalMillis);
+        myThreshold = theThreshold;
+        myMaxSurge = theMaxSurge;
+        recompute();
+    }
+
+    /**
+     * Current daily rate of a vehicle.
+     * 
+     * @param theVehicle the vehicle
+     * @return the rate in {@link Money} units
+     */
+    public long rateUnits(final AbstractVehicle theVehicle) {
+        refreshIfStale();
+        final int multiplier = myMultipliers[theVehicle.getVehicleType().ordinal()];
+        long result = theVehicle.getMyRentalAmountUnits();
+        if (multiplier != BASIS_POINTS) {
+            result = Money.toCents(Math.multiplyExact(result, multiplier) / BASIS_POINTS) * Money.UNITS_PER_CENT;
+        }
+        return result;
+    }
+
+    /**
+     * Current rate multiplier of a vehicle type.
+     * 
+     * @param theType the vehicle type
+     * @return the multiplier in basis points, {@link #BASIS_POINTS} when not surging
+     */
+    public int getMultiplier(final VehicleType theType) {
+        refreshIfStale();
+        return myMultipliers[theType.ordinal()];
+    }
+
+    /**
+     * Recomputes every type's multiplier from the inventory counters now.
+     */
+    public void recompute() {
+        final int[] multipliers = new int[TYPES.length];
+        for (final VehicleType type : TYPES) {
+            final int count = myInventory.count(type);
+            long utilization = 0;
+            if (count > 0) {
+                utilization = (long) (count - myInventory.countAvailable(type)) * BASIS_POINTS / count;
+            }
+            long surge = 0;
+            if (utilization > myThreshold) {
+                surge = myMaxSurge * (utilization - myThreshold) / (BASIS_POINTS - myThreshold);
+            }
+            multipliers[type.ordinal()] = (int) (BASIS_POINTS + surge);
+        }
+        myLastRecompute.set(System.nanoTime());
+        myMultipliers = multipliers;
+    }
+
+    /**
+     * Recomputes the multipliers if the interval has passed; only one of several
+     * racing lookups does the work.
+     */
+    private void refreshIfStale() {
+        final long last = myLastRecompute.get();
+        final long now = System.nanoTime();
+        if (now - last >= myIntervalNanos && myLastRecompute.compareAndSet(last, now)) {
+            recompute();
+        }
+    }
+}
@@ -0,0 +1,364 @@
+/*
+ * Login rate limiting for the Vehicle Rental System.
+ *
+ * TCSS 305 - Rentz
+ */
+
+package model;
+
+import java.security.SecureRandom;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Limits login attempts with one token bucket per user name and one per source
+ * (such as a client address), so neither guessing one user's password from many
+ * places nor many users' passwords from one place can run faster than the buckets
+ * refill. An attempt needs a token from both buckets.
+ *
+ * Buckets live in two fixed tables of slots, so memory does not grow with the
+ * names an attacker makes up and no lock is taken: each slot is one long updated
+ * by compare-and-set, holding the bucket in the form of the generic cell rate
+ * algorithm (the time at which the bucket will be full again). A key is hashed,
+ * with a per-process random seed, to two slots of its table and is refused only
+ * when both are empty, so a user who shares one slot with an attacked name still
+ * gets through on the other.
+ *
+ * {@link #UNLIMITED} lets every attempt through, for trusted input such as batch
+ * files and load tests, where every login comes from one source.
+ *
+ * @author roys4
+ * @version Winter 2021
+ */
+public final class LoginGuard {
+
+    /**
+     * Default attempts per user name before it is throttled.
+     */
+    public static final int DEFAULT_USER_BURST = 5;
+
+    /**
+     * Default seconds for a user name to earn back one attempt.
+     */
+    public static final int DEFAULT_USER_REFILL_SECONDS = 12;
+
+    /**
+     * Default attempts per source before it is throttled.
+     */
+    public static final int DEFAULT_SOURCE_BURST = 20;
+
+    /**
+     * Default seconds for a source to earn back one attempt.
+     */
+    public static final int DEFAULT_SOURCE_REFILL_SECONDS = 3;
+
+    /**
+     * Default slots per table.
+     */
+    public static final int DEFAULT_SLOTS = 1 << 16;
+
+    /**
+     * Guard that lets every attempt through.
+     */
+    public static final LoginGuard UNLIMITED = new LoginGuard(1, 1, 1, 1, TimeUnit.NANOSECONDS, 1, false);
+
+    /**
+     * FNV-1a 64-bit prime.
+     */
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * First multiplier of the 64-bit finalizer.
+     */
+    private static final long MIX_1 = 0xff51afd7ed558ccdL;
+
+    /**
+     * Second multiplier of the 64-bit finalizer.
+     */
+    private static final long MIX_2 = 0xc4ceb9fe1a85ec53L;
+
+    /**
+     * Shift of the 64-bit finalizer.
+     */
+    private static final int MIX_SHIFT = 33;
+
+    /**
+     * Buckets of user names.
+     */
+    private final Table myUsers;
+
+    /**
+     * Buckets of sources.
+     */
+    private final Table mySources;
+
+    /**
+     * False if every attempt goes through.
+     */
+    private final boolean myLimiting;
+
+    /**
+     * Start of this guard's clock, so slot times are never negative.
+     */
+    private final long myEpoch = System.nanoTime() - 1;
+
+    /**
+     * Creates a guard with the default limits.
+     */
+    public LoginGuard() {
+        this(DEFAULT_USER_BURST, DEFAULT_USER_REFILL_SECONDS, DEFAULT_SOURCE_BURST, DEFAULT_SOURCE_REFILL_SECONDS,
+             TimeUnit.SECONDS, DEFAULT_SLOTS);
+    }
+
+    /**
+     * Creates a guard.
+     *
+     * @param theUserBurst attempts per user name before it is throttled
+     * @param theUserRefill time for a user name to earn back one attempt
+     * @param theSourceBurst attempts per source before it is throttled
+     * @param theSourceRefill time for a source to earn back one attempt
+     * @param theUnit unit of the refill times
+     * @param theSlots slots per table, a power of two
+     */
+    public LoginGuard(final int theUserBurst, final long theUserRefill, final int theSourceBurst,
+                      final long theSourceRefill, final TimeUnit theUnit, final int theSlots) {
+        this(theUserBurst, theUserRefill, theSourceBurst, theSourceRefill, theUnit, theSlots, true);
+    }
+
+    /**
+     * Creates a guard that limits attempts or lets every one through.
+     *
+     * @param theUserBurst attempts per user name before it is throttled
+     * @param theUserRefill time for a user name to earn back one attempt
+     * @param theSourceBurst attempts per source before it is throttled
+     * @param theSourceRefill time for a source to earn back one attempt
+     * @param theUnit unit of the refill times
+     * @param theSlots slots per table, a power of two
+     * @param theLimiting false to let every attempt through
+     */
+    private LoginGuard(final int theUserBurst, final long theUserRefill, final int theSourceBurst,
+                       final long theSourceRefill, final TimeUnit theUnit, final int theSlots,
+                       final boolean theLimiting) {
+        if (Integer.bitCount(theSlots) != 1) {
+            throw new IllegalArgumentException("Slots must be a power of two: " + theSlots);
+        }
+        final SecureRandom random = new SecureRandom();
+        myUsers = new Table(theUserBurst, theUnit.toNanos(theUserRefill), theSlots, random.nextLong());
+        mySources = new Table(theSourceBurst, theUnit.toNanos(theSourceRefill), theSlots, random.nextLong());
+        myLimiting = theLimiting;
+    }
+
+    /**
+     * Takes a token for a login attempt from the user's and the source's buckets.
+     * Both are checked before either is charged, and the user's token is given back
+     * if the source runs dry in between, so an attempt refused by one bucket does
+     * not drain the other.
+     *
+     * @param theUserName the user name tried
+     * @param theSource where the attempt comes from
+     * @return true if the attempt may go ahead
+     */
+    public boolean tryAcquire(final String theUserName, final String theSource) {
+        Objects.requireNonNull(theUserName);
+        Objects.requireNonNull(theSource);
+        boolean result = true;
+        if (myLimiting) {
+            final long now = System.nanoTime() - myEpoch;
+            final long user = myUsers.hash(theUserName);
+            final long source = mySources.hash(theSource);
+            result = myUsers.hasToken(user, now) && mySources.hasToken(source, now);
+            if (result) {
+                result = myUsers.take(user, now);
+                if (result && !mySources.take(source, now)) {
+                    myUsers.refund(user, now);
+                    result = false;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gives a user name back the token of an attempt, for example after a successful
+     * login, so logging in does not use up a user's attempts. Only that one token is
+     * returned: the name's slots are shared with other names, so refilling them would
+     * also refill an attacked name.
+     *
+     * @param theUserName the user name
+     */
+    public void refund(final String theUserName) {
+        Objects.requireNonNull(theUserName);
+        if (myLimiting) {
+            myUsers.refund(myUsers.hash(theUserName), System.nanoTime() - myEpoch);
+        }
+    }
+
+    /**
+     * One table of bucket slots.
+     */
+    private static final class Table {
+
+        /**
+         * Time at which each slot's bucket is full again, on the guard's clock.
+         */
+        private final AtomicLongArray mySlots;
+
+        /**
+         * Slot index mask.
+         */
+        private final int myMask;
+
+        /**
+         * Nanoseconds to earn one token.
+         */
+        private final long myInterval;
+
+        /**
+         * Nanoseconds a full bucket covers: burst times interval.
+         */
+        private final long myTolerance;
+
+        /**
+         * Hash seed.
+         */
+        private final long mySeed;
+
+        /**
+         * Creates a table of full buckets.
+         *
+         * @param theBurst tokens in a full bucket
+         * @param theInterval nanoseconds to earn one token
+         * @param theSlots slot count, a power of two
+         * @param theSeed hash seed
+         */
+        Table(final int theBurst, final long theInterval, final int theSlots, final long theSeed) {
+            if (theBurst <= 0 || theInterval <= 0) {
+                throw new IllegalArgumentException();
+            }
+            mySlots = new AtomicLongArray(theSlots);
+            myMask = theSlots - 1;
+            myInterval = theInterval;
+            myTolerance = Math.multiplyExact(theInterval, (long) theBurst);
+            mySeed = theSeed;
+        }
+
+        /**
+         * Seeded 64-bit hash of a key; its halves pick the key's two slots.
+         *
+         * @param theKey the key
+         * @return the hash
+         */
+        long hash(final String theKey) {
+            long h = mySeed;
+            for (int i = 0; i < theKey.length(); i++) {
+                h = (h ^ theKey.charAt(i)) * FNV_PRIME;
+            }
+            h = (h ^ (h >>> MIX_SHIFT)) * MIX_1;
+            h = (h ^ (h >>> MIX_SHIFT)) * MIX_2;
+            return h ^ (h >>> MIX_SHIFT);
+        }
+
+        /**
+         * Checks whether either of a key's slots has a token.
+         *
+         * @param theHash the key's hash
+         * @param theNow current time on the guard's clock
+         * @return true if a token is available
+         */
+        boolean hasToken(final long theHash, final long theNow) {
+            return hasToken(first(theHash), theNow) || hasToken(second(theHash), theNow);
+        }
+
+        /**
+         * Takes a token from each of a key's slots that has one, once if both are the
+         * same slot.
+         *
+         * @param theHash the key's hash
+         * @param theNow current time on the guard's clock
+         * @return true if at least one slot gave a token
+         */
+        boolean take(final long theHash, final long theNow) {
+            boolean result = take(first(theHash), theNow);
+            if (second(theHash) != first(theHash)) {
+                result = take(second(theHash), theNow) || result;
+            }
+            return result;
+        }
+
+        /**
+         * Gives back one token to the fuller of a key's slots. A take charged that
+         * slot if it charged any, while the other may have been empty, and a token
+         * given to an empty slot would go to whichever name drained it.
+         *
+         * @param theHash the key's hash
+         * @param theNow current time on the guard's clock
+         */
+        void refund(final long theHash, final long theNow) {
+            int slot = first(theHash);
+            if (mySlots.get(second(theHash)) < mySlots.get(slot)) {
+                slot = second(theHash);
+            }
+            boolean done = false;
+            while (!done) {
+                final long full = mySlots.get(slot);
+                done = full <= theNow
+                       || mySlots.compareAndSet(slot, full, Math.max(full - myInterval, theNow));
+            }
+        }
+
+        /**
+         * Checks whether a slot has a token.
+         *
+         * @param theSlot the slot
+         * @param theNow current time on the guard's clock
+         * @return true if a token is available
+         */
+        private boolean hasToken(final int theSlot, final long theNow) {
+            return Math.max(mySlots.get(theSlot), theNow) + myInterval - theNow <= myTolerance;
+        }
+
+        /**
+         * Takes a token from a slot.
+         *
+         * @param theSlot the slot
+         * @param theNow current time on the guard's clock
+         * @return false if the slot had none
+         */
+        private boolean take(final int theSlot, final long theNow) {
+            boolean result = false;
+            boolean done = false;
+            while (!done) {
+                final long full = mySlots.get(theSlot);
+                final long next = Math.max(full, theNow) + myInterval;
+                if (next - theNow > myTolerance) {
+                    done = true;
+                } else if (mySlots.compareAndSet(theSlot, full, next)) {
+                    result = true;
+                    done = true;
+                }
+            }
+            return result;
+        }
+
+        /**
+         * First slot of a key.
+         *
+         * @param theHash the key's hash
+         * @return slot index
+         */
+        private int first(final long theHash) {
+            return (int) theHash & myMask;
+        }
+
+        /**
+         * Second slot of a key.
+         *
+         * @param theHash the key's hash
+         * @return slot index
+         */
+        private int second(final long theHash) {
+            return (int) (theHash >>> Integer.SIZE) & myMask;
+        }
+    }
+}
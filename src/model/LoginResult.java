@@ -0,0 +1,31 @@
+/*
+ * Outcome of a guarded login attempt.
+ *
+ * TCSS 305 - Rentz
+ */
+
+package model;
+
+/**
+ * What {@link Registration#attemptLogin(String, String, String)} decided.
+ *
+ * @author roys4
+ * @version Winter 2021
+ */
+public enum LoginResult {
+
+    /**
+     * The credentials are right.
+     */
+    SUCCESS,
+
+    /**
+     * The user does not exist or the password is wrong.
+     */
+    WRONG_CREDENTIALS,
+
+    /**
+     * Too many recent attempts for the user or the source; the password was not checked.
+     */
+    THROTTLED
+}
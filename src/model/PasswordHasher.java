@@ -0,0 +1,229 @@
+/*
+ * Salted password hashing for the Vehicle Rental System.
+ *
+ * TCSS 305 - Rentz
+ */
+
+package model;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Objects;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * Hashes passwords with PBKDF2-HMAC-SHA256 and a random per-user salt, and checks
+ * passwords against stored credentials.
+ *
+ * A hashed credential is stored as {@code pbkdf2$ITERATIONS$SALT$HASH}, salt and
+ * hash in Base64, so it fits the user file next to legacy rows and carries its own
+ * cost: changing the iteration count affects new hashes only, and existing ones
+ * keep verifying. Any stored credential without the {@code pbkdf2$} prefix is a
+ * legacy plaintext password and is compared as such, after a derivation of this
+ * hasher's cost, so a legacy check takes as long as a hashed one. Comparisons take
+ * the same time however many leading bytes match.
+ *
+ * The deployment's cost comes from the system property {@value #ITERATIONS_PROPERTY}
+ * (see {@link #DEFAULT}).
+ *
+ * @author roys4
+ * @version Winter 2021
+ */
+public final class PasswordHasher {
+
+    /**
+     * System property with the iteration count of {@link #DEFAULT}.
+     */
+    public static final String ITERATIONS_PROPERTY = "rentz.pbkdf2.iterations";
+
+    /**
+     * Iteration count of {@link #DEFAULT} when the property is not set.
+     */
+    public static final int DEFAULT_ITERATIONS = 600_000;
+
+    /**
+     * Hasher with the deployment's iteration count.
+     */
+    public static final PasswordHasher DEFAULT =
+        new PasswordHasher(Integer.getInteger(ITERATIONS_PROPERTY, DEFAULT_ITERATIONS));
+
+    /**
+     * Prefix of hashed credentials.
+     */
+    public static final String PREFIX = "pbkdf2";
+
+    /**
+     * Separator of the credential fields.
+     */
+    private static final char SEPARATOR = '$';
+
+    /**
+     * Fields of a hashed credential.
+     */
+    private static final int FIELDS = 4;
+
+    /**
+     * Index of the salt field.
+     */
+    private static final int SALT_FIELD = 2;
+
+    /**
+     * Index of the hash field.
+     */
+    private static final int HASH_FIELD = 3;
+
+    /**
+     * JCA name of the key derivation.
+     */
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+
+    /**
+     * Salt bytes.
+     */
+    private static final int SALT_BYTES = 16;
+
+    /**
+     * Derived hash bytes.
+     */
+    private static final int HASH_BYTES = 32;
+
+    /**
+     * Salt source.
+     */
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /**
+     * Key factory per thread, since instances are not thread-safe and slow to look up.
+     */
+    private static final ThreadLocal<SecretKeyFactory> FACTORY = ThreadLocal.withInitial(() -> {
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM);
+        } catch (final GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        }
+    });
+
+    /**
+     * Iterations of new hashes.
+     */
+    private final int myIterations;
+
+    /**
+     * Creates a hasher.
+     *
+     * @param theIterations PBKDF2 iterations of new hashes
+     */
+    public PasswordHasher(final int theIterations) {
+        if (theIterations <= 0) {
+            throw new IllegalArgumentException("Bad iteration count: " + theIterations);
+        }
+        myIterations = theIterations;
+    }
+
+    /**
+     * Iterations of new hashes.
+     *
+     * @return the iteration count
+     */
+    public int getMyIterations() {
+        return myIterations;
+    }
+
+    /**
+     * Hashes a password with a new random salt.
+     *
+     * @param thePassword the password
+     * @return the credential to store
+     */
+    public String hash(final String thePassword) {
+        Objects.requireNonNull(thePassword);
+        final byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        final Base64.Encoder base64 = Base64.getEncoder().withoutPadding();
+        return PREFIX + SEPARATOR + myIterations + SEPARATOR + base64.encodeToString(salt) + SEPARATOR
+               + base64.encodeToString(derive(thePassword, salt, myIterations));
+    }
+
+    /**
+     * Checks a password against a stored credential, hashed or legacy plaintext.
+     *
+     * @param thePassword the password
+     * @param theStored the stored credential
+     * @return true if the password matches; false for a malformed hash
+     */
+    public boolean verify(final String thePassword, final String theStored) {
+        Objects.requireNonNull(thePassword);
+        boolean result;
+        if (isHashed(theStored)) {
+            final String[] fields = theStored.split("\\" + SEPARATOR);
+            result = fields.length == FIELDS;
+            try {
+                if (result) {
+                    final Base64.Decoder base64 = Base64.getDecoder();
+                    final byte[] expected = base64.decode(fields[HASH_FIELD]);
+                    final byte[] salt = base64.decode(fields[SALT_FIELD]);
+                    result = MessageDigest.isEqual(expected,
+                                                   derive(thePassword, salt, Integer.parseInt(fields[1])));
+                }
+            } catch (final IllegalArgumentException e) {
+                // Bad Base64, a bad iteration count or an empty salt
+                result = false;
+            }
+        } else {
+            // As slow as a hash, so timing does not tell which users are still legacy
+            final boolean derived = !verifyMissing(thePassword);
+            result = derived && MessageDigest.isEqual(thePassword.getBytes(StandardCharsets.UTF_8),
+                                                      theStored.getBytes(StandardCharsets.UTF_8));
+        }
+        return result;
+    }
+
+    /**
+     * Does the work of verifying a password against a hash of this hasher's cost,
+     * for a user that does not exist, so the answer takes as long as for one that does.
+     *
+     * @param thePassword the password
+     * @return false
+     */
+    public boolean verifyMissing(final String thePassword) {
+        final byte[] derived = derive(thePassword, new byte[SALT_BYTES], myIterations);
+        return MessageDigest.isEqual(new byte[derived.length + 1], derived);
+    }
+
+    /**
+     * Checks whether a stored credential is a hash rather than a legacy password.
+     *
+     * @param theStored the stored credential
+     * @return true if it has the pbkdf2 prefix
+     */
+    public static boolean isHashed(final String theStored) {
+        return theStored.startsWith(PREFIX) && theStored.length() > PREFIX.length()
+               && theStored.charAt(PREFIX.length()) == SEPARATOR;
+    }
+
+    /**
+     * Runs PBKDF2.
+     *
+     * @param thePassword the password
+     * @param theSalt the salt
+     * @param theIterations iteration count
+     * @return the derived bytes
+     */
+    private static byte[] derive(final String thePassword, final byte[] theSalt, final int theIterations) {
+        final char[] chars = thePassword.toCharArray();
+        final PBEKeySpec spec = new PBEKeySpec(chars, theSalt, theIterations, HASH_BYTES * Byte.SIZE);
+        try {
+            return FACTORY.get().generateSecret(spec).getEncoded();
+        } catch (final GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " failed", e);
+        } finally {
+            spec.clearPassword();
+            Arrays.fill(chars, '\0');
+        }
+    }
+}
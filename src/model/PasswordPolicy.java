@@ -0,0 +1,205 @@
+/*
+ * Password strength rules for the Vehicle Rental System.
+ *
+ * TCSS 305 - Rentz
+ */
+
+package model;
+
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * An immutable set of password rules: length bounds, character classes that must
+ * appear, character classes that must not appear, and banned substrings.
+ *
+ * Characters are classified through a static 128-entry bitmask table, so a password
+ * is checked in a single pass without allocating. Characters outside ASCII belong
+ * to no class.
+ *
+ * @author roys4
+ * @version Winter 2021
+ */
+public final class PasswordPolicy {
+
+    /**
+     * Class bit for the digits 0-9.
+     */
+    public static final int DIGIT = 1;
+
+    /**
+     * Class bit for the capital letters A-Z.
+     */
+    public static final int UPPER = 1 << 1;
+
+    /**
+     * Class bit for the lower case letters a-z.
+     */
+    public static final int LOWER = 1 << 2;
+
+    /**
+     * Class bit for the special ascii characters (i.e !, @, #, $, %, ^ etc).
+     */
+    public static final int SPECIAL = 1 << 3;
+
+    /**
+     * Class bit for the space character.
+     */
+    public static final int SPACE = 1 << 4;
+
+    /**
+     * Rules used for new registrations: 10 to 40 characters, no spaces, and at least
+     * one special character, one capital letter and one number.
+     */
+    public static final PasswordPolicy DEFAULT = new PasswordPolicy(10, 40, SPECIAL | UPPER | DIGIT, SPACE);
+
+    /**
+     * Number of entries in the ASCII class table.
+     */
+    private static final int ASCII_SIZE = 128;
+
+    /**
+     * Class bits of every ASCII character.
+     */
+    private static final byte[] CLASS_TABLE = buildClassTable();
+
+    /**
+     * Minimum password length.
+     */
+    private final int myMinLength;
+
+    /**
+     * Maximum password length.
+     */
+    private final int myMaxLength;
+
+    /**
+     * Classes that must each appear at least once.
+     */
+    private final int myRequiredClasses;
+
+    /**
+     * Classes that must not appear at all.
+     */
+    private final int myForbiddenClasses;
+
+    /**
+     * Lower case substrings the password may not contain, compared ignoring case.
+     */
+    private final String[] myBannedSubstrings;
+
+    /**
+     * Creates a password policy.
+     *
+     * @param theMinLength minimum password length
+     * @param theMaxLength maximum password length
+     * @param theRequiredClasses class bits that must each appear
+     * @param theForbiddenClasses class bits that must not appear
+     * @param theBannedSubstrings substrings the password may not contain, ignoring case
+     */
+    public PasswordPolicy(final int theMinLength, final int theMaxLength, final int theRequiredClasses,
+                          final int theForbiddenClasses, final String... theBannedSubstrings) {
+        if (theMinLength < 0 || theMaxLength < theMinLength) {
+            throw new IllegalArgumentException();
+        }
+        myMinLength = theMinLength;
+        myMaxLength = theMaxLength;
+        myRequiredClasses = theRequiredClasses;
+        myForbiddenClasses = theForbiddenClasses;
+        myBannedSubstrings = new String[theBannedSubstrings.length];
+        for (int i = 0; i < theBannedSubstrings.length; i++) {
+            if (theBannedSubstrings[i].isEmpty()) {
+                throw new IllegalArgumentException();
+            }
+            myBannedSubstrings[i] = theBannedSubstrings[i].toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * Returns a copy of this policy with extra banned substrings.
+     *
+     * @param theBannedSubstrings more substrings the password may not contain
+     * @return the extended policy
+     */
+    public PasswordPolicy withBannedSubstrings(final String... theBannedSubstrings) {
+        final String[] banned = new String[myBannedSubstrings.length + theBannedSubstrings.length];
+        System.arraycopy(myBannedSubstrings, 0, banned, 0, myBannedSubstrings.length);
+        System.arraycopy(theBannedSubstrings, 0, banned, myBannedSubstrings.length,
+                         theBannedSubstrings.length);
+        return new PasswordPolicy(myMinLength, myMaxLength, myRequiredClasses, myForbiddenClasses, banned);
+    }
+
+    /**
+     * Class bits of a character.
+     *
+     * @param theChar any character
+     * @return its class bits, 0 for characters outside ASCII
+     */
+    public static int classify(final char theChar) {
+        int result = 0;
+        if (theChar < ASCII_SIZE) {
+            result = CLASS_TABLE[theChar];
+        }
+        return result;
+    }
+
+    /**
+     * Checks a password against every rule of this policy.
+     *
+     * @param thePassword the password to check
+     * @return true if the password satisfies the policy
+     */
+    public boolean isValid(final String thePassword) {
+        Objects.requireNonNull(thePassword);
+        final int length = thePassword.length();
+        boolean result = length >= myMinLength && length <= myMaxLength;
+        int seen = 0;
+        for (int i = 0; result && i < length; i++) {
+            seen |= classify(thePassword.charAt(i));
+            result = (seen & myForbiddenClasses) == 0 && !bannedAt(thePassword, i);
+        }
+        return result && (seen & myRequiredClasses) == myRequiredClasses;
+    }
+
+    /**
+     * Checks whether a banned substring starts at an index.
+     *
+     * @param thePassword the password
+     * @param theIndex the start index
+     * @return true if some banned substring matches at the index
+     */
+    private boolean bannedAt(final String thePassword, final int theIndex) {
+        boolean result = false;
+        for (int i = 0; !result && i < myBannedSubstrings.length; i++) {
+            final String banned = myBannedSubstrings[i];
+            result = thePassword.regionMatches(true, theIndex, banned, 0, banned.length());
+        }
+        return result;
+    }
+
+    /**
+     * Builds the ASCII class table.
+     *
+     * @return class bits indexed by character
+     */
+    private static byte[] buildClassTable() {
+        final byte[] table = new byte[ASCII_SIZE];
+        for (char c = '0'; c <= '9'; c++) {
+            table[c] = DIGIT;
+        }
+        for (char c = 'A'; c <= 'Z'; c++) {
+            table[c] = UPPER;
+        }
+        for (char c = 'a'; c <= 'z'; c++) {
+            table[c] = LOWER;
+        }
+        // Special characters are every printable non-alphanumeric plus DEL (33-47, 58-64, 91-96, 123-127)
+        for (char c = '!'; c < ASCII_SIZE; c++) {
+            if (table[c] == 0) {
+                table[c] = SPECIAL;
+            }
+        }
+        table[' '] = SPACE;
+        return table;
+    }
+}
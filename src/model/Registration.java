@@ -7,20 +7,39 @@
 
 package model;
 
-import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Scanner;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import utility.FileLoader;
+import utility.UserFileWriter;
+import utility.UserJournal;
 
 /**
  * Represents User Sign-in Object.
  * 
  * Methods of this class throw NullPointerException if required parameters are null.
  * 
+ * The user list is a concurrent map, so {@link #register(User)} and
+ * {@link #authenticate(String, String)} may be called from many threads at once:
+ * registration is an atomic check-and-insert and authentication is a lock-free read.
+ * 
+ * Passwords of new users are hashed with a {@link PasswordHasher} (see
+ * {@link #newUser(String, String, boolean)}); users loaded with legacy plaintext
+ * passwords still authenticate, and their password is hashed and journaled on
+ * their first successful login. Successful logins against a hash are remembered
+ * for a short time in a {@link CredentialCache}, so repeated logins skip the hash.
+ * Interactive logins go through {@link #attemptLogin(String, String, String)},
+ * which a {@link LoginGuard} rate-limits per user name and per source; a successful
+ * login refills the user name's attempts. Trusted callers can share the users
+ * under another guard (see {@link #withLoginGuard(LoginGuard)}).
+ * 
  * @author roys4
  * @version Winter 2020
  */
@@ -33,19 +52,20 @@ public class Registration {
     public static final String USERFILE_NAME = "./resources/registeredusers.txt";
     
     /**
-     * List of special ascii characters (i.e !, @, #, $, %, ^ etc).
-     * Used for checking if new user-entered password contains any special characters.
-     * The only reason this is stored as a field is so that we don't have to
-     * constantly generate a new special character list every time we check
-     * for special characters in the password.
+     * Login source of the console.
      */
-    private static final List<Character> SPECIAL_CHARACTERS = asciiSpecialCharacters();
-    
+    public static final String CONSOLE_SOURCE = "console";
+
     /**
      * Prompt to ask for user password.
      */
     private static final String ASK_PASSWORD = "Password: ";
 
+    /**
+     * Seconds a registration waits for its user to be persisted.
+     */
+    private static final int JOURNAL_TIMEOUT_SECONDS = 30;
+
     /**
      * String used to jump down 2 lines when printing to console.
      */
@@ -59,7 +79,27 @@ public class Registration {
     /**
      * The registered user list for sign-in.
      */
-    private final Map<String, User> myUserList;
+    private final ConcurrentMap<String, User> myUserList;
+    
+    /**
+     * Persists new registrations.
+     */
+    private final UserJournal myUserJournal;
+
+    /**
+     * Hashes new passwords and verifies stored ones.
+     */
+    private final PasswordHasher myHasher;
+
+    /**
+     * Recently verified logins.
+     */
+    private final CredentialCache myCredentialCache;
+
+    /**
+     * Limits login attempts.
+     */
+    private final LoginGuard myLoginGuard;
 
     /**
      * Constructs a sign-in/registration system.
@@ -67,7 +107,81 @@ public class Registration {
      * 
      */
     public Registration() {
-        myUserList = FileLoader.readItemsFromFile(USERFILE_NAME);
+        this(FileLoader.readItemsFromFile(USERFILE_NAME), UserFileWriter.forFile(USERFILE_NAME));
+    }
+    
+    /**
+     * Constructs a sign-in/registration system over already loaded users, for example
+     * the map returned by {@link utility.UserStore#load()} with the store as journal.
+     * 
+     * @param theUsers registered users, keyed by user name
+     * @param theJournal where new registrations are persisted
+     */
+    public Registration(final Map<String, User> theUsers, final UserJournal theJournal) {
+        this(theUsers, theJournal, PasswordHasher.DEFAULT,
+             new CredentialCache(CredentialCache.DEFAULT_MAX_ENTRIES, CredentialCache.DEFAULT_TTL_SECONDS,
+                                 TimeUnit.SECONDS));
+    }
+    
+    /**
+     * Constructs a sign-in/registration system with its own password hashing cost
+     * and login cache.
+     * 
+     * @param theUsers registered users, keyed by user name
+     * @param theJournal where new registrations are persisted
+     * @param theHasher hashes new passwords and verifies stored ones
+     * @param theCredentialCache remembers verified logins
+     */
+    public Registration(final Map<String, User> theUsers, final UserJournal theJournal,
+                        final PasswordHasher theHasher, final CredentialCache theCredentialCache) {
+        this(theUsers, theJournal, theHasher, theCredentialCache, new LoginGuard());
+    }
+    
+    /**
+     * Constructs a sign-in/registration system with its own password hashing cost,
+     * login cache and login limits.
+     * 
+     * @param theUsers registered users, keyed by user name
+     * @param theJournal where new registrations are persisted
+     * @param theHasher hashes new passwords and verifies stored ones
+     * @param theCredentialCache remembers verified logins
+     * @param theLoginGuard limits login attempts
+     */
+    public Registration(final Map<String, User> theUsers, final UserJournal theJournal,
+                        final PasswordHasher theHasher, final CredentialCache theCredentialCache,
+                        final LoginGuard theLoginGuard) {
+        myUserList = new ConcurrentHashMap<String, User>(Objects.requireNonNull(theUsers));
+        myUserJournal = Objects.requireNonNull(theJournal);
+        myHasher = Objects.requireNonNull(theHasher);
+        myCredentialCache = Objects.requireNonNull(theCredentialCache);
+        myLoginGuard = Objects.requireNonNull(theLoginGuard);
+    }
+    
+    /**
+     * Constructs a sign-in/registration system sharing another one's users, journal,
+     * hasher and login cache, with its own login limits.
+     * 
+     * @param theOther the registration to share
+     * @param theLoginGuard limits login attempts
+     */
+    private Registration(final Registration theOther, final LoginGuard theLoginGuard) {
+        myUserList = theOther.myUserList;
+        myUserJournal = theOther.myUserJournal;
+        myHasher = theOther.myHasher;
+        myCredentialCache = theOther.myCredentialCache;
+        myLoginGuard = Objects.requireNonNull(theLoginGuard);
+    }
+    
+    /**
+     * A registration over the same users that limits logins with another guard, for
+     * example {@link LoginGuard#UNLIMITED} for a trusted batch run. Registrations and
+     * upgraded passwords made through either one are seen by both.
+     * 
+     * @param theLoginGuard limits login attempts
+     * @return the registration
+     */
+    public Registration withLoginGuard(final LoginGuard theLoginGuard) {
+        return new Registration(this, theLoginGuard);
     }
 
     /**
@@ -114,19 +228,26 @@ public class Registration {
 
         // Check for which option user entered and sign in accordingly
         if (option == 1) {    
-            newUserRegistration(username);
-            System.out.println("Registration Successful");
-            result = true;
+            result = newUserRegistration(username);
+            if (result) {
+                System.out.println("Registration Successful");
+            }
         } else {
             String password = setPassword();
+            LoginResult outcome = attemptLogin(username, password, CONSOLE_SOURCE);
             // Repeat asking for user/pass if entered username doesn't exist or if it does exits and password is wrong
-            while (!myUserList.containsKey(username) || !myUserList.get(username).getMyPassword().equals(password)) {
+            while (outcome != LoginResult.SUCCESS) {
                 // "Enter Username and Password" Prompt + variables to store said username and password
-                System.out.println("\n" + "Wrong Credentials");
+                if (outcome == LoginResult.THROTTLED) {
+                    System.out.println("\n" + "Too many attempts, please wait before trying again");
+                } else {
+                    System.out.println("\n" + "Wrong Credentials");
+                }
                 System.out.print("Enter User Name: ");
                 username = myScanner.nextLine();
                 System.out.print("Enter Password: ");
                 password = myScanner.nextLine();
+                outcome = attemptLogin(username, password, CONSOLE_SOURCE);
             }
             login(username, password);
             System.out.println("Login Successful");
@@ -155,12 +276,103 @@ public class Registration {
         }
         return true;
     }
+    
+    /**
+     * Checks a user name and password against the registered users without locking.
+     * 
+     * @param theUsername username for sign-in
+     * @param thePassword password for sign-in
+     * @return true if the user exists and the password matches
+     */
+    public boolean authenticate(final String theUsername, final String thePassword) {
+        Objects.requireNonNull(theUsername);
+        Objects.requireNonNull(thePassword);
+        final User user = myUserList.get(theUsername);
+        boolean result = false;
+        if (user == null) {
+            // As slow as a wrong password, so timing does not tell which names exist
+            result = myHasher.verifyMissing(thePassword);
+        } else {
+            final String stored = user.getMyPassword();
+            if (PasswordHasher.isHashed(stored)) {
+                result = myCredentialCache.isVerified(theUsername, thePassword, stored);
+                if (!result && myHasher.verify(thePassword, stored)) {
+                    myCredentialCache.put(theUsername, thePassword, stored);
+                    result = true;
+                }
+            } else {
+                result = myHasher.verify(thePassword, stored);
+                if (result) {
+                    upgrade(user, thePassword);
+                }
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Replaces the legacy plaintext password of a user who just logged in with a
+     * hash and journals the upgraded user. If the journal fails, the login still
+     * succeeds and the file keeps the plaintext until the next login upgrades it.
+     * 
+     * @param theUser the user with a plaintext password
+     * @param thePassword the verified password
+     */
+    private void upgrade(final User theUser, final String thePassword) {
+        final User upgraded = new User(theUser.getMyName(), myHasher.hash(thePassword), theUser.isVIP());
+        // Only if no concurrent login or registration changed the user meanwhile
+        if (myUserList.replace(theUser.getMyName(), theUser, upgraded)) {
+            myCredentialCache.put(theUser.getMyName(), thePassword, upgraded.getMyPassword());
+            persist(upgraded);
+        }
+    }
+    
+    /**
+     * Checks a login attempt from a source, unless the user name or the source has
+     * made too many attempts recently, in which case the password is not checked.
+     * A successful login refills the user name's attempts.
+     * 
+     * @param theUsername username for sign-in
+     * @param thePassword password for sign-in
+     * @param theSource where the attempt comes from, such as a client address
+     * @return the outcome
+     */
+    public LoginResult attemptLogin(final String theUsername, final String thePassword, final String theSource) {
+        Objects.requireNonNull(thePassword);
+        LoginResult result = LoginResult.THROTTLED;
+        if (myLoginGuard.tryAcquire(theUsername, theSource)) {
+            result = LoginResult.WRONG_CREDENTIALS;
+            if (authenticate(theUsername, thePassword)) {
+                myLoginGuard.refund(theUsername);
+                result = LoginResult.SUCCESS;
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Creates a user whose password is stored hashed, ready for {@link #register(User)}.
+     * 
+     * @param theUsername the user name
+     * @param thePassword the plaintext password
+     * @param theVIPStatus VIP status
+     * @return the new user
+     */
+    public User newUser(final String theUsername, final String thePassword, final boolean theVIPStatus) {
+        Objects.requireNonNull(thePassword);
+        if (thePassword.isEmpty()) {
+            throw new IllegalArgumentException();
+        }
+        return new User(theUsername, myHasher.hash(thePassword), theVIPStatus);
+    }
 
     /**
-     * Adds a user to the registered user list.
+     * Adds a user to the registered user list if the user name is still free.
+     * The check and the insert are one atomic step, so of several concurrent
+     * registrations for the same name exactly one succeeds and is persisted.
      * 
      * @param theUser an order to add to this shopping cart
-     * @return true/false returns if registration is successful
+     * @return true if the user was registered, false if the user name is taken
      */
     public boolean register(final User theUser) {
 
@@ -169,13 +381,41 @@ public class Registration {
         Objects.requireNonNull(USERFILE_NAME);
         Objects.requireNonNull(theUser);
 
-        // Write to file
-        FileLoader.writeUserToFile(USERFILE_NAME, theUser);
-        myUserList.put(theUser.getMyName(), theUser);
-        return true;
+        // Claim the user name first so only one racing registration gets persisted
+        boolean result = myUserList.putIfAbsent(theUser.getMyName(), theUser) == null;
+        if (result) {
+            result = persist(theUser);
+            if (!result) {
+                // Not on disk, so not registered; the name is free again
+                myUserList.remove(theUser.getMyName(), theUser);
+            }
+        }
+        return result;
 
     }
 
+    /**
+     * Hands a user to the journal and waits, for a bounded time, until it is on disk.
+     * A write that times out may still complete later, so such a user can reappear
+     * after a restart. A journal that throws, for instance on a user it cannot
+     * encode, counts as a failed write.
+     * 
+     * @param theUser the user to persist
+     * @return true if the journal confirmed the write
+     */
+    private boolean persist(final User theUser) {
+        boolean result = false;
+        try {
+            myUserJournal.append(theUser).get(JOURNAL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            result = true;
+        } catch (final ExecutionException | TimeoutException | RuntimeException e) {
+            e.printStackTrace();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return result;
+    }
+
     /**
      * Empties the user list.
      */
@@ -220,8 +460,9 @@ public class Registration {
      * and that the password is strong enough.
      * 
      * @param theUsername the new user's username
+     * @return true if the user was registered, false if the user could not be saved
      */
-    private void newUserRegistration(final String theUsername) {
+    private boolean newUserRegistration(final String theUsername) {
         
         String username = theUsername;
         //ensure username entered doesn't already exist in myUserList
@@ -241,8 +482,20 @@ public class Registration {
         // Get VIP Status
         System.out.print("isVIP(true/false): ");
         final boolean isVIP = myScanner.nextBoolean();
+        myScanner.nextLine();
         
-        register(new User(username, password, isVIP));
+        // Someone else may have taken the name while we were asking for the password
+        boolean result = register(newUser(username, password, isVIP));
+        while (!result && myUserList.containsKey(username)) {
+            System.out.print("User already exists, enter different user name: ");
+            username = myScanner.nextLine();
+            result = register(newUser(username, password, isVIP));
+        }
+        if (!result) {
+            // The name is free, so the user file failed; asking for another name would not help
+            System.out.println("Could not save user " + username + ", please try again later");
+        }
+        return result;
     }
     
     /**
@@ -261,15 +514,7 @@ public class Registration {
      * @return Tells us if the user entered password is strong or weak
      */
     private static boolean hasStrongPassword(final String thePassword) {
-        final int minCharacters = 10;
-        final int maxCharacters = 40;
-
-        return thePassword.length() >= minCharacters         // Password must have minimum of 10 characters
-               && thePassword.length() <= maxCharacters      // Password cannot exceed 40 characters
-               && !thePassword.contains(" ")                 // Password cannot contain empty spaces 
-               && areThereSpecialCharacters(thePassword)     // Password contains at least one special character
-               && areThereCapitalLetters(thePassword)        // Password has at least one capital letter
-               && areThereNumbers(thePassword);              // Password has at least one numerical digit
+        return PasswordPolicy.DEFAULT.isValid(thePassword);
     }
     
     /**
@@ -305,113 +550,4 @@ public class Registration {
         return password;
     }
 
-    /**
-     * Utility method to determine if a User's password contains a numerical digit.
-     * 
-     * @param thePassword User password
-     * @return truth value as to whether a number character is in the User's password
-     */
-    private static boolean areThereNumbers(final String thePassword) {
-        boolean result = true;
-        final int start = 48;
-        final int end = 57;
-        final List<Character> numbers = asciiCharacters(start, end);
-        
-        //check each character in password for numbers
-        for (int i = 0; i < thePassword.length(); i++) {
-            if (numbers.contains(thePassword.charAt(i))) {
-                result = true;
-            }
-        }
-        return result;
-    }
-
-    /**
-     * Utility method to determine if there is a capital letter in the User account's password.
-     * 
-     * @param thePassword User password
-     * @return boolean that determines if the password contains a capital letter.
-     */
-    private static boolean areThereCapitalLetters(final String thePassword) {
-        boolean result = false;
-        final int start = 65;
-        final int end = 90;
-        final List<Character> capitalLetters = asciiCharacters(start, end);
-        
-        //Check each character in password for capital letters
-        for (int i = 0; i < thePassword.length(); i++) {
-            if (capitalLetters.contains(thePassword.charAt(i))) {
-                result = true;
-            }
-        }
-        return result;
-    }
-
-    /**
-     * Utility method to determine if the password on a User account has special characters.
-     * Works in tandem with asciiSpecialCharacters() method.
-     * 
-     * @param thePassword User password
-     * @return boolean that determines if the password on the User account has special
-     *         characters
-     */
-    private static boolean areThereSpecialCharacters(final String thePassword) {
-        boolean result = false;
-        //Check each character in password for special characters
-        for (int i = 0; i < thePassword.length(); i++) {
-            if (SPECIAL_CHARACTERS.contains(thePassword.charAt(i))) {
-                result = true;
-            }
-        }
-        
-        return result;
-    }
-
-    /**
-     * Utility method that generates a list of all special ascii characters.
-     * 
-     * @return List of all special ascii characters
-     */
-    private static List<Character> asciiSpecialCharacters() {
-        //List to store special characters
-        final List<Character> charList = new ArrayList<Character>();
-        
-        //All the "bounds" are boundary values of the special ascii characters.
-        //The range between each pair of bounds contain the special characters.
-        final int bound1Start = 33;
-        final int bound1End = 47;
-        
-        final int bound2Start = 58;
-        final int bound2End = 64;
-        
-        final int bound3Start = 91;
-        final int bound3End = 96;
-        
-        final int bound4Start = 123;
-        final int bound4End = 127;
-        
-        //Array for holding bounds of special ascii characters - used in for-loop below
-        final int[] asciiCharBounds = {bound1Start, bound1End, bound2Start, bound2End, bound3Start, bound3End, bound4Start, bound4End};
-        
-        //for-loop cycles through the ascii special character bounds
-        for (int i = 0; i < asciiCharBounds.length; i += 2) {
-            charList.addAll(asciiCharacters(asciiCharBounds[i], asciiCharBounds[i + 1])); //adds ascii characters within range of each pair of bounds to charList
-        }
-        return charList;
-    }
-    
-    /**
-     * Utility method used to generate a list of ascii characters within a given range.
-     * @param theStart starting point of ascii characters to add into character list
-     * @param theEnd ending point of ascii characters to add into character list
-     * @return list of a given range of ascii characters
-     */
-    private static List<Character> asciiCharacters(final int theStart, final int theEnd) {
-        final List<Character> charList = new ArrayList<Character>();
-        for (int i = theStart; i <= theEnd; i++) {
-            charList.add((char) i);
-        }
-        return charList;
-    }
-
 }
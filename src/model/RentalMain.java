@@ -7,6 +7,24 @@
 
 package model;
 
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import model.vehicles.ColumnarVehicleStore;
+import utility.BlockIdAllocator;
+import utility.SessionExecutors;
+import utility.UserFileCompactor;
+import utility.UserFileWriter;
+import utility.UserStore;
+
 /**
  * RentalMain provides the main method for a simple VehicleRental application.
  * 
@@ -15,6 +33,80 @@ package model;
  */
 public final class RentalMain {
 
+    /**
+     * State file of the bill ID allocator, so bill IDs are not reused after a restart.
+     */
+    public static final String BILLIDS_FILE = "./resources/billids.state";
+
+    /**
+     * System property selecting where users are stored: {@value #BINARY_USER_STORE}
+     * for the snapshot and write-ahead log of {@link UserStore}, otherwise the text
+     * user file.
+     */
+    public static final String USER_STORE_PROPERTY = "rentz.userstore";
+
+    /**
+     * Value of {@value #USER_STORE_PROPERTY} that selects the binary user store.
+     */
+    public static final String BINARY_USER_STORE = "binary";
+
+    /**
+     * Snapshot file of the binary user store.
+     */
+    public static final String USER_SNAPSHOT_FILE = "./resources/registeredusers.snapshot";
+
+    /**
+     * Write-ahead log of the binary user store.
+     */
+    public static final String USER_WAL_FILE = "./resources/registeredusers.wal";
+
+    /**
+     * System property selecting where vehicles are kept: {@value #COLUMNAR_FLEET_STORE}
+     * for the off-heap {@link ColumnarVehicleStore}, otherwise heap objects.
+     */
+    public static final String FLEET_STORE_PROPERTY = "rentz.fleetstore";
+
+    /**
+     * Value of {@value #FLEET_STORE_PROPERTY} that selects the columnar vehicle store.
+     */
+    public static final String COLUMNAR_FLEET_STORE = "columnar";
+
+    /**
+     * Command line option that runs a command file instead of the menus.
+     */
+    public static final String BATCH_OPTION = "--batch";
+
+    /**
+     * Command line option that serves sessions over TCP instead of the console menus.
+     */
+    public static final String SERVE_OPTION = "--serve";
+
+    /**
+     * Command line option that serves every TCP session on its own (virtual, where
+     * available) thread.
+     */
+    public static final String SERVE_THREADS_OPTION = "--serve-threads";
+
+    /**
+     * Command line option that compacts the user file to one line per user and exits.
+     */
+    public static final String COMPACT_USERS_OPTION = "--compact-users";
+
+    /**
+     * Hours between user file compactions while serving.
+     */
+    private static final int COMPACT_INTERVAL_HOURS = 24;
+
+    /**
+     * Write-ahead log size above which the binary user store is compacted.
+     */
+    private static final long WAL_COMPACT_BYTES = 1 << 20;
+
+    /**
+     * Size of the console buffer in batch mode.
+     */
+    private static final int OUTPUT_BUFFER_BYTES = 1 << 16;
+
     /**
      * A private constructor, to prevent external instantiation.
      */
@@ -23,19 +115,177 @@ public final class RentalMain {
     }
 
     /**
-     * Main method for Rentz.
+     * Main method for Rentz. With "--batch FILE" the commands in FILE are run instead
+     * of the interactive menus (see {@link CommandBatch}); with "--serve PORT" the
+     * menus are served to any number of TCP clients until the process is stopped
+     * (see {@link RentalServer}); "--serve-threads PORT" does the same with a thread
+     * per session (see {@link SessionThreadServer}); "--compact-users" rewrites the
+     * user file with one line per user (see {@link UserFileCompactor}). The servers
+     * also compact the user file once a day while they run, starting a day after
+     * they start, so a restart does not delay taking connections.
+     * With -D{@value #USER_STORE_PROPERTY}={@value #BINARY_USER_STORE} users are kept
+     * in the binary {@link UserStore} instead, which is created from the text user
+     * file on first start and which "--compact-users" folds into a new snapshot.
+     * With -D{@value #FLEET_STORE_PROPERTY}={@value #COLUMNAR_FLEET_STORE} the fleet
+     * is kept off the heap in a {@link ColumnarVehicleStore}.
      * 
      * @param theArgs argument for main method.
+     * @throws IOException if the bill ID state, the rental ledger, the command file
+     *         or the server port cannot be opened
+     * @throws InterruptedException if interrupted while serving
      */
-    public static void main(final String[] theArgs) {
-        final Registration reg = new Registration();
-        if (reg.printSignin()) {
-            final RentalManager rentalManager = new RentalManager(reg);
-            rentalManager.generateInventory();
+    public static void main(final String[] theArgs) throws IOException, InterruptedException {
+        final UserStore userStore = openUserStore();
+        final Registration reg = openRegistration(userStore);
+        if (theArgs.length == 2 && BATCH_OPTION.equals(theArgs[0])) {
+            final RentalManager rentalManager = startRentalManager(reg);
+            // No prompts and one flush per buffer instead of per line
+            final PrintStream console = System.out;
+            final PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out),
+                                                                             OUTPUT_BUFFER_BYTES), false);
+            System.setOut(out);
+            try {
+                final CommandBatch batch = new CommandBatch(reg, rentalManager, out);
+                final long start = System.nanoTime();
+                batch.run(Paths.get(theArgs[1]));
+                batch.printReport(System.nanoTime() - start);
+            } finally {
+                out.flush();
+                System.setOut(console);
+                rentalManager.closeLedger();
+            }
+        } else if (theArgs.length == 2 && SERVE_OPTION.equals(theArgs[0])) {
+            final RentalManager rentalManager = startRentalManager(reg);
+            final RentalServer server = new RentalServer(reg, rentalManager,
+                                                         new InetSocketAddress(Integer.parseInt(theArgs[1])));
+            closeOnExit(server, rentalManager);
+            server.start();
+            scheduleUserCompaction(userStore);
+            System.out.println("Serving on " + server.getMyAddress());
+            server.awaitClose();
+        } else if (theArgs.length == 2 && SERVE_THREADS_OPTION.equals(theArgs[0])) {
+            final RentalManager rentalManager = startRentalManager(reg);
+            final SessionThreadServer server =
+                new SessionThreadServer(reg, rentalManager, new InetSocketAddress(Integer.parseInt(theArgs[1])));
+            closeOnExit(server, rentalManager);
+            server.start();
+            scheduleUserCompaction(userStore);
+            System.out.println("Serving on " + server.getMyAddress() + ", virtual threads: "
+                               + SessionExecutors.isVirtualThreadsAvailable());
+            server.awaitClose();
+        } else if (theArgs.length == 1 && COMPACT_USERS_OPTION.equals(theArgs[0])) {
+            if (userStore == null) {
+                final UserFileWriter writer = UserFileWriter.forFile(Registration.USERFILE_NAME);
+                System.out.println(new UserFileCompactor(writer).compact());
+                writer.close();
+            } else {
+                System.out.println("User store compacted to " + userStore.compact() + " users");
+                userStore.close();
+            }
+        } else if (reg.printSignin()) {
+            final RentalManager rentalManager = startRentalManager(reg);
             rentalManager.printOptions();
+            rentalManager.closeLedger();
             reg.getMyScanner().close();
         }
         
     }
 
+    /**
+     * Closes a server and then the ledger when the process is stopped, which is the
+     * only way out of serving.
+     * 
+     * @param theServer the server
+     * @param theRentalManager the rental manager it serves
+     */
+    private static void closeOnExit(final Closeable theServer, final RentalManager theRentalManager) {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                theServer.close();
+            } catch (final IOException e) {
+                e.printStackTrace();
+            }
+            theRentalManager.closeLedger();
+        }));
+    }
+
+    /**
+     * Opens the binary user store if {@value #USER_STORE_PROPERTY} selects it.
+     *
+     * @return the store, or null when users are kept in the text user file
+     */
+    private static UserStore openUserStore() {
+        UserStore result = null;
+        if (BINARY_USER_STORE.equals(System.getProperty(USER_STORE_PROPERTY))) {
+            result = new UserStore(Paths.get(USER_SNAPSHOT_FILE), Paths.get(USER_WAL_FILE));
+        }
+        return result;
+    }
+
+    /**
+     * Loads the registered users from the binary store, or from the text user file
+     * when there is no store.
+     *
+     * @param theUserStore the binary user store, or null
+     * @return the registration system
+     * @throws IOException if the user store cannot be loaded
+     */
+    private static Registration openRegistration(final UserStore theUserStore) throws IOException {
+        final Registration result;
+        if (theUserStore == null) {
+            result = new Registration();
+        } else {
+            result = new Registration(theUserStore.loadOrImport(Registration.USERFILE_NAME), theUserStore);
+        }
+        return result;
+    }
+
+    /**
+     * Compacts the user file every COMPACT_INTERVAL_HOURS on a daemon thread, the
+     * first time one interval from now, while sessions keep registering users. The
+     * binary user store is checked as often and compacted once its write-ahead log
+     * is large. A failed run is reported and does not stop later runs.
+     *
+     * @param theUserStore the binary user store, or null
+     */
+    private static void scheduleUserCompaction(final UserStore theUserStore) {
+        final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(SessionExecutors.daemonThreads("user-compactor"));
+        if (theUserStore == null) {
+            final UserFileCompactor compactor =
+                new UserFileCompactor(UserFileWriter.forFile(Registration.USERFILE_NAME));
+            scheduler.scheduleWithFixedDelay(() -> {
+                try {
+                    compactor.compact();
+                } catch (final IOException | RuntimeException e) {
+                    // Thrown out of the task, it would cancel every later run
+                    e.printStackTrace();
+                }
+            }, COMPACT_INTERVAL_HOURS, COMPACT_INTERVAL_HOURS, TimeUnit.HOURS);
+        } else {
+            theUserStore.scheduleCompaction(scheduler, TimeUnit.HOURS.toMillis(COMPACT_INTERVAL_HOURS),
+                                            WAL_COMPACT_BYTES);
+        }
+    }
+
+    /**
+     * Creates the rental manager with persistent bill IDs, its fleet and its ledger.
+     * 
+     * @param theRegistration the users
+     * @return the ready rental manager
+     * @throws IOException if the bill ID state or the rental ledger cannot be opened
+     */
+    private static RentalManager startRentalManager(final Registration theRegistration) throws IOException {
+        final RentalManager rentalManager =
+            new RentalManager(theRegistration, new BlockIdAllocator(BlockIdAllocator.DEFAULT_BLOCK_SIZE,
+                                                                    Paths.get(BILLIDS_FILE)));
+        ColumnarVehicleStore fleetStore = null;
+        if (COLUMNAR_FLEET_STORE.equals(System.getProperty(FLEET_STORE_PROPERTY))) {
+            fleetStore = new ColumnarVehicleStore();
+        }
+        rentalManager.generateInventory(fleetStore);
+        rentalManager.openLedger(Paths.get(RentalManager.LEDGERFILE_NAME));
+        return rentalManager;
+    }
+
 }
@@ -5,14 +5,37 @@
 
 package model;
 
-import java.util.HashMap;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
 import model.vehicles.AbstractVehicle;
 import model.vehicles.Bicycle;
 import model.vehicles.Car;
+import model.vehicles.ColumnarVehicleStore;
 import model.vehicles.MotorBike;
+import model.vehicles.VehicleFeature;
+import model.vehicles.VehicleType;
+import utility.BlockIdAllocator;
+import utility.FleetLoader;
+import utility.IdAllocator;
+import utility.IntObjectMap;
+import utility.PhaseTimings;
+import utility.RentalLedger;
+import utility.RentalLedger.BillEntry;
+import utility.SessionExecutors;
+import utility.TaskScope;
 
 /**
  * Rental Manager generates the vehicle inventory based on a registration object.
@@ -28,14 +51,69 @@ public class RentalManager {
     public static final String ASTERISK_LINE = "**********************";
     
     /**
-     * Contains list of all vehicles in rental system.
+     * Fleet file loaded by {@link #generateInventory()}.
      */
-    private final Map<Integer, AbstractVehicle> myVehicleList = new HashMap<Integer, AbstractVehicle>();
+    public static final String FLEETFILE_NAME = "./resources/fleet.txt";
     
     /**
-     * Contains list of all bills in rental system.
+     * Name of the timing phase that presizes the inventory.
      */
-    private final Map<Integer, Bill> myBills;
+    public static final String PRESIZE_PHASE = "presize";
+    
+    /**
+     * Name of the timing phase that indexes loaded vehicles.
+     */
+    public static final String INDEX_PHASE = "index";
+    
+    /**
+     * Ledger file opened by RentalMain.
+     */
+    public static final String LEDGERFILE_NAME = "./resources/rentals.ledger";
+    
+    /**
+     * Name of the timing phase that restores recovered rentals and bills.
+     */
+    public static final String RESTORE_PHASE = "restore";
+    
+    /**
+     * Contains list of all vehicles in rental system, keyed by vehicle ID.
+     */
+    private final IntObjectMap<AbstractVehicle> myVehicleList = new IntObjectMap<AbstractVehicle>();
+    
+    /**
+     * Availability, type and feature index over myVehicleList.
+     */
+    private final VehicleInventory myInventory = new VehicleInventory();
+    
+    /**
+     * Index of myVehicleList by VIN.
+     */
+    private final VinIndex myVinIndex = new VinIndex();
+    
+    /**
+     * Contains list of all bills in rental system, keyed by bill ID.
+     */
+    private final IntObjectMap<Bill> myBills;
+    
+    /**
+     * Source of unique bill IDs.
+     */
+    private final IdAllocator myBillIDs;
+    
+    /**
+     * Parallel bill computation for batches of rentals.
+     */
+    private final BatchBilling myBatchBilling = new BatchBilling();
+    
+    /**
+     * Demand-based rates, or null to charge every vehicle's own rate.
+     */
+    private volatile DemandPricing myPricing;
+    
+    /**
+     * Durable record of rentals, drop-offs and bills, or null when nothing is persisted.
+     */
+    private volatile RentalLedger myLedger;
     
     /**
      * Registration object to be used by Rental Manager.
@@ -52,23 +130,194 @@ public class RentalManager {
      * @param theRegistration Registration file
      */
     public RentalManager(final Registration theRegistration) {
+        this(theRegistration, new BlockIdAllocator(BlockIdAllocator.DEFAULT_BLOCK_SIZE));
+    }
+    
+    /**
+     * Initializes myRegistration with a registration object and bill IDs with an allocator,
+     * for example a persistent one so bill IDs survive restarts (needed with a ledger, so
+     * new bills do not reuse recovered bill IDs).
+     * @param theRegistration Registration file
+     * @param theBillIDs Bill ID allocator
+     */
+    public RentalManager(final Registration theRegistration, final IdAllocator theBillIDs) {
         myRegistration = theRegistration;
-        myBills = new HashMap<Integer, Bill>();
+        myBillIDs = Objects.requireNonNull(theBillIDs);
+        myBills = new IntObjectMap<Bill>();
         myScanner = myRegistration.getMyScanner();
     }
     
     /**
-     * Generates the vehicle inventory for Rentz program.
+     * Generates the vehicle inventory for Rentz program from {@link #FLEETFILE_NAME},
+     * or from the built-in vehicles when there is no fleet file. A fleet file that
+     * cannot be read or is malformed is reported, and the built-in vehicles are used.
      */
     public void generateInventory() {
-        final String cruiser = "Cruiser";
-        final String mountain = "Mountain";
-        final AbstractVehicle[] vehicleList =  {new Car("Fiat", "V100", true, false, false, false), new Car("Outback", "V101", true, true, true, false), new Car("BMW", "V102", true, true, true, true),
-                                                new MotorBike("Bike1", "B100", true, false), new MotorBike("Bike2", "B101", true, true),
-                                                new Bicycle("Roadies", "C100", true, "Road"), new Bicycle(cruiser, "C101", true, cruiser), new Bicycle(mountain, "C102", true, mountain)};
-        for (int i = 0; i < vehicleList.length; i++) {
-            myVehicleList.put(vehicleList[i].getMyVehicleID(), vehicleList[i]);
+        generateInventory(null);
+    }
+    
+    /**
+     * Generates the vehicle inventory like {@link #generateInventory()}, keeping the
+     * vehicles in a columnar store when one is given.
+     * @param theStore Store to keep the vehicles in, or null to keep them on the heap
+     */
+    public void generateInventory(final ColumnarVehicleStore theStore) {
+        final Path fleetFile = Paths.get(FLEETFILE_NAME);
+        boolean loaded = false;
+        if (Files.exists(fleetFile)) {
+            try {
+                loadFleet(fleetFile, theStore);
+                loaded = true;
+            } catch (final IOException | IllegalArgumentException e) {
+                System.out.println("Cannot load " + FLEETFILE_NAME + " (" + e.getMessage()
+                                   + "), using the built-in vehicles");
+            }
+        }
+        if (!loaded) {
+            final String cruiser = "Cruiser";
+            final String mountain = "Mountain";
+            final AbstractVehicle[] vehicleList =  {new Car("Fiat", "V100", true, false, false, false), new Car("Outback", "V101", true, true, true, false), new Car("BMW", "V102", true, true, true, true),
+                                                    new MotorBike("Bike1", "B100", true, false), new MotorBike("Bike2", "B101", true, true),
+                                                    new Bicycle("Roadies", "C100", true, "Road"), new Bicycle(cruiser, "C101", true, cruiser), new Bicycle(mountain, "C102", true, mountain)};
+            addFleet(Arrays.asList(vehicleList), theStore, new PhaseTimings());
+        }
+    }
+    
+    /**
+     * Adds every vehicle of a text or binary fleet file (see {@link FleetLoader}) to the inventory.
+     * @param theFleetFile Vehicle file
+     * @return Time spent reading, parsing, presizing and indexing
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if a VIN is already in the inventory or repeats in
+     *         the file; no vehicle of the file is added then
+     */
+    public PhaseTimings loadFleet(final Path theFleetFile) throws IOException {
+        return loadFleet(theFleetFile, null);
+    }
+    
+    /**
+     * Adds every vehicle of a fleet file like {@link #loadFleet(Path)}, keeping the
+     * vehicles in a columnar store when one is given. The inventory then holds views
+     * of the store's rows, so names, VINs, rates and rental states stay off the heap
+     * and renting changes the stored state.
+     * @param theFleetFile Vehicle file
+     * @param theStore Store to keep the vehicles in, or null to keep them on the heap
+     * @return Time spent reading, parsing, presizing and indexing
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if a VIN is already in the inventory or repeats in
+     *         the file, or a rate is not whole cents; no vehicle of the file is added to
+     *         the inventory then
+     */
+    public PhaseTimings loadFleet(final Path theFleetFile, final ColumnarVehicleStore theStore)
+        throws IOException {
+        final PhaseTimings timings = new PhaseTimings();
+        addFleet(FleetLoader.load(theFleetFile, timings), theStore, timings);
+        return timings;
+    }
+    
+    /**
+     * Adds a vehicle to the inventory.
+     * @param theVehicle Vehicle to add
+     * @throws IllegalArgumentException if a vehicle with the same VIN is already in the inventory
+     */
+    public void addVehicle(final AbstractVehicle theVehicle) {
+        myVinIndex.add(theVehicle);
+        myInventory.add(theVehicle);
+        myVehicleList.put(theVehicle.getMyVehicleID(), theVehicle);
+    }
+    
+    /**
+     * Finds available vehicles of a type with all the given features, in inventory order.
+     * @param theLimit Most vehicles to return
+     * @param theType Vehicle type, or null for any type
+     * @param theFeatures Features every vehicle must have
+     * @return Up to theLimit available vehicles
+     */
+    public List<AbstractVehicle> findAvailable(final int theLimit, final VehicleType theType,
+                                               final VehicleFeature... theFeatures) {
+        return myInventory.findAvailable(theLimit, theType, VehicleFeature.mask(theFeatures));
+    }
+    
+    /**
+     * Finds a vehicle by its VIN, ignoring case.
+     * @param theVIN Vehicle identification number
+     * @return The vehicle, or null if no vehicle has that VIN
+     */
+    public AbstractVehicle findByVIN(final String theVIN) {
+        return myVinIndex.find(theVIN);
+    }
+    
+    /**
+     * Finds a vehicle by its vehicle ID.
+     * @param theVehicleID Vehicle ID
+     * @return The vehicle, or null if no vehicle has that ID
+     */
+    public AbstractVehicle findByID(final int theVehicleID) {
+        return myVehicleList.get(theVehicleID);
+    }
+    
+    /**
+     * Finds vehicles whose VIN starts with a partially entered VIN, ignoring case.
+     * @param theVINPrefix Start of the VIN
+     * @param theLimit Most vehicles to return
+     * @return Up to theLimit vehicles, in VIN order
+     */
+    public List<AbstractVehicle> findByVINPrefix(final String theVINPrefix, final int theLimit) {
+        return myVinIndex.findByPrefix(theVINPrefix, theLimit);
+    }
+    
+    /**
+     * Gets the fleet index, e.g. to build a {@link DemandPricing} on its counters.
+     * @return The availability, type and feature index of the fleet
+     */
+    public VehicleInventory getMyInventory() {
+        return myInventory;
+    }
+    
+    /**
+     * Sets the pricing used for new rentals.
+     * @param thePricing Demand-based pricing, or null to charge every vehicle's own rate
+     */
+    public void setMyPricing(final DemandPricing thePricing) {
+        myPricing = thePricing;
+    }
+    
+    /**
+     * Quotes the daily rate a new rental of a vehicle is charged.
+     * @param theVehicle Vehicle to quote
+     * @return Daily rate in fixed-point units
+     */
+    public long quoteDailyRate(final AbstractVehicle theVehicle) {
+        final DemandPricing pricing = myPricing;
+        long result = theVehicle.getMyRentalAmountUnits();
+        if (pricing != null) {
+            result = pricing.rateUnits(theVehicle);
         }
+        return result;
+    }
+    
+    /**
+     * Computes bills for a batch of rentals in parallel and records them; nothing is printed.
+     * @param theRecords Rentals to bill
+     * @return The bills in record order and their totals
+     * @throws IllegalStateException if the ledger cannot record every bill; none of the
+     *         bills is kept then, though the ledger may hold some of them
+     */
+    public BillBatch generateBills(final Collection<RentalRecord> theRecords) {
+        final BillBatch batch = myBatchBilling.compute(theRecords);
+        final RentalLedger ledger = myLedger;
+        if (ledger != null) {
+            final CompletableFuture<?>[] recorded = new CompletableFuture<?>[batch.size()];
+            int i = 0;
+            for (final Bill bill : batch.getMyBills()) {
+                recorded[i++] = ledger.recordBill(toEntry(bill));
+            }
+            awaitDurable(CompletableFuture.allOf(recorded));
+        }
+        for (final Bill bill : batch.getMyBills()) {
+            myBills.put(bill.getMyBillID(), bill);
+        }
+        return batch;
     }
     
     /**
@@ -104,11 +353,13 @@ public class RentalManager {
     }
     
     /**
-     * Returns hash map of vehicle inventory.
-     * @return Vehicle Inventory HashMap
+     * Returns map of vehicle inventory, as a read-only view; vehicles are added
+     * through {@link #addVehicle(AbstractVehicle)}. Lookups by ID are cheaper with
+     * {@link #findByID(int)}.
+     * @return Vehicle Inventory map, keyed by vehicle ID
      */
     public Map<Integer, AbstractVehicle> getMyVehicleList() {
-        return myVehicleList;
+        return myVehicleList.asMap();
     }
     
     /**
@@ -135,26 +386,95 @@ public class RentalManager {
      * @param theNumDays Number of days vehicle has been rented
      * @param theBillID Bill ID number
      * @return boolean that checks if all parameters are not null nor empty
+     * @throws IllegalStateException if the ledger cannot record the rental
      */
     public boolean rent(final int theVehicleID, final String theUserName, final int theNumDays, final int theBillID) {
-        boolean result = false;
-        Objects.requireNonNull(theVehicleID);
-        Objects.requireNonNull(theUserName);
-        Objects.requireNonNull(theNumDays);
-        Objects.requireNonNull(theBillID);
-        
-        if (theUserName.isEmpty()) {
-            throw new IllegalArgumentException();
+        final Bill bill = rentAndBill(theVehicleID, theUserName, theNumDays, theBillID);
+        if (bill != null) {
+            bill.printAmount();
         }
-        
-        if (isRentable(theVehicleID) && myRegistration.getMyUserList().containsKey(theUserName)) {
-            final User user = myRegistration.getMyUserList().get(theUserName);
-            final AbstractVehicle vehicle = myVehicleList.get(theVehicleID);
-            vehicle.setMyAvailability(false);
-            final Bill bill = new Bill(theVehicleID, user, vehicle, theNumDays);
-            myBills.put(bill.getMyBillID(), bill);
-            bill.computeAndPrintAmount();
-            result = true;
+        return bill != null;
+    }
+    
+    /**
+     * Rents out a vehicle like {@link #rent(int, String, int, int)}, without printing the bill.
+     * If billing or recording the rental throws, the vehicle is made available again.
+     * @param theVehicleID Vehicle ID number
+     * @param theUserName username 
+     * @param theNumDays Number of days vehicle has been rented
+     * @param theBillID Bill ID number
+     * @return The computed bill, or null if the user or vehicle is unknown, the vehicle is not available
+     *         or the bill would be too large to compute
+     * @throws IllegalStateException if the ledger cannot record the rental
+     */
+    public Bill rentAndBill(final int theVehicleID, final String theUserName, final int theNumDays,
+                            final int theBillID) {
+        final Bill bill = reserve(theVehicleID, theUserName, theNumDays, theBillID);
+        if (bill != null) {
+            boolean rented = false;
+            try {
+                bill.computeAmount();
+                // Recorded while still reserved, so a drop of this rental is always logged after it
+                final RentalLedger ledger = myLedger;
+                if (ledger != null) {
+                    awaitDurable(ledger.recordRent(toEntry(bill)));
+                }
+                myBills.put(bill.getMyBillID(), bill);
+                bill.getMyVehicle().confirmRental();
+                rented = true;
+            } finally {
+                if (!rented) {
+                    release(bill.getMyVehicle());
+                }
+            }
+        }
+        return bill;
+    }
+    
+    /**
+     * Rents out a vehicle like {@link #rentAndBill(int, String, int, int)}, but gives
+     * up at a deadline. Computing the bill and waiting for the ledger run as subtasks
+     * of one {@link TaskScope}; if either fails or the deadline passes, the reservation
+     * is rolled back and no bill is kept. A rent already handed to the ledger cannot
+     * be taken back, so once it is durable it is voided in the ledger, and the vehicle
+     * becomes available again after that.
+     * @param theVehicleID Vehicle ID number
+     * @param theUserName username 
+     * @param theNumDays Number of days vehicle has been rented
+     * @param theBillID Bill ID number
+     * @param theDeadlineNanos Deadline on the System.nanoTime clock
+     * @return The computed bill, or null if the vehicle could not be rented in time
+     */
+    public Bill rentAndBill(final int theVehicleID, final String theUserName, final int theNumDays,
+                            final int theBillID, final long theDeadlineNanos) {
+        Bill result = null;
+        final Bill bill = reserve(theVehicleID, theUserName, theNumDays, theBillID);
+        if (bill != null) {
+            final RentalLedger ledger = myLedger;
+            CompletableFuture<Void> recorded = null;
+            try (TaskScope scope = new TaskScope(SessionExecutors.stepExecutor(), theDeadlineNanos)) {
+                scope.fork(() -> {
+                    bill.computeAmount();
+                    return bill;
+                });
+                if (ledger != null) {
+                    recorded = ledger.recordRent(toEntry(bill));
+                    scope.fork(recorded::get);
+                }
+                scope.join();
+                myBills.put(bill.getMyBillID(), bill);
+                bill.getMyVehicle().confirmRental();
+                result = bill;
+            } catch (final ExecutionException | TimeoutException e) {
+                // Rolled back below
+                result = null;
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                if (result == null) {
+                    rollBack(bill, ledger, recorded);
+                }
+            }
         }
         return result;
     }
@@ -163,26 +483,123 @@ public class RentalManager {
      * Drops off a vehicle and makes it available for rent again.
      * @param theVehicleID Vehicle ID number
      * @return Check as to whether if vehicle has been successfully dropped off.
+     * @throws IllegalStateException if the ledger cannot record the drop-off; the
+     *         vehicle stays rented then
      */
     public boolean drop(final int theVehicleID) {
         boolean result = false;
+        final AbstractVehicle vehicle = myVehicleList.get(theVehicleID);
         
-        if (myVehicleList.containsKey(theVehicleID) && !isRentable(theVehicleID)) {
-            result = true;
-        }
-        
-        if (result) {
-            myVehicleList.get(theVehicleID).setMyAvailability(true);
+        // Only one of several concurrent drops of the same vehicle can take it back
+        if (vehicle != null && vehicle.tryReturn()) {
+            try {
+                // Recorded before the vehicle can be rented again
+                final RentalLedger ledger = myLedger;
+                if (ledger != null) {
+                    awaitDurable(ledger.recordDrop(vehicle.getMyVIN()));
+                }
+                myInventory.setAvailable(theVehicleID, true);
+                vehicle.completeReturn();
+                result = true;
+            } finally {
+                if (!result) {
+                    vehicle.cancelReturn();
+                }
+            }
         }
         return result;
     }
     
     /**
-     * Clears myVehicleList and myBills.
+     * Clears myVehicleList and myBills, and records that rentals and bills were cleared.
+     * @throws IllegalStateException if the ledger cannot record the clear; the lists
+     *         are cleared anyway
      */
     public void clearLists() {
         myVehicleList.clear();
+        myInventory.clear();
+        myVinIndex.clear();
         myBills.clear();
+        final RentalLedger ledger = myLedger;
+        if (ledger != null) {
+            awaitDurable(ledger.recordClear());
+        }
+    }
+    
+    /**
+     * Opens a ledger with the default checkpoint interval; see {@link #openLedger(Path, int)}.
+     * @param theLedgerFile Ledger log file
+     * @return Time spent loading the checkpoint, replaying and restoring
+     * @throws IOException if the ledger cannot be read or written
+     */
+    public PhaseTimings openLedger(final Path theLedgerFile) throws IOException {
+        return openLedger(theLedgerFile, RentalLedger.DEFAULT_CHECKPOINT_INTERVAL);
+    }
+    
+    /**
+     * Opens a ledger, restores the bills and active rentals it recorded, and records
+     * every later rental, drop-off and bill to it. Call after the inventory is loaded;
+     * vehicles are matched by VIN, and recorded bills and rentals of unknown users or
+     * vehicles are not restored (they stay in the ledger).
+     * @param theLedgerFile Ledger log file
+     * @param theCheckpointInterval Events between checkpoints
+     * @return Time spent loading the checkpoint, replaying and restoring
+     * @throws IOException if the ledger cannot be read or written
+     */
+    public PhaseTimings openLedger(final Path theLedgerFile, final int theCheckpointInterval)
+        throws IOException {
+        final PhaseTimings timings = new PhaseTimings();
+        final RentalLedger ledger = RentalLedger.open(theLedgerFile, theCheckpointInterval, timings);
+        final long start = System.nanoTime();
+        for (final BillEntry entry : ledger.getMyRecoveredBills()) {
+            final User user = myRegistration.getMyUserList().get(entry.getMyUserName());
+            final AbstractVehicle vehicle = myVinIndex.find(entry.getMyVIN());
+            if (user != null && vehicle != null) {
+                final Bill bill = new Bill(entry.getMyBillID(), user, vehicle, entry.getMyNumDays(),
+                                           entry.getMyDailyRateUnits());
+                bill.computeAmount();
+                myBills.put(bill.getMyBillID(), bill);
+            }
+        }
+        for (final String vin : ledger.getMyRecoveredRentals()) {
+            final AbstractVehicle vehicle = myVinIndex.find(vin);
+            if (vehicle != null && vehicle.tryReserve()) {
+                myInventory.setAvailable(vehicle.getMyVehicleID(), false);
+                vehicle.confirmRental();
+            }
+        }
+        timings.recordSince(RESTORE_PHASE, start);
+        closeLedger();
+        myLedger = ledger;
+        return timings;
+    }
+    
+    /**
+     * Stops recording to the ledger, writing a final checkpoint.
+     */
+    public void closeLedger() {
+        final RentalLedger ledger = myLedger;
+        myLedger = null;
+        if (ledger != null) {
+            ledger.close();
+        }
+    }
+    
+    /**
+     * Allocates a bill ID for a new rental.
+     * @return A bill ID no other rental of this manager's allocator has used
+     */
+    public int nextBillID() {
+        return myBillIDs.nextId();
+    }
+    
+    /**
+     * Gets a recorded bill.
+     * @param theBillID Bill ID number
+     * @return The bill, or null if there is none with that ID
+     */
+    public Bill getBill(final int theBillID) {
+        return myBills.get(theBillID);
     }
     
     /**
@@ -193,13 +610,11 @@ public class RentalManager {
         //Print out all vehicles in myVehicle List
         System.out.println();
         System.out.println("***************List of Available Vehicles***************");
-        for (int i = 1; i <= myVehicleList.size(); i++) {
-            if (myVehicleList.get(i).isAvailable()) {
-                System.out.println(myVehicleList.get(i));
-            }
+        for (final AbstractVehicle vehicle : myInventory.findAvailable(Integer.MAX_VALUE, null, 0)) {
+            System.out.println(vehicle);
         }
         //Generate myBillID
-        final int billID = myBills.size() + 1;
+        final int billID = nextBillID();
         //Show "Enter Rental Details"
         System.out.println(ASTERISK_LINE);
         System.out.println("Enter Rental Details");
@@ -235,8 +650,9 @@ public class RentalManager {
             System.out.print("Enter Drop-off Vehicle ID: ");
             vehicleID = myScanner.nextInt();
             myScanner.nextLine();
-            if (myVehicleList.containsKey(vehicleID)) {
-                if (myVehicleList.get(vehicleID).isAvailable()) {
+            final AbstractVehicle vehicle = myVehicleList.get(vehicleID);
+            if (vehicle != null) {
+                if (vehicle.isAvailable()) {
                     System.out.println("Vehicle is not rented already");
                 }
             } else {
@@ -246,4 +662,138 @@ public class RentalManager {
         System.out.println("Drop-off Successfull");
         System.out.println(ASTERISK_LINE);
     }
+    
+    /**
+     * Describes a bill for the ledger.
+     * @param theBill Bill to record
+     * @return Ledger entry of the bill
+     */
+    private static BillEntry toEntry(final Bill theBill) {
+        return new BillEntry(theBill.getMyBillID(), theBill.getMyPrimaryUser().getMyName(),
+                             theBill.getMyVehicle().getMyVIN(), theBill.getMyNumDays(),
+                             theBill.getMyDailyRateUnits());
+    }
+    
+    /**
+     * First step of a rental: reserves the vehicle and quotes it.
+     * @param theVehicleID Vehicle ID number
+     * @param theUserName username 
+     * @param theNumDays Number of days vehicle has been rented
+     * @param theBillID Bill ID number
+     * @return The bill, not yet computed, or null if the user or vehicle is unknown,
+     *         the vehicle is not available or the bill would be too large to compute
+     */
+    private Bill reserve(final int theVehicleID, final String theUserName, final int theNumDays,
+                         final int theBillID) {
+        Bill result = null;
+        Objects.requireNonNull(theUserName);
+        
+        if (theUserName.isEmpty()) {
+            throw new IllegalArgumentException();
+        }
+        
+        // Reserving is a single compare-and-set, so concurrent renters cannot both win
+        final User user = myRegistration.getMyUserList().get(theUserName);
+        final AbstractVehicle vehicle = myVehicleList.get(theVehicleID);
+        if (user != null && vehicle != null && vehicle.tryReserve()) {
+            try {
+                // Quoted before this rental counts toward utilization
+                final long rate = quoteDailyRate(vehicle);
+                if (BillingEngine.canCompute(rate, theNumDays)) {
+                    myInventory.setAvailable(theVehicleID, false);
+                    result = new Bill(theBillID, user, vehicle, theNumDays, rate);
+                }
+            } finally {
+                if (result == null) {
+                    release(vehicle);
+                }
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Indexes loaded vehicles, or views of them after copying them into a store.
+     * @param theVehicles Vehicles to add
+     * @param theStore Store to keep the vehicles in, or null to keep them on the heap
+     * @param theTimings Receives the presize and index phases
+     */
+    private void addFleet(final List<AbstractVehicle> theVehicles, final ColumnarVehicleStore theStore,
+                          final PhaseTimings theTimings) {
+        long start = System.nanoTime();
+        List<AbstractVehicle> vehicles = theVehicles;
+        if (theStore != null) {
+            final int first = theStore.size();
+            theStore.addAll(theVehicles);
+            vehicles = new ArrayList<AbstractVehicle>(theVehicles.size());
+            for (int row = first; row < first + theVehicles.size(); row++) {
+                vehicles.add(theStore.view(row));
+            }
+        }
+        myVinIndex.addAll(vehicles);
+        final int capacity = myVehicleList.size() + vehicles.size();
+        myVehicleList.ensureCapacity(capacity);
+        myInventory.ensureCapacity(capacity);
+        start = theTimings.recordSince(PRESIZE_PHASE, start);
+        myInventory.addAll(vehicles);
+        for (final AbstractVehicle vehicle : vehicles) {
+            myVehicleList.put(vehicle.getMyVehicleID(), vehicle);
+        }
+        theTimings.recordSince(INDEX_PHASE, start);
+    }
+    
+    /**
+     * Makes a reserved vehicle available again.
+     * @param theVehicle Vehicle whose reservation is abandoned
+     */
+    private void release(final AbstractVehicle theVehicle) {
+        myInventory.setAvailable(theVehicle.getMyVehicleID(), true);
+        theVehicle.cancelReservation();
+    }
+    
+    /**
+     * Undoes a reservation whose rental did not complete; no bill is kept. A rent
+     * handed to the ledger may still become durable, so once it is, it is voided,
+     * and only then is the vehicle released, so the void is logged before any later
+     * rent of the vehicle. If the void cannot be logged, the vehicle stays reserved,
+     * since a restart would replay the rent as a rental of it.
+     * @param theBill Bill of the reservation
+     * @param theLedger Ledger the rent was handed to, or null
+     * @param theRecorded Future of the recorded rent, or null if it was not recorded
+     */
+    private void rollBack(final Bill theBill, final RentalLedger theLedger,
+                          final CompletableFuture<Void> theRecorded) {
+        final AbstractVehicle vehicle = theBill.getMyVehicle();
+        if (theLedger == null || theRecorded == null) {
+            release(vehicle);
+        } else {
+            // Off the ledger's writer thread, which must not wait on its own queue
+            theRecorded.handleAsync((theResult, theFailure) -> {
+                if (theFailure == null) {
+                    awaitDurable(theLedger.recordVoid(toEntry(theBill)));
+                }
+                return theResult;
+            }, SessionExecutors.stepExecutor()).whenComplete((theResult, theFailure) -> {
+                if (theFailure == null) {
+                    release(vehicle);
+                } else {
+                    theFailure.printStackTrace();
+                }
+            });
+        }
+    }
+    
+    /**
+     * Waits until a ledger event is on disk. An interrupt does not end the wait, as
+     * the event may still be written, but stays set.
+     * @param theRecorded Future of the ledger event
+     * @throws IllegalStateException if the event was not recorded
+     */
+    private static void awaitDurable(final CompletableFuture<?> theRecorded) {
+        try {
+            theRecorded.join();
+        } catch (final CompletionException e) {
+            throw new IllegalStateException("Cannot record to the ledger", e.getCause());
+        }
+    }
 }
@@ -0,0 +1,98 @@
+/*
+ * Rental Record: input of batch bill generation.
+ */
+
+package model;
+
+import java.util.Objects;
+import model.vehicles.AbstractVehicle;
+
+/**
+ * An immutable record of one rental to be billed: who rented which vehicle for how
+ * many days, under which bill ID.
+ * 
+ * @author roys4
+ * @version Winter 2021
+ */
+public final class RentalRecord {
+
+    /**
+     * Bill ID the rental is billed under.
+     */
+    private final int myBillID;
+
+    /**
+     * User who rented the vehicle.
+     */
+    private final User myUser;
+
+    /**
+     * The rented vehicle.
+     */
+    private final AbstractVehicle myVehicle;
+
+    /**
+     * Number of rental days.
+     */
+    private final int myNumDays;
+
+    /**
+     * Creates a rental record.
+     * 
+     * @param theBillID Bill ID number
+     * @param theUser User who rented the vehicle
+     * @param theVehicle the rented vehicle
+     * @param theNumDays number of rental days
+     */
+    public RentalRecord(final int theBillID, final User theUser, final AbstractVehicle theVehicle,
+                        final int theNumDays) {
+        if (theNumDays < 0) {
+            throw new IllegalArgumentException();
+        }
+        myBillID = theBillID;
+        myUser = Objects.requireNonNull(theUser);
+        myVehicle = Objects.requireNonNull(theVehicle);
+        myNumDays = theNumDays;
+    }
+
+    /**
+     * Creates the bill for this rental; the bill is not computed yet.
+     * 
+     * @return a new bill
+     */
+    public Bill toBill() {
+        return new Bill(myBillID, myUser, myVehicle, myNumDays);
+    }
+
+    /**
+     * Get Bill ID.
+     * @return Bill ID number
+     */
+    public int getMyBillID() {
+        return myBillID;
+    }
+
+    /**
+     * Get renting user.
+     * @return the user
+     */
+    public User getMyUser() {
+        return myUser;
+    }
+
+    /**
+     * Get rented vehicle.
+     * @return the vehicle
+     */
+    public AbstractVehicle getMyVehicle() {
+        return myVehicle;
+    }
+
+    /**
+     * Get number of rental days.
+     * @return the number of days
+     */
+    public int getMyNumDays() {
+        return myNumDays;
+    }
+}
@@ -0,0 +1,644 @@
+/*
+ * Multi-session line protocol server for the Vehicle Rental System.
+ *
+ * TCSS 305 - Rentz
+ */
+
+package model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import utility.SessionExecutors;
+
+/**
+ * Serves many operators at once over TCP, each connection running its own
+ * {@link RentalSession} against one shared Registration and RentalManager.
+ *
+ * The protocol is the console dialogue as lines: the server sends text ending in a
+ * prompt line that starts with {@link RentalSession#PROMPT}, the client answers with
+ * one line, and the session ends with a {@link RentalSession#BYE} line after which
+ * the server closes the connection.
+ *
+ * One selector thread does all socket I/O and line splitting and never blocks on
+ * the rental system. Complete lines go to a worker executor, because registering
+ * and renting wait for the user journal and the rental ledger to reach the disk.
+ * A session's lines are handled one at a time and in order, but different sessions
+ * run in parallel, so their disk waits share the group commits of the journal and
+ * the ledger.
+ *
+ * A client that sends faster than its session answers, or that does not read its
+ * answers, is not read from while it has more than {@link #MAX_PENDING_LINES}
+ * unhandled lines or {@link #MAX_PENDING_OUTPUT_BYTES} unwritten bytes, so TCP
+ * slows it down instead of the server buffering without limit. A read in progress
+ * may still add up to one read buffer of lines beyond the limit.
+ *
+ * @author roys4
+ * @version Winter 2021
+ */
+public final class RentalServer implements Closeable {
+
+    /**
+     * Worker threads of the default executor.
+     */
+    public static final int DEFAULT_WORKERS = 64;
+
+    /**
+     * Longest accepted input line in bytes; longer lines close the connection.
+     */
+    public static final int MAX_LINE_BYTES = 1024;
+
+    /**
+     * Unhandled input lines of a connection at which it is no longer read from.
+     */
+    public static final int MAX_PENDING_LINES = 256;
+
+    /**
+     * Unwritten output bytes of a connection at which it is no longer read from.
+     */
+    public static final int MAX_PENDING_OUTPUT_BYTES = 1 << 16;
+
+    /**
+     * Connection backlog of the listening socket.
+     */
+    private static final int BACKLOG = 4096;
+
+    /**
+     * Size of the shared read buffer.
+     */
+    private static final int READ_BUFFER_BYTES = 1 << 16;
+
+    /**
+     * Seconds to wait for the default executor on close.
+     */
+    private static final int SHUTDOWN_SECONDS = 10;
+
+    /**
+     * Users.
+     */
+    private final Registration myRegistration;
+
+    /**
+     * Fleet and bills.
+     */
+    private final RentalManager myRentalManager;
+
+    /**
+     * Runs session input.
+     */
+    private final ExecutorService myWorkers;
+
+    /**
+     * True if this server created the executor and shuts it down on close.
+     */
+    private final boolean myOwnsWorkers;
+
+    /**
+     * Listening socket.
+     */
+    private final ServerSocketChannel myServerChannel;
+
+    /**
+     * Selector of the listening socket and every connection.
+     */
+    private final Selector mySelector;
+
+    /**
+     * Connections with new output, handed from workers to the selector thread.
+     */
+    private final Queue<Connection> myFlushQueue = new ConcurrentLinkedQueue<Connection>();
+
+    /**
+     * Read buffer of the selector thread.
+     */
+    private final ByteBuffer myReadBuffer = ByteBuffer.allocateDirect(READ_BUFFER_BYTES);
+
+    /**
+     * Open connections.
+     */
+    private final AtomicInteger myOpenSessions = new AtomicInteger();
+
+    /**
+     * Selector thread, or null before start.
+     */
+    private Thread myThread;
+
+    /**
+     * Cleared on close.
+     */
+    private volatile boolean myRunning = true;
+
+    /**
+     * Binds a server with a default pool of {@link #DEFAULT_WORKERS} worker threads.
+     *
+     * @param theRegistration users
+     * @param theRentalManager fleet and bills
+     * @param theAddress address to listen on; port 0 picks a free port
+     * @throws IOException if the address cannot be bound
+     */
+    public RentalServer(final Registration theRegistration, final RentalManager theRentalManager,
+                        final SocketAddress theAddress) throws IOException {
+        this(theRegistration, theRentalManager, theAddress, null);
+    }
+
+    /**
+     * Binds a server.
+     *
+     * @param theRegistration users
+     * @param theRentalManager fleet and bills
+     * @param theAddress address to listen on; port 0 picks a free port
+     * @param theWorkers runs session input, or null for a default pool owned by the server
+     * @throws IOException if the address cannot be bound
+     */
+    public RentalServer(final Registration theRegistration, final RentalManager theRentalManager,
+                        final SocketAddress theAddress, final ExecutorService theWorkers) throws IOException {
+        myRegistration = Objects.requireNonNull(theRegistration);
+        myRentalManager = Objects.requireNonNull(theRentalManager);
+        myOwnsWorkers = theWorkers == null;
+        if (myOwnsWorkers) {
+            myWorkers = Executors.newFixedThreadPool(DEFAULT_WORKERS,
+                                                     SessionExecutors.daemonThreads("rental-worker"));
+        } else {
+            myWorkers = theWorkers;
+        }
+        mySelector = Selector.open();
+        myServerChannel = ServerSocketChannel.open();
+        try {
+            myServerChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            myServerChannel.bind(theAddress, BACKLOG);
+            myServerChannel.configureBlocking(false);
+            myServerChannel.register(mySelector, SelectionKey.OP_ACCEPT);
+        } catch (final IOException e) {
+            myServerChannel.close();
+            mySelector.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Starts accepting sessions on the selector thread.
+     *
+     * @return this server
+     */
+    public synchronized RentalServer start() {
+        if (myThread == null) {
+            myThread = new Thread(this::runLoop, "rental-server");
+            myThread.setDaemon(true);
+            myThread.start();
+        }
+        return this;
+    }
+
+    /**
+     * The bound address, with the real port if port 0 was requested.
+     *
+     * @return the listening address
+     * @throws IOException if the socket is closed
+     */
+    public InetSocketAddress getMyAddress() throws IOException {
+        return (InetSocketAddress) myServerChannel.getLocalAddress();
+    }
+
+    /**
+     * Number of connected sessions.
+     *
+     * @return open connections
+     */
+    public int getMyOpenSessions() {
+        return myOpenSessions.get();
+    }
+
+    /**
+     * Blocks until the server is closed.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void awaitClose() throws InterruptedException {
+        final Thread thread;
+        synchronized (this) {
+            thread = myThread;
+        }
+        if (thread != null) {
+            thread.join();
+        }
+    }
+
+    /**
+     * Stops accepting, drops every connection and, if the server created its
+     * worker pool, waits for running input to finish.
+     */
+    @Override
+    public void close() throws IOException {
+        myRunning = false;
+        mySelector.wakeup();
+        final Thread thread;
+        synchronized (this) {
+            thread = myThread;
+        }
+        if (thread != null && thread != Thread.currentThread()) {
+            try {
+                thread.join();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (thread == null) {
+            closeChannels();
+        }
+        if (myOwnsWorkers) {
+            myWorkers.shutdown();
+            try {
+                myWorkers.awaitTermination(SHUTDOWN_SECONDS, TimeUnit.SECONDS);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Selector loop: accepts, reads lines, writes queued output.
+     */
+    private void runLoop() {
+        try {
+            while (myRunning) {
+                mySelector.select();
+                Connection flushed = myFlushQueue.poll();
+                while (flushed != null) {
+                    flushed.flush();
+                    flushed = myFlushQueue.poll();
+                }
+                for (final SelectionKey key : mySelector.selectedKeys()) {
+                    if (key.isValid() && key.isAcceptable()) {
+                        accept();
+                    } else if (key.isValid()) {
+                        final Connection connection = (Connection) key.attachment();
+                        if (key.isReadable()) {
+                            connection.read();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.flush();
+                        }
+                    }
+                }
+                mySelector.selectedKeys().clear();
+            }
+        } catch (final IOException | ClosedSelectorException e) {
+            e.printStackTrace();
+        } finally {
+            closeChannels();
+        }
+    }
+
+    /**
+     * Accepts every pending connection and greets it. A connection that cannot be
+     * set up is closed on its own, and a failed accept is retried on the next select.
+     */
+    private void accept() {
+        SocketChannel channel = acceptNext();
+        while (channel != null) {
+            try {
+                open(channel);
+            } catch (final IOException | RuntimeException e) {
+                // For example a client that hung up before it was set up
+                e.printStackTrace();
+                try {
+                    channel.close();
+                } catch (final IOException closeFailure) {
+                    closeFailure.printStackTrace();
+                }
+            }
+            channel = acceptNext();
+        }
+    }
+
+    /**
+     * Accepts the next pending connection.
+     *
+     * @return the connection, or null if none is pending or accepting failed
+     */
+    private SocketChannel acceptNext() {
+        SocketChannel result = null;
+        try {
+            result = myServerChannel.accept();
+        } catch (final IOException e) {
+            // For example out of file descriptors; the selector reports it again
+            e.printStackTrace();
+        }
+        return result;
+    }
+
+    /**
+     * Registers an accepted connection and greets it.
+     *
+     * @param theChannel the connection
+     * @throws IOException if the connection cannot be set up
+     */
+    private void open(final SocketChannel theChannel) throws IOException {
+        theChannel.configureBlocking(false);
+        theChannel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        final Connection connection = new Connection(theChannel);
+        connection.mySession.setMySource(sourceOf(theChannel));
+        final String greeting = connection.mySession.start();
+        connection.myKey = theChannel.register(mySelector, SelectionKey.OP_READ, connection);
+        myOpenSessions.incrementAndGet();
+        connection.send(greeting);
+        connection.flush();
+    }
+
+    /**
+     * Login source of a connection: the client's address without its port.
+     *
+     * @param theChannel the connection
+     * @return the address, or the default source if it is unknown
+     * @throws IOException if the socket is closed
+     */
+    private static String sourceOf(final SocketChannel theChannel) throws IOException {
+        String result = RentalSession.DEFAULT_SOURCE;
+        if (theChannel.getRemoteAddress() instanceof InetSocketAddress) {
+            result = ((InetSocketAddress) theChannel.getRemoteAddress()).getHostString();
+        }
+        return result;
+    }
+
+    /**
+     * Closes the listening socket, every connection and the selector.
+     */
+    private void closeChannels() {
+        try {
+            if (mySelector.isOpen()) {
+                for (final SelectionKey key : mySelector.keys()) {
+                    if (key.attachment() instanceof Connection) {
+                        ((Connection) key.attachment()).close();
+                    }
+                }
+            }
+            myServerChannel.close();
+            mySelector.close();
+        } catch (final IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * One client connection and its session.
+     */
+    private final class Connection {
+
+        /**
+         * The socket.
+         */
+        private final SocketChannel myChannel;
+
+        /**
+         * The dialogue; only used by the worker that owns myBusy.
+         */
+        private final RentalSession mySession = new RentalSession(myRegistration, myRentalManager);
+
+        /**
+         * Bytes of the current incomplete input line; selector thread only.
+         */
+        private final byte[] myLine = new byte[MAX_LINE_BYTES];
+
+        /**
+         * Complete input lines not yet handled; guarded by this connection.
+         */
+        private final Queue<String> myPendingLines = new ArrayDeque<String>();
+
+        /**
+         * Output not yet written; written to only by the selector thread.
+         */
+        private final Queue<ByteBuffer> myOutput = new ConcurrentLinkedQueue<ByteBuffer>();
+
+        /**
+         * Bytes of the buffers in myOutput, counted when queued and when fully written.
+         */
+        private final AtomicInteger myOutputBytes = new AtomicInteger();
+
+        /**
+         * Selection key, set right after registration.
+         */
+        private SelectionKey myKey;
+
+        /**
+         * Bytes in myLine; selector thread only.
+         */
+        private int myLineLength;
+
+        /**
+         * True while a worker task handles this connection's lines; guarded by this connection.
+         */
+        private boolean myBusy;
+
+        /**
+         * Set once the session ended; the connection closes when its output is written.
+         */
+        private volatile boolean myFinished;
+
+        /**
+         * Creates a connection.
+         *
+         * @param theChannel the socket
+         */
+        Connection(final SocketChannel theChannel) {
+            myChannel = theChannel;
+        }
+
+        /**
+         * Reads what the socket has and queues every complete line; selector thread only.
+         */
+        void read() {
+            myReadBuffer.clear();
+            int count;
+            try {
+                count = myChannel.read(myReadBuffer);
+            } catch (final IOException e) {
+                count = -1;
+            }
+            myReadBuffer.flip();
+            boolean overflow = false;
+            boolean queued = false;
+            while (myReadBuffer.hasRemaining() && !overflow) {
+                final byte b = myReadBuffer.get();
+                if (b == '\n') {
+                    int length = myLineLength;
+                    if (length > 0 && myLine[length - 1] == '\r') {
+                        length--;
+                    }
+                    final String line = new String(myLine, 0, length, StandardCharsets.UTF_8);
+                    myLineLength = 0;
+                    synchronized (this) {
+                        myPendingLines.add(line);
+                    }
+                    queued = true;
+                } else if (myLineLength == MAX_LINE_BYTES) {
+                    overflow = true;
+                } else {
+                    myLine[myLineLength++] = b;
+                }
+            }
+            if (count < 0 || overflow) {
+                close();
+            } else if (queued) {
+                schedule();
+                updateInterest();
+            }
+        }
+
+        /**
+         * Submits a worker task unless one is already handling this connection.
+         */
+        private void schedule() {
+            boolean submit = false;
+            synchronized (this) {
+                if (!myBusy && !myPendingLines.isEmpty() && !myFinished) {
+                    myBusy = true;
+                    submit = true;
+                }
+            }
+            if (submit) {
+                try {
+                    myWorkers.execute(this::handleLines);
+                } catch (final RejectedExecutionException e) {
+                    close();
+                }
+            }
+        }
+
+        /**
+         * Worker task: handles queued lines in order until none are left.
+         */
+        private void handleLines() {
+            String line = nextLine();
+            while (line != null) {
+                String reply;
+                try {
+                    reply = mySession.handle(line);
+                } catch (final RuntimeException e) {
+                    e.printStackTrace();
+                    reply = "ERROR " + e + '\n' + RentalSession.BYE + '\n';
+                    myFinished = true;
+                }
+                if (mySession.isClosed()) {
+                    myFinished = true;
+                }
+                send(reply);
+                myFlushQueue.add(this);
+                mySelector.wakeup();
+                line = nextLine();
+            }
+        }
+
+        /**
+         * Takes the next queued line, or releases the connection if there is none.
+         *
+         * @return the line, or null when the worker task should end
+         */
+        private synchronized String nextLine() {
+            String result = null;
+            if (!myFinished) {
+                result = myPendingLines.poll();
+            }
+            if (result == null) {
+                myBusy = false;
+            }
+            return result;
+        }
+
+        /**
+         * Queues output for the selector thread.
+         *
+         * @param theText the text
+         */
+        void send(final String theText) {
+            final byte[] bytes = theText.getBytes(StandardCharsets.UTF_8);
+            myOutputBytes.addAndGet(bytes.length);
+            myOutput.add(ByteBuffer.wrap(bytes));
+        }
+
+        /**
+         * Writes queued output until the socket is full; selector thread only.
+         */
+        void flush() {
+            if (myKey.isValid()) {
+                try {
+                    ByteBuffer head = myOutput.peek();
+                    boolean full = false;
+                    while (head != null && !full) {
+                        myChannel.write(head);
+                        full = head.hasRemaining();
+                        if (!full) {
+                            myOutputBytes.addAndGet(-head.capacity());
+                            myOutput.poll();
+                            head = myOutput.peek();
+                        }
+                    }
+                    if (head == null && myFinished) {
+                        close();
+                    } else {
+                        updateInterest();
+                    }
+                } catch (final IOException e) {
+                    close();
+                }
+            }
+        }
+
+        /**
+         * Selects writes while output is queued, and reads unless too many lines
+         * or output bytes are pending; selector thread only.
+         */
+        private void updateInterest() {
+            if (myKey.isValid()) {
+                final int lines;
+                synchronized (this) {
+                    lines = myPendingLines.size();
+                }
+                int ops = 0;
+                if (lines < MAX_PENDING_LINES && myOutputBytes.get() < MAX_PENDING_OUTPUT_BYTES) {
+                    ops |= SelectionKey.OP_READ;
+                }
+                if (!myOutput.isEmpty()) {
+                    ops |= SelectionKey.OP_WRITE;
+                }
+                myKey.interestOps(ops);
+            }
+        }
+
+        /**
+         * Closes the socket; selector thread only.
+         */
+        void close() {
+            synchronized (this) {
+                myFinished = true;
+                myPendingLines.clear();
+            }
+            if (myKey.isValid()) {
+                myKey.cancel();
+                myOpenSessions.decrementAndGet();
+            }
+            try {
+                myChannel.close();
+            } catch (final IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,594 @@
+/*
+ * One operator's sign-in and rental dialogue, driven line by line.
+ *
+ * TCSS 305 - Rentz
+ */
+
+package model;
+
+import java.util.Objects;
+import model.vehicles.AbstractVehicle;
+
+/**
+ * The sign-in dialogue of {@link Registration#printSignin()} and the rent/drop-off
+ * menu of {@link RentalManager#printOptions()} as a state machine that consumes one
+ * input line at a time, so many sessions can share one Registration and one
+ * RentalManager without a Scanner each.
+ *
+ * Every call returns the text to send back: any messages, each on its own line,
+ * and then exactly one prompt line starting with {@link #PROMPT}, or the
+ * {@link #BYE} line once the operator exits. A session is not thread-safe; feed
+ * its lines one at a time.
+ *
+ * Unlike the console menu, rentals are billed to the signed-in user, and an empty
+ * line at the drop-off prompt returns to the menu.
+ *
+ * A session can have a deadline: input after it ends the session, and a rental in
+ * progress when it passes is rolled back (see
+ * {@link RentalManager#rentAndBill(int, String, int, int, long)}).
+ *
+ * @author roys4
+ * @version Winter 2021
+ */
+public final class RentalSession {
+
+    /**
+     * Starts every prompt line.
+     */
+    public static final String PROMPT = "? ";
+
+    /**
+     * Last line of a session.
+     */
+    public static final String BYE = "BYE";
+
+    /**
+     * Login source of sessions that were not given one.
+     */
+    public static final String DEFAULT_SOURCE = "session";
+
+    /**
+     * Message of a session whose deadline passed.
+     */
+    public static final String EXPIRED = "Session expired";
+
+    /**
+     * Most available vehicles listed before renting.
+     */
+    public static final int LIST_LIMIT = 20;
+
+    /**
+     * Sign-in menu prompt.
+     */
+    private static final String SIGNIN_MENU = "Enter 1 or 2 (1. New Registration 2. Login):";
+
+    /**
+     * Options menu prompt.
+     */
+    private static final String OPTIONS_MENU = "Enter 1 or 2 or 3 (1. Rent 2. Drop-off 3. Exit):";
+
+    /**
+     * Continue prompt.
+     */
+    private static final String CONTINUE = "Do you want to continue?";
+
+    /**
+     * User name prompt.
+     */
+    private static final String USER_NAME = "User Name:";
+
+    /**
+     * Password prompt.
+     */
+    private static final String PASSWORD = "Password:";
+
+    /**
+     * Vehicle prompt of a rental.
+     */
+    private static final String VEHICLE_ID = "Enter Vehicle ID:";
+
+    /**
+     * Vehicle prompt of a drop-off.
+     */
+    private static final String DROP_VEHICLE_ID = "Enter Drop-off Vehicle ID:";
+
+    /**
+     * Options menu choice: exit.
+     */
+    private static final String EXIT = "3";
+
+    /**
+     * Where the dialogue is.
+     */
+    private enum State {
+        /** Choosing registration or login. */
+        SIGNIN,
+        /** Entering the user name to register. */
+        REGISTER_NAME,
+        /** Entering the password to register. */
+        REGISTER_PASSWORD,
+        /** Entering the VIP status to register. */
+        REGISTER_VIP,
+        /** Entering the user name to log in. */
+        LOGIN_NAME,
+        /** Entering the password to log in. */
+        LOGIN_PASSWORD,
+        /** Choosing rent, drop-off or exit. */
+        OPTIONS,
+        /** Entering the vehicle to rent. */
+        RENT_VEHICLE,
+        /** Entering the rental days. */
+        RENT_DAYS,
+        /** Entering the vehicle to drop off. */
+        DROP_VEHICLE,
+        /** Answering whether to continue. */
+        CONTINUE,
+        /** Session over. */
+        CLOSED
+    }
+
+    /**
+     * Users.
+     */
+    private final Registration myRegistration;
+
+    /**
+     * Fleet and bills.
+     */
+    private final RentalManager myRentalManager;
+
+    /**
+     * Renders bills for the operator.
+     */
+    private final BillRenderer myRenderer = new BillRenderer(BillFormat.TEXT);
+
+    /**
+     * Deadline on the System.nanoTime clock, if myHasDeadline.
+     */
+    private final long myDeadline;
+
+    /**
+     * True if the session has a deadline.
+     */
+    private final boolean myHasDeadline;
+
+    /**
+     * Where the operator connects from, for login limits.
+     */
+    private String mySource = DEFAULT_SOURCE;
+
+    /**
+     * Current state.
+     */
+    private State myState = State.SIGNIN;
+
+    /**
+     * User name being registered or logged in, then the signed-in user.
+     */
+    private String myUserName;
+
+    /**
+     * Password being registered.
+     */
+    private String myPassword;
+
+    /**
+     * Vehicle being rented.
+     */
+    private AbstractVehicle myVehicle;
+
+    /**
+     * Creates a session at the sign-in menu.
+     *
+     * @param theRegistration users
+     * @param theRentalManager fleet and bills
+     */
+    public RentalSession(final Registration theRegistration, final RentalManager theRentalManager) {
+        myRegistration = Objects.requireNonNull(theRegistration);
+        myRentalManager = Objects.requireNonNull(theRentalManager);
+        myDeadline = 0;
+        myHasDeadline = false;
+    }
+
+    /**
+     * Creates a session at the sign-in menu that ends at a deadline.
+     *
+     * @param theRegistration users
+     * @param theRentalManager fleet and bills
+     * @param theDeadlineNanos deadline on the {@link System#nanoTime()} clock
+     */
+    public RentalSession(final Registration theRegistration, final RentalManager theRentalManager,
+                         final long theDeadlineNanos) {
+        myRegistration = Objects.requireNonNull(theRegistration);
+        myRentalManager = Objects.requireNonNull(theRentalManager);
+        myDeadline = theDeadlineNanos;
+        myHasDeadline = true;
+    }
+
+    /**
+     * Sets where the operator connects from, such as the client address, so login
+     * attempts are limited per source (see {@link LoginGuard}).
+     *
+     * @param theSource the source
+     */
+    public void setMySource(final String theSource) {
+        mySource = Objects.requireNonNull(theSource);
+    }
+
+    /**
+     * The text to send when the session opens.
+     *
+     * @return the first prompt
+     */
+    public String start() {
+        return prompt(new StringBuilder(), SIGNIN_MENU);
+    }
+
+    /**
+     * Checks whether the operator has exited.
+     *
+     * @return true once {@link #BYE} was returned
+     */
+    public boolean isClosed() {
+        return myState == State.CLOSED;
+    }
+
+    /**
+     * Nanoseconds until the deadline.
+     *
+     * @return time left, at most Long.MAX_VALUE if there is no deadline
+     */
+    public long remainingNanos() {
+        long result = Long.MAX_VALUE;
+        if (myHasDeadline) {
+            result = Math.max(0, myDeadline - System.nanoTime());
+        }
+        return result;
+    }
+
+    /**
+     * Ends the session because its deadline passed.
+     *
+     * @return the expiry message and the BYE line
+     */
+    public String expire() {
+        final StringBuilder out = new StringBuilder();
+        line(out, EXPIRED);
+        close(out);
+        return out.toString();
+    }
+
+    /**
+     * Consumes one input line.
+     *
+     * @param theLine the line, without its line terminator
+     * @return messages and the next prompt, or the BYE line
+     * @throws IllegalStateException if the session is closed
+     */
+    public String handle(final String theLine) {
+        if (myState == State.CLOSED) {
+            throw new IllegalStateException("Session is closed");
+        }
+        String result;
+        if (remainingNanos() == 0) {
+            result = expire();
+        } else {
+            result = dispatch(theLine.trim());
+        }
+        return result;
+    }
+
+    /**
+     * Consumes one input line in the current state.
+     *
+     * @param theLine the trimmed line
+     * @return messages and the next prompt, or the BYE line
+     */
+    private String dispatch(final String theLine) {
+        final StringBuilder out = new StringBuilder();
+        switch (myState) {
+            case SIGNIN:
+                signin(theLine, out);
+                break;
+            case REGISTER_NAME:
+                registerName(theLine, out);
+                break;
+            case REGISTER_PASSWORD:
+                registerPassword(theLine, out);
+                break;
+            case REGISTER_VIP:
+                registerVIP(theLine, out);
+                break;
+            case LOGIN_NAME:
+                myUserName = theLine;
+                next(out, State.LOGIN_PASSWORD, PASSWORD);
+                break;
+            case LOGIN_PASSWORD:
+                loginPassword(theLine, out);
+                break;
+            case OPTIONS:
+                options(theLine, out);
+                break;
+            case RENT_VEHICLE:
+                rentVehicle(theLine, out);
+                break;
+            case RENT_DAYS:
+                rentDays(theLine, out);
+                break;
+            case DROP_VEHICLE:
+                dropVehicle(theLine, out);
+                break;
+            case CONTINUE:
+                if (Boolean.parseBoolean(theLine)) {
+                    next(out, State.OPTIONS, OPTIONS_MENU);
+                } else {
+                    close(out);
+                }
+                break;
+            default:
+                throw new IllegalStateException("Session is closed");
+        }
+        return out.toString();
+    }
+
+    /**
+     * Handles the sign-in menu.
+     *
+     * @param theLine the choice
+     * @param theOut reply
+     */
+    private void signin(final String theLine, final StringBuilder theOut) {
+        if ("1".equals(theLine)) {
+            next(theOut, State.REGISTER_NAME, USER_NAME);
+        } else if ("2".equals(theLine)) {
+            next(theOut, State.LOGIN_NAME, USER_NAME);
+        } else {
+            prompt(theOut, SIGNIN_MENU);
+        }
+    }
+
+    /**
+     * Handles the user name of a registration.
+     *
+     * @param theLine the user name
+     * @param theOut reply
+     */
+    private void registerName(final String theLine, final StringBuilder theOut) {
+        if (theLine.isEmpty() || myRegistration.getMyUserList().containsKey(theLine)) {
+            prompt(theOut, "User already exists, enter different user name:");
+        } else {
+            myUserName = theLine;
+            next(theOut, State.REGISTER_PASSWORD, PASSWORD);
+        }
+    }
+
+    /**
+     * Handles the password of a registration.
+     *
+     * @param theLine the password
+     * @param theOut reply
+     */
+    private void registerPassword(final String theLine, final StringBuilder theOut) {
+        if (PasswordPolicy.DEFAULT.isValid(theLine)) {
+            myPassword = theLine;
+            next(theOut, State.REGISTER_VIP, "isVIP(true/false):");
+        } else {
+            line(theOut, "Password does not comply.");
+            line(theOut, "Passwords need 10 to 40 characters, no spaces, and at least one special character,");
+            line(theOut, "one capital letter and one number.");
+            prompt(theOut, PASSWORD);
+        }
+    }
+
+    /**
+     * Handles the VIP status of a registration and registers the user. A user that
+     * cannot be saved goes back to the sign-in menu.
+     *
+     * @param theLine true or false
+     * @param theOut reply
+     */
+    private void registerVIP(final String theLine, final StringBuilder theOut) {
+        if (myRegistration.register(myRegistration.newUser(myUserName, myPassword,
+                                                                   Boolean.parseBoolean(theLine)))) {
+            myPassword = null;
+            line(theOut, "Registration Successful");
+            next(theOut, State.OPTIONS, OPTIONS_MENU);
+        } else if (myRegistration.getMyUserList().containsKey(myUserName)) {
+            // Someone else took the name while this session was asking for the password
+            next(theOut, State.REGISTER_NAME, "User already exists, enter different user name:");
+        } else {
+            // The name is free, so the user could not be saved; another name would not help
+            myPassword = null;
+            line(theOut, "Could not save user, please try again later");
+            next(theOut, State.SIGNIN, SIGNIN_MENU);
+        }
+    }
+
+    /**
+     * Handles the password of a login.
+     *
+     * @param theLine the password
+     * @param theOut reply
+     */
+    private void loginPassword(final String theLine, final StringBuilder theOut) {
+        LoginResult outcome = LoginResult.WRONG_CREDENTIALS;
+        if (!myUserName.isEmpty() && !theLine.isEmpty()) {
+            outcome = myRegistration.attemptLogin(myUserName, theLine, mySource);
+        }
+        if (outcome == LoginResult.SUCCESS && myRegistration.login(myUserName, theLine)) {
+            line(theOut, "Login Successful");
+            next(theOut, State.OPTIONS, OPTIONS_MENU);
+        } else if (outcome == LoginResult.THROTTLED) {
+            line(theOut, "Too many attempts, please wait before trying again");
+            next(theOut, State.LOGIN_NAME, USER_NAME);
+        } else {
+            line(theOut, "Wrong Credentials");
+            next(theOut, State.LOGIN_NAME, USER_NAME);
+        }
+    }
+
+    /**
+     * Handles the options menu.
+     *
+     * @param theLine the choice
+     * @param theOut reply
+     */
+    private void options(final String theLine, final StringBuilder theOut) {
+        if ("1".equals(theLine)) {
+            line(theOut, "***************List of Available Vehicles***************");
+            for (final AbstractVehicle vehicle : myRentalManager.findAvailable(LIST_LIMIT, null)) {
+                line(theOut, vehicle.toString());
+            }
+            next(theOut, State.RENT_VEHICLE, VEHICLE_ID);
+        } else if ("2".equals(theLine)) {
+            next(theOut, State.DROP_VEHICLE, DROP_VEHICLE_ID);
+        } else if (EXIT.equals(theLine)) {
+            close(theOut);
+        } else {
+            prompt(theOut, OPTIONS_MENU);
+        }
+    }
+
+    /**
+     * Handles the vehicle of a rental.
+     *
+     * @param theLine VIN or vehicle ID
+     * @param theOut reply
+     */
+    private void rentVehicle(final String theLine, final StringBuilder theOut) {
+        myVehicle = findVehicle(theLine);
+        if (myVehicle == null) {
+            line(theOut, "Vehicle does not exist");
+            next(theOut, State.CONTINUE, CONTINUE);
+        } else {
+            next(theOut, State.RENT_DAYS, "Enter NumDays to Rent:");
+        }
+    }
+
+    /**
+     * Handles the days of a rental and rents the vehicle.
+     *
+     * @param theLine number of days
+     * @param theOut reply
+     */
+    private void rentDays(final String theLine, final StringBuilder theOut) {
+        final int days = parseInt(theLine);
+        Bill bill = null;
+        if (days > 0 && myHasDeadline) {
+            bill = myRentalManager.rentAndBill(myVehicle.getMyVehicleID(), myUserName, days,
+                                               myRentalManager.nextBillID(), myDeadline);
+        } else if (days > 0) {
+            bill = myRentalManager.rentAndBill(myVehicle.getMyVehicleID(), myUserName, days,
+                                               myRentalManager.nextBillID());
+        }
+        if (bill != null) {
+            theOut.append(myRenderer.render(bill));
+        } else if (days > 0 && remainingNanos() == 0) {
+            line(theOut, EXPIRED);
+        } else if (days > 0) {
+            line(theOut, "Vehicle is not available");
+        } else {
+            line(theOut, "Invalid number of days");
+        }
+        myVehicle = null;
+        next(theOut, State.CONTINUE, CONTINUE);
+    }
+
+    /**
+     * Handles the vehicle of a drop-off.
+     *
+     * @param theLine VIN or vehicle ID, or empty to go back
+     * @param theOut reply
+     */
+    private void dropVehicle(final String theLine, final StringBuilder theOut) {
+        final AbstractVehicle vehicle = findVehicle(theLine);
+        if (theLine.isEmpty()) {
+            next(theOut, State.CONTINUE, CONTINUE);
+        } else if (vehicle == null) {
+            line(theOut, "Vehicle does not exist");
+            prompt(theOut, DROP_VEHICLE_ID);
+        } else if (myRentalManager.drop(vehicle.getMyVehicleID())) {
+            line(theOut, "Drop-off Successfull");
+            next(theOut, State.CONTINUE, CONTINUE);
+        } else {
+            line(theOut, "Vehicle is not rented already");
+            prompt(theOut, DROP_VEHICLE_ID);
+        }
+    }
+
+    /**
+     * Finds a vehicle by VIN, or by vehicle ID if no VIN matches.
+     *
+     * @param theVehicle VIN or vehicle ID
+     * @return the vehicle, or null
+     */
+    private AbstractVehicle findVehicle(final String theVehicle) {
+        AbstractVehicle result = null;
+        if (!theVehicle.isEmpty()) {
+            result = myRentalManager.findByVIN(theVehicle);
+            final int id = parseInt(theVehicle);
+            if (result == null && id > 0) {
+                result = myRentalManager.findByID(id);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Moves to a state and prompts for it.
+     *
+     * @param theOut reply
+     * @param theState next state
+     * @param thePrompt its prompt
+     */
+    private void next(final StringBuilder theOut, final State theState, final String thePrompt) {
+        myState = theState;
+        prompt(theOut, thePrompt);
+    }
+
+    /**
+     * Ends the session.
+     *
+     * @param theOut reply
+     */
+    private void close(final StringBuilder theOut) {
+        myState = State.CLOSED;
+        line(theOut, BYE);
+    }
+
+    /**
+     * Appends a prompt line.
+     *
+     * @param theOut reply
+     * @param thePrompt prompt text
+     * @return the reply
+     */
+    private static String prompt(final StringBuilder theOut, final String thePrompt) {
+        return theOut.append(PROMPT).append(thePrompt).append('\n').toString();
+    }
+
+    /**
+     * Appends a message line.
+     *
+     * @param theOut reply
+     * @param theText message
+     */
+    private static void line(final StringBuilder theOut, final String theText) {
+        theOut.append(theText).append('\n');
+    }
+
+    /**
+     * Parses a positive decimal number.
+     *
+     * @param theText the text
+     * @return the number, or -1 if the text is not a positive int
+     */
+    private static int parseInt(final String theText) {
+        int result = -1;
+        if (!theText.isEmpty() && theText.length() < String.valueOf(Integer.MAX_VALUE).length()
+            && theText.chars().allMatch(Character::isDigit)) {
+            result = Integer.parseInt(theText);
+        }
+        return result;
+    }
+}
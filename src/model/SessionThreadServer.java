@@ -0,0 +1,326 @@
+/*
+ * Thread-per-session server for the Vehicle Rental System.
+ *
+ * TCSS 305 - Rentz
+ */
+
+package model;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import utility.SessionExecutors;
+
+/**
+ * Serves the same line protocol as {@link RentalServer}, but runs every session as
+ * one plain blocking loop on its own thread: read a line, handle it, write the
+ * reply. Sessions run on {@link SessionExecutors#newSessionExecutor(int, String)},
+ * which gives each one a virtual thread where the runtime has them, so an idle
+ * session costs a parked virtual thread instead of a platform thread. Without
+ * virtual threads, at most {@link #DEFAULT_FALLBACK_THREADS} sessions are served at
+ * once and further connections wait for a free thread.
+ *
+ * Every session has a deadline a fixed time after it connects. An idle session is
+ * told it expired when the deadline passes, and a rental still waiting for the
+ * ledger at the deadline is rolled back.
+ *
+ * @author roys4
+ * @version Winter 2021
+ */
+public final class SessionThreadServer implements Closeable {
+
+    /**
+     * Platform threads of the default executor when virtual threads are unavailable.
+     */
+    public static final int DEFAULT_FALLBACK_THREADS = 256;
+
+    /**
+     * Default session length in minutes.
+     */
+    public static final int DEFAULT_SESSION_MINUTES = 15;
+
+    /**
+     * Connection backlog of the listening socket.
+     */
+    private static final int BACKLOG = 4096;
+
+    /**
+     * Seconds to wait for the default executor on close.
+     */
+    private static final int SHUTDOWN_SECONDS = 10;
+
+    /**
+     * Users.
+     */
+    private final Registration myRegistration;
+
+    /**
+     * Fleet and bills.
+     */
+    private final RentalManager myRentalManager;
+
+    /**
+     * Runs sessions.
+     */
+    private final ExecutorService mySessions;
+
+    /**
+     * True if this server created the executor and shuts it down on close.
+     */
+    private final boolean myOwnsSessions;
+
+    /**
+     * Session length in nanoseconds.
+     */
+    private final long mySessionNanos;
+
+    /**
+     * Listening socket.
+     */
+    private final ServerSocket myServerSocket;
+
+    /**
+     * Sockets of connected sessions.
+     */
+    private final Set<Socket> myOpenSockets = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Accepting thread, or null before start.
+     */
+    private Thread myThread;
+
+    /**
+     * Binds a server with the default session executor and session length.
+     *
+     * @param theRegistration users
+     * @param theRentalManager fleet and bills
+     * @param theAddress address to listen on; port 0 picks a free port
+     * @throws IOException if the address cannot be bound
+     */
+    public SessionThreadServer(final Registration theRegistration, final RentalManager theRentalManager,
+                               final SocketAddress theAddress) throws IOException {
+        this(theRegistration, theRentalManager, theAddress, null, DEFAULT_SESSION_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Binds a server.
+     *
+     * @param theRegistration users
+     * @param theRentalManager fleet and bills
+     * @param theAddress address to listen on; port 0 picks a free port
+     * @param theSessions runs sessions, or null for a default executor owned by the server
+     * @param theSessionLength time from connecting to a session's deadline
+     * @param theUnit unit of theSessionLength
+     * @throws IOException if the address cannot be bound
+     */
+    public SessionThreadServer(final Registration theRegistration, final RentalManager theRentalManager,
+                               final SocketAddress theAddress, final ExecutorService theSessions,
+                               final long theSessionLength, final TimeUnit theUnit) throws IOException {
+        myRegistration = Objects.requireNonNull(theRegistration);
+        myRentalManager = Objects.requireNonNull(theRentalManager);
+        mySessionNanos = theUnit.toNanos(theSessionLength);
+        myOwnsSessions = theSessions == null;
+        if (myOwnsSessions) {
+            mySessions = SessionExecutors.newSessionExecutor(DEFAULT_FALLBACK_THREADS, "rental-session");
+        } else {
+            mySessions = theSessions;
+        }
+        myServerSocket = new ServerSocket();
+        try {
+            myServerSocket.setReuseAddress(true);
+            myServerSocket.bind(theAddress, BACKLOG);
+        } catch (final IOException e) {
+            myServerSocket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Starts accepting sessions.
+     *
+     * @return this server
+     */
+    public synchronized SessionThreadServer start() {
+        if (myThread == null) {
+            myThread = new Thread(this::acceptLoop, "rental-session-acceptor");
+            myThread.setDaemon(true);
+            myThread.start();
+        }
+        return this;
+    }
+
+    /**
+     * The bound address, with the real port if port 0 was requested.
+     *
+     * @return the listening address
+     */
+    public InetSocketAddress getMyAddress() {
+        return (InetSocketAddress) myServerSocket.getLocalSocketAddress();
+    }
+
+    /**
+     * Number of connected sessions, including ones waiting for a thread.
+     *
+     * @return open connections
+     */
+    public int getMyOpenSessions() {
+        return myOpenSockets.size();
+    }
+
+    /**
+     * Blocks until the server is closed.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void awaitClose() throws InterruptedException {
+        final Thread thread;
+        synchronized (this) {
+            thread = myThread;
+        }
+        if (thread != null) {
+            thread.join();
+        }
+    }
+
+    /**
+     * Stops accepting, drops every connection and, if the server created its
+     * session executor, waits for the sessions to end.
+     */
+    @Override
+    public void close() throws IOException {
+        myServerSocket.close();
+        for (final Socket socket : myOpenSockets) {
+            socket.close();
+        }
+        if (myOwnsSessions) {
+            mySessions.shutdown();
+            try {
+                mySessions.awaitTermination(SHUTDOWN_SECONDS, TimeUnit.SECONDS);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Accepts connections until the listening socket is closed.
+     */
+    private void acceptLoop() {
+        try {
+            while (!myServerSocket.isClosed()) {
+                final Socket socket = myServerSocket.accept();
+                final long deadline = System.nanoTime() + mySessionNanos;
+                myOpenSockets.add(socket);
+                try {
+                    mySessions.execute(() -> serve(socket, deadline));
+                } catch (final RejectedExecutionException e) {
+                    closeQuietly(socket);
+                }
+            }
+        } catch (final IOException e) {
+            if (!myServerSocket.isClosed()) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Runs one session to its end.
+     *
+     * @param theSocket the connection
+     * @param theDeadline session deadline on the System.nanoTime clock
+     */
+    private void serve(final Socket theSocket, final long theDeadline) {
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(theSocket.getInputStream(),
+                                                                          StandardCharsets.UTF_8));
+             OutputStream out = theSocket.getOutputStream()) {
+            theSocket.setTcpNoDelay(true);
+            final RentalSession session = new RentalSession(myRegistration, myRentalManager, theDeadline);
+            session.setMySource(theSocket.getInetAddress().getHostAddress());
+            write(out, session.start());
+            while (!session.isClosed()) {
+                String reply;
+                try {
+                    final String line = readLine(theSocket, in, session);
+                    if (line == null) {
+                        // Client hung up without exiting
+                        session.expire();
+                        reply = "";
+                    } else {
+                        reply = session.handle(line);
+                    }
+                } catch (final SocketTimeoutException e) {
+                    reply = session.expire();
+                }
+                if (!reply.isEmpty()) {
+                    write(out, reply);
+                }
+            }
+        } catch (final IOException e) {
+            if (!myServerSocket.isClosed()) {
+                e.printStackTrace();
+            }
+        } finally {
+            closeQuietly(theSocket);
+        }
+    }
+
+    /**
+     * Reads a line, waiting no longer than the session has left.
+     *
+     * @param theSocket the connection
+     * @param theIn its reader
+     * @param theSession the session
+     * @return the line, or null at end of input
+     * @throws IOException if the socket fails or the deadline passes first
+     */
+    private static String readLine(final Socket theSocket, final BufferedReader theIn,
+                                   final RentalSession theSession) throws IOException {
+        final long remaining = TimeUnit.NANOSECONDS.toMillis(theSession.remainingNanos());
+        if (remaining == 0) {
+            throw new SocketTimeoutException();
+        }
+        theSocket.setSoTimeout((int) Math.min(Integer.MAX_VALUE, remaining));
+        return theIn.readLine();
+    }
+
+    /**
+     * Writes and flushes text.
+     *
+     * @param theOut the stream
+     * @param theText the text
+     * @throws IOException if the socket fails
+     */
+    private static void write(final OutputStream theOut, final String theText) throws IOException {
+        theOut.write(theText.getBytes(StandardCharsets.UTF_8));
+        theOut.flush();
+    }
+
+    /**
+     * Closes a socket and forgets it, ignoring errors.
+     *
+     * @param theSocket the socket
+     */
+    private void closeQuietly(final Socket theSocket) {
+        myOpenSockets.remove(theSocket);
+        try {
+            theSocket.close();
+        } catch (final IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
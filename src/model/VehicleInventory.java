@@ -0,0 +1,360 @@
+/*
+ * Vehicle Inventory: bitset index over the rental fleet.
+ */
+
+package model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongBinaryOperator;
+import model.vehicles.AbstractVehicle;
+import model.vehicles.VehicleFeature;
+import model.vehicles.VehicleType;
+
+/**
+ * Index of the fleet that keeps vehicles in dense slots (in the order they were
+ * added) and answers availability queries with word-level bit operations.
+ *
+ * Availability is one bit per slot. Every vehicle type and every feature has its
+ * own bitset too, so "first N available luxury cars with navigation" is an AND of
+ * four words per 64 vehicles. Bits live in fixed-size pages that are never copied,
+ * so availability updates from any thread are never lost while the fleet grows.
+ * Adding vehicles is serialized; queries and availability updates do not lock.
+ *
+ * Per-type vehicle and availability counts are kept up to date by every change, so
+ * utilization of a vehicle type is an O(1) read rather than a scan.
+ *
+ * @author roys4
+ * @version Winter 2021
+ */
+public final class VehicleInventory {
+
+    /**
+     * log2 of the number of words in a page.
+     */
+    private static final int PAGE_SHIFT = 10;
+
+    /**
+     * Words in a page.
+     */
+    private static final int WORDS_PER_PAGE = 1 << PAGE_SHIFT;
+
+    /**
+     * log2 of the number of bits in a word.
+     */
+    private static final int WORD_SHIFT = 6;
+
+    /**
+     * Mask for the bit index within a word.
+     */
+    private static final int BIT_MASK = (1 << WORD_SHIFT) - 1;
+
+    /**
+     * Initial slot capacity.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Number of vehicle types.
+     */
+    private static final int TYPE_COUNT = VehicleType.values().length;
+
+    /**
+     * Number of vehicle features.
+     */
+    private static final int FEATURE_COUNT = VehicleFeature.values().length;
+
+    /**
+     * Sets bits in a word.
+     */
+    private static final LongBinaryOperator SET_BITS = (theWord, theBits) -> theWord | theBits;
+
+    /**
+     * Clears bits in a word.
+     */
+    private static final LongBinaryOperator CLEAR_BITS = (theWord, theBits) -> theWord & ~theBits;
+
+    /**
+     * Slot of every vehicle, keyed by vehicle ID; only replaced while empty.
+     */
+    private volatile Map<Integer, Integer> mySlotByID = new ConcurrentHashMap<Integer, Integer>();
+
+    /**
+     * Vehicles by slot; replaced (never modified in place below mySize) when it grows.
+     */
+    private volatile AbstractVehicle[] mySlots = new AbstractVehicle[INITIAL_CAPACITY];
+
+    /**
+     * Bit pages; replaced by a longer array when a page is added.
+     */
+    private volatile Page[] myPages = {new Page()};
+
+    /**
+     * Vehicles per type ordinal.
+     */
+    private volatile AtomicIntegerArray myCountByType = new AtomicIntegerArray(TYPE_COUNT);
+
+    /**
+     * Available vehicles per type ordinal.
+     */
+    private volatile AtomicIntegerArray myAvailableByType = new AtomicIntegerArray(TYPE_COUNT);
+
+    /**
+     * Number of used slots, written after a new slot is fully set up.
+     */
+    private volatile int mySize;
+
+    /**
+     * Adds a vehicle to the next free slot.
+     *
+     * @param theVehicle the vehicle to add
+     * @return the vehicle's slot
+     * @throws IllegalArgumentException if a vehicle with the same ID is already indexed
+     */
+    public synchronized int add(final AbstractVehicle theVehicle) {
+        Objects.requireNonNull(theVehicle);
+        final int slot = mySize;
+        if (mySlotByID.containsKey(theVehicle.getMyVehicleID())) {
+            throw new IllegalArgumentException("Vehicle ID already indexed: " + theVehicle.getMyVehicleID());
+        }
+        if (slot == mySlots.length) {
+            final AbstractVehicle[] grown = new AbstractVehicle[slot * 2];
+            System.arraycopy(mySlots, 0, grown, 0, slot);
+            mySlots = grown;
+        }
+        final int word = slot >>> WORD_SHIFT;
+        if (word >>> PAGE_SHIFT == myPages.length) {
+            final Page[] grown = new Page[myPages.length + 1];
+            System.arraycopy(myPages, 0, grown, 0, myPages.length);
+            grown[myPages.length] = new Page();
+            myPages = grown;
+        }
+        mySlots[slot] = theVehicle;
+
+        final Page page = myPages[word >>> PAGE_SHIFT];
+        final int pageWord = word & (WORDS_PER_PAGE - 1);
+        final long bit = 1L << (slot & BIT_MASK);
+        final int type = theVehicle.getVehicleType().ordinal();
+        page.myTypeBits[type][pageWord] |= bit;
+        int features = theVehicle.getFeatureMask();
+        while (features != 0) {
+            page.myFeatureBits[Integer.numberOfTrailingZeros(features)][pageWord] |= bit;
+            features &= features - 1;
+        }
+        myCountByType.incrementAndGet(type);
+        if (theVehicle.isAvailable()) {
+            page.myAvailable.accumulateAndGet(pageWord, bit, SET_BITS);
+            myAvailableByType.incrementAndGet(type);
+        }
+        // Published last, so availability updates only ever see fully indexed slots
+        mySlotByID.put(theVehicle.getMyVehicleID(), slot);
+        mySize = slot + 1;
+        return slot;
+    }
+
+    /**
+     * Adds vehicles in order under a single lock.
+     *
+     * @param theVehicles the vehicles to add
+     * @throws IllegalArgumentException if a vehicle ID is already indexed; the
+     *         vehicles before it stay added
+     */
+    public synchronized void addAll(final Collection<? extends AbstractVehicle> theVehicles) {
+        ensureCapacity(mySize + theVehicles.size());
+        for (final AbstractVehicle vehicle : theVehicles) {
+            add(vehicle);
+        }
+    }
+
+    /**
+     * Makes room for a number of vehicles so adding them does not grow the slot
+     * array, the bit pages or (if no vehicle is indexed yet) the ID map.
+     *
+     * @param theCapacity total number of vehicles expected
+     */
+    public synchronized void ensureCapacity(final int theCapacity) {
+        if (theCapacity > mySlots.length) {
+            final AbstractVehicle[] grown = new AbstractVehicle[theCapacity];
+            System.arraycopy(mySlots, 0, grown, 0, mySize);
+            mySlots = grown;
+        }
+        final int words = (theCapacity + BIT_MASK) >>> WORD_SHIFT;
+        final int pages = (words + WORDS_PER_PAGE - 1) >>> PAGE_SHIFT;
+        if (pages > myPages.length) {
+            final Page[] grown = new Page[pages];
+            System.arraycopy(myPages, 0, grown, 0, myPages.length);
+            for (int i = myPages.length; i < pages; i++) {
+                grown[i] = new Page();
+            }
+            myPages = grown;
+        }
+        if (mySize == 0) {
+            mySlotByID = new ConcurrentHashMap<Integer, Integer>(theCapacity);
+        }
+    }
+
+    /**
+     * Records whether a vehicle is available for rent.
+     *
+     * @param theVehicleID the vehicle ID
+     * @param theAvailability the new availability
+     * @return false if the vehicle is not indexed
+     */
+    public boolean setAvailable(final int theVehicleID, final boolean theAvailability) {
+        final Integer slot = mySlotByID.get(theVehicleID);
+        if (slot != null) {
+            final int word = slot >>> WORD_SHIFT;
+            final long bit = 1L << (slot & BIT_MASK);
+            final AtomicLongArray available = myPages[word >>> PAGE_SHIFT].myAvailable;
+            final int type = mySlots[slot].getVehicleType().ordinal();
+            // Only the update that actually flips the bit moves the counter
+            if (theAvailability) {
+                if ((available.getAndAccumulate(word & (WORDS_PER_PAGE - 1), bit, SET_BITS) & bit) == 0) {
+                    myAvailableByType.incrementAndGet(type);
+                }
+            } else if ((available.getAndAccumulate(word & (WORDS_PER_PAGE - 1), bit, CLEAR_BITS) & bit) != 0) {
+                myAvailableByType.decrementAndGet(type);
+            }
+        }
+        return slot != null;
+    }
+
+    /**
+     * Finds available vehicles in slot order.
+     *
+     * @param theLimit most vehicles to return
+     * @param theType required vehicle type, or null for any type
+     * @param theFeatureMask features every result must have (see {@link VehicleFeature#mask})
+     * @return up to theLimit matching vehicles
+     */
+    public List<AbstractVehicle> findAvailable(final int theLimit, final VehicleType theType,
+                                               final int theFeatureMask) {
+        final List<AbstractVehicle> result = new ArrayList<AbstractVehicle>();
+        final int size = mySize;
+        final AbstractVehicle[] slots = mySlots;
+        final Page[] pages = myPages;
+        final int words = (size + BIT_MASK) >>> WORD_SHIFT;
+        for (int word = 0; word < words && result.size() < theLimit; word++) {
+            long bits = matchingBits(pages[word >>> PAGE_SHIFT], word & (WORDS_PER_PAGE - 1),
+                                     theType, theFeatureMask);
+            while (bits != 0 && result.size() < theLimit) {
+                final int slot = (word << WORD_SHIFT) | Long.numberOfTrailingZeros(bits);
+                if (slot < size) {
+                    result.add(slots[slot]);
+                }
+                bits &= bits - 1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Counts available vehicles.
+     *
+     * @param theType required vehicle type, or null for any type
+     * @param theFeatureMask features every counted vehicle must have
+     * @return number of matching available vehicles
+     */
+    public int countAvailable(final VehicleType theType, final int theFeatureMask) {
+        final int size = mySize;
+        final Page[] pages = myPages;
+        final int words = (size + BIT_MASK) >>> WORD_SHIFT;
+        int result = 0;
+        for (int word = 0; word < words; word++) {
+            result += Long.bitCount(matchingBits(pages[word >>> PAGE_SHIFT], word & (WORDS_PER_PAGE - 1),
+                                                 theType, theFeatureMask));
+        }
+        return result;
+    }
+
+    /**
+     * Number of indexed vehicles of a type, without scanning.
+     *
+     * @param theType the vehicle type
+     * @return vehicle count
+     */
+    public int count(final VehicleType theType) {
+        return myCountByType.get(theType.ordinal());
+    }
+
+    /**
+     * Number of available vehicles of a type, without scanning.
+     *
+     * @param theType the vehicle type
+     * @return available vehicle count
+     */
+    public int countAvailable(final VehicleType theType) {
+        return myAvailableByType.get(theType.ordinal());
+    }
+
+    /**
+     * Number of indexed vehicles.
+     *
+     * @return vehicle count
+     */
+    public int size() {
+        return mySize;
+    }
+
+    /**
+     * Removes every vehicle from the index.
+     */
+    public synchronized void clear() {
+        mySize = 0;
+        mySlotByID.clear();
+        mySlots = new AbstractVehicle[INITIAL_CAPACITY];
+        myPages = new Page[] {new Page()};
+        myCountByType = new AtomicIntegerArray(TYPE_COUNT);
+        myAvailableByType = new AtomicIntegerArray(TYPE_COUNT);
+    }
+
+    /**
+     * ANDs the availability word with the type and feature words of a query.
+     *
+     * @param thePage the page holding the word
+     * @param theWord word index within the page
+     * @param theType required type, or null
+     * @param theFeatureMask required features
+     * @return bits of the matching available slots
+     */
+    private static long matchingBits(final Page thePage, final int theWord, final VehicleType theType,
+                                     final int theFeatureMask) {
+        long bits = thePage.myAvailable.get(theWord);
+        if (theType != null) {
+            bits &= thePage.myTypeBits[theType.ordinal()][theWord];
+        }
+        int features = theFeatureMask;
+        while (features != 0 && bits != 0) {
+            bits &= thePage.myFeatureBits[Integer.numberOfTrailingZeros(features)][theWord];
+            features &= features - 1;
+        }
+        return bits;
+    }
+
+    /**
+     * One page of bitset words.
+     */
+    private static final class Page {
+
+        /**
+         * Availability bits, updated concurrently.
+         */
+        private final AtomicLongArray myAvailable = new AtomicLongArray(WORDS_PER_PAGE);
+
+        /**
+         * Bits per vehicle type, written once when a slot is added.
+         */
+        private final long[][] myTypeBits = new long[TYPE_COUNT][WORDS_PER_PAGE];
+
+        /**
+         * Bits per vehicle feature, written once when a slot is added.
+         */
+        private final long[][] myFeatureBits = new long[FEATURE_COUNT][WORDS_PER_PAGE];
+    }
+}
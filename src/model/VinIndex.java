@@ -0,0 +1,366 @@
+/*
+ * VIN Index: lookup of fleet vehicles by vehicle identification number.
+ */
+
+package model;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentSkipListMap;
+import model.vehicles.AbstractVehicle;
+
+/**
+ * Index of the fleet by VIN, with constant-time exact lookup, rejection of
+ * duplicate VINs and lookup by VIN prefix for partially typed VINs.
+ *
+ * VINs are stored as one byte per character, upper-cased, so lookups ignore case.
+ * Only printable ASCII is allowed, which covers every real VIN. Exact lookups probe
+ * an open-addressing hash table; prefix lookups walk a sorted map that shares the
+ * same key arrays.
+ *
+ * Adding vehicles is serialized; lookups do not lock.
+ *
+ * @author roys4
+ * @version Winter 2021
+ */
+public final class VinIndex {
+
+    /**
+     * Smallest table size.
+     */
+    private static final int MIN_CAPACITY = 16;
+
+    /**
+     * Largest table size.
+     */
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    /**
+     * First printable ASCII character.
+     */
+    private static final char FIRST_PRINTABLE = ' ';
+
+    /**
+     * Last printable ASCII character.
+     */
+    private static final char LAST_PRINTABLE = '~';
+
+    /**
+     * Distance from a lower case ASCII letter to its capital.
+     */
+    private static final int CASE_OFFSET = 'a' - 'A';
+
+    /**
+     * Byte above every encoded character, used to end a prefix range.
+     */
+    private static final byte PREFIX_END = (byte) (LAST_PRINTABLE + 1);
+
+    /**
+     * FNV-1a offset basis.
+     */
+    private static final int FNV_BASIS = 0x811C9DC5;
+
+    /**
+     * FNV-1a prime.
+     */
+    private static final int FNV_PRIME = 0x01000193;
+
+    /**
+     * Release/acquire access to vehicle slots.
+     */
+    private static final VarHandle VEHICLES = MethodHandles.arrayElementVarHandle(AbstractVehicle[].class);
+
+    /**
+     * Current hash table.
+     */
+    private volatile Table myTable = new Table(MIN_CAPACITY);
+
+    /**
+     * Vehicles ordered by encoded VIN, compared as unsigned bytes.
+     */
+    private final NavigableMap<byte[], AbstractVehicle> mySorted =
+        new ConcurrentSkipListMap<byte[], AbstractVehicle>(Arrays::compareUnsigned);
+
+    /**
+     * Number of indexed vehicles.
+     */
+    private volatile int mySize;
+
+    /**
+     * Indexes a vehicle by its VIN.
+     *
+     * @param theVehicle the vehicle
+     * @throws IllegalArgumentException if another vehicle has the same VIN, or the
+     *         VIN is not printable ASCII
+     */
+    public synchronized void add(final AbstractVehicle theVehicle) {
+        final byte[] key = encode(theVehicle.getMyVIN());
+        final int hash = hash(key);
+        if (lookup(myTable, key, hash) != null) {
+            throw new IllegalArgumentException("Duplicate VIN: " + theVehicle.getMyVIN());
+        }
+        insert(key, hash, theVehicle);
+    }
+
+    /**
+     * Indexes vehicles, all or none.
+     *
+     * @param theVehicles the vehicles
+     * @throws IllegalArgumentException if a VIN is already indexed or appears twice
+     *         in theVehicles, or is not printable ASCII; nothing is added then
+     */
+    public synchronized void addAll(final Collection<? extends AbstractVehicle> theVehicles) {
+        final byte[][] keys = new byte[theVehicles.size()][];
+        final int[] hashes = new int[keys.length];
+        final Table pending = new Table(capacityFor(keys.length));
+        int i = 0;
+        for (final AbstractVehicle vehicle : theVehicles) {
+            keys[i] = encode(vehicle.getMyVIN());
+            hashes[i] = hash(keys[i]);
+            if (lookup(myTable, keys[i], hashes[i]) != null
+                || lookup(pending, keys[i], hashes[i]) != null) {
+                throw new IllegalArgumentException("Duplicate VIN: " + vehicle.getMyVIN());
+            }
+            pending.put(keys[i], hashes[i], vehicle);
+            i++;
+        }
+        ensureCapacity(mySize + keys.length);
+        i = 0;
+        for (final AbstractVehicle vehicle : theVehicles) {
+            insert(keys[i], hashes[i], vehicle);
+            i++;
+        }
+    }
+
+    /**
+     * Finds the vehicle with a VIN, ignoring case.
+     *
+     * @param theVIN the VIN
+     * @return the vehicle, or null if no vehicle has that VIN
+     */
+    public AbstractVehicle find(final String theVIN) {
+        final byte[] key = new byte[theVIN.length()];
+        AbstractVehicle result = null;
+        if (encodeInto(theVIN, key)) {
+            result = lookup(myTable, key, hash(key));
+        }
+        return result;
+    }
+
+    /**
+     * Finds vehicles whose VIN starts with a prefix, ignoring case, in VIN order.
+     *
+     * @param thePrefix the typed part of the VIN
+     * @param theLimit most vehicles to return
+     * @return up to theLimit vehicles
+     */
+    public List<AbstractVehicle> findByPrefix(final String thePrefix, final int theLimit) {
+        final List<AbstractVehicle> result = new ArrayList<AbstractVehicle>();
+        final byte[] from = new byte[thePrefix.length()];
+        if (encodeInto(thePrefix, from)) {
+            final byte[] to = Arrays.copyOf(from, from.length + 1);
+            to[from.length] = PREFIX_END;
+            final Iterator<AbstractVehicle> matches = mySorted.subMap(from, true, to, false).values().iterator();
+            while (result.size() < theLimit && matches.hasNext()) {
+                result.add(matches.next());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Number of indexed vehicles.
+     *
+     * @return vehicle count
+     */
+    public int size() {
+        return mySize;
+    }
+
+    /**
+     * Removes every vehicle from the index.
+     */
+    public synchronized void clear() {
+        myTable = new Table(MIN_CAPACITY);
+        mySorted.clear();
+        mySize = 0;
+    }
+
+    /**
+     * Adds a checked entry to the table and the sorted map.
+     *
+     * @param theKey encoded VIN
+     * @param theHash its hash
+     * @param theVehicle the vehicle
+     */
+    private void insert(final byte[] theKey, final int theHash, final AbstractVehicle theVehicle) {
+        if ((mySize + 1) * 2 > myTable.myKeys.length) {
+            ensureCapacity(mySize + 1);
+        }
+        myTable.put(theKey, theHash, theVehicle);
+        mySorted.put(theKey, theVehicle);
+        mySize = mySize + 1;
+    }
+
+    /**
+     * Grows the table so a number of vehicles fit, publishing the filled copy.
+     *
+     * @param theExpectedSize total vehicles expected
+     */
+    private void ensureCapacity(final int theExpectedSize) {
+        final int capacity = capacityFor(theExpectedSize);
+        final Table table = myTable;
+        if (capacity > table.myKeys.length) {
+            final Table grown = new Table(capacity);
+            for (int i = 0; i < table.myKeys.length; i++) {
+                if (table.myVehicles[i] != null) {
+                    grown.put(table.myKeys[i], table.myHashes[i], table.myVehicles[i]);
+                }
+            }
+            myTable = grown;
+        }
+    }
+
+    /**
+     * Probes a table for a key.
+     *
+     * @param theTable the table
+     * @param theKey encoded VIN
+     * @param theHash key hash
+     * @return the vehicle, or null
+     */
+    private static AbstractVehicle lookup(final Table theTable, final byte[] theKey, final int theHash) {
+        final int mask = theTable.myKeys.length - 1;
+        int slot = theHash & mask;
+        AbstractVehicle result = (AbstractVehicle) VEHICLES.getAcquire(theTable.myVehicles, slot);
+        while (result != null && (theTable.myHashes[slot] != theHash
+                                  || !Arrays.equals(theTable.myKeys[slot], theKey))) {
+            slot = (slot + 1) & mask;
+            result = (AbstractVehicle) VEHICLES.getAcquire(theTable.myVehicles, slot);
+        }
+        return result;
+    }
+
+    /**
+     * Encodes a VIN.
+     *
+     * @param theVIN the VIN
+     * @return one upper-cased byte per character
+     * @throws IllegalArgumentException if it is empty or not printable ASCII
+     */
+    private static byte[] encode(final String theVIN) {
+        final byte[] result = new byte[theVIN.length()];
+        if (result.length == 0 || !encodeInto(theVIN, result)) {
+            throw new IllegalArgumentException("Invalid VIN: " + theVIN);
+        }
+        return result;
+    }
+
+    /**
+     * Encodes characters into a byte array of the same length.
+     *
+     * @param theText the characters
+     * @param theBytes the destination
+     * @return false if a character is not printable ASCII
+     */
+    private static boolean encodeInto(final String theText, final byte[] theBytes) {
+        boolean result = true;
+        for (int i = 0; result && i < theBytes.length; i++) {
+            char c = theText.charAt(i);
+            if (c >= 'a' && c <= 'z') {
+                c -= CASE_OFFSET;
+            }
+            result = c >= FIRST_PRINTABLE && c <= LAST_PRINTABLE;
+            theBytes[i] = (byte) c;
+        }
+        return result;
+    }
+
+    /**
+     * FNV-1a hash of a key.
+     *
+     * @param theKey encoded VIN
+     * @return the hash, spread over the high bits too
+     */
+    private static int hash(final byte[] theKey) {
+        int h = FNV_BASIS;
+        for (final byte b : theKey) {
+            h = (h ^ b) * FNV_PRIME;
+        }
+        return h ^ (h >>> (Integer.SIZE / 2));
+    }
+
+    /**
+     * Table size that keeps a number of vehicles at most half full.
+     *
+     * @param theExpectedSize vehicles
+     * @return a power of two
+     */
+    private static int capacityFor(final int theExpectedSize) {
+        if (theExpectedSize > MAX_CAPACITY / 2) {
+            throw new IllegalStateException("Index is full");
+        }
+        int result = MIN_CAPACITY;
+        while (result < theExpectedSize * 2) {
+            result <<= 1;
+        }
+        return result;
+    }
+
+    /**
+     * Open-addressing table; a slot is used when its vehicle is non-null.
+     */
+    private static final class Table {
+
+        /**
+         * Encoded VINs.
+         */
+        private final byte[][] myKeys;
+
+        /**
+         * Hash of each key.
+         */
+        private final int[] myHashes;
+
+        /**
+         * Vehicles, released after their key and hash are written.
+         */
+        private final AbstractVehicle[] myVehicles;
+
+        /**
+         * Creates an empty table.
+         *
+         * @param theCapacity slot count, a power of two
+         */
+        Table(final int theCapacity) {
+            myKeys = new byte[theCapacity][];
+            myHashes = new int[theCapacity];
+            myVehicles = new AbstractVehicle[theCapacity];
+        }
+
+        /**
+         * Stores a key that is not present.
+         *
+         * @param theKey encoded VIN
+         * @param theHash its hash
+         * @param theVehicle the vehicle
+         */
+        void put(final byte[] theKey, final int theHash, final AbstractVehicle theVehicle) {
+            final int mask = myKeys.length - 1;
+            int slot = theHash & mask;
+            while (myVehicles[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            myKeys[slot] = theKey;
+            myHashes[slot] = theHash;
+            VEHICLES.setRelease(myVehicles, slot, Objects.requireNonNull(theVehicle));
+        }
+    }
+}
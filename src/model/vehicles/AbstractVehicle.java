@@ -6,8 +6,12 @@
 package model.vehicles;
 
 import java.math.BigDecimal;
-import java.text.NumberFormat;
-import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import utility.BlockIdAllocator;
+import utility.CurrencyFormatter;
+import utility.IdAllocator;
+import utility.Money;
 
 /**
  * Vehicle Class.
@@ -25,15 +29,36 @@ public abstract class AbstractVehicle {
     protected static final BigDecimal BASE_FARE = new BigDecimal("10.00");
     
     /**
-     * Vehicle instance counter.
+     * BASE_FARE in {@link Money} units.
      */
-    private static int myIDCounter;
+    private static final long BASE_FARE_UNITS = Money.rateToUnits(BASE_FARE);
+    
+    /**
+     * All rental states, indexed by ordinal.
+     */
+    private static final RentalState[] STATES = RentalState.values();
+    
+    /**
+     * Atomic access to myState without an extra object per vehicle.
+     */
+    private static final AtomicIntegerFieldUpdater<AbstractVehicle> STATE =
+        AtomicIntegerFieldUpdater.newUpdater(AbstractVehicle.class, "myState");
+    
+    /**
+     * Source of vehicle IDs; thread-safe, consecutive within a thread.
+     */
+    private static volatile IdAllocator myIDAllocator = new BlockIdAllocator(BlockIdAllocator.DEFAULT_BLOCK_SIZE);
     
     /**
      * The daily cost of renting a vehicle.
      */
     private BigDecimal myRentalAmount = BASE_FARE;
     
+    /**
+     * The daily cost of renting a vehicle in {@link Money} units, kept in step with myRentalAmount.
+     */
+    private long myRentalAmountUnits = BASE_FARE_UNITS;
+    
     /**
      * Vehicle ID Number.
      */
@@ -50,9 +75,10 @@ public abstract class AbstractVehicle {
     private final String myName;
     
     /**
-     * Determines if vehicle is available for rent or not.
+     * Ordinal of the vehicle's {@link RentalState}, only changed by compare-and-set.
+     * Vehicles start out unavailable until their constructor sets the availability.
      */
-    private boolean myAvailability;
+    private volatile int myState = RentalState.RENTED.ordinal();
     
     /**
      * Constructor to initialize core vehicle properties.
@@ -60,12 +86,40 @@ public abstract class AbstractVehicle {
      * @param theName Vehicle's name
      */
     public AbstractVehicle(final String theName, final String theVIN) {
-        myIDCounter++;
-        myVehicleID = myIDCounter;
+        myVehicleID = myIDAllocator.nextId();
         this.myName = theName;
         this.myVIN = theVIN;
     }
     
+    /**
+     * Constructor for views whose properties are stored elsewhere, such as the rows
+     * of a {@link ColumnarVehicleStore}. Views override the property getters and the
+     * rental state accessors.
+     * @param theVehicleID Vehicle ID of the stored vehicle
+     */
+    protected AbstractVehicle(final int theVehicleID) {
+        myVehicleID = theVehicleID;
+        myName = null;
+        myVIN = null;
+    }
+    
+    /**
+     * Takes the next vehicle ID from the shared allocator.
+     * @return a new vehicle ID
+     */
+    static int nextVehicleID() {
+        return myIDAllocator.nextId();
+    }
+    
+    /**
+     * Replaces the allocator used for the IDs of vehicles created from now on,
+     * for example with a persistent one so IDs never collide with stored vehicles.
+     * @param theAllocator Vehicle ID allocator
+     */
+    public static void setIDAllocator(final IdAllocator theAllocator) {
+        myIDAllocator = Objects.requireNonNull(theAllocator);
+    }
+    
     /**
      * The Vehicle ID.
      * @return Vehicle ID
@@ -98,13 +152,20 @@ public abstract class AbstractVehicle {
         return myRentalAmount;
     }
     
+    /**
+     * The Vehicle Fare in fixed-point {@link Money} units.
+     * @return Vehicle Daily Fare in units.
+     */
+    public long getMyRentalAmountUnits() {
+        return myRentalAmountUnits;
+    }
+    
     /**
      * Gives string representation of myRentalAmount in dollars.
      * @return Daily rental cost of vehicle in dollars.
      */
     public String getMyRentalPrice() {
-        final NumberFormat nf = NumberFormat.getCurrencyInstance(Locale.US);
-        return nf.format(myRentalAmount);
+        return CurrencyFormatter.US.formatUnits(getMyRentalAmountUnits());
     }
     
     /**
@@ -112,23 +173,134 @@ public abstract class AbstractVehicle {
      * @param theNewAmount The new vehicle fare amount.
      */
     protected void setMyRentalAmount(final BigDecimal theNewAmount) {
+        myRentalAmountUnits = Money.rateToUnits(theNewAmount);
         myRentalAmount = theNewAmount;
     }
     
+    /**
+     * Sets the vehicle fare to the {@link PriceCatalog} rate of its type and features,
+     * without any BigDecimal arithmetic.
+     */
+    protected final void setCatalogRentalAmount() {
+        final VehicleType type = getVehicleType();
+        final int features = getFeatureMask();
+        myRentalAmount = PriceCatalog.priceOf(type, features);
+        myRentalAmountUnits = PriceCatalog.unitsOf(type, features);
+    }
+    
     /**
      * Checks if vehicle is available for rent.
      * @return Vehicle Availability
      */
     public boolean isAvailable() {
-        return myAvailability;
+        return readState() == RentalState.AVAILABLE.ordinal();
     }
     
     /**
-     * Sets the availability of the vehicle.
+     * Sets the availability of the vehicle, overriding the rental state.
+     * Unavailable vehicles are treated as rented.
      * @param theAvailability Vehicle Availability
      */
     public void setMyAvailability(final boolean theAvailability) {
-        myAvailability = theAvailability;
+        RentalState state = RentalState.RENTED;
+        if (theAvailability) {
+            state = RentalState.AVAILABLE;
+        }
+        writeState(state.ordinal());
+    }
+    
+    /**
+     * The current rental state.
+     * @return Vehicle rental state
+     */
+    public RentalState getRentalState() {
+        return STATES[readState()];
+    }
+    
+    /**
+     * Claims an available vehicle for a renter (AVAILABLE to RESERVED).
+     * Of several concurrent callers exactly one succeeds.
+     * @return true if this caller reserved the vehicle
+     */
+    public boolean tryReserve() {
+        return transition(RentalState.AVAILABLE, RentalState.RESERVED);
+    }
+    
+    /**
+     * Hands a reserved vehicle to its renter (RESERVED to RENTED).
+     * @return true if the vehicle was reserved
+     */
+    public boolean confirmRental() {
+        return transition(RentalState.RESERVED, RentalState.RENTED);
+    }
+    
+    /**
+     * Abandons a reservation (RESERVED to AVAILABLE).
+     * @return true if the vehicle was reserved
+     */
+    public boolean cancelReservation() {
+        return transition(RentalState.RESERVED, RentalState.AVAILABLE);
+    }
+    
+    /**
+     * Takes back a rented vehicle (RENTED to RETURNED).
+     * Of several concurrent callers exactly one succeeds.
+     * @return true if this caller took the vehicle back
+     */
+    public boolean tryReturn() {
+        return transition(RentalState.RENTED, RentalState.RETURNED);
+    }
+    
+    /**
+     * Abandons a return, handing the vehicle back to its renter (RETURNED to RENTED).
+     * @return true if the vehicle was returned
+     */
+    public boolean cancelReturn() {
+        return transition(RentalState.RETURNED, RentalState.RENTED);
+    }
+    
+    /**
+     * Puts a returned vehicle back into service (RETURNED to AVAILABLE).
+     * @return true if the vehicle was returned
+     */
+    public boolean completeReturn() {
+        return transition(RentalState.RETURNED, RentalState.AVAILABLE);
+    }
+    
+    /**
+     * Atomically moves the vehicle from one rental state to another.
+     * @param theFrom Expected current state
+     * @param theTo New state
+     * @return true if the vehicle was in theFrom and is now in theTo
+     */
+    private boolean transition(final RentalState theFrom, final RentalState theTo) {
+        return casState(theFrom.ordinal(), theTo.ordinal());
+    }
+    
+    /**
+     * Reads the rental state ordinal (volatile).
+     * @return ordinal of the current {@link RentalState}
+     */
+    protected int readState() {
+        return myState;
+    }
+    
+    /**
+     * Writes the rental state ordinal (volatile).
+     * @param theState ordinal of the new {@link RentalState}
+     */
+    protected void writeState(final int theState) {
+        myState = theState;
+    }
+    
+    /**
+     * Atomically replaces the rental state ordinal if it has an expected value.
+     * @param theFrom Expected ordinal
+     * @param theTo New ordinal
+     * @return true if the state was theFrom and is now theTo
+     */
+    protected boolean casState(final int theFrom, final int theTo) {
+        return STATE.compareAndSet(this, theFrom, theTo);
     }
     
     /**
@@ -166,6 +338,18 @@ public abstract class AbstractVehicle {
      */
     public abstract String toString();
     
+    /**
+     * The kind of vehicle.
+     * @return Vehicle type
+     */
+    public abstract VehicleType getVehicleType();
+    
+    /**
+     * The optional features of the vehicle.
+     * @return mask of {@link VehicleFeature#bit()} values
+     */
+    public abstract int getFeatureMask();
+    
     /**
      * Calculates the daily fare for a vehicle object.
      */
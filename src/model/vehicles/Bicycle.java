@@ -25,6 +25,11 @@ public class Bicycle extends AbstractVehicle {
      */
     private final String myType;
     
+    /**
+     * myType resolved once, or null for a bicycle without a special fare.
+     */
+    private final BicycleType myCycleType;
+    
     /**
      * Initializes key properties of bicycle object.
      * @param theName Bicycle Name
@@ -36,6 +41,23 @@ public class Bicycle extends AbstractVehicle {
         super(theName, theVIN);
         setMyAvailability(theAvailability);
         myType = theType;
+        myCycleType = BicycleType.fromName(theType);
+        calculateRentalAmount();
+    }
+    
+    /**
+     * Initializes key properties of bicycle object without looking up the type by name.
+     * @param theName Bicycle Name
+     * @param theVIN Bicycle VIN
+     * @param theAvailability Bicycle Availability
+     * @param theType Bicycle Type
+     */
+    public Bicycle(final String theName, final String theVIN, final boolean theAvailability,
+                   final BicycleType theType) {
+        super(theName, theVIN);
+        setMyAvailability(theAvailability);
+        myType = theType.getMyName();
+        myCycleType = theType;
         calculateRentalAmount();
     }
     
@@ -45,17 +67,29 @@ public class Bicycle extends AbstractVehicle {
      * @return Car daily fare
      */
     protected final void calculateRentalAmount() {
-        final String[] types = {"Mountain", "Cruiser", "Hybrid"};
-        BigDecimal cost = CYCLE_FARE;
-        
-        if (myType.equals(types[0])) {
-            cost = cost.multiply(new BigDecimal("1.01"));
-        } else if (myType.equals(types[1])) {
-            cost = cost.multiply(new BigDecimal("1.02"));
-        } else if (myType.equals(types[2])) {
-            cost = cost.multiply(new BigDecimal("1.04"));
+        setCatalogRentalAmount();
+    }
+    
+    /**
+     * Get bicycle type name.
+     * @return Bicycle type, e.g. "Mountain" or "Road"
+     */
+    public String getMyType() {
+        return myType;
+    }
+    
+    @Override
+    public VehicleType getVehicleType() {
+        return VehicleType.BICYCLE;
+    }
+    
+    @Override
+    public int getFeatureMask() {
+        int mask = 0;
+        if (myCycleType != null) {
+            mask = myCycleType.getMyFeature().bit();
         }
-        setMyRentalAmount(cost);
+        return mask;
     }
     
     @Override
@@ -0,0 +1,82 @@
+/*
+ * Bicycle Type: bicycle kinds with their own fare.
+ */
+
+package model.vehicles;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Kinds of bicycle that have their own fare and search feature. Other bicycle
+ * types (e.g. "Road") are allowed but priced at the plain bicycle fare.
+ * 
+ * @author roys4
+ * @version Winter 2021
+ */
+public enum BicycleType {
+    /** Mountain bicycle. */
+    MOUNTAIN("Mountain", VehicleFeature.MOUNTAIN),
+    /** Cruiser bicycle. */
+    CRUISER("Cruiser", VehicleFeature.CRUISER),
+    /** Hybrid bicycle. */
+    HYBRID("Hybrid", VehicleFeature.HYBRID);
+
+    /**
+     * Types by display name.
+     */
+    private static final Map<String, BicycleType> BY_NAME = new HashMap<String, BicycleType>();
+
+    static {
+        for (final BicycleType type : values()) {
+            BY_NAME.put(type.myName, type);
+        }
+    }
+
+    /**
+     * Display name, as used in fleet files.
+     */
+    private final String myName;
+
+    /**
+     * Search feature of the type.
+     */
+    private final VehicleFeature myFeature;
+
+    /**
+     * Creates a bicycle type.
+     * 
+     * @param theName display name
+     * @param theFeature search feature
+     */
+    BicycleType(final String theName, final VehicleFeature theFeature) {
+        myName = theName;
+        myFeature = theFeature;
+    }
+
+    /**
+     * Looks up a type by display name, case-sensitive.
+     * 
+     * @param theName display name, e.g. "Mountain"
+     * @return the type, or null for a bicycle without a special fare
+     */
+    public static BicycleType fromName(final String theName) {
+        return BY_NAME.get(theName);
+    }
+
+    /**
+     * Get display name.
+     * @return the name, e.g. "Mountain"
+     */
+    public String getMyName() {
+        return myName;
+    }
+
+    /**
+     * Get search feature.
+     * @return the feature bicycles of this type have
+     */
+    public VehicleFeature getMyFeature() {
+        return myFeature;
+    }
+}
@@ -5,7 +5,6 @@
 
 package model.vehicles;
 
-import java.math.BigDecimal;
 import java.util.Objects;
 
 /**
@@ -16,11 +15,6 @@ import java.util.Objects;
  */
 public class Car extends AbstractVehicle {
     
-    /**
-     * Base car fare.
-     */
-    private static final BigDecimal CAR_FARE = BASE_FARE.multiply(new BigDecimal("3.00"));
-    
     /**
      * Checks if car is a luxury car.
      * If "true", then it is a luxury car.
@@ -63,22 +57,27 @@ public class Car extends AbstractVehicle {
      * @return Car daily fare
      */
     protected final void calculateRentalAmount() {
-        
-        BigDecimal cost = CAR_FARE;
-        
+        setCatalogRentalAmount();
+    }
+    
+    @Override
+    public VehicleType getVehicleType() {
+        return VehicleType.CAR;
+    }
+    
+    @Override
+    public int getFeatureMask() {
+        int mask = 0;
         if (myLuxuryCondition) {
-            cost = cost.add(new BigDecimal("10.00"));
+            mask |= VehicleFeature.LUXURY.bit();
         }
-        
         if (myNavCondition) {
-            cost = cost.add(new BigDecimal("1.00"));
+            mask |= VehicleFeature.NAVIGATION.bit();
         }
-        
         if (myDriveAssistCondition) {
-            cost = cost.add(new BigDecimal("2.00"));
+            mask |= VehicleFeature.DRIVE_ASSIST.bit();
         }
-        
-        setMyRentalAmount(cost);
+        return mask;
     }
     
     @Override
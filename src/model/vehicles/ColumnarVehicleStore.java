@@ -0,0 +1,674 @@
+/*
+ * Off-heap, column-wise vehicle storage for very large fleets.
+ */
+
+package model.vehicles;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import utility.Money;
+
+/**
+ * Stores vehicles column by column in direct (off-heap) memory instead of one heap
+ * object per vehicle, and hands out lightweight {@link AbstractVehicle} views of
+ * the rows.
+ *
+ * Rows live in segments of {@link #SEGMENT_ROWS}; within a segment each property is
+ * a contiguous column: vehicle ID, rental state, daily rate in cents, name, VIN and
+ * bicycle type (as string arena offsets), vehicle type and feature mask. Segments
+ * are never moved once allocated, so rental state changes are compare-and-set
+ * operations straight on the column and are never lost while the store grows.
+ *
+ * Names, VINs and bicycle types are UTF-8 strings in an off-heap arena. Equal
+ * strings are stored once, so a fleet of a few models costs one copy of each name.
+ *
+ * Adding rows is serialized. Views, ID lookups and state changes do not lock.
+ *
+ * A {@link model.RentalManager} given a store (see
+ * {@link model.RentalManager#generateInventory(ColumnarVehicleStore)}) copies its
+ * fleet into it and indexes one view per row, so renting and dropping off change the
+ * stored state while the properties stay off the heap.
+ *
+ * @author roys4
+ * @version Winter 2021
+ */
+public final class ColumnarVehicleStore {
+
+    /**
+     * Rows per segment.
+     */
+    public static final int SEGMENT_ROWS = 1 << 16;
+
+    /**
+     * log2 of SEGMENT_ROWS.
+     */
+    private static final int SEGMENT_SHIFT = 16;
+
+    /**
+     * Offset of the ID column in a segment.
+     */
+    private static final int ID_COLUMN = 0;
+
+    /**
+     * Offset of the rental state column.
+     */
+    private static final int STATE_COLUMN = ID_COLUMN + Integer.BYTES * SEGMENT_ROWS;
+
+    /**
+     * Offset of the daily rate (cents) column; 8-byte aligned.
+     */
+    private static final int CENTS_COLUMN = STATE_COLUMN + Integer.BYTES * SEGMENT_ROWS;
+
+    /**
+     * Offset of the name column.
+     */
+    private static final int NAME_COLUMN = CENTS_COLUMN + Long.BYTES * SEGMENT_ROWS;
+
+    /**
+     * Offset of the VIN column.
+     */
+    private static final int VIN_COLUMN = NAME_COLUMN + Integer.BYTES * SEGMENT_ROWS;
+
+    /**
+     * Offset of the bicycle type column (-1 for other vehicles).
+     */
+    private static final int CYCLE_TYPE_COLUMN = VIN_COLUMN + Integer.BYTES * SEGMENT_ROWS;
+
+    /**
+     * Offset of the vehicle type column.
+     */
+    private static final int TYPE_COLUMN = CYCLE_TYPE_COLUMN + Integer.BYTES * SEGMENT_ROWS;
+
+    /**
+     * Offset of the feature mask column.
+     */
+    private static final int FEATURE_COLUMN = TYPE_COLUMN + SEGMENT_ROWS;
+
+    /**
+     * Bytes of a segment.
+     */
+    private static final int SEGMENT_BYTES = FEATURE_COLUMN + SEGMENT_ROWS;
+
+    /**
+     * Alignment needed for atomic access to the columns.
+     */
+    private static final int ALIGNMENT = Long.BYTES;
+
+    /**
+     * Bytes per arena chunk; strings never cross a chunk.
+     */
+    private static final int ARENA_CHUNK_BYTES = 1 << 20;
+
+    /**
+     * log2 of ARENA_CHUNK_BYTES.
+     */
+    private static final int ARENA_SHIFT = 20;
+
+    /**
+     * Longest string the arena holds, in UTF-8 bytes.
+     */
+    private static final int MAX_STRING_BYTES = 0xffff;
+
+    /**
+     * Mask to read an unsigned short or byte.
+     */
+    private static final int USHORT_MASK = 0xffff;
+
+    /**
+     * Mask to read an unsigned byte.
+     */
+    private static final int UBYTE_MASK = 0xff;
+
+    /**
+     * Marks an absent string offset.
+     */
+    private static final int NO_STRING = -1;
+
+    /**
+     * Initial size of the string dedup table and the ID index.
+     */
+    private static final int INITIAL_TABLE = 1 << 10;
+
+    /**
+     * Atomic int access to direct buffers.
+     */
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class,
+                                                                                ByteOrder.nativeOrder());
+
+    /**
+     * All vehicle types, indexed by ordinal.
+     */
+    private static final VehicleType[] TYPES = VehicleType.values();
+
+    /**
+     * Segments; replaced by a longer array when one is added.
+     */
+    private volatile ByteBuffer[] mySegments = new ByteBuffer[0];
+
+    /**
+     * Arena chunks; replaced by a longer array when one is added.
+     */
+    private volatile ByteBuffer[] myArena = new ByteBuffer[0];
+
+    /**
+     * Write position in the last arena chunk.
+     */
+    private int myArenaPosition = ARENA_CHUNK_BYTES;
+
+    /**
+     * String dedup table: arena offset plus one, 0 for empty. Used by writers only.
+     */
+    private int[] myStrings = new int[INITIAL_TABLE];
+
+    /**
+     * Hash of each myStrings entry.
+     */
+    private int[] myStringHashes = new int[INITIAL_TABLE];
+
+    /**
+     * Number of distinct strings.
+     */
+    private int myStringCount;
+
+    /**
+     * Vehicle ID to row index.
+     */
+    private volatile IdIndex myIndex = new IdIndex(INITIAL_TABLE);
+
+    /**
+     * Number of rows, written after a row is fully stored.
+     */
+    private volatile int mySize;
+
+    /**
+     * Adds a copy of a vehicle, keeping its ID and rental state.
+     *
+     * @param theVehicle the vehicle
+     * @return its row
+     * @throws IllegalArgumentException if the ID is already stored or the rate is not whole cents
+     */
+    public synchronized int add(final AbstractVehicle theVehicle) {
+        String cycleType = null;
+        if (theVehicle instanceof Bicycle) {
+            cycleType = ((Bicycle) theVehicle).getMyType();
+        }
+        final long units = theVehicle.getMyRentalAmountUnits();
+        if (units % Money.UNITS_PER_CENT != 0) {
+            throw new IllegalArgumentException("Rate is not a whole number of cents: " + units);
+        }
+        return addRow(theVehicle.getMyVehicleID(), theVehicle.getVehicleType(), theVehicle.getMyName(),
+                      theVehicle.getMyVIN(), theVehicle.getRentalState(), units / Money.UNITS_PER_CENT,
+                      theVehicle.getFeatureMask(), cycleType);
+    }
+
+    /**
+     * Adds a vehicle without creating a heap object for it. It gets a new vehicle ID
+     * and its {@link PriceCatalog} rate.
+     *
+     * @param theType vehicle type
+     * @param theName vehicle name
+     * @param theVIN vehicle VIN
+     * @param theAvailability whether it is available
+     * @param theFeatureMask its features
+     * @param theCycleType bicycle type name (bicycles only, else null)
+     * @return its row
+     */
+    public synchronized int add(final VehicleType theType, final String theName, final String theVIN,
+                                final boolean theAvailability, final int theFeatureMask,
+                                final String theCycleType) {
+        RentalState state = RentalState.RENTED;
+        if (theAvailability) {
+            state = RentalState.AVAILABLE;
+        }
+        return addRow(AbstractVehicle.nextVehicleID(), theType, theName, theVIN, state,
+                      PriceCatalog.unitsOf(theType, theFeatureMask) / Money.UNITS_PER_CENT, theFeatureMask,
+                      theCycleType);
+    }
+
+    /**
+     * Adds copies of vehicles in order.
+     *
+     * @param theVehicles the vehicles
+     */
+    public synchronized void addAll(final Collection<? extends AbstractVehicle> theVehicles) {
+        for (final AbstractVehicle vehicle : theVehicles) {
+            add(vehicle);
+        }
+    }
+
+    /**
+     * Number of stored vehicles.
+     *
+     * @return row count
+     */
+    public int size() {
+        return mySize;
+    }
+
+    /**
+     * A view of a row.
+     *
+     * @param theRow row index
+     * @return a new view; views of the same row are equal
+     * @throws IndexOutOfBoundsException if the row does not exist
+     */
+    public AbstractVehicle view(final int theRow) {
+        Objects.checkIndex(theRow, mySize);
+        final ByteBuffer segment = mySegments[theRow >>> SEGMENT_SHIFT];
+        final int row = theRow & (SEGMENT_ROWS - 1);
+        return new VehicleView(this, segment, row, segment.getInt(ID_COLUMN + row * Integer.BYTES));
+    }
+
+    /**
+     * A view of the vehicle with an ID.
+     *
+     * @param theVehicleID the vehicle ID
+     * @return a new view, or null if the ID is not stored
+     */
+    public AbstractVehicle findByID(final int theVehicleID) {
+        final int row = myIndex.get(theVehicleID);
+        AbstractVehicle result = null;
+        if (row >= 0) {
+            result = view(row);
+        }
+        return result;
+    }
+
+    /**
+     * Direct memory held by the columns and the string arena.
+     *
+     * @return bytes
+     */
+    public long offHeapBytes() {
+        return (long) mySegments.length * (SEGMENT_BYTES + ALIGNMENT)
+               + (long) myArena.length * ARENA_CHUNK_BYTES;
+    }
+
+    /**
+     * Number of distinct strings in the arena.
+     *
+     * @return string count
+     */
+    public synchronized int distinctStrings() {
+        return myStringCount;
+    }
+
+    /**
+     * Reads a rental state ordinal.
+     *
+     * @param theSegment the row's segment
+     * @param theRow row within the segment
+     * @return the state ordinal
+     */
+    static int readState(final ByteBuffer theSegment, final int theRow) {
+        return (int) INTS.getVolatile(theSegment, STATE_COLUMN + theRow * Integer.BYTES);
+    }
+
+    /**
+     * Writes a rental state ordinal.
+     *
+     * @param theSegment the row's segment
+     * @param theRow row within the segment
+     * @param theState the state ordinal
+     */
+    static void writeState(final ByteBuffer theSegment, final int theRow, final int theState) {
+        INTS.setVolatile(theSegment, STATE_COLUMN + theRow * Integer.BYTES, theState);
+    }
+
+    /**
+     * Compare-and-set of a rental state ordinal.
+     *
+     * @param theSegment the row's segment
+     * @param theRow row within the segment
+     * @param theFrom expected ordinal
+     * @param theTo new ordinal
+     * @return true if the state was replaced
+     */
+    static boolean casState(final ByteBuffer theSegment, final int theRow, final int theFrom, final int theTo) {
+        return INTS.compareAndSet(theSegment, STATE_COLUMN + theRow * Integer.BYTES, theFrom, theTo);
+    }
+
+    /**
+     * Reads the daily rate of a row.
+     *
+     * @param theSegment the row's segment
+     * @param theRow row within the segment
+     * @return the rate in cents
+     */
+    static long cents(final ByteBuffer theSegment, final int theRow) {
+        return theSegment.getLong(CENTS_COLUMN + theRow * Long.BYTES);
+    }
+
+    /**
+     * Reads the vehicle type of a row.
+     *
+     * @param theSegment the row's segment
+     * @param theRow row within the segment
+     * @return the type
+     */
+    static VehicleType type(final ByteBuffer theSegment, final int theRow) {
+        return TYPES[theSegment.get(TYPE_COLUMN + theRow)];
+    }
+
+    /**
+     * Reads the feature mask of a row.
+     *
+     * @param theSegment the row's segment
+     * @param theRow row within the segment
+     * @return the mask
+     */
+    static int features(final ByteBuffer theSegment, final int theRow) {
+        return theSegment.get(FEATURE_COLUMN + theRow) & UBYTE_MASK;
+    }
+
+    /**
+     * Reads the name of a row.
+     *
+     * @param theSegment the row's segment
+     * @param theRow row within the segment
+     * @return the name
+     */
+    String name(final ByteBuffer theSegment, final int theRow) {
+        return string(theSegment.getInt(NAME_COLUMN + theRow * Integer.BYTES));
+    }
+
+    /**
+     * Reads the VIN of a row.
+     *
+     * @param theSegment the row's segment
+     * @param theRow row within the segment
+     * @return the VIN
+     */
+    String vin(final ByteBuffer theSegment, final int theRow) {
+        return string(theSegment.getInt(VIN_COLUMN + theRow * Integer.BYTES));
+    }
+
+    /**
+     * Reads the bicycle type of a row.
+     *
+     * @param theSegment the row's segment
+     * @param theRow row within the segment
+     * @return the bicycle type name, or null for other vehicles
+     */
+    String cycleType(final ByteBuffer theSegment, final int theRow) {
+        return string(theSegment.getInt(CYCLE_TYPE_COLUMN + theRow * Integer.BYTES));
+    }
+
+    /**
+     * Stores a row.
+     *
+     * @param theVehicleID vehicle ID
+     * @param theType vehicle type
+     * @param theName name
+     * @param theVIN VIN
+     * @param theState rental state
+     * @param theCents daily rate in cents
+     * @param theFeatureMask features
+     * @param theCycleType bicycle type or null
+     * @return the row
+     */
+    private int addRow(final int theVehicleID, final VehicleType theType, final String theName,
+                       final String theVIN, final RentalState theState, final long theCents,
+                       final int theFeatureMask, final String theCycleType) {
+        if (myIndex.get(theVehicleID) >= 0) {
+            throw new IllegalArgumentException("Vehicle ID already stored: " + theVehicleID);
+        }
+        final int row = mySize;
+        if (row == Integer.MAX_VALUE) {
+            throw new IllegalStateException("Store is full");
+        }
+        final int segmentIndex = row >>> SEGMENT_SHIFT;
+        if (segmentIndex == mySegments.length) {
+            final ByteBuffer[] grown = Arrays.copyOf(mySegments, segmentIndex + 1);
+            grown[segmentIndex] = ByteBuffer.allocateDirect(SEGMENT_BYTES + ALIGNMENT).alignedSlice(ALIGNMENT)
+                                            .order(ByteOrder.nativeOrder());
+            mySegments = grown;
+        }
+        final ByteBuffer segment = mySegments[segmentIndex];
+        final int slot = row & (SEGMENT_ROWS - 1);
+        segment.putInt(ID_COLUMN + slot * Integer.BYTES, theVehicleID);
+        segment.putInt(STATE_COLUMN + slot * Integer.BYTES, theState.ordinal());
+        segment.putLong(CENTS_COLUMN + slot * Long.BYTES, theCents);
+        segment.putInt(NAME_COLUMN + slot * Integer.BYTES, intern(theName));
+        segment.putInt(VIN_COLUMN + slot * Integer.BYTES, intern(theVIN));
+        segment.putInt(CYCLE_TYPE_COLUMN + slot * Integer.BYTES, intern(theCycleType));
+        segment.put(TYPE_COLUMN + slot, (byte) theType.ordinal());
+        segment.put(FEATURE_COLUMN + slot, (byte) theFeatureMask);
+        // Row count first, so a reader that finds the ID can always view the row
+        mySize = row + 1;
+        IdIndex index = myIndex;
+        if (index.isFull()) {
+            index = index.grown();
+        }
+        index.put(theVehicleID, row);
+        myIndex = index;
+        return row;
+    }
+
+    /**
+     * Stores a string in the arena once.
+     *
+     * @param theString the string, or null
+     * @return its arena offset, or NO_STRING for null
+     */
+    private int intern(final String theString) {
+        int result = NO_STRING;
+        if (theString != null) {
+            final byte[] bytes = theString.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > MAX_STRING_BYTES) {
+                throw new IllegalArgumentException("String too long for the store");
+            }
+            final int hash = Arrays.hashCode(bytes);
+            int slot = hash & (myStrings.length - 1);
+            while (myStrings[slot] != 0 && result == NO_STRING) {
+                if (myStringHashes[slot] == hash && arenaEquals(myStrings[slot] - 1, bytes)) {
+                    result = myStrings[slot] - 1;
+                } else {
+                    slot = (slot + 1) & (myStrings.length - 1);
+                }
+            }
+            if (result == NO_STRING) {
+                result = append(bytes);
+                myStrings[slot] = result + 1;
+                myStringHashes[slot] = hash;
+                myStringCount++;
+                if (myStringCount * 2 > myStrings.length) {
+                    growStrings();
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Appends a string to the arena.
+     *
+     * @param theBytes UTF-8 bytes
+     * @return the arena offset
+     */
+    private int append(final byte[] theBytes) {
+        if (myArenaPosition + Short.BYTES + theBytes.length > ARENA_CHUNK_BYTES) {
+            final ByteBuffer[] grown = Arrays.copyOf(myArena, myArena.length + 1);
+            grown[myArena.length] = ByteBuffer.allocateDirect(ARENA_CHUNK_BYTES);
+            myArena = grown;
+            myArenaPosition = 0;
+        }
+        final int chunk = myArena.length - 1;
+        final ByteBuffer buffer = myArena[chunk];
+        final int offset = (chunk << ARENA_SHIFT) | myArenaPosition;
+        buffer.putShort(myArenaPosition, (short) theBytes.length);
+        buffer.put(myArenaPosition + Short.BYTES, theBytes);
+        myArenaPosition += Short.BYTES + theBytes.length;
+        return offset;
+    }
+
+    /**
+     * Compares an arena string with bytes.
+     *
+     * @param theOffset arena offset
+     * @param theBytes UTF-8 bytes
+     * @return true if they are equal
+     */
+    private boolean arenaEquals(final int theOffset, final byte[] theBytes) {
+        final ByteBuffer buffer = myArena[theOffset >>> ARENA_SHIFT];
+        final int position = theOffset & (ARENA_CHUNK_BYTES - 1);
+        boolean result = (buffer.getShort(position) & USHORT_MASK) == theBytes.length;
+        for (int i = 0; result && i < theBytes.length; i++) {
+            result = buffer.get(position + Short.BYTES + i) == theBytes[i];
+        }
+        return result;
+    }
+
+    /**
+     * Doubles the string dedup table.
+     */
+    private void growStrings() {
+        final int[] strings = new int[myStrings.length * 2];
+        final int[] hashes = new int[strings.length];
+        for (int i = 0; i < myStrings.length; i++) {
+            if (myStrings[i] != 0) {
+                int slot = myStringHashes[i] & (strings.length - 1);
+                while (strings[slot] != 0) {
+                    slot = (slot + 1) & (strings.length - 1);
+                }
+                strings[slot] = myStrings[i];
+                hashes[slot] = myStringHashes[i];
+            }
+        }
+        myStrings = strings;
+        myStringHashes = hashes;
+    }
+
+    /**
+     * Decodes an arena string.
+     *
+     * @param theOffset arena offset, or NO_STRING
+     * @return the string, or null
+     */
+    private String string(final int theOffset) {
+        String result = null;
+        if (theOffset != NO_STRING) {
+            final ByteBuffer buffer = myArena[theOffset >>> ARENA_SHIFT];
+            final int position = theOffset & (ARENA_CHUNK_BYTES - 1);
+            final byte[] bytes = new byte[buffer.getShort(position) & USHORT_MASK];
+            buffer.get(position + Short.BYTES, bytes);
+            result = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return result;
+    }
+
+    /**
+     * Open-addressing map from vehicle ID to row. One writer (under the store lock)
+     * and any number of lock-free readers: a row is written before its key is
+     * published, and a grown index is only published once filled.
+     */
+    private static final class IdIndex {
+
+        /**
+         * Marks an empty key slot.
+         */
+        private static final int EMPTY = Integer.MIN_VALUE;
+
+        /**
+         * Hash spreading multiplier (golden ratio).
+         */
+        private static final int SPREAD = 0x9E3779B9;
+
+        /**
+         * Keys (vehicle IDs), EMPTY when unused.
+         */
+        private final AtomicIntegerArray myKeys;
+
+        /**
+         * Row of each key.
+         */
+        private final int[] myRows;
+
+        /**
+         * Number of keys.
+         */
+        private int myCount;
+
+        /**
+         * Creates an empty index.
+         *
+         * @param theCapacity slot count, a power of two
+         */
+        IdIndex(final int theCapacity) {
+            myKeys = new AtomicIntegerArray(theCapacity);
+            myRows = new int[theCapacity];
+            for (int i = 0; i < theCapacity; i++) {
+                myKeys.lazySet(i, EMPTY);
+            }
+        }
+
+        /**
+         * Checks whether one more key would pass half the capacity.
+         *
+         * @return true if the index must grow first
+         */
+        boolean isFull() {
+            return (myCount + 1) * 2 > myRows.length;
+        }
+
+        /**
+         * Copies the index into one twice as large.
+         *
+         * @return the new index, not yet published
+         */
+        IdIndex grown() {
+            final IdIndex result = new IdIndex(myRows.length * 2);
+            for (int i = 0; i < myRows.length; i++) {
+                final int key = myKeys.get(i);
+                if (key != EMPTY) {
+                    result.put(key, myRows[i]);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Adds a key that is not present.
+         *
+         * @param theKey vehicle ID
+         * @param theRow its row
+         */
+        void put(final int theKey, final int theRow) {
+            int slot = (theKey * SPREAD) & (myRows.length - 1);
+            while (myKeys.get(slot) != EMPTY) {
+                slot = (slot + 1) & (myRows.length - 1);
+            }
+            myRows[slot] = theRow;
+            myKeys.set(slot, theKey);
+            myCount++;
+        }
+
+        /**
+         * Looks up a key.
+         *
+         * @param theKey vehicle ID
+         * @return its row, or -1
+         */
+        int get(final int theKey) {
+            int result = -1;
+            int slot = (theKey * SPREAD) & (myRows.length - 1);
+            int key = myKeys.get(slot);
+            while (key != EMPTY && result < 0) {
+                if (key == theKey) {
+                    result = myRows[slot];
+                } else {
+                    slot = (slot + 1) & (myRows.length - 1);
+                    key = myKeys.get(slot);
+                }
+            }
+            return result;
+        }
+    }
+}
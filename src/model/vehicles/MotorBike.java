@@ -5,7 +5,6 @@
 
 package model.vehicles;
 
-import java.math.BigDecimal;
 import java.util.Objects;
 
 /**
@@ -15,11 +14,6 @@ import java.util.Objects;
  */
 public class MotorBike extends AbstractVehicle {
     
-    /**
-     * Daily base motor bike fare.
-     */
-    private static final BigDecimal BIKE_FARE = BASE_FARE.multiply(new BigDecimal("2.00"));
-    
     /**
      * Checks if motor bike is a touring type or not.
      * If set to "true" then it is a touring bike.
@@ -46,11 +40,21 @@ public class MotorBike extends AbstractVehicle {
      * @return Car daily fare
      */
     public final void calculateRentalAmount() {
-        BigDecimal cost = BIKE_FARE;   
+        setCatalogRentalAmount();
+    }
+    
+    @Override
+    public VehicleType getVehicleType() {
+        return VehicleType.MOTOR_BIKE;
+    }
+    
+    @Override
+    public int getFeatureMask() {
+        int mask = 0;
         if (myTouringCondition) {
-            cost = cost.add(new BigDecimal("5.00"));
+            mask = VehicleFeature.TOURING.bit();
         }
-        setMyRentalAmount(cost);
+        return mask;
     }
     
     @Override
@@ -0,0 +1,167 @@
+/*
+ * Price Catalog: precomputed daily rates of every vehicle configuration.
+ */
+
+package model.vehicles;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import utility.Money;
+
+/**
+ * Daily rental rates of every vehicle configuration, computed once when the class
+ * loads and looked up by vehicle type and feature mask.
+ * 
+ * The fare rules live here: cars cost three times the base fare plus $10.00 for
+ * luxury, $1.00 for navigation and $2.00 for drive assistance; motor bikes cost
+ * twice the base fare plus $5.00 for touring; bicycles cost the base fare, times
+ * 1.01 for mountain, 1.02 for cruiser and 1.04 for hybrid bicycles. Features that do
+ * not apply to a type are ignored. Equal rates share one BigDecimal, and every rate
+ * has its {@link Money} units ready, so a vehicle gets its rate with two
+ * array reads.
+ * 
+ * @author roys4
+ * @version Winter 2021
+ */
+public final class PriceCatalog {
+
+    /**
+     * Number of distinct feature masks.
+     */
+    private static final int MASKS = 1 << VehicleFeature.values().length;
+
+    /**
+     * Daily car fare before features.
+     */
+    private static final BigDecimal CAR_FARE = AbstractVehicle.BASE_FARE.multiply(new BigDecimal("3.00"));
+
+    /**
+     * Daily motor bike fare before features.
+     */
+    private static final BigDecimal BIKE_FARE = AbstractVehicle.BASE_FARE.multiply(new BigDecimal("2.00"));
+
+    /**
+     * Daily bicycle fare before its type.
+     */
+    private static final BigDecimal CYCLE_FARE = AbstractVehicle.BASE_FARE;
+
+    /**
+     * Rates indexed by type ordinal times MASKS plus feature mask.
+     */
+    private static final BigDecimal[] PRICES = new BigDecimal[VehicleType.values().length * MASKS];
+
+    /**
+     * PRICES in units.
+     */
+    private static final long[] UNITS = new long[PRICES.length];
+
+    static {
+        final Map<BigDecimal, BigDecimal> interned = new HashMap<BigDecimal, BigDecimal>();
+        for (final VehicleType type : VehicleType.values()) {
+            for (int mask = 0; mask < MASKS; mask++) {
+                final BigDecimal price = interned.computeIfAbsent(compute(type, mask), thePrice -> thePrice);
+                PRICES[type.ordinal() * MASKS + mask] = price;
+                UNITS[type.ordinal() * MASKS + mask] = Money.rateToUnits(price);
+            }
+        }
+    }
+
+    /**
+     * A private constructor, to prevent external instantiation.
+     */
+    private PriceCatalog() {
+
+    }
+
+    /**
+     * Daily rate of a vehicle configuration.
+     * 
+     * @param theType the vehicle type
+     * @param theFeatureMask the vehicle's features (see {@link VehicleFeature#mask})
+     * @return the shared rate
+     */
+    public static BigDecimal priceOf(final VehicleType theType, final int theFeatureMask) {
+        return PRICES[index(theType, theFeatureMask)];
+    }
+
+    /**
+     * Daily rate of a vehicle configuration in {@link Money} units.
+     * 
+     * @param theType the vehicle type
+     * @param theFeatureMask the vehicle's features
+     * @return the rate in units
+     */
+    public static long unitsOf(final VehicleType theType, final int theFeatureMask) {
+        return UNITS[index(theType, theFeatureMask)];
+    }
+
+    /**
+     * Table index of a configuration.
+     * 
+     * @param theType the vehicle type
+     * @param theFeatureMask the vehicle's features
+     * @return the index
+     * @throws IllegalArgumentException if the mask has bits of no feature
+     */
+    private static int index(final VehicleType theType, final int theFeatureMask) {
+        if ((theFeatureMask & -MASKS) != 0) {
+            throw new IllegalArgumentException("Unknown feature bits: " + theFeatureMask);
+        }
+        return theType.ordinal() * MASKS + theFeatureMask;
+    }
+
+    /**
+     * Applies the fare rules to one configuration.
+     * 
+     * @param theType the vehicle type
+     * @param theFeatureMask the vehicle's features
+     * @return the daily rate
+     */
+    private static BigDecimal compute(final VehicleType theType, final int theFeatureMask) {
+        BigDecimal cost;
+        switch (theType) {
+            case CAR:
+                cost = CAR_FARE;
+                if (has(theFeatureMask, VehicleFeature.LUXURY)) {
+                    cost = cost.add(new BigDecimal("10.00"));
+                }
+                if (has(theFeatureMask, VehicleFeature.NAVIGATION)) {
+                    cost = cost.add(new BigDecimal("1.00"));
+                }
+                if (has(theFeatureMask, VehicleFeature.DRIVE_ASSIST)) {
+                    cost = cost.add(new BigDecimal("2.00"));
+                }
+                break;
+            case MOTOR_BIKE:
+                cost = BIKE_FARE;
+                if (has(theFeatureMask, VehicleFeature.TOURING)) {
+                    cost = cost.add(new BigDecimal("5.00"));
+                }
+                break;
+            case BICYCLE:
+            default:
+                cost = CYCLE_FARE;
+                if (has(theFeatureMask, VehicleFeature.MOUNTAIN)) {
+                    cost = cost.multiply(new BigDecimal("1.01"));
+                } else if (has(theFeatureMask, VehicleFeature.CRUISER)) {
+                    cost = cost.multiply(new BigDecimal("1.02"));
+                } else if (has(theFeatureMask, VehicleFeature.HYBRID)) {
+                    cost = cost.multiply(new BigDecimal("1.04"));
+                }
+                break;
+        }
+        return cost;
+    }
+
+    /**
+     * Checks a feature bit.
+     * 
+     * @param theFeatureMask feature mask
+     * @param theFeature the feature
+     * @return true if the mask has the feature
+     */
+    private static boolean has(final int theFeatureMask, final VehicleFeature theFeature) {
+        return (theFeatureMask & theFeature.bit()) != 0;
+    }
+}
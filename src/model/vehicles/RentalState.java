@@ -0,0 +1,24 @@
+/*
+ * Rental State: lifecycle of a vehicle in the rental system.
+ */
+
+package model.vehicles;
+
+/**
+ * The rental lifecycle of a vehicle. Transitions only go
+ * AVAILABLE -> RESERVED -> RENTED -> RETURNED -> AVAILABLE, with RESERVED -> AVAILABLE
+ * when a reservation is abandoned and RETURNED -> RENTED when a return is abandoned.
+ * 
+ * @author roys4
+ * @version Winter 2021
+ */
+public enum RentalState {
+    /** Can be rented. */
+    AVAILABLE,
+    /** Claimed by a renter whose bill is being prepared. */
+    RESERVED,
+    /** Out with a renter. */
+    RENTED,
+    /** Handed back and being checked in. */
+    RETURNED
+}
@@ -0,0 +1,52 @@
+/*
+ * Vehicle Feature: optional properties used to search the fleet.
+ */
+
+package model.vehicles;
+
+/**
+ * Optional vehicle properties. Each feature owns one bit so a vehicle's features
+ * fit in a single int mask.
+ * 
+ * @author roys4
+ * @version Winter 2021
+ */
+public enum VehicleFeature {
+    /** Luxury car. */
+    LUXURY,
+    /** Car with navigation. */
+    NAVIGATION,
+    /** Car with drive assistance. */
+    DRIVE_ASSIST,
+    /** Touring motor bike. */
+    TOURING,
+    /** Mountain bicycle. */
+    MOUNTAIN,
+    /** Cruiser bicycle. */
+    CRUISER,
+    /** Hybrid bicycle. */
+    HYBRID;
+
+    /**
+     * The bit of this feature in a feature mask.
+     * 
+     * @return single-bit mask
+     */
+    public int bit() {
+        return 1 << ordinal();
+    }
+
+    /**
+     * Combines features into a mask.
+     * 
+     * @param theFeatures the features
+     * @return mask with the bit of every feature set
+     */
+    public static int mask(final VehicleFeature... theFeatures) {
+        int result = 0;
+        for (final VehicleFeature feature : theFeatures) {
+            result |= feature.bit();
+        }
+        return result;
+    }
+}
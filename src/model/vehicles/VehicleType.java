@@ -0,0 +1,20 @@
+/*
+ * Vehicle Type: the kinds of vehicle in the rental fleet.
+ */
+
+package model.vehicles;
+
+/**
+ * The concrete kinds of vehicle offered by the rental system.
+ * 
+ * @author roys4
+ * @version Winter 2021
+ */
+public enum VehicleType {
+    /** A {@link Car}. */
+    CAR,
+    /** A {@link MotorBike}. */
+    MOTOR_BIKE,
+    /** A {@link Bicycle}. */
+    BICYCLE
+}
@@ -0,0 +1,145 @@
+/*
+ * Vehicle View: flyweight over a ColumnarVehicleStore row.
+ */
+
+package model.vehicles;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import utility.Money;
+
+/**
+ * An {@link AbstractVehicle} whose properties and rental state live in a row of a
+ * {@link ColumnarVehicleStore}. A view holds only the row's position, so it is cheap
+ * to create and can be dropped after use; every view of a row sees the same state,
+ * and the state machine works on the stored column.
+ *
+ * @author roys4
+ * @version Winter 2021
+ */
+public final class VehicleView extends AbstractVehicle {
+
+    /**
+     * The store, for its string arena.
+     */
+    private final ColumnarVehicleStore myStore;
+
+    /**
+     * The row's segment.
+     */
+    private final ByteBuffer mySegment;
+
+    /**
+     * Row within the segment.
+     */
+    private final int myRow;
+
+    /**
+     * Creates a view.
+     *
+     * @param theStore the store
+     * @param theSegment the row's segment
+     * @param theRow row within the segment
+     * @param theVehicleID the stored vehicle ID
+     */
+    VehicleView(final ColumnarVehicleStore theStore, final ByteBuffer theSegment, final int theRow,
+                final int theVehicleID) {
+        super(theVehicleID);
+        myStore = theStore;
+        mySegment = theSegment;
+        myRow = theRow;
+    }
+
+    @Override
+    public String getMyName() {
+        return myStore.name(mySegment, myRow);
+    }
+
+    @Override
+    public String getMyVIN() {
+        return myStore.vin(mySegment, myRow);
+    }
+
+    /**
+     * The bicycle type of a stored bicycle.
+     * @return Bicycle type name, or null for other vehicles
+     */
+    public String getMyCycleType() {
+        return myStore.cycleType(mySegment, myRow);
+    }
+
+    @Override
+    public BigDecimal getMyRentalAmount() {
+        final VehicleType type = getVehicleType();
+        final int features = getFeatureMask();
+        BigDecimal result = PriceCatalog.priceOf(type, features);
+        if (PriceCatalog.unitsOf(type, features) != getMyRentalAmountUnits()) {
+            result = BigDecimal.valueOf(ColumnarVehicleStore.cents(mySegment, myRow), 2);
+        }
+        return result;
+    }
+
+    @Override
+    public long getMyRentalAmountUnits() {
+        return ColumnarVehicleStore.cents(mySegment, myRow) * Money.UNITS_PER_CENT;
+    }
+
+    @Override
+    public VehicleType getVehicleType() {
+        return ColumnarVehicleStore.type(mySegment, myRow);
+    }
+
+    @Override
+    public int getFeatureMask() {
+        return ColumnarVehicleStore.features(mySegment, myRow);
+    }
+
+    @Override
+    protected int readState() {
+        return ColumnarVehicleStore.readState(mySegment, myRow);
+    }
+
+    @Override
+    protected void writeState(final int theState) {
+        ColumnarVehicleStore.writeState(mySegment, myRow, theState);
+    }
+
+    @Override
+    protected boolean casState(final int theFrom, final int theTo) {
+        return ColumnarVehicleStore.casState(mySegment, myRow, theFrom, theTo);
+    }
+
+    @Override
+    protected void calculateRentalAmount() {
+        // The rate is stored in the row
+    }
+
+    @Override
+    public boolean equals(final Object theOtherObject) {
+        boolean result = false;
+        if (this == theOtherObject) {
+            result = true;
+        } else if (theOtherObject instanceof VehicleView) {
+            final VehicleView other = (VehicleView) theOtherObject;
+            result = mySegment == other.mySegment && myRow == other.myRow;
+        }
+        return result;
+    }
+
+    @Override
+    public int hashCode() {
+        return getMyVehicleID();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = toStringStarter();
+        sb.append("Type:").append(getVehicleType());
+        for (final VehicleFeature feature : VehicleFeature.values()) {
+            if ((getFeatureMask() & feature.bit()) != 0) {
+                sb.append(", ").append(feature);
+            }
+        }
+        return sb.append(')').toString();
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * This file checks that batch bill generation matches computing bills one at a time.
+ */
+
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import model.BatchBilling;
+import model.Bill;
+import model.BillAmounts;
+import model.BillBatch;
+import model.RentalRecord;
+import model.User;
+import model.vehicles.AbstractVehicle;
+import model.vehicles.Bicycle;
+import model.vehicles.Car;
+import model.vehicles.MotorBike;
+import org.junit.Test;
+
+/**
+ * @author ShowmikNEW
+ * @version Winter 2021
+ */
+public class BatchBillingTest {
+
+    /**
+     * Number of rentals in the batch; several times the split threshold used below.
+     */
+    private static final int RENTALS = 10_000;
+
+    /**
+     * Small split threshold so the batch is spread over many tasks.
+     */
+    private static final int THRESHOLD = 64;
+
+    /**
+     * Parallelism of the test pool.
+     */
+    private static final int THREADS = 4;
+
+    /**
+     * Longest rental in days.
+     */
+    private static final int MAX_DAYS = 60;
+
+    /**
+     * Batch line items keep input order and equal sequential bills; totals are their sums.
+     */
+    @Test
+    public void testBatchMatchesSequentialBills() {
+        final AbstractVehicle[] fleet = {new Car("Fiat", "V100", true, false, false, false),
+                                         new Car("BMW", "V102", true, true, true, true),
+                                         new MotorBike("Bike2", "B101", true, true),
+                                         new Bicycle("Mountain", "C102", true, "Mountain")};
+        final User[] users = {new User("plain", "Password#1", false), new User("vip", "Password#2", true)};
+        final Random random = new Random(1);
+        final List<RentalRecord> records = new ArrayList<RentalRecord>();
+        for (int i = 0; i < RENTALS; i++) {
+            records.add(new RentalRecord(i + 1, users[random.nextInt(users.length)],
+                                         fleet[random.nextInt(fleet.length)], random.nextInt(MAX_DAYS)));
+        }
+
+        final ForkJoinPool pool = new ForkJoinPool(THREADS);
+        final BillBatch batch = new BatchBilling(pool, THRESHOLD).compute(records);
+        pool.shutdown();
+
+        assertEquals("one bill per rental", RENTALS, batch.size());
+        long total = 0;
+        long tax = 0;
+        for (int i = 0; i < RENTALS; i++) {
+            final Bill expected = records.get(i).toBill();
+            final BillAmounts amounts = expected.computeAmount();
+            final Bill actual = batch.getMyBills().get(i);
+            assertEquals("bill out of order", records.get(i).getMyBillID(), actual.getMyBillID());
+            assertEquals("bill amount differs", expected.getMyBillAmount(), actual.getMyBillAmount());
+            total += amounts.getMyTotal();
+            tax += amounts.getMyTax();
+        }
+        assertEquals("total differs", total, batch.getMyTotals().getMyTotal());
+        assertEquals("tax differs", tax, batch.getMyTotals().getMyTax());
+    }
+
+    /**
+     * An empty batch has no bills and zero totals.
+     */
+    @Test
+    public void testEmptyBatch() {
+        final BillBatch batch = new BatchBilling().compute(new ArrayList<RentalRecord>());
+        assertEquals("bills in empty batch", 0, batch.size());
+        assertEquals("total of empty batch", 0L, batch.getMyTotals().getMyTotal());
+    }
+}
@@ -0,0 +1,164 @@
+/**
+ * This file tests the templated bill renderer.
+ */
+
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import model.Bill;
+import model.BillFormat;
+import model.BillRenderer;
+import model.User;
+import model.vehicles.AbstractVehicle;
+import model.vehicles.Car;
+import model.vehicles.MotorBike;
+import org.junit.Before;
+import org.junit.Test;
+import utility.Money;
+
+/**
+ * @author ShowmikNEW
+ * @version Winter 2021
+ */
+public class BillRendererTest {
+
+    /**
+     * Rental days of the test bill.
+     */
+    private static final int DAYS = 7;
+
+    /**
+     * A computed bill for a VIP user.
+     */
+    private Bill myBill;
+
+    /**
+     * @throws java.lang.Exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        final AbstractVehicle car = new Car("BMW", "V102", true, true, true, true);
+        myBill = new Bill(42, new User("Jane \"JD\", Doe", "Password#1", true), car, DAYS);
+        myBill.computeAmount();
+    }
+
+    /**
+     * printAmount prints exactly what the old line-by-line printing did.
+     */
+    @Test
+    public void testPrintAmountMatchesLegacyOutput() {
+        final ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        final PrintStream console = System.out;
+        System.setOut(new PrintStream(captured, true));
+        try {
+            myBill.printAmount();
+        } finally {
+            System.setOut(console);
+        }
+        assertEquals("console bill changed", legacyOutput(myBill), captured.toString());
+    }
+
+    /**
+     * CSV rows quote fields with commas or quotes and use plain two-decimal amounts.
+     */
+    @Test
+    public void testCsv() {
+        final String row = new BillRenderer(BillFormat.CSV).render(myBill);
+        final String expected = "42,\"Jane \"\"JD\"\", Doe\",true," + myBill.getMyVehicle().getMyVehicleID()
+                                + ",BMW,V102,CAR,"
+                                + plain(myBill.getMyVehicle().getMyRentalAmount()) + "," + DAYS + ","
+                                + plain(Money.toBigDecimal(myBill.getMyAmounts().getMyRental())) + ","
+                                + plain(Money.toBigDecimal(myBill.getMyAmounts().getMyInsurance())) + ","
+                                + plain(Money.toBigDecimal(myBill.getMyAmounts().getMyVIPDiscount())) + ","
+                                + plain(Money.toBigDecimal(myBill.getMyAmounts().getMySubtotal())) + ","
+                                + plain(Money.toBigDecimal(myBill.getMyAmounts().getMyTax())) + ","
+                                + plain(myBill.getMyBillAmount()) + System.lineSeparator();
+        assertEquals("csv row", expected, row);
+    }
+
+    /**
+     * JSON output escapes strings and wraps a list of bills in an array.
+     */
+    @Test
+    public void testJsonList() throws IOException {
+        final Bill other = new Bill(43, new User("bob", "Password#2", false),
+                                    new MotorBike("Bike2", "B101", true, true), 1);
+        other.computeAmount();
+        final StringBuilder out = new StringBuilder();
+        new BillRenderer(BillFormat.JSON).renderAll(Arrays.asList(myBill, other), out);
+        final String json = out.toString();
+        assertTrue("not an array", json.startsWith("[{\"billID\":42,") && json.endsWith("}]"));
+        assertTrue("name not escaped", json.contains("\"user\":\"Jane \\\"JD\\\", Doe\""));
+        assertTrue("second bill missing", json.contains("},{\"billID\":43,\"user\":\"bob\",\"vip\":false"));
+        assertTrue("total missing", json.contains("\"total\":" + plain(myBill.getMyBillAmount()) + "}"));
+    }
+
+    /**
+     * Channel output holds the same bytes as Appendable output, across several flushes.
+     */
+    @Test
+    public void testChannelMatchesAppendable() throws IOException {
+        final List<Bill> bills = new ArrayList<Bill>();
+        for (int i = 0; i < 2000; i++) {
+            bills.add(myBill);
+        }
+        final BillRenderer renderer = new BillRenderer(BillFormat.TEXT);
+        final StringBuilder text = new StringBuilder();
+        renderer.renderAll(bills, text);
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        renderer.renderAll(bills, Channels.newChannel(bytes));
+        assertEquals("channel output differs", text.toString(), bytes.toString(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Builds the console bill the way Bill printed it before the renderer.
+     *
+     * @param theBill a computed bill
+     * @return the expected console output
+     */
+    private static String legacyOutput(final Bill theBill) {
+        final NumberFormat nf = NumberFormat.getCurrencyInstance(Locale.US);
+        final AbstractVehicle vehicle = theBill.getMyVehicle();
+        final String[] lines = {"**********************", "Rental Bill Summary", "**********************",
+                                "User Name: " + theBill.getMyPrimaryUser().getMyName(),
+                                "----Vehicle Information---", "VehicleName " + vehicle.getMyName(),
+                                "vehicleID " + vehicle.getMyVehicleID(), "VehicleType " + vehicle.getMyVIN(),
+                                "VIN " + vehicle.getMyVIN(), "----Cost Information----", "RentalPerDay:",
+                                "Cost per Day: " + vehicle.getMyRentalPrice(),
+                                "No.of Rental days: " + theBill.getMyNumDays(),
+                                "Total Amount: " + nf.format(Money.toBigDecimal(theBill.getMyAmounts().getMySubtotal())),
+                                "Insurance: " + nf.format(Money.toBigDecimal(theBill.getMyAmounts().getMyInsurance())),
+                                "VIPDiscount: -" + nf.format(Money.toBigDecimal(theBill.getMyAmounts().getMyVIPDiscount())),
+                                "Tax: " + nf.format(Money.toBigDecimal(theBill.getMyAmounts().getMyTax())),
+                                "Total Rent: " + nf.format(theBill.getMyBillAmount()),
+                                "**********************"};
+        final StringBuilder result = new StringBuilder();
+        for (final String line : lines) {
+            result.append(line).append(System.lineSeparator());
+        }
+        return result.toString();
+    }
+
+    /**
+     * Formats an amount with two decimals, rounding half even.
+     *
+     * @param theAmount the amount
+     * @return the plain amount
+     */
+    private static String plain(final BigDecimal theAmount) {
+        return theAmount.setScale(2, RoundingMode.HALF_EVEN).toPlainString();
+    }
+}
@@ -0,0 +1,176 @@
+/**
+ * This file checks the fixed-point BillingEngine against the original BigDecimal bill math.
+ */
+
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import model.BillAmounts;
+import model.BillingEngine;
+import model.vehicles.AbstractVehicle;
+import model.vehicles.Bicycle;
+import model.vehicles.Car;
+import model.vehicles.MotorBike;
+import org.junit.Test;
+import utility.Money;
+
+/**
+ * @author ShowmikNEW
+ * @version Winter 2021
+ */
+public class BillingEngineTest {
+
+    /**
+     * Longest rental tried for every rate.
+     */
+    private static final int MAX_DAYS = 400;
+
+    /**
+     * Number of random rates tried.
+     */
+    private static final int RANDOM_RATES = 2000;
+
+    /**
+     * Every vehicle configuration must bill exactly like the BigDecimal computation.
+     */
+    @Test
+    public void testVehicleRatesMatchBigDecimal() {
+        final List<AbstractVehicle> vehicles = new ArrayList<AbstractVehicle>();
+        final boolean[] flags = {false, true};
+        for (final boolean luxury : flags) {
+            for (final boolean nav : flags) {
+                for (final boolean assist : flags) {
+                    vehicles.add(new Car("Car", "V1", true, luxury, nav, assist));
+                }
+            }
+            vehicles.add(new MotorBike("Bike", "B1", true, luxury));
+        }
+        for (final String type : new String[] {"Mountain", "Cruiser", "Hybrid", "Road"}) {
+            vehicles.add(new Bicycle(type, "C1", true, type));
+        }
+        for (final AbstractVehicle vehicle : vehicles) {
+            assertEquals("cached units differ from rental amount",
+                         Money.toUnits(vehicle.getMyRentalAmount()), vehicle.getMyRentalAmountUnits());
+            for (int days = 0; days <= MAX_DAYS; days++) {
+                assertMatches(vehicle.getMyRentalAmount(), days, false);
+                assertMatches(vehicle.getMyRentalAmount(), days, true);
+            }
+        }
+    }
+
+    /**
+     * Random rates with up to four decimal places must bill exactly like BigDecimal.
+     */
+    @Test
+    public void testRandomRatesMatchBigDecimal() {
+        final Random random = new Random(305);
+        final int maxRateTenThousandths = 100_000_000;
+        final int maxDays = 10_000;
+        for (int i = 0; i < RANDOM_RATES; i++) {
+            final BigDecimal rate = BigDecimal.valueOf(random.nextInt(maxRateTenThousandths), Money.RATE_SCALE);
+            final int days = random.nextInt(maxDays);
+            assertMatches(rate, days, random.nextBoolean());
+        }
+    }
+
+    /**
+     * Bills up to the largest day count a rate allows are computed, one day more
+     * overflows, and canCompute tells the two apart for VIPs and everyone else.
+     */
+    @Test
+    public void testOverflowBoundary() {
+        for (final long rate : new long[] {Money.rateToUnits(new BigDecimal("65.0")), 1, Money.UNITS_PER_DOLLAR,
+                                           Long.MAX_VALUE / Integer.MAX_VALUE}) {
+            int low = 0;
+            int high = Integer.MAX_VALUE;
+            while (low < high) {
+                final int middle = (int) (((long) low + high + 1) / 2);
+                if (BillingEngine.canCompute(rate, middle)) {
+                    low = middle;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            final BillAmounts amounts = new BillAmounts();
+            BillingEngine.compute(rate, low, false, amounts);
+            BillingEngine.compute(rate, low, true, amounts);
+            if (low < Integer.MAX_VALUE) {
+                assertFalse("one day more for rate " + rate, BillingEngine.canCompute(rate, low + 1));
+                try {
+                    BillingEngine.compute(rate, low + 1, false, amounts);
+                    fail("overflow for rate " + rate);
+                } catch (final ArithmeticException e) {
+                    assertNotNull(e.getMessage());
+                }
+            }
+        }
+        assertFalse("the reported day count", BillingEngine.canCompute(Money.rateToUnits(new BigDecimal("65.0")),
+                                                                          2_100_000_000));
+        assertTrue("small rates take any day count", BillingEngine.canCompute(1, Integer.MAX_VALUE));
+    }
+
+    /**
+     * Rates the engine cannot bill exactly are rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testRateWithTooManyDecimals() {
+        Money.rateToUnits(new BigDecimal("1.00001"));
+    }
+
+    /**
+     * Compares one bill from the engine with the original BigDecimal computation.
+     *
+     * @param theRate daily rate
+     * @param theDays number of days
+     * @param theVIP VIP flag
+     */
+    private static void assertMatches(final BigDecimal theRate, final int theDays, final boolean theVIP) {
+        // The computation Bill.computeAndPrintAmount used before BillingEngine
+        BigDecimal rentalAmount = theRate.multiply(new BigDecimal(theDays));
+        final BigDecimal rental = rentalAmount;
+        final BigDecimal insurance = rentalAmount.multiply(new BigDecimal("0.01"));
+        rentalAmount = rentalAmount.add(insurance);
+        BigDecimal vipDiscount = BigDecimal.ZERO;
+        if (theVIP) {
+            vipDiscount = insurance;
+            rentalAmount = rentalAmount.subtract(vipDiscount);
+        }
+        final BigDecimal tax = rentalAmount.multiply(new BigDecimal("0.10"));
+        final BigDecimal subtotal = rentalAmount;
+        rentalAmount = rentalAmount.add(tax);
+
+        final BillAmounts amounts = new BillAmounts();
+        BillingEngine.compute(Money.rateToUnits(theRate), theDays, theVIP, amounts);
+        final String where = " for rate " + theRate + ", days " + theDays + ", VIP " + theVIP;
+        assertAmount("rental", rental, amounts.getMyRental(), where);
+        assertAmount("insurance", insurance, amounts.getMyInsurance(), where);
+        assertAmount("VIP discount", vipDiscount, amounts.getMyVIPDiscount(), where);
+        assertAmount("subtotal", subtotal, amounts.getMySubtotal(), where);
+        assertAmount("tax", tax, amounts.getMyTax(), where);
+        assertAmount("total", rentalAmount, amounts.getMyTotal(), where);
+    }
+
+    /**
+     * Asserts that an engine amount has the same value and the same printed form as
+     * the BigDecimal amount.
+     *
+     * @param theName amount name
+     * @param theExpected BigDecimal amount
+     * @param theUnits engine amount
+     * @param theWhere description of the inputs
+     */
+    private static void assertAmount(final String theName, final BigDecimal theExpected, final long theUnits,
+                                   final String theWhere) {
+        final BigDecimal actual = Money.toBigDecimal(theUnits);
+        assertEquals(theName + " differs" + theWhere, 0, theExpected.compareTo(actual));
+        final NumberFormat nf = NumberFormat.getCurrencyInstance(Locale.US);
+        assertEquals(theName + " prints differently" + theWhere, nf.format(theExpected), nf.format(actual));
+    }
+}
@@ -0,0 +1,195 @@
+/**
+ * This file tests the block-leasing ID allocator.
+ */
+
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import utility.BlockIdAllocator;
+import utility.IdAllocator;
+
+/**
+ * @author ShowmikNEW
+ * @version Winter 2021
+ */
+public class BlockIdAllocatorTest {
+
+    /**
+     * Threads allocating at once.
+     */
+    private static final int THREADS = 16;
+
+    /**
+     * IDs each thread allocates.
+     */
+    private static final int IDS_PER_THREAD = 20_000;
+
+    /**
+     * Short-lived threads taking one ID each.
+     */
+    private static final int SHORT_THREADS = 500;
+
+    /**
+     * Temporary directory holding the state file.
+     */
+    private Path myDirectory;
+
+    /**
+     * High-water mark file.
+     */
+    private Path myStateFile;
+
+    /**
+     * @throws java.lang.Exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        myDirectory = Files.createTempDirectory("ids");
+        myStateFile = myDirectory.resolve("ids.state");
+    }
+
+    /**
+     * @throws java.lang.Exception
+     */
+    @After
+    public void tearDown() throws Exception {
+        try (Stream<Path> files = Files.list(myDirectory)) {
+            for (final Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(myDirectory);
+    }
+
+    /**
+     * A single thread gets consecutive IDs from the first ID on.
+     */
+    @Test
+    public void testSingleThreadConsecutive() {
+        final BlockIdAllocator allocator = new BlockIdAllocator(BlockIdAllocator.DEFAULT_BLOCK_SIZE, 5);
+        for (int i = 0; i < BlockIdAllocator.DEFAULT_BLOCK_SIZE * 3; i++) {
+            assertEquals("id " + i, 5 + i, allocator.nextId());
+        }
+    }
+
+    /**
+     * IDs allocated by many threads at once are all different.
+     *
+     * @throws Exception if a thread is interrupted
+     */
+    @Test
+    public void testConcurrentUnique() throws Exception {
+        final BlockIdAllocator allocator = new BlockIdAllocator(BlockIdAllocator.DEFAULT_BLOCK_SIZE);
+        assertUnique(allocateConcurrently(allocator));
+    }
+
+    /**
+     * Threads that take one ID and end strand no IDs.
+     *
+     * @throws Exception if a thread is interrupted
+     */
+    @Test
+    public void testShortLivedThreadsWasteNothing() throws Exception {
+        final BlockIdAllocator allocator = new BlockIdAllocator(BlockIdAllocator.DEFAULT_BLOCK_SIZE);
+        final int[] ids = new int[SHORT_THREADS];
+        for (int t = 0; t < SHORT_THREADS; t++) {
+            final int thread = t;
+            final Thread session = new Thread(() -> ids[thread] = allocator.nextId());
+            session.start();
+            session.join();
+        }
+        for (int t = 0; t < SHORT_THREADS; t++) {
+            assertEquals("no gaps", t + 1, ids[t]);
+        }
+    }
+
+    /**
+     * A reopened allocator never hands out an ID handed out before, even by threads
+     * whose blocks were not used up.
+     *
+     * @throws Exception if the state file cannot be used
+     */
+    @Test
+    public void testNoReuseAfterReopen() throws Exception {
+        final int[] before = allocateConcurrently(new BlockIdAllocator(2, myStateFile));
+        final int[] after = allocateConcurrently(new BlockIdAllocator(2, myStateFile));
+        final int[] all = Arrays.copyOf(before, before.length + after.length);
+        System.arraycopy(after, 0, all, before.length, after.length);
+        assertUnique(all);
+        assertTrue("after the old IDs", Arrays.stream(after).min().getAsInt()
+                                        > Arrays.stream(before).max().getAsInt());
+    }
+
+    /**
+     * A state file of the wrong length or with an impossible mark is reported as an
+     * IOException.
+     *
+     * @throws Exception if the state file cannot be written
+     */
+    @Test
+    public void testCorruptStateFile() throws Exception {
+        for (final byte[] state : new byte[][] {new byte[0], new byte[3], new byte[Long.BYTES + 1],
+                                                ByteBuffer.allocate(Long.BYTES).putLong(-5).array(),
+                                                new byte[Long.BYTES]}) {
+            Files.write(myStateFile, state);
+            try {
+                new BlockIdAllocator(BlockIdAllocator.DEFAULT_BLOCK_SIZE, myStateFile);
+                fail("loaded " + state.length + " bytes");
+            } catch (final IOException e) {
+                assertNotNull(e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Allocates IDs on several threads at once.
+     *
+     * @param theSource Allocator to take IDs from
+     * @return Every allocated ID
+     * @throws Exception if a thread is interrupted
+     */
+    private static int[] allocateConcurrently(final IdAllocator theSource) throws Exception {
+        final int[] ids = new int[THREADS * IDS_PER_THREAD];
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < THREADS; t++) {
+            final int offset = t * IDS_PER_THREAD;
+            final Thread thread = new Thread(() -> {
+                for (int i = 0; i < IDS_PER_THREAD; i++) {
+                    ids[offset + i] = theSource.nextId();
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        return ids;
+    }
+
+    /**
+     * Checks that no ID occurs twice.
+     *
+     * @param theIds IDs to check
+     */
+    private static void assertUnique(final int[] theIds) {
+        final int[] sorted = theIds.clone();
+        Arrays.sort(sorted);
+        assertTrue("positive", sorted[0] > 0);
+        for (int i = 1; i < sorted.length; i++) {
+            assertTrue("duplicate " + sorted[i], sorted[i] != sorted[i - 1]);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/**
+ * This file checks the off-heap vehicle store and its views.
+ */
+
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import model.Bill;
+import model.Registration;
+import model.RentalManager;
+import model.User;
+import model.vehicles.AbstractVehicle;
+import model.vehicles.Bicycle;
+import model.vehicles.BicycleType;
+import model.vehicles.Car;
+import model.vehicles.ColumnarVehicleStore;
+import model.vehicles.MotorBike;
+import model.vehicles.RentalState;
+import model.vehicles.VehicleFeature;
+import model.vehicles.VehicleType;
+import model.vehicles.VehicleView;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author ShowmikNEW
+ * @version Winter 2021
+ */
+public class ColumnarVehicleStoreTest {
+
+    /**
+     * Store under test.
+     */
+    private ColumnarVehicleStore myStore;
+
+    /**
+     * @throws java.lang.Exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        myStore = new ColumnarVehicleStore();
+    }
+
+    /**
+     * Views report the same properties as the vehicles that were added.
+     */
+    @Test
+    public void testRoundTrip() {
+        final List<AbstractVehicle> fleet = new ArrayList<AbstractVehicle>();
+        fleet.add(new Car("Toyota Camry", "V1", true, true, false, true));
+        fleet.add(new MotorBike("Harley", "B1", false, true));
+        fleet.add(new Bicycle("Trek", "C1", true, BicycleType.HYBRID));
+        myStore.addAll(fleet);
+        assertEquals("size", fleet.size(), myStore.size());
+        for (int i = 0; i < fleet.size(); i++) {
+            final AbstractVehicle expected = fleet.get(i);
+            final AbstractVehicle view = myStore.view(i);
+            assertEquals("ID", expected.getMyVehicleID(), view.getMyVehicleID());
+            assertEquals("name", expected.getMyName(), view.getMyName());
+            assertEquals("VIN", expected.getMyVIN(), view.getMyVIN());
+            assertEquals("availability", expected.isAvailable(), view.isAvailable());
+            assertEquals("type", expected.getVehicleType(), view.getVehicleType());
+            assertEquals("features", expected.getFeatureMask(), view.getFeatureMask());
+            assertEquals("rate", expected.getMyRentalAmount(), view.getMyRentalAmount());
+            assertEquals("price", expected.getMyRentalPrice(), view.getMyRentalPrice());
+        }
+        assertEquals("bicycle type", "Hybrid", ((VehicleView) myStore.view(2)).getMyCycleType());
+        assertNull("no bicycle type", ((VehicleView) myStore.view(0)).getMyCycleType());
+    }
+
+    /**
+     * Rows added without a heap vehicle get a fresh ID and the catalog rate.
+     */
+    @Test
+    public void testAddWithoutVehicle() {
+        final int mask = VehicleFeature.mask(VehicleFeature.LUXURY, VehicleFeature.NAVIGATION);
+        final int row = myStore.add(VehicleType.CAR, "Audi", "V9", true, mask, null);
+        final AbstractVehicle view = myStore.view(row);
+        final Car reference = new Car("Audi", "V9", true, true, true, false);
+        assertEquals("rate", reference.getMyRentalAmount(), view.getMyRentalAmount());
+        assertEquals("lookup", view, myStore.findByID(view.getMyVehicleID()));
+    }
+
+    /**
+     * Every view of a row shares its rental state.
+     */
+    @Test
+    public void testStateMachine() {
+        myStore.add(new Car("Car", "V1", true, false, false, false));
+        final AbstractVehicle first = myStore.view(0);
+        final AbstractVehicle second = myStore.view(0);
+        assertTrue("reserve", first.tryReserve());
+        assertFalse("reserved twice", second.tryReserve());
+        assertEquals("shared state", RentalState.RESERVED, second.getRentalState());
+        assertTrue("confirm", second.confirmRental());
+        assertFalse("rented", first.isAvailable());
+        assertTrue("return", first.tryReturn());
+        assertTrue("complete", first.completeReturn());
+        assertTrue("available again", second.isAvailable());
+        second.setMyAvailability(false);
+        assertFalse("set unavailable", first.isAvailable());
+    }
+
+    /**
+     * Repeated names and VINs are stored once.
+     */
+    @Test
+    public void testStringDedup() {
+        for (int i = 0; i < 1000; i++) {
+            myStore.add(VehicleType.MOTOR_BIKE, "Harley", "B" + (i % 10), true, 0, null);
+        }
+        assertEquals("distinct strings", 11, myStore.distinctStrings());
+        assertEquals("VIN", "B7", myStore.view(997).getMyVIN());
+    }
+
+    /**
+     * Lookups find rows across segments and miss unknown IDs.
+     */
+    @Test
+    public void testFindByID() {
+        final int count = ColumnarVehicleStore.SEGMENT_ROWS + 10;
+        final int[] ids = new int[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = myStore.view(myStore.add(VehicleType.CAR, "Car", "V", true, 0, null)).getMyVehicleID();
+        }
+        for (int i = 0; i < count; i += 997) {
+            assertEquals("row by ID", myStore.view(i), myStore.findByID(ids[i]));
+        }
+        assertEquals("last row", myStore.view(count - 1), myStore.findByID(ids[count - 1]));
+        assertNull("unknown ID", myStore.findByID(-5));
+    }
+
+    /**
+     * A vehicle ID can only be stored once.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testDuplicateID() {
+        final Car car = new Car("Car", "V1", true, false, false, false);
+        myStore.add(car);
+        myStore.add(car);
+    }
+
+    /**
+     * A rental manager given a store keeps its fleet there and rents through views,
+     * so renting and dropping off change the stored state.
+     *
+     * @throws IOException if the shipped fleet file cannot be read
+     */
+    @Test
+    public void testRentalManagerOnStore() throws IOException {
+        final Map<String, User> users = new HashMap<String, User>();
+        users.put("alice", new User("alice", "Passw0rd!!x"));
+        final RentalManager manager = new RentalManager(new Registration(users, theUser -> null));
+        manager.loadFleet(Paths.get(RentalManager.FLEETFILE_NAME), myStore);
+        assertEquals("stored", 8, myStore.size());
+        final AbstractVehicle bmw = manager.findByVIN("V102");
+        assertTrue("view", bmw instanceof VehicleView);
+        assertEquals("same row", myStore.findByID(bmw.getMyVehicleID()), bmw);
+
+        final Bill bill = manager.rentAndBill(bmw.getMyVehicleID(), "alice", 2, 1);
+        assertNotNull("rented", bill);
+        assertEquals("catalog rate", new Car("BMW", "V0", true, true, true, true).getMyRentalAmountUnits(),
+                     bill.getMyDailyRateUnits());
+        assertEquals("stored state", RentalState.RENTED, myStore.findByID(bmw.getMyVehicleID()).getRentalState());
+        assertEquals("cars available", 2, manager.getMyInventory().countAvailable(VehicleType.CAR));
+        assertTrue("dropped", manager.drop(bmw.getMyVehicleID()));
+        assertTrue("stored available", myStore.findByID(bmw.getMyVehicleID()).isAvailable());
+    }
+}
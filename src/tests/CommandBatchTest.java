@@ -0,0 +1,163 @@
+/**
+ * This file checks the non-interactive command runner.
+ */
+
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import model.CommandBatch;
+import model.CredentialCache;
+import model.LoginGuard;
+import model.LoginResult;
+import model.PasswordHasher;
+import model.Registration;
+import model.RentalManager;
+import model.vehicles.Car;
+import org.junit.Before;
+import org.junit.Test;
+import utility.LatencyStats;
+
+/**
+ * @author ShowmikNEW
+ * @version Winter 2021
+ */
+public class CommandBatchTest {
+
+    /**
+     * Logins in one batch, more than the login limits allow one source.
+     */
+    private static final int LOGINS = LoginGuard.DEFAULT_SOURCE_BURST * 3;
+
+    /**
+     * Cheap iteration count, so the wrong passwords stay fast.
+     */
+    private static final int ITERATIONS = 1000;
+
+    /**
+     * Captured batch output.
+     */
+    private ByteArrayOutputStream myOutput;
+
+    /**
+     * Batch under test.
+     */
+    private CommandBatch myBatch;
+
+    /**
+     * Rental manager the batch drives.
+     */
+    private RentalManager myManager;
+
+    /**
+     * @throws java.lang.Exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        myOutput = new ByteArrayOutputStream();
+        final Registration registration =
+            new Registration(new HashMap<>(), theUser -> CompletableFuture.completedFuture(null));
+        myManager = new RentalManager(registration);
+        myManager.addVehicle(new Car("Fiat", "V100", true, false, false, false));
+        myBatch = new CommandBatch(registration, myManager,
+                                   new PrintStream(myOutput, false, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Commands run in order through the usual APIs, and failures do not stop the batch.
+     *
+     * @throws IOException never; the commands come from a string
+     */
+    @Test
+    public void testRun() throws IOException {
+        myManager.addVehicle(new Car("Tesla", "V300", true, true, true, true));
+        final String commands = String.join("\n",
+                                            "# comment",
+                                            "rent V100 2",
+                                            "register amy weak",
+                                            "register amy Str0ng!Passw0rd",
+                                            "",
+                                            "rent v100 2",
+                                            "rent V100 1",
+                                            "drop V100",
+                                            "login amy wrong",
+                                            "login amy Str0ng!Passw0rd",
+                                            "rent V300 2100000000",
+                                            "rent " + myManager.findByVIN("V100").getMyVehicleID() + " 1",
+                                            "fly V100");
+        final int count = myBatch.run(new BufferedReader(new StringReader(commands)));
+        assertEquals("commands run", 11, count);
+        assertEquals("failures", 6, myBatch.getMyFailures());
+        assertFalse("rented again by ID", myManager.findByVIN("V100").isAvailable());
+        final String output = myOutput.toString(StandardCharsets.UTF_8);
+        assertTrue("not logged in", output.contains("FAIL rent V100 2"));
+        assertTrue("weak password", output.contains("FAIL register amy weak"));
+        assertTrue("registered", output.contains("OK register amy Str0ng!Passw0rd"));
+        assertTrue("rented", output.contains("OK rent v100 2"));
+        assertTrue("unknown command", output.contains("FAIL fly V100"));
+        assertTrue("bill too large", output.contains("FAIL rent V300 2100000000"));
+        assertEquals("rent samples", 5, myBatch.getMyStats(CommandBatch.RENT).getCount());
+        assertEquals("all samples", 11, myBatch.getMyStats(null).getCount());
+        myBatch.printReport(1_000_000L);
+        assertTrue("report", myOutput.toString(StandardCharsets.UTF_8).contains("Commands: 11, failed: 6"));
+    }
+
+    /**
+     * A batch may log in more often than the login limits allow, while the shared
+     * registration keeps limiting interactive logins.
+     *
+     * @throws IOException never; the commands come from a string
+     */
+    @Test
+    public void testManyLogins() throws IOException {
+        final Registration registration =
+            new Registration(new HashMap<>(), theUser -> CompletableFuture.completedFuture(null),
+                             new PasswordHasher(ITERATIONS),
+                             new CredentialCache(CredentialCache.DEFAULT_MAX_ENTRIES,
+                                                 CredentialCache.DEFAULT_TTL_SECONDS, TimeUnit.SECONDS));
+        final CommandBatch batch = new CommandBatch(registration, myManager,
+                                                    new PrintStream(myOutput, false, StandardCharsets.UTF_8));
+        final StringBuilder commands = new StringBuilder("register amy Str0ng!Passw0rd\n");
+        for (int i = 0; i < LOGINS; i++) {
+            commands.append("login amy wrong\nlogin amy Str0ng!Passw0rd\n");
+        }
+        final int count = batch.run(new BufferedReader(new StringReader(commands.toString())));
+        assertEquals("commands run", 1 + 2 * LOGINS, count);
+        assertEquals("only the wrong passwords fail", LOGINS, batch.getMyFailures());
+        for (int i = 0; i < LoginGuard.DEFAULT_USER_BURST; i++) {
+            registration.attemptLogin("amy", "wrong", CommandBatch.BATCH_SOURCE);
+        }
+        assertEquals("interactive logins still limited", LoginResult.THROTTLED,
+                     registration.attemptLogin("amy", "Str0ng!Passw0rd", CommandBatch.BATCH_SOURCE));
+    }
+
+    /**
+     * Percentiles use the nearest rank.
+     */
+    @Test
+    public void testLatencyStats() {
+        final LatencyStats stats = new LatencyStats();
+        for (int i = 100; i >= 1; i--) {
+            stats.record(i);
+        }
+        assertEquals("p50", 50, stats.percentile(50));
+        assertEquals("p99", 99, stats.percentile(99));
+        assertEquals("p99.9", 100, stats.percentile(99.9));
+        assertEquals("max", 100, stats.getMax());
+        assertEquals("min", 1, stats.percentile(0));
+        final LatencyStats more = new LatencyStats();
+        more.record(1000);
+        stats.addAll(more);
+        assertEquals("merged max", 1000, stats.getMax());
+        assertEquals("merged count", 101, stats.getCount());
+    }
+}
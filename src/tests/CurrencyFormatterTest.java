@@ -0,0 +1,88 @@
+/**
+ * This file checks CurrencyFormatter against NumberFormat.getCurrencyInstance.
+ */
+
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.text.NumberFormat;
+import java.util.Currency;
+import java.util.Locale;
+import java.util.Random;
+import org.junit.Test;
+import utility.CurrencyFormatter;
+import utility.Money;
+
+/**
+ * @author ShowmikNEW
+ * @version Winter 2021
+ */
+public class CurrencyFormatterTest {
+
+    /**
+     * Random amounts tried per locale.
+     */
+    private static final int AMOUNTS = 2000;
+
+    /**
+     * Locales with different separators, symbol positions and fraction digits.
+     */
+    private static final Locale[] LOCALES = {Locale.US, Locale.UK, Locale.GERMANY, Locale.FRANCE,
+                                             Locale.JAPAN, new Locale("de", "CH"), new Locale("hi", "IN"),
+                                             new Locale("ar", "EG"), new Locale("pt", "BR")};
+
+    /**
+     * Every locale formats exactly like a fresh NumberFormat, from units and from BigDecimal.
+     */
+    @Test
+    public void testMatchesNumberFormat() {
+        final Random random = new Random(1);
+        for (final Locale locale : LOCALES) {
+            final NumberFormat expected = NumberFormat.getCurrencyInstance(locale);
+            final CurrencyFormatter formatter = CurrencyFormatter.forLocale(locale);
+            for (int i = 0; i < AMOUNTS; i++) {
+                final long units = random.nextLong() / 1000 >> random.nextInt(48);
+                final BigDecimal amount = Money.toBigDecimal(units);
+                assertEquals("units in " + locale, expected.format(amount), formatter.formatUnits(units));
+                assertEquals("BigDecimal in " + locale, expected.format(amount), formatter.format(amount));
+            }
+        }
+    }
+
+    /**
+     * Half cents round to even cents, and tiny negative amounts keep their sign.
+     */
+    @Test
+    public void testRounding() {
+        assertEquals("half cent down", "$0.12", CurrencyFormatter.US.format(new BigDecimal("0.125")));
+        assertEquals("half cent up", "$0.14", CurrencyFormatter.US.format(new BigDecimal("0.135")));
+        assertEquals("grouping", "$1,234,567.89", CurrencyFormatter.US.format(new BigDecimal("1234567.891")));
+        assertEquals("negative zero", NumberFormat.getCurrencyInstance(Locale.US).format(new BigDecimal("-0.001")),
+                     CurrencyFormatter.US.format(new BigDecimal("-0.001")));
+    }
+
+    /**
+     * Formatters are cached per locale and currency.
+     */
+    @Test
+    public void testCache() {
+        assertSame("US not cached", CurrencyFormatter.US, CurrencyFormatter.forLocale(Locale.US));
+        final CurrencyFormatter euros = CurrencyFormatter.forLocale(Locale.US, Currency.getInstance("EUR"));
+        assertNotSame("currency ignored", CurrencyFormatter.US, euros);
+        assertEquals("currency", "EUR", euros.getMyCurrency().getCurrencyCode());
+        assertEquals("other currency", expectedEuros(), euros.format(BigDecimal.TEN));
+    }
+
+    /**
+     * Ten euros formatted by NumberFormat in the US locale.
+     *
+     * @return the expected text
+     */
+    private static String expectedEuros() {
+        final NumberFormat format = NumberFormat.getCurrencyInstance(Locale.US);
+        format.setCurrency(Currency.getInstance("EUR"));
+        return format.format(BigDecimal.TEN);
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * This file tests utilization counters and demand-based rates.
+ */
+
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import model.DemandPricing;
+import model.VehicleInventory;
+import model.vehicles.AbstractVehicle;
+import model.vehicles.Car;
+import model.vehicles.MotorBike;
+import model.vehicles.VehicleType;
+import org.junit.Before;
+import org.junit.Test;
+import utility.Money;
+
+/**
+ * @author ShowmikNEW
+ * @version Winter 2021
+ */
+public class DemandPricingTest {
+
+    /**
+     * Cars in the test fleet.
+     */
+    private static final int CARS = 10;
+
+    /**
+     * Surge starts above 50% utilization.
+     */
+    private static final int THRESHOLD = 5_000;
+
+    /**
+     * Rates rise by up to 50%.
+     */
+    private static final int SURGE = 5_000;
+
+    /**
+     * Fleet index under test.
+     */
+    private VehicleInventory myInventory;
+
+    /**
+     * Cars of the fleet.
+     */
+    private List<AbstractVehicle> myCars;
+
+    /**
+     * @throws java.lang.Exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        myInventory = new VehicleInventory();
+        myCars = new ArrayList<AbstractVehicle>();
+        for (int i = 0; i < CARS; i++) {
+            final AbstractVehicle car = new Car("Fiat", "V" + i, true, false, false, false);
+            myCars.add(car);
+            myInventory.add(car);
+        }
+        myInventory.add(new MotorBike("Bike", "B1", true, false));
+    }
+
+    /**
+     * Counters follow availability changes and ignore repeated updates.
+     */
+    @Test
+    public void testCounters() {
+        assertEquals("cars", CARS, myInventory.count(VehicleType.CAR));
+        assertEquals("available bikes", 1, myInventory.countAvailable(VehicleType.MOTOR_BIKE));
+        final int id = myCars.get(0).getMyVehicleID();
+        myInventory.setAvailable(id, false);
+        myInventory.setAvailable(id, false);
+        assertEquals("one car out", CARS - 1, myInventory.countAvailable(VehicleType.CAR));
+        myInventory.setAvailable(id, true);
+        myInventory.setAvailable(id, true);
+        assertEquals("car back", CARS, myInventory.countAvailable(VehicleType.CAR));
+        assertEquals("scan disagrees", myInventory.countAvailable(VehicleType.CAR, 0),
+                     myInventory.countAvailable(VehicleType.CAR));
+        myInventory.clear();
+        assertEquals("cleared", 0, myInventory.count(VehicleType.CAR));
+    }
+
+    /**
+     * Rates stay put up to the threshold and rise linearly above it, rounded to cents.
+     */
+    @Test
+    public void testSurge() {
+        final DemandPricing pricing = new DemandPricing(myInventory, 0, THRESHOLD, SURGE);
+        final AbstractVehicle car = myCars.get(0);
+        assertEquals("idle fleet", car.getMyRentalAmountUnits(), pricing.rateUnits(car));
+        for (int i = 0; i < CARS / 2; i++) {
+            myInventory.setAvailable(myCars.get(i).getMyVehicleID(), false);
+        }
+        assertEquals("at threshold", DemandPricing.BASIS_POINTS, pricing.getMultiplier(VehicleType.CAR));
+        for (int i = CARS / 2; i < CARS - 2; i++) {
+            myInventory.setAvailable(myCars.get(i).getMyVehicleID(), false);
+        }
+        // 80% out: 30% of the way from threshold to full, so +30% of 30.00
+        assertEquals("80% out", 39 * Money.UNITS_PER_DOLLAR, pricing.rateUnits(car));
+        assertEquals("bikes unaffected", DemandPricing.BASIS_POINTS, pricing.getMultiplier(VehicleType.MOTOR_BIKE));
+    }
+
+    /**
+     * Multipliers are not recomputed before the interval has passed.
+     */
+    @Test
+    public void testInterval() {
+        final DemandPricing pricing = new DemandPricing(myInventory, 60_000, THRESHOLD, SURGE);
+        for (final AbstractVehicle car : myCars) {
+            myInventory.setAvailable(car.getMyVehicleID(), false);
+        }
+        assertEquals("recomputed early", DemandPricing.BASIS_POINTS, pricing.getMultiplier(VehicleType.CAR));
+        pricing.recompute();
+        assertEquals("full surge", DemandPricing.BASIS_POINTS + SURGE, pricing.getMultiplier(VehicleType.CAR));
+    }
+}
@@ -0,0 +1,249 @@
+/**
+ * This file provides a file channel that fails on demand, for testing how stores
+ * handle I/O errors.
+ */
+
+package tests;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A file channel that fails writes, fsyncs or truncation, or delays fsyncs, on
+ * demand, and passes everything else to a real channel.
+ *
+ * @author ShowmikNEW
+ * @version Winter 2021
+ */
+final class FailingChannel extends FileChannel {
+
+    /**
+     * Bytes writes may still pass before failing, or -1 for no limit.
+     */
+    private volatile long myWriteBudget = -1;
+
+    /**
+     * Whether force fails.
+     */
+    private volatile boolean myFailForce;
+
+    /**
+     * Whether truncate fails.
+     */
+    private volatile boolean myFailTruncate;
+
+    /**
+     * Latch force waits for, or null.
+     */
+    private volatile CountDownLatch myForceGate;
+
+    /**
+     * Number of writes failed so far.
+     */
+    private final AtomicInteger myFailedWrites = new AtomicInteger();
+
+    /**
+     * The real channel.
+     */
+    private final FileChannel myDelegate;
+
+    /**
+     * Wraps a channel.
+     *
+     * @param theDelegate the real channel
+     */
+    FailingChannel(final FileChannel theDelegate) {
+        myDelegate = theDelegate;
+    }
+
+    /**
+     * Replaces the file channel in a field of an object with a failing one.
+     *
+     * @param theOwner object holding the channel
+     * @param theField name of the channel field
+     * @return the failing channel
+     * @throws ReflectiveOperationException if the field cannot be replaced
+     */
+    static FailingChannel inject(final Object theOwner, final String theField)
+        throws ReflectiveOperationException {
+        final Field field = theOwner.getClass().getDeclaredField(theField);
+        field.setAccessible(true);
+        final FailingChannel result = new FailingChannel((FileChannel) field.get(theOwner));
+        field.set(theOwner, result);
+        return result;
+    }
+
+    /**
+     * Lets writes pass a number of bytes before they fail.
+     *
+     * @param theBytes bytes still written, or -1 for no limit
+     */
+    void setWriteBudget(final long theBytes) {
+        myWriteBudget = theBytes;
+    }
+
+    /**
+     * Makes force fail or succeed.
+     *
+     * @param theFail whether force fails
+     */
+    void setFailForce(final boolean theFail) {
+        myFailForce = theFail;
+    }
+
+    /**
+     * Makes truncate fail or succeed.
+     *
+     * @param theFail whether truncate fails
+     */
+    void setFailTruncate(final boolean theFail) {
+        myFailTruncate = theFail;
+    }
+
+    /**
+     * Makes force wait for a latch.
+     *
+     * @param theGate latch force waits for, or null
+     */
+    void setForceGate(final CountDownLatch theGate) {
+        myForceGate = theGate;
+    }
+
+    /**
+     * The number of writes failed so far.
+     *
+     * @return failed writes
+     */
+    int getFailedWrites() {
+        return myFailedWrites.get();
+    }
+
+    @Override
+    public int write(final ByteBuffer theSource) throws IOException {
+        int result;
+        if (myWriteBudget < 0) {
+            result = myDelegate.write(theSource);
+        } else if (myWriteBudget == 0) {
+            myFailedWrites.incrementAndGet();
+            throw new IOException("Injected write failure");
+        } else {
+            final ByteBuffer allowed = theSource.slice();
+            allowed.limit((int) Math.min(allowed.remaining(), myWriteBudget));
+            result = myDelegate.write(allowed);
+            theSource.position(theSource.position() + result);
+            myWriteBudget -= result;
+        }
+        return result;
+    }
+
+    @Override
+    public void force(final boolean theMetaData) throws IOException {
+        final CountDownLatch gate = myForceGate;
+        if (gate != null) {
+            try {
+                gate.await();
+            } catch (final InterruptedException e) {
+                throw new IOException(e);
+            }
+        }
+        if (myFailForce) {
+            throw new IOException("Injected fsync failure");
+        }
+        myDelegate.force(theMetaData);
+    }
+
+    @Override
+    public FileChannel truncate(final long theSize) throws IOException {
+        if (myFailTruncate) {
+            throw new IOException("Injected truncate failure");
+        }
+        myDelegate.truncate(theSize);
+        return this;
+    }
+
+    @Override
+    public int read(final ByteBuffer theTarget) throws IOException {
+        return myDelegate.read(theTarget);
+    }
+
+    @Override
+    public long read(final ByteBuffer[] theTargets, final int theOffset, final int theLength)
+        throws IOException {
+        return myDelegate.read(theTargets, theOffset, theLength);
+    }
+
+    @Override
+    public long write(final ByteBuffer[] theSources, final int theOffset, final int theLength)
+        throws IOException {
+        return myDelegate.write(theSources, theOffset, theLength);
+    }
+
+    @Override
+    public long position() throws IOException {
+        return myDelegate.position();
+    }
+
+    @Override
+    public FileChannel position(final long thePosition) throws IOException {
+        myDelegate.position(thePosition);
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        return myDelegate.size();
+    }
+
+    @Override
+    public long transferTo(final long thePosition, final long theCount, final WritableByteChannel theTarget)
+        throws IOException {
+        return myDelegate.transferTo(thePosition, theCount, theTarget);
+    }
+
+    @Override
+    public long transferFrom(final ReadableByteChannel theSource, final long thePosition, final long theCount)
+        throws IOException {
+        return myDelegate.transferFrom(theSource, thePosition, theCount);
+    }
+
+    @Override
+    public int read(final ByteBuffer theTarget, final long thePosition) throws IOException {
+        return myDelegate.read(theTarget, thePosition);
+    }
+
+    @Override
+    public int write(final ByteBuffer theSource, final long thePosition) throws IOException {
+        return myDelegate.write(theSource, thePosition);
+    }
+
+    @Override
+    public MappedByteBuffer map(final MapMode theMode, final long thePosition, final long theSize)
+        throws IOException {
+        return myDelegate.map(theMode, thePosition, theSize);
+    }
+
+    @Override
+    public FileLock lock(final long thePosition, final long theSize, final boolean theShared)
+        throws IOException {
+        return myDelegate.lock(thePosition, theSize, theShared);
+    }
+
+    @Override
+    public FileLock tryLock(final long thePosition, final long theSize, final boolean theShared)
+        throws IOException {
+        return myDelegate.tryLock(thePosition, theSize, theShared);
+    }
+
+    @Override
+    protected void implCloseChannel() throws IOException {
+        myDelegate.close();
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * This file tests the user file readers in the FileLoader class.
+ */
+
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import model.Registration;
+import model.User;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import utility.FileLoader;
+
+/**
+ * @author ShowmikNEW
+ * @version Winter 2021
+ */
+public class FileLoaderTest {
+
+    /**
+     * Chunk sizes the mapped reader is forced to: shorter than a line, a few lines,
+     * and many lines.
+     */
+    private static final long[] CHUNK_BYTES = {7, 64, 1000};
+
+    /**
+     * Temporary user file.
+     */
+    private Path myFile;
+
+    /**
+     * @throws java.lang.Exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        myFile = Files.createTempFile("registeredusers", ".txt");
+    }
+
+    /**
+     * @throws java.lang.Exception
+     */
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(myFile);
+    }
+
+    /**
+     * The mapped reader must load the shipped user file exactly like the classic reader.
+     */
+    @Test
+    public void testReadItemsFromFileMappedMatchesShippedFile() {
+        assertEquals("mapped reader differs from classic reader",
+                     FileLoader.readItemsFromFile(Registration.USERFILE_NAME),
+                     FileLoader.readItemsFromFileMapped(Registration.USERFILE_NAME));
+    }
+
+    /**
+     * Duplicates, CRLF line endings and mixed-case VIP flags behave like the classic reader.
+     * 
+     * @throws IOException if the temporary file cannot be written
+     */
+    @Test
+    public void testReadItemsFromFileMappedMatchesClassicReader() throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        final int lines = 50_000;
+        for (int i = 0; i < lines; i++) {
+            sb.append("user").append(i % 1000).append(",pass").append(i).append(',');
+            sb.append(i % 3 == 0 ? "TRUE" : "false");
+            sb.append(i % 7 == 0 ? "\r\n" : "\n");
+        }
+        Files.write(myFile, sb.toString().getBytes(StandardCharsets.UTF_8));
+
+        final Map<String, User> mapped = FileLoader.readItemsFromFileMapped(myFile.toString());
+        assertEquals("mapped reader differs from classic reader",
+                     FileLoader.readItemsFromFile(myFile.toString()), mapped);
+        assertEquals("last line should win", "pass49999", mapped.get("user999").getMyPassword());
+    }
+
+    /**
+     * A file read in many chunks, with lines straddling chunk boundaries and users
+     * repeated in later chunks, loads exactly like the classic reader.
+     * 
+     * @throws Exception if the file cannot be written or read
+     */
+    @Test
+    public void testReadItemsFromFileMappedAcrossChunks() throws Exception {
+        final StringBuilder sb = new StringBuilder();
+        final int lines = 2000;
+        for (int i = 0; i < lines; i++) {
+            sb.append("user").append(i % 300).append(",pass").append(i).append(',');
+            sb.append(i % 2 == 0).append('\n');
+        }
+        Files.write(myFile, sb.toString().getBytes(StandardCharsets.UTF_8));
+        final Map<String, User> classic = FileLoader.readItemsFromFile(myFile.toString());
+
+        final Method read = Class.forName("utility.MappedUserFileReader")
+                                 .getDeclaredMethod("read", Path.class, long.class);
+        read.setAccessible(true);
+        for (final long chunk : CHUNK_BYTES) {
+            @SuppressWarnings("unchecked")
+            final Map<String, User> mapped = (Map<String, User>) read.invoke(null, myFile, chunk);
+            assertEquals("chunks of " + chunk + " bytes", classic, mapped);
+            assertEquals("last line should win", "pass1800", mapped.get("user0").getMyPassword());
+        }
+    }
+
+    /**
+     * Blank and incomplete lines are skipped by the mapped reader.
+     * 
+     * @throws IOException if the temporary file cannot be written
+     */
+    @Test
+    public void testReadItemsFromFileMappedSkipsIncompleteLines() throws IOException {
+        Files.write(myFile, "\nJack,Kangaroo32,true\nJill\nJim,Hat5,false".getBytes(StandardCharsets.UTF_8));
+
+        final Map<String, User> mapped = FileLoader.readItemsFromFileMapped(myFile.toString());
+        assertEquals("wrong user count", 2, mapped.size());
+        assertEquals("wrong user", new User("Jack", "Kangaroo32", true), mapped.get("Jack"));
+        assertEquals("wrong user", new User("Jim", "Hat5", false), mapped.get("Jim"));
+    }
+}
@@ -0,0 +1,172 @@
+/**
+ * This file tests fleet import and export in the text and binary formats.
+ */
+
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import model.Registration;
+import model.RentalManager;
+import model.User;
+import model.vehicles.AbstractVehicle;
+import model.vehicles.Bicycle;
+import model.vehicles.Car;
+import model.vehicles.MotorBike;
+import org.junit.Before;
+import org.junit.Test;
+import utility.FleetLoader;
+import utility.PhaseTimings;
+
+/**
+ * @author ShowmikNEW
+ * @version Winter 2021
+ */
+public class FleetLoaderTest {
+
+    /**
+     * Vehicles in the generated fleet; large enough for several text chunks.
+     */
+    private static final int FLEET_SIZE = 30_000;
+
+    /**
+     * Generated fleet.
+     */
+    private List<AbstractVehicle> myFleet;
+
+    /**
+     * @throws java.lang.Exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        myFleet = new ArrayList<AbstractVehicle>();
+        final String[] cycleTypes = {"Mountain", "Cruiser", "Hybrid", "Road"};
+        for (int i = 0; i < FLEET_SIZE; i++) {
+            final boolean available = i % 3 != 0;
+            if (i % 3 == 0) {
+                myFleet.add(new Car("Car" + i, "V" + i, available, i % 2 == 0, i % 5 == 0, i % 7 == 0));
+            } else if (i % 3 == 1) {
+                myFleet.add(new MotorBike("Bike" + i, "B" + i, available, i % 2 == 0));
+            } else {
+                myFleet.add(new Bicycle("Cycle" + i, "C" + i, available, cycleTypes[i % cycleTypes.length]));
+            }
+        }
+    }
+
+    /**
+     * A text round trip keeps every vehicle's properties and the file order.
+     */
+    @Test
+    public void testTextRoundTrip() throws IOException {
+        final Path file = Files.createTempFile("fleet", ".txt");
+        try {
+            FleetLoader.writeText(file, myFleet);
+            final PhaseTimings timings = new PhaseTimings();
+            assertSameFleet(FleetLoader.load(file, timings));
+            assertTrue("no parse phase", timings.getNanos(FleetLoader.PARSE_PHASE) > 0);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * A binary round trip keeps every vehicle's properties and the file order.
+     */
+    @Test
+    public void testBinaryRoundTrip() throws IOException {
+        final Path file = Files.createTempFile("fleet", ".bin");
+        try {
+            FleetLoader.writeBinary(file, myFleet);
+            assertSameFleet(FleetLoader.load(file, new PhaseTimings()));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * The shipped fleet file describes the same vehicles as the built-in inventory.
+     */
+    @Test
+    public void testShippedFleetFile() throws IOException {
+        final List<AbstractVehicle> loaded = FleetLoader.load(Paths.get(RentalManager.FLEETFILE_NAME),
+                                                              new PhaseTimings());
+        final String[] expected = {"Fiat", "Outback", "BMW", "Bike1", "Bike2", "Roadies", "Cruiser", "Mountain"};
+        assertEquals("vehicle count", expected.length, loaded.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("vehicle order", expected[i], loaded.get(i).getMyName());
+        }
+        assertEquals("BMW fare", new Car("BMW", "V102", true, true, true, true).getMyRentalAmount(),
+                     loaded.get(2).getMyRentalAmount());
+    }
+
+    /**
+     * Lines with missing fields are rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testMalformedLine() throws IOException {
+        final Path file = Files.createTempFile("fleet", ".txt");
+        try {
+            Files.write(file, "CAR,Fiat,V100\n".getBytes());
+            FleetLoader.load(file, new PhaseTimings());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * A fleet file that cannot be read or is malformed is replaced by the built-in
+     * vehicles rather than leaving the inventory empty.
+     */
+    @Test
+    public void testGenerateInventoryFallback() throws IOException {
+        final Path shipped = Paths.get(RentalManager.FLEETFILE_NAME);
+        final byte[] contents = Files.readAllBytes(shipped);
+        try {
+            Files.write(shipped, "CAR,Fiat,V100\n".getBytes());
+            assertBuiltInFleet();
+            Files.delete(shipped);
+            Files.createDirectory(shipped);
+            assertBuiltInFleet();
+        } finally {
+            Files.deleteIfExists(shipped);
+            Files.write(shipped, contents);
+        }
+    }
+
+    /**
+     * Checks loaded vehicles against the generated fleet.
+     *
+     * @param theLoaded loaded vehicles
+     */
+    private void assertSameFleet(final List<AbstractVehicle> theLoaded) {
+        assertEquals("vehicle count", myFleet.size(), theLoaded.size());
+        for (int i = 0; i < myFleet.size(); i++) {
+            final AbstractVehicle expected = myFleet.get(i);
+            final AbstractVehicle actual = theLoaded.get(i);
+            assertEquals("class", expected.getClass(), actual.getClass());
+            assertEquals("name", expected.getMyName(), actual.getMyName());
+            assertEquals("VIN", expected.getMyVIN(), actual.getMyVIN());
+            assertEquals("availability", expected.isAvailable(), actual.isAvailable());
+            assertEquals("features", expected.getFeatureMask(), actual.getFeatureMask());
+            assertEquals("fare", expected.getMyRentalAmount(), actual.getMyRentalAmount());
+        }
+    }
+
+    /**
+     * Checks that a new manager's generated inventory is the built-in fleet.
+     */
+    private static void assertBuiltInFleet() {
+        final RentalManager manager = new RentalManager(new Registration(new HashMap<String, User>(),
+                                                                         theUser -> null));
+        manager.generateInventory();
+        assertEquals("built-in vehicles", 8, manager.getMyVehicleList().size());
+        assertNotNull("built-in VIN", manager.findByVIN("C102"));
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * This file checks the int-keyed open-addressing map.
+ */
+
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+import utility.IntObjectMap;
+
+/**
+ * @author ShowmikNEW
+ * @version Winter 2021
+ */
+public class IntObjectMapTest {
+
+    /**
+     * Map under test.
+     */
+    private IntObjectMap<String> myMap;
+
+    /**
+     * @throws java.lang.Exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        myMap = new IntObjectMap<String>();
+    }
+
+    /**
+     * Puts, replacements and lookups agree with a HashMap, across growth.
+     */
+    @Test
+    public void testMatchesHashMap() {
+        final Map<Integer, String> expected = new HashMap<Integer, String>();
+        final Random random = new Random(7);
+        for (int i = 0; i < 50_000; i++) {
+            final int key = random.nextInt(20_000) - 10_000;
+            final String value = "v" + i;
+            assertEquals("previous value", expected.put(key, value), myMap.put(key, value));
+        }
+        assertEquals("size", expected.size(), myMap.size());
+        for (int key = -10_000; key < 10_000; key++) {
+            assertEquals("value of " + key, expected.get(key), myMap.get(key));
+            assertEquals("contains " + key, expected.containsKey(key), myMap.containsKey(key));
+        }
+    }
+
+    /**
+     * Zero and extreme keys are ordinary keys.
+     */
+    @Test
+    public void testSpecialKeys() {
+        myMap.put(0, "zero");
+        myMap.put(Integer.MIN_VALUE, "min");
+        myMap.put(Integer.MAX_VALUE, "max");
+        assertEquals("zero", "zero", myMap.get(0));
+        assertEquals("min", "min", myMap.get(Integer.MIN_VALUE));
+        assertEquals("max", "max", myMap.get(Integer.MAX_VALUE));
+        assertNull("absent", myMap.get(1));
+    }
+
+    /**
+     * putIfAbsent keeps the first value; clear empties the map.
+     */
+    @Test
+    public void testPutIfAbsentAndClear() {
+        assertNull("stored", myMap.putIfAbsent(5, "a"));
+        assertEquals("kept", "a", myMap.putIfAbsent(5, "b"));
+        myMap.ensureCapacity(1000);
+        assertEquals("kept after presize", "a", myMap.get(5));
+        final List<String> values = new ArrayList<String>();
+        myMap.forEachValue(values::add);
+        assertEquals("values", List.of("a"), values);
+        myMap.clear();
+        assertTrue("empty", myMap.isEmpty());
+        assertNull("cleared", myMap.get(5));
+    }
+
+    /**
+     * The map view is equal to a HashMap of the same entries, follows later puts and
+     * refuses changes.
+     */
+    @Test
+    public void testMapView() {
+        final Map<Integer, String> expected = new HashMap<Integer, String>();
+        for (int key = -100; key < 100; key++) {
+            expected.put(key * 1000, "v" + key);
+            myMap.put(key * 1000, "v" + key);
+        }
+        final Map<Integer, String> view = myMap.asMap();
+        assertEquals("same entries", expected, view);
+        assertEquals("same hash code", expected.hashCode(), view.hashCode());
+        assertNull("wrong key type", view.get("0"));
+        assertFalse("absent", view.containsKey(1));
+        myMap.put(1, "one");
+        assertEquals("live", "one", view.get(1));
+        assertEquals("live size", expected.size() + 1, view.size());
+        try {
+            view.put(2, "two");
+            fail("view changed");
+        } catch (final UnsupportedOperationException e) {
+            assertFalse("not added", myMap.containsKey(2));
+        }
+    }
+
+    /**
+     * Null values are rejected.
+     */
+    @Test(expected = NullPointerException.class)
+    public void testNullValue() {
+        myMap.put(1, null);
+    }
+
+    /**
+     * Lookups running during growth always find keys that were already present.
+     *
+     * @throws InterruptedException if interrupted while joining the reader
+     */
+    @Test
+    public void testConcurrentReads() throws InterruptedException {
+        final int stable = 1000;
+        for (int i = 0; i < stable; i++) {
+            myMap.put(i, "s" + i);
+        }
+        final boolean[] failed = new boolean[1];
+        final Thread reader = new Thread(() -> {
+            for (int round = 0; round < 200; round++) {
+                for (int i = 0; i < stable; i++) {
+                    if (!("s" + i).equals(myMap.get(i))) {
+                        failed[0] = true;
+                    }
+                }
+            }
+        });
+        reader.start();
+        for (int i = stable; i < 200_000; i++) {
+            myMap.put(i, "x");
+        }
+        reader.join();
+        assertFalse("reader missed a key", failed[0]);
+    }
+}
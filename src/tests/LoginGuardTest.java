@@ -0,0 +1,200 @@
+/**
+ * This file checks login rate limiting.
+ */
+
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import model.CredentialCache;
+import model.LoginGuard;
+import model.LoginResult;
+import model.PasswordHasher;
+import model.Registration;
+import model.User;
+import org.junit.Test;
+
+/**
+ * @author ShowmikNEW
+ * @version Winter 2021
+ */
+public class LoginGuardTest {
+
+    /**
+     * Attempts per user name.
+     */
+    private static final int USER_BURST = 3;
+
+    /**
+     * Attempts per source.
+     */
+    private static final int SOURCE_BURST = 5;
+
+    /**
+     * Slots per table; large enough that the few keys here never share both slots.
+     */
+    private static final int SLOTS = 1 << 16;
+
+    /**
+     * Threads racing for one source token.
+     */
+    private static final int RACE_THREADS = 4;
+
+    /**
+     * Rounds of the source race.
+     */
+    private static final int RACE_ROUNDS = 200;
+
+    /**
+     * Refill time of the refilling guard, in milliseconds.
+     */
+    private static final int REFILL_MILLIS = 50;
+
+    /**
+     * A guard that does not refill within a test.
+     *
+     * @return the guard
+     */
+    private static LoginGuard slowGuard() {
+        return new LoginGuard(USER_BURST, 1, SOURCE_BURST, 1, TimeUnit.HOURS, SLOTS);
+    }
+
+    /**
+     * A user name is throttled after its burst, from any source.
+     */
+    @Test
+    public void testUserBurst() {
+        final LoginGuard guard = slowGuard();
+        for (int i = 0; i < USER_BURST; i++) {
+            assertTrue("attempt " + i, guard.tryAcquire("amy", "10.0.0." + i));
+        }
+        assertFalse("user throttled", guard.tryAcquire("amy", "10.0.0.99"));
+        assertTrue("other user", guard.tryAcquire("bob", "10.0.0.99"));
+        guard.refund("amy");
+        assertTrue("refunded", guard.tryAcquire("amy", "10.0.0.99"));
+    }
+
+    /**
+     * A refund gives back one attempt, not a full bucket, to names sharing the
+     * user's slots.
+     */
+    @Test
+    public void testRefundSharedSlots() {
+        final LoginGuard guard = new LoginGuard(USER_BURST, 1, SOURCE_BURST, 1, TimeUnit.HOURS, 1);
+        for (int i = 0; i < USER_BURST; i++) {
+            assertTrue("attempt " + i, guard.tryAcquire("amy", "home"));
+        }
+        assertFalse("shared slot empty", guard.tryAcquire("bob", "home"));
+        guard.refund("amy");
+        assertTrue("one attempt back", guard.tryAcquire("bob", "home"));
+        assertFalse("only one", guard.tryAcquire("bob", "home"));
+    }
+
+    /**
+     * Attempts refused because their source ran dry do not use up the user's tokens,
+     * even when they race past the up-front check.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @Test
+    public void testRacingSourceRefusal() throws InterruptedException {
+        for (int round = 0; round < RACE_ROUNDS; round++) {
+            final LoginGuard guard = new LoginGuard(RACE_THREADS, 1, 1, 1, TimeUnit.HOURS, SLOTS);
+            final CyclicBarrier start = new CyclicBarrier(RACE_THREADS);
+            final AtomicInteger granted = new AtomicInteger();
+            final List<Thread> attempts = new ArrayList<Thread>();
+            for (int t = 0; t < RACE_THREADS; t++) {
+                final Thread attempt = new Thread(() -> {
+                    try {
+                        start.await();
+                        if (guard.tryAcquire("amy", "attacker")) {
+                            granted.incrementAndGet();
+                        }
+                    } catch (final InterruptedException | BrokenBarrierException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+                attempts.add(attempt);
+                attempt.start();
+            }
+            for (final Thread attempt : attempts) {
+                attempt.join();
+            }
+            assertEquals("one source token", 1, granted.get());
+            for (int i = 1; i < RACE_THREADS; i++) {
+                assertTrue("user tokens kept, round " + round, guard.tryAcquire("amy", "home" + i));
+            }
+        }
+    }
+
+    /**
+     * A source is throttled after its burst, whatever user names it tries, and a
+     * refused attempt does not use up the user's tokens.
+     */
+    @Test
+    public void testSourceBurst() {
+        final LoginGuard guard = slowGuard();
+        for (int i = 0; i < SOURCE_BURST; i++) {
+            assertTrue("attempt " + i, guard.tryAcquire("user" + i, "attacker"));
+        }
+        assertFalse("source throttled", guard.tryAcquire("amy", "attacker"));
+        for (int i = 0; i < USER_BURST; i++) {
+            assertTrue("amy untouched " + i, guard.tryAcquire("amy", "home"));
+        }
+    }
+
+    /**
+     * Tokens come back with time.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @Test
+    public void testRefill() throws InterruptedException {
+        final LoginGuard guard = new LoginGuard(1, REFILL_MILLIS, SOURCE_BURST, REFILL_MILLIS,
+                                                TimeUnit.MILLISECONDS, SLOTS);
+        assertTrue("first", guard.tryAcquire("amy", "home"));
+        assertFalse("empty", guard.tryAcquire("amy", "home"));
+        Thread.sleep(REFILL_MILLIS * 2);
+        assertTrue("refilled", guard.tryAcquire("amy", "home"));
+    }
+
+    /**
+     * The unlimited guard lets every attempt through.
+     */
+    @Test
+    public void testUnlimited() {
+        for (int i = 0; i < LoginGuard.DEFAULT_SOURCE_BURST * 2; i++) {
+            assertTrue("attempt " + i, LoginGuard.UNLIMITED.tryAcquire("Jack", "batch"));
+        }
+    }
+
+    /**
+     * Registration reports throttled logins without checking the password, and a
+     * successful login does not use up one of the user name's attempts.
+     */
+    @Test
+    public void testAttemptLogin() {
+        final HashMap<String, User> users = new HashMap<String, User>();
+        users.put("Jack", new User("Jack", "Kangaroo32", false));
+        final Registration registration =
+            new Registration(users, theUser -> CompletableFuture.completedFuture(null), new PasswordHasher(1000),
+                             new CredentialCache(1, 1, TimeUnit.MINUTES), slowGuard());
+        assertEquals("wrong", LoginResult.WRONG_CREDENTIALS, registration.attemptLogin("Jack", "nope", "home"));
+        assertEquals("unknown", LoginResult.WRONG_CREDENTIALS, registration.attemptLogin("Zed", "nope", "home"));
+        assertEquals("right", LoginResult.SUCCESS, registration.attemptLogin("Jack", "Kangaroo32", "home"));
+        for (int i = 0; i < USER_BURST - 1; i++) {
+            assertEquals("login refunded", LoginResult.WRONG_CREDENTIALS,
+                         registration.attemptLogin("Jack", "x", "office"));
+        }
+        assertEquals("throttled even when right", LoginResult.THROTTLED,
+                     registration.attemptLogin("Jack", "Kangaroo32", "office"));
+    }
+}
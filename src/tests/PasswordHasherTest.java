@@ -0,0 +1,188 @@
+/**
+ * This file checks password hashing, the login cache and hashed registrations.
+ */
+
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import model.CredentialCache;
+import model.PasswordHasher;
+import model.Registration;
+import model.User;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author ShowmikNEW
+ * @version Winter 2021
+ */
+public class PasswordHasherTest {
+
+    /**
+     * Cheap iteration count, so the tests stay fast.
+     */
+    private static final int ITERATIONS = 1000;
+
+    /**
+     * Password used throughout.
+     */
+    private static final String PASSWORD = "Str0ng!Passw0rd";
+
+    /**
+     * Iteration count slow enough to time.
+     */
+    private static final int TIMED_ITERATIONS = 100_000;
+
+    /**
+     * Timed runs of each check; the fastest counts.
+     */
+    private static final int TIMED_RUNS = 5;
+
+    /**
+     * Hasher under test.
+     */
+    private PasswordHasher myHasher;
+
+    /**
+     * @throws java.lang.Exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        myHasher = new PasswordHasher(ITERATIONS);
+    }
+
+    /**
+     * Hashes carry their cost and a fresh salt, and verify only the right password.
+     */
+    @Test
+    public void testHashAndVerify() {
+        final String first = myHasher.hash(PASSWORD);
+        final String second = myHasher.hash(PASSWORD);
+        assertTrue("format: " + first, first.startsWith("pbkdf2$" + ITERATIONS + "$"));
+        assertEquals("four fields", 4, first.split("\\$").length);
+        assertNotEquals("salted", first, second);
+        assertTrue("right password", myHasher.verify(PASSWORD, first));
+        assertFalse("wrong password", myHasher.verify("Str0ng!Passw0rD", first));
+        assertTrue("verified with the stored cost", new PasswordHasher(ITERATIONS * 2).verify(PASSWORD, second));
+    }
+
+    /**
+     * Legacy plaintext rows still verify, and malformed hashes never do.
+     */
+    @Test
+    public void testLegacyAndMalformed() {
+        assertFalse("legacy is not hashed", PasswordHasher.isHashed("Kangaroo32"));
+        assertTrue("legacy", myHasher.verify("Kangaroo32", "Kangaroo32"));
+        assertFalse("legacy wrong", myHasher.verify("Kangaroo33", "Kangaroo32"));
+        assertFalse("missing fields", myHasher.verify(PASSWORD, "pbkdf2$1000$abc"));
+        assertFalse("bad count", myHasher.verify(PASSWORD, "pbkdf2$x$AAAA$AAAA"));
+        assertFalse("bad base64", myHasher.verify(PASSWORD, "pbkdf2$1000$!!$AAAA"));
+    }
+
+    /**
+     * Checking a legacy plaintext row takes about as long as checking a hash.
+     */
+    @Test
+    public void testLegacyTiming() {
+        final PasswordHasher hasher = new PasswordHasher(TIMED_ITERATIONS);
+        final String hashed = hasher.hash(PASSWORD);
+        long legacy = Long.MAX_VALUE;
+        long hash = Long.MAX_VALUE;
+        for (int run = 0; run < TIMED_RUNS; run++) {
+            final long start = System.nanoTime();
+            hasher.verify(PASSWORD, PASSWORD);
+            final long middle = System.nanoTime();
+            hasher.verify(PASSWORD, hashed);
+            legacy = Math.min(legacy, middle - start);
+            hash = Math.min(hash, System.nanoTime() - middle);
+        }
+        assertTrue("legacy " + legacy + " ns, hash " + hash + " ns", legacy * 2 > hash);
+    }
+
+    /**
+     * The cache hits only the same password and stored credential, expires and is bounded.
+     */
+    @Test
+    public void testCredentialCache() {
+        final CredentialCache cache = new CredentialCache(2, 1, TimeUnit.MINUTES);
+        cache.put("amy", PASSWORD, "stored1");
+        assertTrue("hit", cache.isVerified("amy", PASSWORD, "stored1"));
+        assertFalse("other password", cache.isVerified("amy", "nope", "stored1"));
+        assertFalse("changed credential", cache.isVerified("amy", PASSWORD, "stored2"));
+        assertFalse("other user", cache.isVerified("bob", PASSWORD, "stored1"));
+        cache.put("bob", PASSWORD, "stored1");
+        cache.put("cal", PASSWORD, "stored1");
+        assertEquals("bounded", 2, cache.size());
+        assertFalse("least recently used dropped", cache.isVerified("amy", PASSWORD, "stored1"));
+        cache.invalidate("bob");
+        assertFalse("invalidated", cache.isVerified("bob", PASSWORD, "stored1"));
+
+        final CredentialCache expired = new CredentialCache(2, 0, TimeUnit.SECONDS);
+        expired.put("amy", PASSWORD, "stored1");
+        assertFalse("expired", expired.isVerified("amy", PASSWORD, "stored1"));
+    }
+
+    /**
+     * New users are stored hashed and log in; legacy users still log in.
+     */
+    @Test
+    public void testRegistration() {
+        final HashMap<String, User> users = new HashMap<String, User>();
+        users.put("Jack", new User("Jack", "Kangaroo32", false));
+        final Registration registration =
+            new Registration(users, theUser -> CompletableFuture.completedFuture(null), myHasher,
+                             new CredentialCache(CredentialCache.DEFAULT_MAX_ENTRIES, 1, TimeUnit.MINUTES));
+        assertTrue("registered", registration.register(registration.newUser("amy", PASSWORD, true)));
+        final String stored = registration.getMyUserList().get("amy").getMyPassword();
+        assertTrue("stored hashed", PasswordHasher.isHashed(stored));
+        assertFalse("no plaintext", stored.contains(PASSWORD));
+        assertTrue("login", registration.authenticate("amy", PASSWORD));
+        assertTrue("cached login", registration.authenticate("amy", PASSWORD));
+        assertFalse("wrong password", registration.authenticate("amy", "Kangaroo32"));
+        assertTrue("legacy login", registration.authenticate("Jack", "Kangaroo32"));
+        assertFalse("unknown user", registration.authenticate("zed", PASSWORD));
+    }
+
+    /**
+     * A legacy user's first successful login replaces the plaintext with a hash
+     * and journals the change; a failed journal does not fail the login.
+     */
+    @Test
+    public void testLegacyUpgrade() {
+        final HashMap<String, User> users = new HashMap<String, User>();
+        users.put("Jack", new User("Jack", "Kangaroo32", true));
+        users.put("Jill", new User("Jill", "Wallaby32", false));
+        final List<User> journaled = new ArrayList<User>();
+        final Registration registration =
+            new Registration(users, theUser -> {
+                journaled.add(theUser);
+                CompletableFuture<Void> result = CompletableFuture.completedFuture(null);
+                if ("Jill".equals(theUser.getMyName())) {
+                    result = CompletableFuture.failedFuture(new IOException("disk full"));
+                }
+                return result;
+            }, myHasher, new CredentialCache(CredentialCache.DEFAULT_MAX_ENTRIES, 1, TimeUnit.MINUTES));
+
+        assertFalse("wrong password", registration.authenticate("Jack", "Kangaroo33"));
+        assertTrue("not upgraded by a failure", journaled.isEmpty());
+        assertTrue("legacy login", registration.authenticate("Jack", "Kangaroo32"));
+        final User upgraded = registration.getMyUserList().get("Jack");
+        assertTrue("hashed", PasswordHasher.isHashed(upgraded.getMyPassword()));
+        assertTrue("VIP kept", upgraded.isVIP());
+        assertEquals("journaled", Arrays.asList(upgraded), journaled);
+        assertTrue("login after upgrade", registration.authenticate("Jack", "Kangaroo32"));
+        assertFalse("wrong password after upgrade", registration.authenticate("Jack", "Kangaroo33"));
+        assertEquals("upgraded once", 1, journaled.size());
+
+        assertTrue("login despite journal failure", registration.authenticate("Jill", "Wallaby32"));
+        assertEquals("upgrade attempted", 2, journaled.size());
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * This file tests the table-driven password rules.
+ */
+
+package tests;
+
+import static org.junit.Assert.*;
+
+import model.PasswordPolicy;
+import org.junit.Test;
+
+/**
+ * @author ShowmikNEW
+ * @version Winter 2021
+ */
+public class PasswordPolicyTest {
+
+    /**
+     * A password meeting every default rule.
+     */
+    private static final String VALID = "Kangaroo32!";
+
+    /**
+     * Each character class starts and ends where the ASCII table says.
+     */
+    @Test
+    public void testClassBoundaries() {
+        assertEquals("31 control", 0, PasswordPolicy.classify((char) 31));
+        assertEquals("32 space", PasswordPolicy.SPACE, PasswordPolicy.classify(' '));
+        assertEquals("33 !", PasswordPolicy.SPECIAL, PasswordPolicy.classify((char) 33));
+        assertEquals("47 /", PasswordPolicy.SPECIAL, PasswordPolicy.classify((char) 47));
+        assertEquals("48 0", PasswordPolicy.DIGIT, PasswordPolicy.classify((char) 48));
+        assertEquals("57 9", PasswordPolicy.DIGIT, PasswordPolicy.classify((char) 57));
+        assertEquals("58 :", PasswordPolicy.SPECIAL, PasswordPolicy.classify((char) 58));
+        assertEquals("64 @", PasswordPolicy.SPECIAL, PasswordPolicy.classify((char) 64));
+        assertEquals("65 A", PasswordPolicy.UPPER, PasswordPolicy.classify((char) 65));
+        assertEquals("90 Z", PasswordPolicy.UPPER, PasswordPolicy.classify((char) 90));
+        assertEquals("91 [", PasswordPolicy.SPECIAL, PasswordPolicy.classify((char) 91));
+        assertEquals("96 `", PasswordPolicy.SPECIAL, PasswordPolicy.classify((char) 96));
+        assertEquals("97 a", PasswordPolicy.LOWER, PasswordPolicy.classify((char) 97));
+        assertEquals("122 z", PasswordPolicy.LOWER, PasswordPolicy.classify((char) 122));
+        assertEquals("123 {", PasswordPolicy.SPECIAL, PasswordPolicy.classify((char) 123));
+        assertEquals("127 DEL", PasswordPolicy.SPECIAL, PasswordPolicy.classify((char) 127));
+        assertEquals("128", 0, PasswordPolicy.classify((char) 128));
+        assertEquals("e acute", 0, PasswordPolicy.classify('\u00e9'));
+    }
+
+    /**
+     * Every boundary special character satisfies the special character rule.
+     */
+    @Test
+    public void testSpecialCharacters() {
+        for (final char special : new char[] {33, 47, 58, 64, 91, 96, 123, 127}) {
+            assertTrue("special " + (int) special, PasswordPolicy.DEFAULT.isValid("Kangaroo32" + special));
+        }
+        assertFalse("no special", PasswordPolicy.DEFAULT.isValid("Kangaroo321"));
+        assertFalse("non-ASCII is not special", PasswordPolicy.DEFAULT.isValid("Kangaroo32\u00e9"));
+    }
+
+    /**
+     * A capital letter and a digit are each required, and spaces are forbidden.
+     */
+    @Test
+    public void testRequiredClasses() {
+        assertTrue("valid", PasswordPolicy.DEFAULT.isValid(VALID));
+        assertFalse("no digit", PasswordPolicy.DEFAULT.isValid("Kangarooxx!"));
+        assertFalse("no capital", PasswordPolicy.DEFAULT.isValid("kangaroo32!"));
+        assertTrue("no lower case needed", PasswordPolicy.DEFAULT.isValid("KANGAROO32!"));
+        assertFalse("space", PasswordPolicy.DEFAULT.isValid("Kangaroo 32!"));
+    }
+
+    /**
+     * Length must be between 10 and 40 characters inclusive.
+     */
+    @Test
+    public void testLength() {
+        assertFalse("9", PasswordPolicy.DEFAULT.isValid("Kangar32!"));
+        assertTrue("10", PasswordPolicy.DEFAULT.isValid("Kangaro32!"));
+        final StringBuilder forty = new StringBuilder("Kangaroo32!");
+        while (forty.length() < 40) {
+            forty.append('x');
+        }
+        assertTrue("40", PasswordPolicy.DEFAULT.isValid(forty.toString()));
+        assertFalse("41", PasswordPolicy.DEFAULT.isValid(forty.append('x').toString()));
+        assertFalse("empty", PasswordPolicy.DEFAULT.isValid(""));
+    }
+
+    /**
+     * Banned substrings are matched ignoring case, anywhere in the password.
+     */
+    @Test
+    public void testBannedSubstrings() {
+        final PasswordPolicy policy = PasswordPolicy.DEFAULT.withBannedSubstrings("roo", "Password");
+        assertFalse("banned middle", policy.isValid(VALID));
+        assertFalse("banned ignoring case", policy.isValid("XpASSWORD1!"));
+        assertTrue("not banned", policy.isValid("Wallaby32!x"));
+        assertTrue("default unchanged", PasswordPolicy.DEFAULT.isValid(VALID));
+    }
+
+    /**
+     * Invalid rules are rejected.
+     */
+    @Test
+    public void testInvalidPolicy() {
+        try {
+            new PasswordPolicy(5, 4, 0, 0);
+            fail("max below min");
+        } catch (final IllegalArgumentException e) {
+            assertNull(e.getMessage());
+        }
+        try {
+            new PasswordPolicy(0, 4, 0, 0, "");
+            fail("empty banned substring");
+        } catch (final IllegalArgumentException e) {
+            assertNull(e.getMessage());
+        }
+    }
+
+    /**
+     * Null passwords are rejected.
+     */
+    @Test(expected = NullPointerException.class)
+    public void testNullPassword() {
+        PasswordPolicy.DEFAULT.isValid(null);
+    }
+}
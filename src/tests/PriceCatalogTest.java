@@ -0,0 +1,101 @@
+/**
+ * This file checks catalog prices against the per-vehicle fare rules they replaced.
+ */
+
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import model.vehicles.Bicycle;
+import model.vehicles.BicycleType;
+import model.vehicles.Car;
+import model.vehicles.MotorBike;
+import model.vehicles.PriceCatalog;
+import model.vehicles.VehicleFeature;
+import model.vehicles.VehicleType;
+import org.junit.Test;
+import utility.Money;
+
+/**
+ * @author ShowmikNEW
+ * @version Winter 2021
+ */
+public class PriceCatalogTest {
+
+    /**
+     * The daily base fare.
+     */
+    private static final BigDecimal BASE = new BigDecimal("10.00");
+
+    /**
+     * Every car configuration gets the old car fare, with the same scale.
+     */
+    @Test
+    public void testCars() {
+        final boolean[] flags = {false, true};
+        for (final boolean luxury : flags) {
+            for (final boolean nav : flags) {
+                for (final boolean assist : flags) {
+                    BigDecimal expected = BASE.multiply(new BigDecimal("3.00"));
+                    if (luxury) {
+                        expected = expected.add(new BigDecimal("10.00"));
+                    }
+                    if (nav) {
+                        expected = expected.add(new BigDecimal("1.00"));
+                    }
+                    if (assist) {
+                        expected = expected.add(new BigDecimal("2.00"));
+                    }
+                    final Car car = new Car("Car", "V1", true, luxury, nav, assist);
+                    assertEquals("car fare", expected, car.getMyRentalAmount());
+                    assertEquals("car units", Money.toUnits(expected), car.getMyRentalAmountUnits());
+                }
+            }
+        }
+    }
+
+    /**
+     * Motor bikes get the old fare with and without touring.
+     */
+    @Test
+    public void testMotorBikes() {
+        final BigDecimal fare = BASE.multiply(new BigDecimal("2.00"));
+        assertEquals("plain bike", fare, new MotorBike("Bike", "B1", true, false).getMyRentalAmount());
+        assertEquals("touring bike", fare.add(new BigDecimal("5.00")),
+                     new MotorBike("Bike", "B1", true, true).getMyRentalAmount());
+    }
+
+    /**
+     * Bicycles get the old fare by type name or enum, and unknown types get the base fare.
+     */
+    @Test
+    public void testBicycles() {
+        final String[] names = {"Mountain", "Cruiser", "Hybrid"};
+        final String[] factors = {"1.01", "1.02", "1.04"};
+        for (int i = 0; i < names.length; i++) {
+            final BigDecimal expected = BASE.multiply(new BigDecimal(factors[i]));
+            assertEquals("bicycle by name", expected, new Bicycle(names[i], "C1", true, names[i]).getMyRentalAmount());
+            final Bicycle byType = new Bicycle(names[i], "C1", true, BicycleType.fromName(names[i]));
+            assertEquals("bicycle by type", expected, byType.getMyRentalAmount());
+            assertEquals("bicycle feature", BicycleType.fromName(names[i]).getMyFeature().bit(),
+                         byType.getFeatureMask());
+        }
+        assertEquals("road bicycle", BASE, new Bicycle("Roadies", "C100", true, "Road").getMyRentalAmount());
+    }
+
+    /**
+     * Equal rates are one shared object, and unknown feature bits are rejected.
+     */
+    @Test
+    public void testInterningAndBadMask() {
+        assertSame("rates not shared", PriceCatalog.priceOf(VehicleType.CAR, 0),
+                   PriceCatalog.priceOf(VehicleType.CAR, VehicleFeature.TOURING.bit()));
+        try {
+            PriceCatalog.priceOf(VehicleType.CAR, -1);
+            fail("bad mask accepted");
+        } catch (final IllegalArgumentException e) {
+            assertNotNull("no message", e.getMessage());
+        }
+    }
+}
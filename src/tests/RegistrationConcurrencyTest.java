@@ -0,0 +1,160 @@
+/**
+ * This file stress tests concurrent registrations and logins on the Registration class.
+ */
+
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import model.CredentialCache;
+import model.PasswordHasher;
+import model.Registration;
+import model.User;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author ShowmikNEW
+ * @version Winter 2021
+ */
+public class RegistrationConcurrencyTest {
+
+    /**
+     * Number of threads hammering the registration at once.
+     */
+    private static final int THREADS = 64;
+
+    /**
+     * Users each thread registers under its own unique names.
+     */
+    private static final int UNIQUE_PER_THREAD = 500;
+
+    /**
+     * Names every thread tries to register, so each one is contended by all threads.
+     */
+    private static final int SHARED_NAMES = 200;
+
+    /**
+     * Cheap iteration count, so hashing every registration stays fast.
+     */
+    private static final int ITERATIONS = 10;
+
+    /**
+     * Users persisted by the registration, in journal order.
+     */
+    private Queue<User> myJournal;
+
+    /**
+     * Class object to be tested.
+     */
+    private Registration myRegister;
+
+    /**
+     * Thread pool running the workers.
+     */
+    private ExecutorService myPool;
+
+    /**
+     * @throws java.lang.Exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        myJournal = new ConcurrentLinkedQueue<User>();
+        final Map<String, User> users = new HashMap<String, User>();
+        users.put("Jack", new User("Jack", "Kangaroo32", false));
+        myRegister = new Registration(users, theUser -> {
+            myJournal.add(theUser);
+            return CompletableFuture.completedFuture(null);
+        }, new PasswordHasher(ITERATIONS), new CredentialCache(CredentialCache.DEFAULT_MAX_ENTRIES,
+                                                               CredentialCache.DEFAULT_TTL_SECONDS,
+                                                               TimeUnit.SECONDS));
+        myPool = Executors.newFixedThreadPool(THREADS);
+    }
+
+    /**
+     * @throws java.lang.Exception
+     */
+    @After
+    public void tearDown() throws Exception {
+        myPool.shutdownNow();
+    }
+
+    /**
+     * Many threads register unique and contended names while logging in; no registration
+     * may be lost and no name may be registered or persisted twice, and the legacy user
+     * they all log in as is upgraded and persisted once.
+     *
+     * @throws Exception if a worker fails
+     */
+    @Test
+    public void testConcurrentRegistrationsAreNotLostOrDuplicated() throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger sharedWins = new AtomicInteger();
+        final AtomicInteger failedLogins = new AtomicInteger();
+        final List<Future<?>> workers = new ArrayList<Future<?>>();
+        for (int t = 0; t < THREADS; t++) {
+            final int thread = t;
+            workers.add(myPool.submit(() -> {
+                start.await();
+                for (int i = 0; i < UNIQUE_PER_THREAD; i++) {
+                    final String name = "user" + thread + "_" + i;
+                    assertTrue("unique registration rejected",
+                               myRegister.register(myRegister.newUser(name, "pw" + i, false)));
+                    if (i < SHARED_NAMES && myRegister.register(new User("shared" + i, "pw" + thread))) {
+                        sharedWins.incrementAndGet();
+                    }
+                    if (!myRegister.authenticate("Jack", "Kangaroo32")
+                        || !myRegister.authenticate(name, "pw" + i)) {
+                        failedLogins.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (final Future<?> worker : workers) {
+            worker.get();
+        }
+
+        final int expectedUsers = 1 + THREADS * UNIQUE_PER_THREAD + SHARED_NAMES;
+        assertEquals("each shared name must be won exactly once", SHARED_NAMES, sharedWins.get());
+        assertEquals("logins failed during registration", 0, failedLogins.get());
+        assertEquals("registrations lost", expectedUsers, myRegister.getMyUserList().size());
+        assertEquals("journal must hold each new user and the upgrade once", expectedUsers, myJournal.size());
+        assertTrue("legacy user upgraded",
+                   PasswordHasher.isHashed(myRegister.getMyUserList().get("Jack").getMyPassword()));
+
+        final Map<String, User> persisted = new HashMap<String, User>();
+        for (final User user : myJournal) {
+            assertNull("user persisted twice: " + user, persisted.put(user.getMyName(), user));
+            assertEquals("persisted user differs from registered user",
+                         myRegister.getMyUserList().get(user.getMyName()), user);
+        }
+    }
+
+    /**
+     * A taken user name is rejected and not persisted again.
+     */
+    @Test
+    public void testRegisterRejectsTakenName() {
+        assertFalse("duplicate registration accepted", myRegister.register(new User("Jack", "Other1!")));
+        assertTrue("original password lost", myRegister.authenticate("Jack", "Kangaroo32"));
+        assertEquals("duplicate was persisted, not just the login upgrade",
+                     Arrays.asList(myRegister.getMyUserList().get("Jack")), new ArrayList<User>(myJournal));
+    }
+}
@@ -6,9 +6,15 @@ package tests;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import model.Registration;
 import model.User;
 import org.junit.Before;
@@ -104,6 +110,43 @@ public class RegistrationTest {
         assertEquals("register failed", "BanktheTank22", myUserTestList.get("Boris").getMyPassword());
     }
     
+    /**
+     * A registration whose journal write fails is refused and leaves the name free.
+     */
+    @Test
+    public void testRegisterJournalFailure() {
+        final CompletableFuture<Void> failed = new CompletableFuture<Void>();
+        failed.completeExceptionally(new IOException("disk full"));
+        final Registration failing = new Registration(new HashMap<String, User>(), theUser -> failed);
+        assertFalse("register with failed write", failing.register(new User("amy", "Secret!123", true)));
+        assertFalse("name released", failing.getMyUserList().containsKey("amy"));
+
+        final Registration closed = new Registration(new HashMap<String, User>(), theUser -> {
+            throw new IllegalStateException("Writer is closed");
+        });
+        assertFalse("register with closed journal", closed.register(new User("amy", "Secret!123", true)));
+        assertTrue("nothing registered", closed.getMyUserList().isEmpty());
+    }
+    
+    /**
+     * A console registration whose journal write fails is reported as failed instead
+     * of asking for another user name forever.
+     */
+    @Test
+    public void testPrintSigninJournalFailure() {
+        final InputStream console = System.in;
+        System.setIn(new ByteArrayInputStream("1\namy\nSecret!123\nfalse\n".getBytes(StandardCharsets.UTF_8)));
+        try {
+            final CompletableFuture<Void> failed = new CompletableFuture<Void>();
+            failed.completeExceptionally(new IOException("disk full"));
+            final Registration failing = new Registration(new HashMap<String, User>(), theUser -> failed);
+            assertFalse("sign-in failed", failing.printSignin());
+            assertFalse("name released", failing.getMyUserList().containsKey("amy"));
+        } finally {
+            System.setIn(console);
+        }
+    }
+    
     /**
      * Make sure testRegister method throw null exception if passed null User argument.
      */
@@ -129,7 +172,9 @@ public class RegistrationTest {
         final StringBuilder sb = new StringBuilder();
         sb.append("Registered UserList {");
 
-        final Set<String> keys = myUserTestList.keySet();
+        // The user list is a concurrent map, so follow its iteration order
+        final Set<String> keys = myRegister.getMyUserList().keySet();
+        assertEquals("toString key set differs", myUserTestList.keySet(), keys);
         final Iterator<String> itr = keys.iterator();
         final String commaPlusSpace = ", ";
 
@@ -0,0 +1,598 @@
+/**
+ * This file checks that the rental ledger survives restarts, torn writes and checkpoints.
+ */
+
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import model.Registration;
+import model.RentalManager;
+import model.User;
+import model.vehicles.AbstractVehicle;
+import model.vehicles.Car;
+import model.vehicles.MotorBike;
+import model.vehicles.RentalState;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import utility.PhaseTimings;
+import utility.RentalLedger;
+import utility.RentalLedger.BillEntry;
+import utility.TaskScope;
+
+/**
+ * @author ShowmikNEW
+ * @version Winter 2021
+ */
+public class RentalLedgerTest {
+
+    /**
+     * Checkpoint file next to the log.
+     */
+    private static final String CHECKPOINT_FILE = "rentals.ledger.ckpt";
+
+    /**
+     * Bytes of a batch written before an injected write failure.
+     */
+    private static final int TORN_BYTES = 10;
+
+    /**
+     * Seconds any event may take to complete.
+     */
+    private static final int TIMEOUT_SECONDS = 30;
+
+    /**
+     * Threads recording while the ledger closes.
+     */
+    private static final int THREADS = 8;
+
+    /**
+     * Events per recording thread.
+     */
+    private static final int EVENTS_PER_THREAD = 2000;
+
+    /**
+     * Rental days whose bill overflows at the {@link OverpricedCar} rate.
+     */
+    private static final int OVERFLOW_DAYS = 1000;
+
+    /**
+     * Deadline that passes while a rent waits for the disk.
+     */
+    private static final int SHORT_MILLIS = 50;
+
+    /**
+     * Temporary directory holding the ledger.
+     */
+    private Path myDirectory;
+
+    /**
+     * Ledger log file.
+     */
+    private Path myLog;
+
+    /**
+     * @throws java.lang.Exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        myDirectory = Files.createTempDirectory("ledger");
+        myLog = myDirectory.resolve("rentals.ledger");
+    }
+
+    /**
+     * @throws java.lang.Exception
+     */
+    @After
+    public void tearDown() throws Exception {
+        try (Stream<Path> files = Files.list(myDirectory)) {
+            for (final Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(myDirectory);
+    }
+
+    /**
+     * Rentals, drop-offs and bills are recovered after a restart.
+     *
+     * @throws IOException if the ledger cannot be used
+     */
+    @Test
+    public void testRecover() throws IOException {
+        try (RentalLedger ledger = RentalLedger.open(myLog)) {
+            ledger.recordRent(new BillEntry(1, "alice", "V100", 3, 300_000L));
+            ledger.recordRent(new BillEntry(2, "bob", "B100", 1, 200_000L));
+            ledger.recordBill(new BillEntry(3, "carol", "C100", 2, 101_000L));
+            ledger.recordDrop("V100").join();
+        }
+        try (RentalLedger ledger = RentalLedger.open(myLog)) {
+            final List<BillEntry> bills = ledger.getMyRecoveredBills();
+            assertEquals("bill count", 3, bills.size());
+            assertEquals("first bill user", "alice", bills.get(0).getMyUserName());
+            assertEquals("first bill VIN", "V100", bills.get(0).getMyVIN());
+            assertEquals("first bill days", 3, bills.get(0).getMyNumDays());
+            assertEquals("first bill rate", 300_000L, bills.get(0).getMyDailyRateUnits());
+            assertEquals("still rented", List.of("B100"), ledger.getMyRecoveredRentals());
+        }
+    }
+
+    /**
+     * A clear event empties the recovered state.
+     *
+     * @throws IOException if the ledger cannot be used
+     */
+    @Test
+    public void testClear() throws IOException {
+        try (RentalLedger ledger = RentalLedger.open(myLog)) {
+            ledger.recordRent(new BillEntry(1, "alice", "V100", 3, 300_000L));
+            ledger.recordClear();
+            ledger.recordRent(new BillEntry(2, "bob", "B100", 1, 200_000L)).join();
+        }
+        try (RentalLedger ledger = RentalLedger.open(myLog)) {
+            assertEquals("bills after clear", 1, ledger.getMyRecoveredBills().size());
+            assertEquals("rentals after clear", List.of("B100"), ledger.getMyRecoveredRentals());
+        }
+    }
+
+    /**
+     * A torn last record is cut off and everything before it is recovered.
+     *
+     * @throws IOException if the ledger cannot be used
+     */
+    @Test
+    public void testTornTail() throws IOException {
+        try (RentalLedger ledger = RentalLedger.open(myLog, 1_000, new PhaseTimings())) {
+            ledger.recordRent(new BillEntry(1, "alice", "V100", 3, 300_000L));
+            ledger.recordRent(new BillEntry(2, "bob", "B100", 1, 200_000L)).join();
+        }
+        Files.delete(myDirectory.resolve("rentals.ledger.ckpt"));
+        final long intact = Files.size(myLog);
+        try (FileChannel channel = FileChannel.open(myLog, StandardOpenOption.WRITE)) {
+            channel.truncate(intact - 3);
+            channel.write(ByteBuffer.wrap(new byte[] {0, 0, 0, 9, 1, 2}), channel.size());
+        }
+        try (RentalLedger ledger = RentalLedger.open(myLog)) {
+            assertEquals("bills before the torn record", 1, ledger.getMyRecoveredBills().size());
+            assertEquals("rentals before the torn record", List.of("V100"), ledger.getMyRecoveredRentals());
+            ledger.recordDrop("V100").join();
+        }
+        try (RentalLedger ledger = RentalLedger.open(myLog)) {
+            assertTrue("appended after the cut", ledger.getMyRecoveredRentals().isEmpty());
+        }
+    }
+
+    /**
+     * Checkpoints limit replay, and a damaged checkpoint falls back to a full replay.
+     *
+     * @throws IOException if the ledger cannot be used
+     */
+    @Test
+    public void testCheckpoint() throws IOException {
+        try (RentalLedger ledger = RentalLedger.open(myLog, 2, new PhaseTimings())) {
+            for (int i = 0; i < 5; i++) {
+                ledger.recordRent(new BillEntry(i, "alice", "V" + i, 1, 100_000L)).join();
+            }
+            ledger.recordDrop("V0").join();
+            ledger.checkpoint().join();
+            ledger.recordDrop("V1").join();
+        }
+        try (RentalLedger ledger = RentalLedger.open(myLog, 2, new PhaseTimings())) {
+            assertEquals("replayed after the last checkpoint", 0, ledger.getMyReplayedEvents());
+            assertEquals("bills", 5, ledger.getMyRecoveredBills().size());
+            assertEquals("rentals", 3, ledger.getMyRecoveredRentals().size());
+        }
+        final Path checkpoint = myDirectory.resolve("rentals.ledger.ckpt");
+        final byte[] damaged = Files.readAllBytes(checkpoint);
+        damaged[damaged.length / 2] ^= 1;
+        Files.write(checkpoint, damaged);
+        try (RentalLedger ledger = RentalLedger.open(myLog)) {
+            assertEquals("full replay", 7, ledger.getMyReplayedEvents());
+            assertEquals("rentals after full replay", 3, ledger.getMyRecoveredRentals().size());
+        }
+    }
+
+    /**
+     * A restarted RentalManager gets back its bills and rented vehicles.
+     *
+     * @throws IOException if the ledger cannot be used
+     */
+    @Test
+    public void testRentalManagerRestart() throws IOException {
+        final Map<String, User> users = new HashMap<String, User>();
+        users.put("alice", new User("alice", "Passw0rd!!x"));
+        RentalManager manager = new RentalManager(new Registration(users, theUser -> null));
+        manager.addVehicle(new Car("Fiat", "V100", true, false, false, false));
+        manager.addVehicle(new MotorBike("Bike", "B100", true, false));
+        manager.openLedger(myLog);
+        final int carID = manager.findByVIN("V100").getMyVehicleID();
+        final int bikeID = manager.findByVIN("B100").getMyVehicleID();
+        assertTrue("rent car", manager.rent(carID, "alice", 2, 41));
+        assertTrue("rent bike", manager.rent(bikeID, "alice", 1, 42));
+        assertTrue("drop bike", manager.drop(bikeID));
+        manager.closeLedger();
+
+        // New vehicle objects get new IDs; the ledger matches them by VIN
+        manager = new RentalManager(new Registration(users, theUser -> null));
+        manager.addVehicle(new Car("Fiat", "V100", true, false, false, false));
+        manager.addVehicle(new MotorBike("Bike", "B100", true, false));
+        final PhaseTimings timings = manager.openLedger(myLog);
+        assertFalse("car still rented", manager.findByVIN("V100").isAvailable());
+        assertTrue("bike returned", manager.findByVIN("B100").isAvailable());
+        assertNotNull("car bill", manager.getBill(41));
+        assertEquals("car bill vehicle", manager.findByVIN("V100"), manager.getBill(41).getMyVehicle());
+        assertNotNull("bike bill", manager.getBill(42));
+        assertTrue("restore timed", timings.getNanos(RentalManager.RESTORE_PHASE) > 0);
+        manager.closeLedger();
+    }
+
+    /**
+     * A batch torn by a failed write or fsync is cut off the log, so events written
+     * after it are recovered.
+     *
+     * @throws Exception if the ledger cannot be used
+     */
+    @Test
+    public void testFailedBatchCutOff() throws Exception {
+        try (RentalLedger ledger = RentalLedger.open(myLog)) {
+            ledger.recordRent(new BillEntry(1, "alice", "V100", 3, 300_000L)).join();
+            final FailingChannel channel = injectFailures(ledger);
+            channel.setWriteBudget(TORN_BYTES);
+            assertFailed(ledger.recordRent(new BillEntry(2, "bob", "B100", 1, 200_000L)));
+            channel.setWriteBudget(-1);
+            channel.setFailForce(true);
+            assertFailed(ledger.recordRent(new BillEntry(3, "carol", "C100", 1, 100_000L)));
+            channel.setFailForce(false);
+            ledger.recordRent(new BillEntry(4, "dave", "D100", 1, 100_000L)).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
+        Files.delete(myDirectory.resolve(CHECKPOINT_FILE));
+        try (RentalLedger ledger = RentalLedger.open(myLog)) {
+            assertEquals("only durable events on disk", 2, ledger.getMyReplayedEvents());
+            assertEquals("bills", List.of(1, 4), billIDs(ledger));
+            assertEquals("rentals", Set.of("V100", "D100"), Set.copyOf(ledger.getMyRecoveredRentals()));
+        }
+    }
+
+    /**
+     * A torn batch that cannot be cut off stops the ledger, and the torn tail is cut
+     * off when it is opened again.
+     *
+     * @throws Exception if the ledger cannot be used
+     */
+    @Test
+    public void testFailedCutOffStopsLedger() throws Exception {
+        try (RentalLedger ledger = RentalLedger.open(myLog)) {
+            ledger.recordRent(new BillEntry(1, "alice", "V100", 3, 300_000L)).join();
+            final FailingChannel channel = injectFailures(ledger);
+            channel.setWriteBudget(TORN_BYTES);
+            channel.setFailTruncate(true);
+            assertFailed(ledger.recordRent(new BillEntry(2, "bob", "B100", 1, 200_000L)));
+            channel.setWriteBudget(-1);
+            channel.setFailTruncate(false);
+            assertFailed(ledger.recordDrop("V100"));
+        }
+        Files.delete(myDirectory.resolve(CHECKPOINT_FILE));
+        try (RentalLedger ledger = RentalLedger.open(myLog)) {
+            assertEquals("bills", List.of(1), billIDs(ledger));
+            assertEquals("rentals", List.of("V100"), ledger.getMyRecoveredRentals());
+        }
+    }
+
+    /**
+     * A rental the ledger cannot record fails and leaves the vehicle available, and a
+     * drop-off it cannot record fails and leaves the vehicle rented.
+     *
+     * @throws Exception if the ledger cannot be used
+     */
+    @Test
+    public void testRentalManagerLedgerFailure() throws Exception {
+        final RentalManager manager = managerWithLedger();
+        final Car car = new Car("Fiat", "V100", true, false, false, false);
+        manager.addVehicle(car);
+        final FailingChannel channel = injectFailures(manager);
+        final int id = car.getMyVehicleID();
+
+        channel.setFailForce(true);
+        try {
+            manager.rentAndBill(id, "alice", 2, 1);
+            fail("rent not recorded");
+        } catch (final IllegalStateException e) {
+            assertTrue("cause", e.getCause() instanceof IOException);
+        }
+        assertEquals("available", RentalState.AVAILABLE, car.getRentalState());
+        assertEquals("indexed as available", List.of(car), manager.findAvailable(1, null));
+        assertNull("no bill", manager.getBill(1));
+
+        channel.setFailForce(false);
+        assertNotNull("rented", manager.rentAndBill(id, "alice", 2, 2));
+        channel.setFailForce(true);
+        try {
+            manager.drop(id);
+            fail("drop not recorded");
+        } catch (final IllegalStateException e) {
+            assertTrue("cause", e.getCause() instanceof IOException);
+        }
+        assertEquals("still rented", RentalState.RENTED, car.getRentalState());
+        assertTrue("not indexed as available", manager.findAvailable(1, null).isEmpty());
+        channel.setFailForce(false);
+        assertTrue("dropped", manager.drop(id));
+        manager.closeLedger();
+    }
+
+    /**
+     * Every event recorded while the ledger closes completes, and exactly the ones
+     * that succeeded are in the log.
+     *
+     * @throws Exception if the ledger cannot be used
+     */
+    @Test
+    public void testRecordRacingClose() throws Exception {
+        final RentalLedger ledger = RentalLedger.open(myLog);
+        final Queue<CompletableFuture<Void>> recorded = new ConcurrentLinkedQueue<CompletableFuture<Void>>();
+        final CountDownLatch started = new CountDownLatch(THREADS);
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < THREADS; t++) {
+            final int thread = t;
+            final Thread recorder = new Thread(() -> {
+                started.countDown();
+                try {
+                    for (int i = 0; i < EVENTS_PER_THREAD; i++) {
+                        recorded.add(ledger.recordDrop("T" + thread + "V" + i));
+                    }
+                } catch (final IllegalStateException e) {
+                    assertNotNull("closed: later events are refused up front", e.getMessage());
+                }
+            });
+            threads.add(recorder);
+            recorder.start();
+        }
+        started.await();
+        ledger.close();
+        for (final Thread recorder : threads) {
+            recorder.join();
+        }
+        int written = 0;
+        for (final CompletableFuture<Void> event : recorded) {
+            try {
+                event.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                written++;
+            } catch (final ExecutionException e) {
+                assertTrue("failed as closed", e.getCause() instanceof IllegalStateException);
+            }
+        }
+        Files.deleteIfExists(myDirectory.resolve(CHECKPOINT_FILE));
+        try (RentalLedger reopened = RentalLedger.open(myLog)) {
+            assertEquals("written events in the log", written, reopened.getMyReplayedEvents());
+        }
+    }
+
+    /**
+     * A deadline rental whose bill would overflow is refused before anything is
+     * recorded, and the vehicle stays available.
+     *
+     * @throws Exception if the ledger cannot be used
+     */
+    @Test
+    public void testDeadlineRentOverflowRefused() throws Exception {
+        final RentalManager manager = managerWithLedger();
+        final Car car = new OverpricedCar();
+        manager.addVehicle(car);
+        assertNull("not rented", manager.rentAndBill(car.getMyVehicleID(), "alice", OVERFLOW_DAYS, 7,
+                                                     TaskScope.deadlineAfter(TIMEOUT_SECONDS, TimeUnit.SECONDS)));
+        assertNull("no bill", manager.getBill(7));
+        assertTrue("still available", car.isAvailable());
+        manager.closeLedger();
+        Files.deleteIfExists(myDirectory.resolve(CHECKPOINT_FILE));
+        try (RentalLedger ledger = RentalLedger.open(myLog)) {
+            assertEquals("nothing logged", 0, ledger.getMyReplayedEvents());
+        }
+    }
+
+    /**
+     * A deadline rental the ledger fails to record keeps no bill, writes nothing else
+     * and releases the vehicle.
+     *
+     * @throws Exception if the ledger cannot be used
+     */
+    @Test
+    public void testDeadlineRentLedgerFailure() throws Exception {
+        final RentalManager manager = managerWithLedger();
+        final Car car = new Car("Fiat", "V100", true, false, false, false);
+        manager.addVehicle(car);
+        final FailingChannel channel = injectFailures(manager);
+        channel.setFailForce(true);
+        assertNull("not rented", manager.rentAndBill(car.getMyVehicleID(), "alice", 2, 7,
+                                                     TaskScope.deadlineAfter(TIMEOUT_SECONDS, TimeUnit.SECONDS)));
+        assertNull("no bill", manager.getBill(7));
+        awaitAvailable(car);
+        channel.setFailForce(false);
+        manager.closeLedger();
+        Files.deleteIfExists(myDirectory.resolve(CHECKPOINT_FILE));
+        try (RentalLedger ledger = RentalLedger.open(myLog)) {
+            assertEquals("nothing logged", 0, ledger.getMyReplayedEvents());
+        }
+    }
+
+    /**
+     * A deadline rental that times out while its rent is being written keeps the
+     * vehicle reserved until the rent is durable and voided.
+     *
+     * @throws Exception if the ledger cannot be used
+     */
+    @Test
+    public void testDeadlineRentTimeout() throws Exception {
+        final RentalManager manager = managerWithLedger();
+        final Car car = new Car("Fiat", "V100", true, false, false, false);
+        manager.addVehicle(car);
+        final FailingChannel channel = injectFailures(manager);
+        final CountDownLatch gate = new CountDownLatch(1);
+        channel.setForceGate(gate);
+        assertNull("timed out", manager.rentAndBill(car.getMyVehicleID(), "alice", 2, 7,
+                                                    TaskScope.deadlineAfter(SHORT_MILLIS, TimeUnit.MILLISECONDS)));
+        assertNull("no bill", manager.getBill(7));
+        assertEquals("held until the rent settles", RentalState.RESERVED, car.getRentalState());
+        channel.setForceGate(null);
+        gate.countDown();
+        awaitAvailable(car);
+        manager.closeLedger();
+        try (RentalLedger ledger = RentalLedger.open(myLog)) {
+            assertTrue("bill voided", ledger.getMyRecoveredBills().isEmpty());
+            assertTrue("rental voided", ledger.getMyRecoveredRentals().isEmpty());
+        }
+    }
+
+    /**
+     * A timed-out rent that became durable but whose void cannot be logged keeps its
+     * vehicle reserved, matching the rental a restart replays.
+     *
+     * @throws Exception if the ledger fails unexpectedly
+     */
+    @Test
+    public void testDeadlineRentVoidFailure() throws Exception {
+        final RentalManager manager = managerWithLedger();
+        final Car car = new Car("Fiat", "V100", true, false, false, false);
+        manager.addVehicle(car);
+        final FailingChannel channel = injectFailures(manager);
+        final CountDownLatch gate = new CountDownLatch(1);
+        channel.setForceGate(gate);
+        assertNull("timed out", manager.rentAndBill(car.getMyVehicleID(), "alice", 2, 7,
+                                                    TaskScope.deadlineAfter(SHORT_MILLIS, TimeUnit.MILLISECONDS)));
+        // The rent is already written, so only the void fails
+        channel.setWriteBudget(0);
+        channel.setForceGate(null);
+        gate.countDown();
+        final long deadline = TaskScope.deadlineAfter(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        while (channel.getFailedWrites() == 0 && System.nanoTime() - deadline < 0) {
+            Thread.sleep(1);
+        }
+        assertEquals("void failed", 1, channel.getFailedWrites());
+        final long settled = TaskScope.deadlineAfter(SHORT_MILLIS * 10, TimeUnit.MILLISECONDS);
+        while (System.nanoTime() - settled < 0) {
+            assertEquals("still reserved", RentalState.RESERVED, car.getRentalState());
+            Thread.sleep(1);
+        }
+        channel.setWriteBudget(-1);
+        manager.closeLedger();
+        try (RentalLedger ledger = RentalLedger.open(myLog)) {
+            assertEquals("rental not voided", List.of("V100"), ledger.getMyRecoveredRentals());
+        }
+    }
+
+    /**
+     * Creates a rental manager with user alice and an open ledger.
+     *
+     * @return the manager
+     * @throws IOException if the ledger cannot be opened
+     */
+    private RentalManager managerWithLedger() throws IOException {
+        final Map<String, User> users = new HashMap<String, User>();
+        users.put("alice", new User("alice", "Passw0rd!!x"));
+        final RentalManager result = new RentalManager(new Registration(users, theUser -> null));
+        result.openLedger(myLog);
+        return result;
+    }
+
+    /**
+     * Waits until a vehicle is available.
+     *
+     * @param theVehicle the vehicle
+     * @throws InterruptedException if interrupted
+     */
+    private static void awaitAvailable(final AbstractVehicle theVehicle) throws InterruptedException {
+        final long deadline = TaskScope.deadlineAfter(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        while (!theVehicle.isAvailable() && System.nanoTime() - deadline < 0) {
+            Thread.sleep(1);
+        }
+        assertTrue("released", theVehicle.isAvailable());
+    }
+
+    /**
+     * Replaces the log channel of a manager's ledger with one that fails on demand.
+     *
+     * @param theManager the manager
+     * @return the failing channel
+     * @throws ReflectiveOperationException if the channel field cannot be replaced
+     */
+    private static FailingChannel injectFailures(final RentalManager theManager)
+        throws ReflectiveOperationException {
+        final Field field = RentalManager.class.getDeclaredField("myLedger");
+        field.setAccessible(true);
+        return injectFailures((RentalLedger) field.get(theManager));
+    }
+
+    /**
+     * Replaces the log channel of a ledger with one that fails on demand.
+     *
+     * @param theLedger the ledger
+     * @return the failing channel
+     * @throws ReflectiveOperationException if the channel field cannot be replaced
+     */
+    private static FailingChannel injectFailures(final RentalLedger theLedger)
+        throws ReflectiveOperationException {
+        return FailingChannel.inject(theLedger, "myChannel");
+    }
+
+    /**
+     * Checks that a ledger event failed with an IOException.
+     *
+     * @param theEvent the event's future
+     * @throws Exception if the event does not complete in time
+     */
+    private static void assertFailed(final CompletableFuture<Void> theEvent) throws Exception {
+        try {
+            theEvent.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            fail("event recorded");
+        } catch (final ExecutionException e) {
+            assertTrue("I/O failure", e.getCause() instanceof IOException);
+        }
+    }
+
+    /**
+     * IDs of the bills a ledger recovered.
+     *
+     * @param theLedger the ledger
+     * @return bill IDs in order
+     */
+    private static List<Integer> billIDs(final RentalLedger theLedger) {
+        final List<Integer> result = new ArrayList<Integer>();
+        for (final BillEntry bill : theLedger.getMyRecoveredBills()) {
+            result.add(bill.getMyBillID());
+        }
+        return result;
+    }
+
+    /**
+     * A car so expensive that long rentals overflow the bill.
+     */
+    private static final class OverpricedCar extends Car {
+
+        /**
+         * Creates an available car at a billion dollars a day.
+         */
+        OverpricedCar() {
+            super("Gold", "G100", true, true, true, true);
+            setMyRentalAmount(new BigDecimal("1000000000"));
+        }
+    }
+}
@@ -0,0 +1,365 @@
+/**
+ * This file checks the rental session dialogue and the multi-session server.
+ */
+
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import model.Bill;
+import model.Registration;
+import model.RentalManager;
+import model.RentalServer;
+import model.RentalSession;
+import model.SessionThreadServer;
+import model.User;
+import model.vehicles.Car;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import utility.TaskScope;
+
+/**
+ * @author ShowmikNEW
+ * @version Winter 2021
+ */
+public class RentalServerTest {
+
+    /**
+     * Password of the test user.
+     */
+    private static final String PASSWORD = "Str0ng!Passw0rd";
+
+    /**
+     * Session length of the expiring thread-per-session server, in milliseconds.
+     */
+    private static final int SHORT_SESSION_MILLIS = 200;
+
+    /**
+     * Deadline of rentals that should go through, in seconds.
+     */
+    private static final int LONG_SECONDS = 10;
+
+    /**
+     * Input a flooding client sends, far more than socket buffers hold.
+     */
+    private static final int FLOOD_BYTES = 16 << 20;
+
+    /**
+     * Time a flooding client is given to push its input, in milliseconds.
+     */
+    private static final int FLOOD_MILLIS = 500;
+
+    /**
+     * Users.
+     */
+    private Registration myRegistration;
+
+    /**
+     * Fleet and bills.
+     */
+    private RentalManager myManager;
+
+    /**
+     * Server under test, or null.
+     */
+    private RentalServer myServer;
+
+    /**
+     * Thread-per-session server under test, or null.
+     */
+    private SessionThreadServer myThreadServer;
+
+    /**
+     * @throws java.lang.Exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        myRegistration = new Registration(new HashMap<>(), theUser -> CompletableFuture.completedFuture(null));
+        myRegistration.register(new User("amy", PASSWORD, false));
+        myManager = new RentalManager(myRegistration);
+        myManager.addVehicle(new Car("Fiat", "V100", true, false, false, false));
+        myManager.addVehicle(new Car("Ford", "V200", true, false, false, false));
+    }
+
+    /**
+     * @throws java.lang.Exception
+     */
+    @After
+    public void tearDown() throws Exception {
+        if (myServer != null) {
+            myServer.close();
+        }
+        if (myThreadServer != null) {
+            myThreadServer.close();
+        }
+    }
+
+    /**
+     * A session registers, rents to its own user, drops off and exits.
+     */
+    @Test
+    public void testSessionDialogue() {
+        final RentalSession session = new RentalSession(myRegistration, myManager);
+        assertTrue("greeting prompt", session.start().startsWith(RentalSession.PROMPT));
+        session.handle("1");
+        session.handle("bob");
+        assertTrue("weak password", session.handle("weak").contains("does not comply"));
+        session.handle(PASSWORD);
+        assertTrue("registered", session.handle("true").contains("Registration Successful"));
+        assertTrue("bob is VIP", myRegistration.getMyUserList().get("bob").isVIP());
+
+        assertTrue("lists vehicles", session.handle("1").contains("V100"));
+        session.handle("v100");
+        final String bill = session.handle("2");
+        assertTrue("bill shown: " + bill, bill.contains("bob"));
+        assertFalse("rented", myManager.findByVIN("V100").isAvailable());
+
+        session.handle("true");
+        session.handle("2");
+        assertTrue("not rented", session.handle("V200").contains("not rented"));
+        assertTrue("dropped", session.handle("V100").contains("Drop-off Successfull"));
+        assertTrue("available again", myManager.findByVIN("V100").isAvailable());
+
+        session.handle("true");
+        assertEquals("exit", RentalSession.BYE + "\n", session.handle("3"));
+        assertTrue("closed", session.isClosed());
+    }
+
+    /**
+     * A registration whose name was taken meanwhile asks for another name, and one
+     * that cannot be saved goes back to the sign-in menu.
+     */
+    @Test
+    public void testRegistrationFailures() {
+        final RentalSession session = new RentalSession(myRegistration, myManager);
+        session.start();
+        session.handle("1");
+        session.handle("bob");
+        session.handle(PASSWORD);
+        myRegistration.register(new User("bob", PASSWORD, false));
+        assertTrue("name taken", session.handle("true").contains("User already exists"));
+
+        final CompletableFuture<Void> failed = new CompletableFuture<Void>();
+        failed.completeExceptionally(new IOException("disk full"));
+        final Registration failing = new Registration(new HashMap<>(), theUser -> failed);
+        final RentalSession unsaved = new RentalSession(failing, new RentalManager(failing));
+        unsaved.start();
+        unsaved.handle("1");
+        unsaved.handle("bob");
+        unsaved.handle(PASSWORD);
+        final String reply = unsaved.handle("true");
+        assertTrue("not saved: " + reply, reply.contains("Could not save user"));
+        assertTrue("back to sign-in: " + reply, reply.contains("1. New Registration"));
+        assertTrue("name free", failing.getMyUserList().isEmpty());
+    }
+
+    /**
+     * Wrong credentials ask for the user name again, and the same vehicle cannot be rented twice.
+     */
+    @Test
+    public void testLoginAndDoubleRent() {
+        final RentalSession session = new RentalSession(myRegistration, myManager);
+        session.start();
+        session.handle("2");
+        session.handle("amy");
+        assertTrue("wrong password", session.handle("nope").contains("Wrong Credentials"));
+        session.handle("amy");
+        assertTrue("logged in", session.handle(PASSWORD).contains("Login Successful"));
+        session.handle("1");
+        session.handle("V200");
+        session.handle("3");
+        session.handle("true");
+        session.handle("1");
+        session.handle("V200");
+        assertTrue("already rented", session.handle("3").contains("not available"));
+        session.handle("true");
+        session.handle("1");
+        assertTrue("unknown vehicle", session.handle("X999").contains("does not exist"));
+    }
+
+    /**
+     * Input after a session's deadline ends the session, and a rental within its
+     * deadline goes through.
+     */
+    @Test
+    public void testDeadline() {
+        final RentalSession expired = new RentalSession(myRegistration, myManager, System.nanoTime() - 1);
+        expired.start();
+        assertEquals("expired", RentalSession.EXPIRED + "\n" + RentalSession.BYE + "\n", expired.handle("2"));
+        assertTrue("closed", expired.isClosed());
+
+        final Bill bill = myManager.rentAndBill(myManager.findByVIN("V100").getMyVehicleID(), "amy", 2,
+                                                myManager.nextBillID(),
+                                                TaskScope.deadlineAfter(LONG_SECONDS, TimeUnit.SECONDS));
+        assertNotNull("rented in time", bill);
+        assertFalse("rented", myManager.findByVIN("V100").isAvailable());
+        assertSame("bill registered", bill, myManager.getBill(bill.getMyBillID()));
+    }
+
+    /**
+     * The thread-per-session server runs the same dialogue and expires idle sessions.
+     *
+     * @throws IOException if a socket fails
+     */
+    @Test
+    public void testSessionThreads() throws IOException {
+        myThreadServer = new SessionThreadServer(myRegistration, myManager, new InetSocketAddress("127.0.0.1", 0),
+                                                 null, SHORT_SESSION_MILLIS, TimeUnit.MILLISECONDS).start();
+        try (Socket socket = new Socket("127.0.0.1", myThreadServer.getMyAddress().getPort())) {
+            final BufferedReader in = reader(socket);
+            readPrompt(in);
+            send(socket, "2\namy\n" + PASSWORD + "\n");
+            readPrompt(in);
+            readPrompt(in);
+            assertTrue("logged in", readPrompt(in).contains("Login Successful"));
+            assertEquals("idle session expired", RentalSession.EXPIRED, in.readLine());
+            assertEquals("then BYE", RentalSession.BYE, in.readLine());
+            assertNull("closed", in.readLine());
+        }
+    }
+
+    /**
+     * Two clients hold sessions at the same time over TCP.
+     *
+     * @throws IOException if a socket fails
+     */
+    @Test
+    public void testConcurrentSockets() throws IOException {
+        myServer = new RentalServer(myRegistration, myManager, new InetSocketAddress("127.0.0.1", 0)).start();
+        try (Socket first = new Socket("127.0.0.1", myServer.getMyAddress().getPort());
+             Socket second = new Socket("127.0.0.1", myServer.getMyAddress().getPort())) {
+            final BufferedReader firstIn = reader(first);
+            final BufferedReader secondIn = reader(second);
+            assertTrue("first greeted", readPrompt(firstIn).startsWith(RentalSession.PROMPT));
+            assertTrue("second greeted", readPrompt(secondIn).startsWith(RentalSession.PROMPT));
+
+            send(first, "2\namy\n" + PASSWORD + "\n");
+            send(second, "2\namy\n" + PASSWORD + "\n");
+            readPrompt(firstIn);
+            readPrompt(secondIn);
+            readPrompt(secondIn);
+            assertTrue("second logged in", readPrompt(secondIn).contains("Login Successful"));
+            readPrompt(firstIn);
+            assertTrue("first logged in", readPrompt(firstIn).contains("Login Successful"));
+
+            send(first, "1\nV100\n2\n");
+            readPrompt(firstIn);
+            readPrompt(firstIn);
+            assertTrue("first rents", readPrompt(firstIn).contains("amy"));
+            send(second, "1\nV100\n2\n");
+            readPrompt(secondIn);
+            readPrompt(secondIn);
+            assertTrue("second loses", readPrompt(secondIn).contains("not available"));
+
+            send(first, "false\n");
+            assertEquals("first done", RentalSession.BYE, firstIn.readLine());
+            assertNull("first closed", firstIn.readLine());
+            assertEquals("second still served", 1, myServer.getMyOpenSessions());
+        }
+    }
+
+    /**
+     * A client whose lines are not being handled is no longer read from, so its
+     * writes block, while other clients are still accepted and greeted.
+     *
+     * @throws Exception if a socket fails
+     */
+    @Test
+    public void testBackpressure() throws Exception {
+        final ExecutorService workers = Executors.newSingleThreadExecutor();
+        final CountDownLatch stalled = new CountDownLatch(1);
+        workers.execute(() -> {
+            try {
+                stalled.await();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        myServer = new RentalServer(myRegistration, myManager, new InetSocketAddress("127.0.0.1", 0),
+                                    workers).start();
+        try (Socket flooder = new Socket("127.0.0.1", myServer.getMyAddress().getPort())) {
+            final byte[] lines = new byte[FLOOD_BYTES];
+            Arrays.fill(lines, (byte) 'x');
+            for (int end = RentalServer.MAX_LINE_BYTES; end < FLOOD_BYTES; end += RentalServer.MAX_LINE_BYTES) {
+                lines[end] = '\n';
+            }
+            final CompletableFuture<Void> flood = CompletableFuture.runAsync(() -> {
+                try {
+                    send(flooder, new String(lines, StandardCharsets.UTF_8));
+                } catch (final IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            try {
+                flood.get(FLOOD_MILLIS, TimeUnit.MILLISECONDS);
+                fail("server read the whole flood");
+            } catch (final TimeoutException e) {
+                assertFalse("still writing", flood.isDone());
+            }
+            try (Socket other = new Socket("127.0.0.1", myServer.getMyAddress().getPort())) {
+                assertTrue("other greeted", readPrompt(reader(other)).startsWith(RentalSession.PROMPT));
+            }
+        } finally {
+            stalled.countDown();
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * Wraps a socket's input.
+     *
+     * @param theSocket the socket
+     * @return line reader
+     * @throws IOException if the socket fails
+     */
+    private static BufferedReader reader(final Socket theSocket) throws IOException {
+        return new BufferedReader(new InputStreamReader(theSocket.getInputStream(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Sends text.
+     *
+     * @param theSocket the socket
+     * @param theText the lines
+     * @throws IOException if the socket fails
+     */
+    private static void send(final Socket theSocket, final String theText) throws IOException {
+        final OutputStream out = theSocket.getOutputStream();
+        out.write(theText.getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    /**
+     * Reads one reply, up to and including its prompt line.
+     *
+     * @param theIn the reader
+     * @return the reply
+     * @throws IOException if the socket fails
+     */
+    private static String readPrompt(final BufferedReader theIn) throws IOException {
+        final StringBuilder reply = new StringBuilder();
+        String line = theIn.readLine();
+        while (line != null && !line.startsWith(RentalSession.PROMPT)) {
+            reply.append(line).append('\n');
+            line = theIn.readLine();
+        }
+        return reply.append(line).toString();
+    }
+}
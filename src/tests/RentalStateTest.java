@@ -0,0 +1,226 @@
+/**
+ * This file tests the compare-and-set rental state machine of vehicles and the
+ * rent path built on it.
+ */
+
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import model.Registration;
+import model.RentalManager;
+import model.User;
+import model.vehicles.Car;
+import model.vehicles.RentalState;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author ShowmikNEW
+ * @version Winter 2021
+ */
+public class RentalStateTest {
+
+    /**
+     * Threads racing for the same vehicle.
+     */
+    private static final int THREADS = 8;
+
+    /**
+     * Races run per test.
+     */
+    private static final int ROUNDS = 200;
+
+    /**
+     * Rental days whose bill overflows at the {@link OverpricedCar} rate.
+     */
+    private static final int OVERFLOW_DAYS = 1000;
+
+    /**
+     * Threads of the races.
+     */
+    private ExecutorService myThreads;
+
+    /**
+     * The vehicle under test.
+     */
+    private Car myCar;
+
+    /**
+     * Manager renting out the vehicle.
+     */
+    private RentalManager myManager;
+
+    /**
+     * @throws java.lang.Exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        myThreads = Executors.newFixedThreadPool(THREADS);
+        myCar = new Car("Fiat", "V100", true, false, false, false);
+        final Map<String, User> users = new HashMap<String, User>();
+        users.put("alice", new User("alice", "Passw0rd!!x"));
+        myManager = new RentalManager(new Registration(users, theUser -> null));
+        myManager.addVehicle(myCar);
+    }
+
+    /**
+     * @throws java.lang.Exception
+     */
+    @After
+    public void tearDown() throws Exception {
+        myThreads.shutdownNow();
+    }
+
+    /**
+     * A vehicle goes AVAILABLE, RESERVED, RENTED, RETURNED and AVAILABLE again, and
+     * every transition from the wrong state fails without changing it.
+     */
+    @Test
+    public void testTransitions() {
+        assertEquals("new", RentalState.AVAILABLE, myCar.getRentalState());
+        assertFalse("confirm unreserved", myCar.confirmRental());
+        assertFalse("cancel unreserved", myCar.cancelReservation());
+        assertFalse("return available", myCar.tryReturn());
+        assertFalse("complete available", myCar.completeReturn());
+        assertEquals("unchanged", RentalState.AVAILABLE, myCar.getRentalState());
+
+        assertTrue("reserve", myCar.tryReserve());
+        assertEquals("reserved", RentalState.RESERVED, myCar.getRentalState());
+        assertFalse("not available", myCar.isAvailable());
+        assertFalse("reserve twice", myCar.tryReserve());
+        assertFalse("return reserved", myCar.tryReturn());
+
+        assertTrue("confirm", myCar.confirmRental());
+        assertEquals("rented", RentalState.RENTED, myCar.getRentalState());
+        assertFalse("cancel rented", myCar.cancelReservation());
+        assertFalse("reserve rented", myCar.tryReserve());
+
+        assertTrue("return", myCar.tryReturn());
+        assertEquals("returned", RentalState.RETURNED, myCar.getRentalState());
+        assertFalse("return twice", myCar.tryReturn());
+        assertFalse("reserve returned", myCar.tryReserve());
+
+        assertTrue("complete", myCar.completeReturn());
+        assertTrue("available again", myCar.isAvailable());
+
+        assertTrue("reserve again", myCar.tryReserve());
+        assertTrue("cancel", myCar.cancelReservation());
+        assertEquals("cancelled", RentalState.AVAILABLE, myCar.getRentalState());
+    }
+
+    /**
+     * Setting the availability overrides any rental state.
+     */
+    @Test
+    public void testSetAvailability() {
+        myCar.tryReserve();
+        myCar.setMyAvailability(false);
+        assertEquals("unavailable is rented", RentalState.RENTED, myCar.getRentalState());
+        myCar.setMyAvailability(true);
+        assertEquals("available", RentalState.AVAILABLE, myCar.getRentalState());
+    }
+
+    /**
+     * Of several threads reserving the same vehicle at once exactly one wins, and
+     * exactly one of several returning it takes it back.
+     *
+     * @throws Exception if a race fails
+     */
+    @Test
+    public void testConcurrentReserveAndReturn() throws Exception {
+        for (int round = 0; round < ROUNDS; round++) {
+            assertEquals("one reservation", 1, race(myCar::tryReserve));
+            myCar.confirmRental();
+            assertEquals("one return", 1, race(myCar::tryReturn));
+            myCar.completeReturn();
+        }
+    }
+
+    /**
+     * Of several users renting the same vehicle at once exactly one gets a bill, and
+     * the vehicle can be rented again once dropped off.
+     *
+     * @throws Exception if a race fails
+     */
+    @Test
+    public void testConcurrentRent() throws Exception {
+        final int id = myCar.getMyVehicleID();
+        for (int round = 0; round < ROUNDS; round++) {
+            final int billID = round;
+            assertEquals("one bill", 1, race(() -> myManager.rentAndBill(id, "alice", 2, billID) != null));
+            assertNotNull("bill kept", myManager.getBill(billID));
+            assertEquals("rented", RentalState.RENTED, myCar.getRentalState());
+            assertTrue("not found", myManager.findAvailable(1, null).isEmpty());
+            assertEquals("one drop", 1, race(() -> myManager.drop(id)));
+            assertTrue("available again", myManager.isRentable(id));
+        }
+    }
+
+    /**
+     * A rental whose bill would overflow is refused, leaves the vehicle available and
+     * keeps no bill.
+     */
+    @Test
+    public void testOverflowingRentRefused() {
+        final Car overpriced = new OverpricedCar();
+        myManager.addVehicle(overpriced);
+        final int id = overpriced.getMyVehicleID();
+        assertNull("refused", myManager.rentAndBill(id, "alice", OVERFLOW_DAYS, 1));
+        assertFalse("not rented", myManager.rent(id, "alice", Integer.MAX_VALUE, 1));
+        assertEquals("released", RentalState.AVAILABLE, overpriced.getRentalState());
+        assertTrue("indexed as available", myManager.findAvailable(2, null).contains(overpriced));
+        assertNull("no bill", myManager.getBill(1));
+        assertNotNull("rentable for fewer days", myManager.rentAndBill(id, "alice", 1, 2));
+    }
+
+    /**
+     * Runs a task on every thread at once.
+     *
+     * @param theTask Task returning whether it won
+     * @return Number of threads that won
+     * @throws Exception if a task fails
+     */
+    private int race(final Callable<Boolean> theTask) throws Exception {
+        final CyclicBarrier start = new CyclicBarrier(THREADS);
+        final List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+        for (int t = 0; t < THREADS; t++) {
+            results.add(myThreads.submit(() -> {
+                start.await();
+                return theTask.call();
+            }));
+        }
+        int winners = 0;
+        for (final Future<Boolean> result : results) {
+            if (result.get()) {
+                winners++;
+            }
+        }
+        return winners;
+    }
+
+    /**
+     * A car so expensive that long rentals overflow the bill.
+     */
+    private static final class OverpricedCar extends Car {
+
+        /**
+         * Creates an available car at a billion dollars a day.
+         */
+        OverpricedCar() {
+            super("Gold", "G100", true, true, true, true);
+            setMyRentalAmount(new BigDecimal("1000000000"));
+        }
+    }
+}
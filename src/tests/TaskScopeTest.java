@@ -0,0 +1,130 @@
+/**
+ * This file checks the structured subtask scope.
+ */
+
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import utility.TaskScope;
+
+/**
+ * @author ShowmikNEW
+ * @version Winter 2021
+ */
+public class TaskScopeTest {
+
+    /**
+     * Generous deadline for subtasks that should finish.
+     */
+    private static final int LONG_SECONDS = 10;
+
+    /**
+     * Short deadline for subtasks that should miss it.
+     */
+    private static final int SHORT_MILLIS = 50;
+
+    /**
+     * Runs subtasks.
+     */
+    private ExecutorService myExecutor;
+
+    /**
+     * @throws java.lang.Exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        myExecutor = Executors.newCachedThreadPool();
+    }
+
+    /**
+     * @throws java.lang.Exception
+     */
+    @After
+    public void tearDown() throws Exception {
+        myExecutor.shutdownNow();
+    }
+
+    /**
+     * Joined subtasks all have their results.
+     *
+     * @throws Exception if the join fails
+     */
+    @Test
+    public void testJoin() throws Exception {
+        try (TaskScope scope = new TaskScope(myExecutor, TaskScope.deadlineAfter(LONG_SECONDS, TimeUnit.SECONDS))) {
+            final Future<Integer> first = scope.fork(() -> 1);
+            final Future<String> second = scope.fork(() -> "two");
+            scope.join();
+            assertEquals("first", Integer.valueOf(1), first.get());
+            assertEquals("second", "two", second.get());
+        }
+    }
+
+    /**
+     * A failing subtask ends the join and interrupts its sibling, which has stopped
+     * once the scope is closed.
+     *
+     * @throws InterruptedException if interrupted
+     */
+    @Test
+    public void testFailureCancelsSiblings() throws InterruptedException {
+        final CountDownLatch never = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicBoolean interrupted = new AtomicBoolean();
+        Future<Object> sibling = null;
+        try (TaskScope scope = new TaskScope(myExecutor, TaskScope.deadlineAfter(LONG_SECONDS, TimeUnit.SECONDS))) {
+            sibling = scope.fork(() -> {
+                try {
+                    started.countDown();
+                    never.await();
+                } catch (final InterruptedException e) {
+                    interrupted.set(true);
+                }
+                return null;
+            });
+            scope.fork(() -> {
+                // Fail only once the sibling runs, so it is interrupted rather than never started
+                started.await();
+                throw new IllegalStateException("boom");
+            });
+            scope.join();
+            fail("join succeeded");
+        } catch (final ExecutionException e) {
+            assertTrue("cause", e.getCause() instanceof IllegalStateException);
+        } catch (final TimeoutException e) {
+            fail("timed out");
+        }
+        assertTrue("sibling cancelled", sibling.isCancelled());
+        assertTrue("sibling interrupted and stopped", interrupted.get());
+    }
+
+    /**
+     * A passed deadline ends the join and cancels what is still running.
+     *
+     * @throws Exception if the join fails other than by timing out
+     */
+    @Test(expected = TimeoutException.class)
+    public void testDeadline() throws Exception {
+        final CountDownLatch never = new CountDownLatch(1);
+        try (TaskScope scope = new TaskScope(myExecutor,
+                                             TaskScope.deadlineAfter(SHORT_MILLIS, TimeUnit.MILLISECONDS))) {
+            scope.fork(() -> {
+                never.await();
+                return null;
+            });
+            scope.join();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/**
+ * This file tests online compaction of the user file.
+ */
+
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import model.User;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import utility.FileLoader;
+import utility.UserFileCompactor;
+import utility.UserFileWriter;
+
+/**
+ * @author ShowmikNEW
+ * @version Winter 2021
+ */
+public class UserFileCompactorTest {
+
+    /**
+     * Users registered while compactions run.
+     */
+    private static final int CONCURRENT_USERS = 5000;
+
+    /**
+     * User file contents with a duplicate and a changed user, like the shipped file.
+     */
+    private static final String DUPLICATES = "tcss305,305,true\nBoris,BanktheTank22,false\n"
+                                             + "gary,3245,false\nBoris,BanktheTank22,false\n"
+                                             + "gary,9999,true";
+
+    /**
+     * The user file.
+     */
+    private Path myFile;
+
+    /**
+     * The writer appending to the user file.
+     */
+    private UserFileWriter myWriter;
+
+    /**
+     * @throws java.lang.Exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        myFile = Files.createTempFile("users", ".txt");
+        Files.write(myFile, DUPLICATES.getBytes(StandardCharsets.UTF_8));
+        myWriter = new UserFileWriter(myFile, UserFileWriter.DEFAULT_QUEUE_CAPACITY,
+                                      UserFileWriter.FsyncPolicy.PER_BATCH, 0);
+    }
+
+    /**
+     * @throws java.lang.Exception
+     */
+    @After
+    public void tearDown() throws Exception {
+        myWriter.close();
+        Files.deleteIfExists(myFile);
+    }
+
+    /**
+     * Compaction keeps the line FileLoader would load for every user, in first-seen
+     * order, and new users are appended to the compacted file.
+     *
+     * @throws Exception if the file cannot be compacted
+     */
+    @Test
+    public void testCollapsesDuplicates() throws Exception {
+        final Map<String, User> before = FileLoader.readItemsFromFile(myFile.toString());
+        final UserFileCompactor.Result result = new UserFileCompactor(myWriter).compact();
+        assertEquals("rows read", 5, result.getMyRowsRead());
+        assertEquals("users written", 3, result.getMyUsersWritten());
+        assertEquals("tcss305,305,true\nBoris,BanktheTank22,false\ngary,9999,true", read());
+        assertEquals("same users", before.toString(),
+                     FileLoader.readItemsFromFile(myFile.toString()).toString());
+        assertFalse("temp file removed", Files.exists(myFile.resolveSibling(myFile.getFileName() + ".compact")));
+
+        myWriter.append(new User("amy", "Secret!123", true)).get();
+        assertEquals("tcss305,305,true\nBoris,BanktheTank22,false\ngary,9999,true\namy,Secret!123,true",
+                     read());
+    }
+
+    /**
+     * Users appended while compactions run are all kept.
+     *
+     * @throws Exception if the file cannot be compacted
+     */
+    @Test
+    public void testConcurrentRegistrations() throws Exception {
+        final UserFileCompactor compactor = new UserFileCompactor(myWriter);
+        final AtomicBoolean done = new AtomicBoolean();
+        final List<Exception> failures = new ArrayList<Exception>();
+        final Thread compactions = new Thread(() -> {
+            try {
+                while (!done.get()) {
+                    compactor.compact();
+                }
+            } catch (final Exception e) {
+                failures.add(e);
+            }
+        });
+        compactions.start();
+        final List<CompletableFuture<Void>> writes = new ArrayList<CompletableFuture<Void>>();
+        for (int i = 0; i < CONCURRENT_USERS; i++) {
+            writes.add(myWriter.append(new User("user" + i, "Password!" + i, false)));
+        }
+        CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0])).get();
+        done.set(true);
+        compactions.join();
+        assertTrue("compaction failed: " + failures, failures.isEmpty());
+
+        final UserFileCompactor.Result result = compactor.compact();
+        assertEquals("users written", CONCURRENT_USERS + 3, result.getMyUsersWritten());
+        final Map<String, User> users = FileLoader.readItemsFromFile(myFile.toString());
+        assertEquals("all users kept", CONCURRENT_USERS + 3, users.size());
+        assertEquals("one line per user", CONCURRENT_USERS + 3, read().split("\n").length);
+    }
+
+    /**
+     * Reads the user file.
+     *
+     * @return its contents
+     * @throws Exception if it cannot be read
+     */
+    private String read() throws Exception {
+        return new String(Files.readAllBytes(myFile), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,223 @@
+/**
+ * This file tests the group-commit user file writer.
+ */
+
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import model.User;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import utility.FileLoader;
+import utility.UserFileWriter;
+
+/**
+ * @author ShowmikNEW
+ * @version Winter 2021
+ */
+public class UserFileWriterTest {
+
+    /**
+     * Threads appending while the writer closes.
+     */
+    private static final int THREADS = 8;
+
+    /**
+     * Appends per thread.
+     */
+    private static final int APPENDS = 2000;
+
+    /**
+     * Seconds any future may take to complete.
+     */
+    private static final int TIMEOUT_SECONDS = 30;
+
+    /**
+     * The user file.
+     */
+    private Path myFile;
+
+    /**
+     * The writer under test.
+     */
+    private UserFileWriter myWriter;
+
+    /**
+     * @throws java.lang.Exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        myFile = Files.createTempFile("users", ".txt");
+        Files.write(myFile, "tcss305,305,true".getBytes(StandardCharsets.UTF_8));
+        myWriter = new UserFileWriter(myFile, UserFileWriter.DEFAULT_QUEUE_CAPACITY,
+                                      UserFileWriter.FsyncPolicy.PER_BATCH, 0);
+    }
+
+    /**
+     * @throws java.lang.Exception
+     */
+    @After
+    public void tearDown() throws Exception {
+        myWriter.close();
+        Files.deleteIfExists(myFile);
+    }
+
+    /**
+     * Appended users use the FileLoader line format and are on disk once their
+     * futures complete.
+     *
+     * @throws Exception if a write fails
+     */
+    @Test
+    public void testAppendFormat() throws Exception {
+        myWriter.append(new User("amy", "Secret!123", true)).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        myWriter.append(new User("bob", "Hunter!456", false)).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals("tcss305,305,true\namy,Secret!123,true\nbob,Hunter!456,false",
+                     new String(Files.readAllBytes(myFile), StandardCharsets.UTF_8));
+        assertEquals("loadable", 3, FileLoader.readItemsFromFile(myFile.toString()).size());
+    }
+
+    /**
+     * Users queued before close() are written; appending after close() is refused.
+     *
+     * @throws Exception if a write fails
+     */
+    @Test
+    public void testCloseDrainsQueue() throws Exception {
+        final List<CompletableFuture<Void>> writes = new ArrayList<CompletableFuture<Void>>();
+        for (int i = 0; i < APPENDS; i++) {
+            writes.add(myWriter.append(new User("user" + i, "Password!" + i, false)));
+        }
+        myWriter.close();
+        for (final CompletableFuture<Void> write : writes) {
+            assertTrue("written before close", write.isDone() && !write.isCompletedExceptionally());
+        }
+        assertEquals("all users on disk", APPENDS + 1, FileLoader.readItemsFromFile(myFile.toString()).size());
+        try {
+            myWriter.append(new User("late", "Password!0", false));
+            fail("append after close");
+        } catch (final IllegalStateException e) {
+            assertNotNull(e.getMessage());
+        }
+    }
+
+    /**
+     * Every append racing with close() completes, either written or failed, so no
+     * caller waits forever.
+     *
+     * @throws Exception if interrupted
+     */
+    @Test
+    public void testAppendRacingClose() throws Exception {
+        final Queue<CompletableFuture<Void>> writes = new ConcurrentLinkedQueue<CompletableFuture<Void>>();
+        final CountDownLatch started = new CountDownLatch(THREADS);
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < THREADS; t++) {
+            final int thread = t;
+            final Thread appender = new Thread(() -> {
+                started.countDown();
+                try {
+                    for (int i = 0; i < APPENDS; i++) {
+                        writes.add(myWriter.append(new User("t" + thread + "u" + i, "Password!1", false)));
+                    }
+                } catch (final IllegalStateException e) {
+                    assertNotNull("closed: later appends are refused up front", e.getMessage());
+                }
+            });
+            threads.add(appender);
+            appender.start();
+        }
+        started.await();
+        myWriter.close();
+        for (final Thread appender : threads) {
+            appender.join();
+        }
+        int written = 0;
+        for (final CompletableFuture<Void> write : writes) {
+            try {
+                write.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                written++;
+            } catch (final ExecutionException e) {
+                assertTrue("failed as closed", e.getCause() instanceof IllegalStateException);
+            }
+        }
+        assertEquals("written users on disk", written + 1,
+                     FileLoader.readItemsFromFile(myFile.toString()).size());
+    }
+
+    /**
+     * A batch whose write or fsync fails is cut off the file, so the file still loads
+     * and holds no user whose caller was told the write failed.
+     *
+     * @throws Exception if a write fails unexpectedly
+     */
+    @Test
+    public void testFailedBatchCutOff() throws Exception {
+        myWriter.append(new User("amy", "Secret!123", true)).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        final long intact = Files.size(myFile);
+        final FailingChannel channel = FailingChannel.inject(myWriter, "myChannel");
+
+        channel.setWriteBudget(5);
+        assertFailed(myWriter.append(new User("bob", "Hunter!456", false)));
+        assertEquals("torn line cut off", intact, Files.size(myFile));
+        channel.setWriteBudget(-1);
+        channel.setFailForce(true);
+        assertFailed(myWriter.append(new User("dan", "Dance!4567", false)));
+        assertEquals("unsynced line cut off", intact, Files.size(myFile));
+        channel.setFailForce(false);
+        myWriter.append(new User("cat", "Meow!12345", false)).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        myWriter.close();
+
+        assertEquals("tcss305,305,true\namy,Secret!123,true\ncat,Meow!12345,false",
+                     new String(Files.readAllBytes(myFile), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * If a failed batch cannot be cut off either, later users are failed instead of
+     * being written behind the torn line.
+     *
+     * @throws Exception if a write fails unexpectedly
+     */
+    @Test
+    public void testFailedCutOffRefusesWrites() throws Exception {
+        final FailingChannel channel = FailingChannel.inject(myWriter, "myChannel");
+        channel.setWriteBudget(5);
+        channel.setFailTruncate(true);
+        assertFailed(myWriter.append(new User("bob", "Hunter!456", false)));
+        channel.setWriteBudget(-1);
+        channel.setFailTruncate(false);
+        assertFailed(myWriter.append(new User("cat", "Meow!12345", false)));
+        myWriter.close();
+        assertEquals("nothing behind the torn line", "tcss305,305,true\nbob,",
+                     new String(Files.readAllBytes(myFile), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Checks that a write fails with an IOException.
+     *
+     * @param theWrite the write's future
+     * @throws Exception if the write does not complete in time
+     */
+    private static void assertFailed(final CompletableFuture<Void> theWrite) throws Exception {
+        try {
+            theWrite.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            fail("write succeeded");
+        } catch (final ExecutionException e) {
+            assertTrue("I/O failure", e.getCause() instanceof IOException);
+        }
+    }
+}
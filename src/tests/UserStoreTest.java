@@ -0,0 +1,347 @@
+/**
+ * This file tests the binary snapshot and write-ahead log user store.
+ */
+
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import model.Registration;
+import model.User;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import utility.FileLoader;
+import utility.UserStore;
+
+/**
+ * @author ShowmikNEW
+ * @version Winter 2021
+ */
+public class UserStoreTest {
+
+    /**
+     * Bytes of the WAL header: magic, version, generation.
+     */
+    private static final int WAL_HEADER_BYTES = 14;
+
+    /**
+     * Offset of the user count in the snapshot: magic, version, generation.
+     */
+    private static final int SNAPSHOT_COUNT_OFFSET = 14;
+
+    /**
+     * Size of the trailing snapshot checksum.
+     */
+    private static final int CRC_BYTES = 4;
+
+    /**
+     * Directory holding the store files.
+     */
+    private Path myDir;
+
+    /**
+     * The snapshot file.
+     */
+    private Path mySnapshot;
+
+    /**
+     * The write-ahead log.
+     */
+    private Path myWal;
+
+    /**
+     * The store under test.
+     */
+    private UserStore myStore;
+
+    /**
+     * @throws java.lang.Exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        myDir = Files.createTempDirectory("userstore");
+        mySnapshot = myDir.resolve("users.snapshot");
+        myWal = myDir.resolve("users.wal");
+        myStore = new UserStore(mySnapshot, myWal);
+    }
+
+    /**
+     * @throws java.lang.Exception
+     */
+    @After
+    public void tearDown() throws Exception {
+        myStore.close();
+        Files.walk(myDir).sorted(Comparator.reverseOrder()).forEach(thePath -> thePath.toFile().delete());
+    }
+
+    /**
+     * Users appended to the WAL are loaded again by a new store, VIP flag and UTF-8
+     * names included.
+     *
+     * @throws Exception if the store fails
+     */
+    @Test
+    public void testWalRoundTrip() throws Exception {
+        assertTrue("empty store", myStore.load().isEmpty());
+        myStore.append(new User("amy", "Secret!123", true)).get();
+        myStore.append(new User("Zo\u00eb", "P\u00e4sswort!1", false)).get();
+        myStore.close();
+
+        final Map<String, User> users = reopen();
+        assertEquals("users", 2, users.size());
+        assertTrue("vip", users.get("amy").isVIP());
+        assertEquals("password", "Secret!123", users.get("amy").getMyPassword());
+        assertFalse("not vip", users.get("Zo\u00eb").isVIP());
+        assertEquals("utf-8 password", "P\u00e4sswort!1", users.get("Zo\u00eb").getMyPassword());
+    }
+
+    /**
+     * Compaction moves the WAL into a snapshot that loads the same users.
+     *
+     * @throws Exception if the store fails
+     */
+    @Test
+    public void testCompaction() throws Exception {
+        myStore.load();
+        myStore.append(new User("amy", "Secret!123", true)).get();
+        myStore.append(new User("bob", "Hunter!456", false)).get();
+        myStore.append(new User("amy", "Changed!789", false)).get();
+        assertEquals("users in snapshot", 2, myStore.compact());
+        assertEquals("empty WAL", WAL_HEADER_BYTES, Files.size(myWal));
+        assertFalse("below threshold", myStore.compactIfLarger(Long.MAX_VALUE));
+        myStore.append(new User("cat", "Meow!12345", false)).get();
+        myStore.close();
+
+        final Map<String, User> users = reopen();
+        assertEquals("users", 3, users.size());
+        assertEquals("last write wins", "Changed!789", users.get("amy").getMyPassword());
+        assertTrue("WAL tail replayed", users.containsKey("cat"));
+    }
+
+    /**
+     * A WAL left over from before the last compaction is not replayed again.
+     *
+     * @throws Exception if the store fails
+     */
+    @Test
+    public void testStaleWalIgnored() throws Exception {
+        myStore.load();
+        myStore.append(new User("amy", "Secret!123", true)).get();
+        final byte[] oldWal = Files.readAllBytes(myWal);
+        myStore.compact();
+        myStore.close();
+        Files.write(myWal, oldWal);
+
+        final Map<String, User> users = reopen();
+        assertEquals("users", 1, users.size());
+        assertEquals("fresh WAL", WAL_HEADER_BYTES, Files.size(myWal));
+    }
+
+    /**
+     * A torn or corrupt last WAL record is dropped and truncated, and later appends
+     * are readable.
+     *
+     * @throws Exception if the store fails
+     */
+    @Test
+    public void testTornTail() throws Exception {
+        myStore.load();
+        myStore.append(new User("amy", "Secret!123", true)).get();
+        myStore.append(new User("bob", "Hunter!456", false)).get();
+        myStore.close();
+        final long intact = Files.size(myWal);
+        Files.write(myWal, new byte[] {0, 5, 'c', 'a'}, StandardOpenOption.APPEND);
+
+        assertEquals("torn record dropped", 2, reopen().size());
+        assertEquals("truncated", intact, Files.size(myWal));
+        myStore.append(new User("cat", "Meow!12345", false)).get();
+        myStore.close();
+
+        // A flipped bit in the last record fails its checksum
+        final byte[] wal = Files.readAllBytes(myWal);
+        wal[wal.length - CRC_BYTES - 1] ^= 1;
+        Files.write(myWal, wal);
+        final Map<String, User> users = reopen();
+        assertEquals("corrupt record dropped", 2, users.size());
+        assertFalse("cat lost", users.containsKey("cat"));
+    }
+
+    /**
+     * A snapshot whose checksum does not match, or whose user count does not match
+     * its records, is reported as an IOException.
+     *
+     * @throws Exception if the store fails unexpectedly
+     */
+    @Test
+    public void testCorruptSnapshot() throws Exception {
+        myStore.load();
+        myStore.append(new User("amy", "Secret!123", true)).get();
+        myStore.compact();
+        myStore.close();
+        final byte[] good = Files.readAllBytes(mySnapshot);
+
+        final byte[] flipped = good.clone();
+        flipped[SNAPSHOT_COUNT_OFFSET + 2] ^= 1;
+        Files.write(mySnapshot, flipped);
+        assertLoadFails();
+
+        // Same count damage with a recomputed checksum
+        for (final int count : new int[] {2, 0, -1}) {
+            final ByteBuffer damaged = ByteBuffer.wrap(good.clone());
+            damaged.putInt(SNAPSHOT_COUNT_OFFSET, count);
+            final CRC32 crc = new CRC32();
+            crc.update(damaged.array(), 0, good.length - CRC_BYTES);
+            damaged.putInt(good.length - CRC_BYTES, (int) crc.getValue());
+            Files.write(mySnapshot, damaged.array());
+            assertLoadFails();
+        }
+    }
+
+    /**
+     * The text user file is converted once, with the last line of a user winning,
+     * and not again once the store has files.
+     *
+     * @throws Exception if the store fails
+     */
+    @Test
+    public void testImportCsv() throws Exception {
+        final Path csv = myDir.resolve("users.txt");
+        Files.write(csv, "tcss305,305,true\nBoris,BanktheTank22,false\nBoris,BanktheTank22,false\ngary,1,true"
+            .getBytes(StandardCharsets.UTF_8));
+        final Map<String, User> users = myStore.loadOrImport(csv.toString());
+        assertEquals("imported", 3, users.size());
+        assertEquals("same as FileLoader", FileLoader.readItemsFromFile(csv.toString()).toString(),
+                     users.toString());
+
+        // Registrations go to the store, and a second start does not re-import
+        final Registration registration = new Registration(users, myStore);
+        assertTrue("registered", registration.register(new User("amy", "Secret!123", true)));
+        Files.write(csv, "someone,else,false".getBytes(StandardCharsets.UTF_8));
+        myStore.close();
+        final UserStore second = new UserStore(mySnapshot, myWal);
+        final Map<String, User> reloaded = second.loadOrImport(csv.toString());
+        second.close();
+        assertEquals("not re-imported", 4, reloaded.size());
+        assertTrue("registration kept", reloaded.containsKey("amy"));
+
+        assertEquals("explicit import replaces contents", 1, myStore.importCsv(csv.toString()));
+        assertEquals("replaced", 1, myStore.load().size());
+    }
+
+    /**
+     * A record that fails to write or to reach the disk is cut off the WAL, so the
+     * next user lands behind the last intact record and survives a restart.
+     *
+     * @throws Exception if the store fails
+     */
+    @Test
+    public void testFailedAppendCutOff() throws Exception {
+        myStore.load();
+        myStore.append(new User("amy", "Secret!123", true)).get();
+        final long intact = Files.size(myWal);
+        final FailingChannel channel = FailingChannel.inject(myStore, "myWalChannel");
+
+        channel.setWriteBudget(5);
+        assertTrue("short write failed",
+                   myStore.append(new User("bob", "Hunter!456", false)).isCompletedExceptionally());
+        assertEquals("torn record cut off", intact, Files.size(myWal));
+        channel.setWriteBudget(-1);
+        channel.setFailForce(true);
+        assertTrue("fsync failed",
+                   myStore.append(new User("dan", "Dance!4567", false)).isCompletedExceptionally());
+        assertEquals("unsynced record cut off", intact, Files.size(myWal));
+        channel.setFailForce(false);
+        myStore.append(new User("cat", "Meow!12345", false)).get();
+        myStore.close();
+
+        final Map<String, User> users = reopen();
+        assertEquals("users", 2, users.size());
+        assertTrue("amy kept", users.containsKey("amy"));
+        assertTrue("cat behind amy", users.containsKey("cat"));
+    }
+
+    /**
+     * If a failed record cannot be cut off either, appends are refused until the
+     * store is loaded again.
+     *
+     * @throws Exception if the store fails
+     */
+    @Test
+    public void testFailedCutOffRefusesAppends() throws Exception {
+        myStore.load();
+        myStore.append(new User("amy", "Secret!123", true)).get();
+        final FailingChannel channel = FailingChannel.inject(myStore, "myWalChannel");
+        channel.setWriteBudget(5);
+        channel.setFailTruncate(true);
+        assertTrue("short write failed",
+                   myStore.append(new User("bob", "Hunter!456", false)).isCompletedExceptionally());
+        channel.setWriteBudget(-1);
+        channel.setFailTruncate(false);
+        assertTrue("refused", myStore.append(new User("cat", "Meow!12345", false)).isCompletedExceptionally());
+
+        assertEquals("torn record dropped on load", 1, myStore.load().size());
+        myStore.append(new User("cat", "Meow!12345", false)).get();
+        myStore.close();
+        assertEquals("appends again after load", 2, reopen().size());
+    }
+
+    /**
+     * An explicit import of a file that cannot be read fails instead of emptying the
+     * store.
+     *
+     * @throws Exception if the store fails as expected
+     */
+    @Test(expected = IOException.class)
+    public void testImportMissingCsv() throws Exception {
+        myStore.importCsv(myDir.resolve("missing.txt").toString());
+    }
+
+    /**
+     * A user the store cannot encode is not registered, and the name stays free.
+     *
+     * @throws Exception if the store fails
+     */
+    @Test
+    public void testRegisterUnencodableUser() throws Exception {
+        myStore.load();
+        final Registration registration = new Registration(new HashMap<String, User>(), myStore);
+        final String name = "a".repeat(0x8000);
+        assertFalse("not registered", registration.register(new User(name, "Secret!123", false)));
+        assertFalse("name free", registration.getMyUserList().containsKey(name));
+        assertTrue("store still works", registration.register(new User("amy", "Secret!123", true)));
+    }
+
+    /**
+     * Opens a fresh store over the same files and loads it.
+     *
+     * @return the loaded users
+     * @throws IOException if the store cannot be loaded
+     */
+    private Map<String, User> reopen() throws IOException {
+        myStore = new UserStore(mySnapshot, myWal);
+        return myStore.load();
+    }
+
+    /**
+     * Checks that loading the store fails with an IOException.
+     */
+    private void assertLoadFails() {
+        try {
+            reopen();
+            fail("corrupt snapshot loaded");
+        } catch (final IOException e) {
+            assertNotNull(e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/**
+ * This file tests the bitset fleet index.
+ */
+
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import model.VehicleInventory;
+import model.vehicles.AbstractVehicle;
+import model.vehicles.Bicycle;
+import model.vehicles.BicycleType;
+import model.vehicles.Car;
+import model.vehicles.MotorBike;
+import model.vehicles.VehicleFeature;
+import model.vehicles.VehicleType;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author ShowmikNEW
+ * @version Winter 2021
+ */
+public class VehicleInventoryTest {
+
+    /**
+     * Enough vehicles to span several words and more than one page.
+     */
+    private static final int LARGE_FLEET = 70_000;
+
+    /**
+     * Class object to be tested.
+     */
+    private VehicleInventory myInventory;
+
+    /**
+     * A luxury car with navigation.
+     */
+    private Car myLuxuryNav;
+
+    /**
+     * A plain car.
+     */
+    private Car myPlainCar;
+
+    /**
+     * A touring motor bike.
+     */
+    private MotorBike myTouring;
+
+    /**
+     * A mountain bicycle.
+     */
+    private Bicycle myMountain;
+
+    /**
+     * @throws java.lang.Exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        myInventory = new VehicleInventory();
+        myLuxuryNav = new Car("Tesla", "C1", true, true, true, false);
+        myPlainCar = new Car("Fiat", "C2", true, false, false, false);
+        myTouring = new MotorBike("Harley", "M1", true, true);
+        myMountain = new Bicycle("Trek", "B1", true, BicycleType.MOUNTAIN);
+        myInventory.addAll(Arrays.asList(myLuxuryNav, myPlainCar, myTouring, myMountain));
+    }
+
+    /**
+     * Queries filter by type and by every required feature, in slot order.
+     */
+    @Test
+    public void testFindByTypeAndFeatures() {
+        assertEquals("any", Arrays.asList(myLuxuryNav, myPlainCar, myTouring, myMountain),
+                     myInventory.findAvailable(10, null, 0));
+        assertEquals("cars", Arrays.asList(myLuxuryNav, myPlainCar),
+                     myInventory.findAvailable(10, VehicleType.CAR, 0));
+        assertEquals("luxury with navigation", Arrays.asList(myLuxuryNav),
+                     myInventory.findAvailable(10, VehicleType.CAR,
+                                               VehicleFeature.mask(VehicleFeature.LUXURY,
+                                                                   VehicleFeature.NAVIGATION)));
+        assertTrue("no drive assist", myInventory.findAvailable(10, VehicleType.CAR,
+                                                                VehicleFeature.DRIVE_ASSIST.bit()).isEmpty());
+        assertEquals("touring of any type", Arrays.asList(myTouring),
+                     myInventory.findAvailable(10, null, VehicleFeature.TOURING.bit()));
+        assertEquals("mountain bicycles", Arrays.asList(myMountain),
+                     myInventory.findAvailable(10, VehicleType.BICYCLE, VehicleFeature.MOUNTAIN.bit()));
+        assertTrue("feature of another type", myInventory.findAvailable(10, VehicleType.MOTOR_BIKE,
+                                                                        VehicleFeature.LUXURY.bit()).isEmpty());
+        assertEquals("limit", Arrays.asList(myLuxuryNav, myPlainCar), myInventory.findAvailable(2, null, 0));
+        assertTrue("zero limit", myInventory.findAvailable(0, null, 0).isEmpty());
+    }
+
+    /**
+     * Availability updates move vehicles in and out of queries and counters, and
+     * repeated updates do not count twice.
+     */
+    @Test
+    public void testSetAvailable() {
+        assertEquals("cars available", 2, myInventory.countAvailable(VehicleType.CAR));
+        assertTrue("indexed", myInventory.setAvailable(myLuxuryNav.getMyVehicleID(), false));
+        assertTrue("again", myInventory.setAvailable(myLuxuryNav.getMyVehicleID(), false));
+        assertEquals("cars available", 1, myInventory.countAvailable(VehicleType.CAR));
+        assertEquals("cars", 2, myInventory.count(VehicleType.CAR));
+        assertEquals("scan agrees", 1, myInventory.countAvailable(VehicleType.CAR, 0));
+        assertEquals("rented car hidden", Arrays.asList(myPlainCar),
+                     myInventory.findAvailable(10, VehicleType.CAR, 0));
+
+        assertTrue("back", myInventory.setAvailable(myLuxuryNav.getMyVehicleID(), true));
+        assertTrue("back again", myInventory.setAvailable(myLuxuryNav.getMyVehicleID(), true));
+        assertEquals("cars available", 2, myInventory.countAvailable(VehicleType.CAR));
+        assertEquals("all", 4, myInventory.countAvailable(null, 0));
+        assertFalse("unknown vehicle", myInventory.setAvailable(-1, true));
+    }
+
+    /**
+     * Vehicles added as unavailable are indexed but not found, and duplicate IDs
+     * are refused.
+     */
+    @Test
+    public void testAdd() {
+        final Car rented = new Car("Rented", "C3", false, true, false, false);
+        assertEquals("next slot", 4, myInventory.add(rented));
+        assertEquals("size", 5, myInventory.size());
+        assertEquals("cars", 3, myInventory.count(VehicleType.CAR));
+        assertEquals("luxury available", 1, myInventory.countAvailable(VehicleType.CAR,
+                                                                       VehicleFeature.LUXURY.bit()));
+        try {
+            myInventory.add(myPlainCar);
+            fail("duplicate ID");
+        } catch (final IllegalArgumentException e) {
+            assertNotNull(e.getMessage());
+        }
+        assertEquals("size unchanged", 5, myInventory.size());
+    }
+
+    /**
+     * Clearing empties the index and the counters, and it can be filled again.
+     */
+    @Test
+    public void testClear() {
+        myInventory.clear();
+        assertEquals("size", 0, myInventory.size());
+        assertEquals("cars", 0, myInventory.count(VehicleType.CAR));
+        assertEquals("available", 0, myInventory.countAvailable(VehicleType.CAR));
+        assertTrue("nothing found", myInventory.findAvailable(10, null, 0).isEmpty());
+        assertFalse("forgotten", myInventory.setAvailable(myPlainCar.getMyVehicleID(), false));
+        myInventory.add(myPlainCar);
+        assertEquals("re-added", Arrays.asList(myPlainCar), myInventory.findAvailable(10, null, 0));
+    }
+
+    /**
+     * Queries work across word and page boundaries of a large fleet.
+     */
+    @Test
+    public void testLargeFleet() {
+        myInventory.clear();
+        final List<AbstractVehicle> fleet = new ArrayList<AbstractVehicle>();
+        for (int i = 0; i < LARGE_FLEET; i++) {
+            fleet.add(new Car("Car" + i, "V" + i, true, i % 3 == 0, false, false));
+        }
+        myInventory.addAll(fleet);
+        assertEquals("luxury", (LARGE_FLEET + 2) / 3,
+                     myInventory.countAvailable(VehicleType.CAR, VehicleFeature.LUXURY.bit()));
+        for (int i = 0; i < LARGE_FLEET - 1; i++) {
+            myInventory.setAvailable(fleet.get(i).getMyVehicleID(), false);
+        }
+        assertEquals("last vehicle only", Arrays.asList(fleet.get(LARGE_FLEET - 1)),
+                     myInventory.findAvailable(10, null, 0));
+        assertEquals("counter", 1, myInventory.countAvailable(VehicleType.CAR));
+    }
+}
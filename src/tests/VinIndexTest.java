@@ -0,0 +1,119 @@
+/**
+ * This file checks VIN lookups, duplicate rejection and prefix search.
+ */
+
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.List;
+import model.Registration;
+import model.RentalManager;
+import model.VinIndex;
+import model.vehicles.AbstractVehicle;
+import model.vehicles.Bicycle;
+import model.vehicles.Car;
+import model.vehicles.MotorBike;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author ShowmikNEW
+ * @version Winter 2021
+ */
+public class VinIndexTest {
+
+    /**
+     * Index under test.
+     */
+    private VinIndex myIndex;
+
+    /**
+     * @throws java.lang.Exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        myIndex = new VinIndex();
+    }
+
+    /**
+     * Exact lookups find every vehicle, ignoring case, across growth.
+     */
+    @Test
+    public void testFind() {
+        for (int i = 0; i < 10_000; i++) {
+            myIndex.add(new Car("Car", "1HGCM82633A" + i, true, false, false, false));
+        }
+        assertEquals("size", 10_000, myIndex.size());
+        assertEquals("exact", "1HGCM82633A4242", myIndex.find("1HGCM82633A4242").getMyVIN());
+        assertEquals("lower case", "1HGCM82633A17", myIndex.find("1hgcm82633a17").getMyVIN());
+        assertNull("absent", myIndex.find("1HGCM82633A10000"));
+        assertNull("not ASCII", myIndex.find("1HGCM\u00e9"));
+    }
+
+    /**
+     * A VIN can only be indexed once, in any case.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testDuplicate() {
+        myIndex.add(new Car("Fiat", "V100", true, false, false, false));
+        myIndex.add(new MotorBike("Bike", "v100", true, false));
+    }
+
+    /**
+     * A batch with a duplicate VIN adds nothing.
+     */
+    @Test
+    public void testAddAllIsAtomic() {
+        myIndex.add(new Car("Fiat", "V100", true, false, false, false));
+        final List<AbstractVehicle> batch = List.of(new Car("BMW", "V200", true, false, false, false),
+                                                    new Bicycle("Cruiser", "C100", true, "Cruiser"),
+                                                    new MotorBike("Bike", "C100", true, false));
+        try {
+            myIndex.addAll(batch);
+            fail("duplicate in batch accepted");
+        } catch (final IllegalArgumentException e) {
+            assertEquals("size", 1, myIndex.size());
+            assertNull("nothing added", myIndex.find("V200"));
+        }
+    }
+
+    /**
+     * Prefix search returns matches in VIN order, up to the limit.
+     */
+    @Test
+    public void testPrefix() {
+        final String[] vins = {"V102", "B100", "V1", "V100", "V2", "v101x"};
+        for (final String vin : vins) {
+            myIndex.add(new Car("Car", vin, true, false, false, false));
+        }
+        final List<AbstractVehicle> matches = myIndex.findByPrefix("v10", 10);
+        assertEquals("match count", 3, matches.size());
+        assertEquals("first", "V100", matches.get(0).getMyVIN());
+        assertEquals("second", "v101x", matches.get(1).getMyVIN());
+        assertEquals("third", "V102", matches.get(2).getMyVIN());
+        assertEquals("limit", 2, myIndex.findByPrefix("V", 2).size());
+        assertEquals("everything", vins.length, myIndex.findByPrefix("", 100).size());
+        assertTrue("no match", myIndex.findByPrefix("Z", 10).isEmpty());
+    }
+
+    /**
+     * RentalManager keeps the index in step with its inventory.
+     */
+    @Test
+    public void testRentalManager() {
+        final RentalManager manager = new RentalManager(new Registration(new HashMap<>(), theUser -> null));
+        final Car car = new Car("Fiat", "V100", true, false, false, false);
+        manager.addVehicle(car);
+        assertSame("by VIN", car, manager.findByVIN("v100"));
+        try {
+            manager.addVehicle(new Car("Fiat", "V100", true, false, false, false));
+            fail("duplicate VIN accepted");
+        } catch (final IllegalArgumentException e) {
+            assertEquals("inventory unchanged", 1, manager.getMyVehicleList().size());
+        }
+        manager.clearLists();
+        assertNull("cleared", manager.findByVIN("V100"));
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Block-leasing ID allocator.
+ */
+
+package utility;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Allocates IDs from per-thread blocks leased from a shared atomic counter.
+ *
+ * Each thread takes a block of IDs with one atomic add and then hands them out
+ * without touching shared state, so threads only meet once per block. A single
+ * thread gets consecutive IDs. IDs left in a thread's block are never reused,
+ * which can leave gaps.
+ *
+ * A thread's first block holds one ID and each later block twice as many, up to
+ * the block size. IDs stranded by a thread that ends are therefore fewer than the
+ * IDs it took, and never more than the block size less one, so a server that runs
+ * every session on its own short-lived thread wastes at most half of the ID space
+ * rather than a whole block per session.
+ *
+ * When a state file is given, the allocator records a high-water mark a number of
+ * blocks ahead of the last leased block, and a restarted allocator continues from
+ * that mark, so IDs never collide with ones handed out before a crash or restart.
+ *
+ * @author roys4
+ * @version Winter 2021
+ */
+public final class BlockIdAllocator implements IdAllocator {
+
+    /**
+     * Default number of IDs per leased block.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 64;
+
+    /**
+     * Number of blocks reserved on disk per state file write.
+     */
+    private static final int BLOCKS_PER_RESERVATION = 1024;
+
+    /**
+     * Bytes in the state file.
+     */
+    private static final int STATE_BYTES = Long.BYTES;
+
+    /**
+     * Index of the next ID in a thread's block.
+     */
+    private static final int NEXT = 0;
+
+    /**
+     * Index of the end (exclusive) of a thread's block.
+     */
+    private static final int END = 1;
+
+    /**
+     * Index of the size of a thread's next block.
+     */
+    private static final int LEASE = 2;
+
+    /**
+     * IDs per leased block.
+     */
+    private final int myBlockSize;
+
+    /**
+     * Start of the next unleased block.
+     */
+    private final AtomicLong myNextBlock;
+
+    /**
+     * High-water mark file, or null when nothing is persisted.
+     */
+    private final Path myStateFile;
+
+    /**
+     * First ID not yet covered by the persisted high-water mark.
+     */
+    private volatile long myReservedLimit = Long.MAX_VALUE;
+
+    /**
+     * Each thread's current block: next ID, end (exclusive) and size of the next block.
+     */
+    private final ThreadLocal<long[]> myBlock = ThreadLocal.withInitial(() -> new long[] {0, 0, 1});
+
+    /**
+     * Creates an in-memory allocator whose first ID is 1.
+     *
+     * @param theBlockSize IDs per leased block
+     */
+    public BlockIdAllocator(final int theBlockSize) {
+        this(theBlockSize, 1);
+    }
+
+    /**
+     * Creates an in-memory allocator.
+     *
+     * @param theBlockSize IDs per leased block
+     * @param theFirstId the first ID to hand out
+     */
+    public BlockIdAllocator(final int theBlockSize, final int theFirstId) {
+        if (theBlockSize <= 0 || theFirstId <= 0) {
+            throw new IllegalArgumentException();
+        }
+        myBlockSize = theBlockSize;
+        myNextBlock = new AtomicLong(theFirstId);
+        myStateFile = null;
+    }
+
+    /**
+     * Creates an allocator that persists its leased range in a state file and
+     * continues after the persisted range when the file already exists.
+     *
+     * @param theBlockSize IDs per leased block
+     * @param theStateFile the high-water mark file
+     * @throws IOException if the state file cannot be read or written, or does not
+     *         hold a valid high-water mark
+     */
+    public BlockIdAllocator(final int theBlockSize, final Path theStateFile) throws IOException {
+        if (theBlockSize <= 0) {
+            throw new IllegalArgumentException();
+        }
+        myBlockSize = theBlockSize;
+        myStateFile = Objects.requireNonNull(theStateFile);
+        long first = 1;
+        if (Files.exists(theStateFile)) {
+            final byte[] state = Files.readAllBytes(theStateFile);
+            if (state.length != STATE_BYTES) {
+                throw new IOException("ID state file " + theStateFile + " has " + state.length
+                                      + " bytes, expected " + STATE_BYTES);
+            }
+            first = ByteBuffer.wrap(state).getLong();
+            if (first <= 0) {
+                throw new IOException("ID state file " + theStateFile + " holds invalid mark " + first);
+            }
+        }
+        myNextBlock = new AtomicLong(first);
+        myReservedLimit = first;
+    }
+
+    @Override
+    public int nextId() {
+        final long[] block = myBlock.get();
+        if (block[NEXT] == block[END]) {
+            lease(block);
+        }
+        return (int) block[NEXT]++;
+    }
+
+    /**
+     * Leases a new block for the calling thread.
+     *
+     * @param theBlock the thread's block to refill
+     */
+    private void lease(final long[] theBlock) {
+        final long size = theBlock[LEASE];
+        final long start = myNextBlock.getAndAdd(size);
+        final long end = start + size;
+        if (end - 1 > Integer.MAX_VALUE) {
+            throw new IllegalStateException("ID space exhausted");
+        }
+        if (end > myReservedLimit) {
+            reserveThrough(end);
+        }
+        theBlock[NEXT] = start;
+        theBlock[END] = end;
+        theBlock[LEASE] = Math.min(size * 2, myBlockSize);
+    }
+
+    /**
+     * Persists a high-water mark covering at least an ID limit.
+     *
+     * @param theLimit first ID that must be covered (exclusive end of a leased block)
+     */
+    private synchronized void reserveThrough(final long theLimit) {
+        if (theLimit > myReservedLimit) {
+            final long limit = theLimit + (long) myBlockSize * BLOCKS_PER_RESERVATION;
+            final Path temp = myStateFile.resolveSibling(myStateFile.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                                                        StandardOpenOption.WRITE,
+                                                        StandardOpenOption.TRUNCATE_EXISTING)) {
+                final ByteBuffer state = ByteBuffer.allocate(STATE_BYTES);
+                state.putLong(limit).flip();
+                while (state.hasRemaining()) {
+                    channel.write(state);
+                }
+                channel.force(true);
+            } catch (final IOException e) {
+                throw new IllegalStateException("Cannot persist ID range", e);
+            }
+            try {
+                Files.move(temp, myStateFile, StandardCopyOption.REPLACE_EXISTING,
+                           StandardCopyOption.ATOMIC_MOVE);
+            } catch (final IOException e) {
+                throw new IllegalStateException("Cannot persist ID range", e);
+            }
+            myReservedLimit = limit;
+        }
+    }
+}
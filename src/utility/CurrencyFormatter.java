@@ -0,0 +1,303 @@
+/*
+ * Cached, thread-safe currency formatting.
+ */
+
+package utility;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+import java.util.Currency;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Formats money the way NumberFormat.getCurrencyInstance does for a locale and
+ * currency, without creating a NumberFormat per call.
+ * 
+ * Formatters are cached per locale and currency and are safe to share between
+ * threads. When the locale's currency pattern is a plain one (two fraction digits,
+ * groups of three, ASCII digits, fixed prefix and suffix) amounts are rounded to
+ * cents and written directly; other patterns use a NumberFormat cached per thread.
+ * Both give the same text as a fresh NumberFormat.
+ * 
+ * @author roys4
+ * @version Winter 2021
+ */
+public final class CurrencyFormatter {
+
+    /**
+     * Formatters by locale and currency code.
+     */
+    private static final Map<String, CurrencyFormatter> CACHE = new ConcurrentHashMap<String, CurrencyFormatter>();
+
+    /**
+     * US dollars in the US locale, used by bills and vehicle listings.
+     */
+    public static final CurrencyFormatter US = forLocale(Locale.US);
+
+    /**
+     * Fraction digits the direct path writes.
+     */
+    private static final int CENT_DIGITS = 2;
+
+    /**
+     * Cents in a dollar.
+     */
+    private static final long CENTS_PER_DOLLAR = 100;
+
+    /**
+     * Digits in a group.
+     */
+    private static final int GROUP_SIZE = 3;
+
+    /**
+     * Decimal radix.
+     */
+    private static final int TEN = 10;
+
+    /**
+     * Largest amount (in dollars) formatted directly from a BigDecimal.
+     */
+    private static final BigDecimal DIRECT_LIMIT = BigDecimal.valueOf(Long.MAX_VALUE / CENTS_PER_DOLLAR / TEN);
+
+    /**
+     * Locale of the format.
+     */
+    private final Locale myLocale;
+
+    /**
+     * Currency of the format.
+     */
+    private final Currency myCurrency;
+
+    /**
+     * Prototype format, cloned for each thread; never used directly.
+     */
+    private final NumberFormat myPrototype;
+
+    /**
+     * Each thread's copy of the prototype.
+     */
+    private final ThreadLocal<NumberFormat> myFormats;
+
+    /**
+     * Whether amounts are written directly instead of through NumberFormat.
+     */
+    private final boolean myDirect;
+
+    /**
+     * Text before a positive amount.
+     */
+    private final String myPositivePrefix;
+
+    /**
+     * Text after a positive amount.
+     */
+    private final String myPositiveSuffix;
+
+    /**
+     * Text before a negative amount.
+     */
+    private final String myNegativePrefix;
+
+    /**
+     * Text after a negative amount.
+     */
+    private final String myNegativeSuffix;
+
+    /**
+     * Group separator, used when grouping is on.
+     */
+    private final char myGroupSeparator;
+
+    /**
+     * Whether digits are grouped.
+     */
+    private final boolean myGrouping;
+
+    /**
+     * Decimal separator.
+     */
+    private final char myDecimalSeparator;
+
+    /**
+     * Creates a formatter.
+     * 
+     * @param theLocale the locale
+     * @param theCurrency the currency
+     */
+    private CurrencyFormatter(final Locale theLocale, final Currency theCurrency) {
+        myLocale = theLocale;
+        myCurrency = theCurrency;
+        final NumberFormat prototype = NumberFormat.getCurrencyInstance(theLocale);
+        prototype.setCurrency(theCurrency);
+        myPrototype = prototype;
+        myFormats = ThreadLocal.withInitial(() -> (NumberFormat) myPrototype.clone());
+
+        boolean direct = false;
+        String positivePrefix = "";
+        String positiveSuffix = "";
+        String negativePrefix = "";
+        String negativeSuffix = "";
+        char groupSeparator = ',';
+        char decimalSeparator = '.';
+        boolean grouping = false;
+        if (prototype instanceof DecimalFormat) {
+            final DecimalFormat format = (DecimalFormat) prototype;
+            final DecimalFormatSymbols symbols = format.getDecimalFormatSymbols();
+            positivePrefix = format.getPositivePrefix();
+            positiveSuffix = format.getPositiveSuffix();
+            negativePrefix = format.getNegativePrefix();
+            negativeSuffix = format.getNegativeSuffix();
+            groupSeparator = symbols.getMonetaryGroupingSeparator();
+            decimalSeparator = symbols.getMonetaryDecimalSeparator();
+            grouping = format.isGroupingUsed();
+            direct = format.getMinimumFractionDigits() == CENT_DIGITS
+                     && format.getMaximumFractionDigits() == CENT_DIGITS
+                     && format.getMinimumIntegerDigits() == 1
+                     && (!grouping || format.getGroupingSize() == GROUP_SIZE)
+                     && format.getMultiplier() == 1
+                     && format.getRoundingMode() == RoundingMode.HALF_EVEN
+                     && !format.isDecimalSeparatorAlwaysShown()
+                     && symbols.getZeroDigit() == '0';
+        }
+        myDirect = direct;
+        myPositivePrefix = positivePrefix;
+        myPositiveSuffix = positiveSuffix;
+        myNegativePrefix = negativePrefix;
+        myNegativeSuffix = negativeSuffix;
+        myGroupSeparator = groupSeparator;
+        myGrouping = grouping;
+        myDecimalSeparator = decimalSeparator;
+    }
+
+    /**
+     * Gets the formatter for a locale's own currency.
+     * 
+     * @param theLocale the locale, which must have a country
+     * @return the shared formatter
+     */
+    public static CurrencyFormatter forLocale(final Locale theLocale) {
+        return forLocale(theLocale, Currency.getInstance(theLocale));
+    }
+
+    /**
+     * Gets the formatter for a currency written the way a locale writes money.
+     * 
+     * @param theLocale the locale
+     * @param theCurrency the currency
+     * @return the shared formatter
+     */
+    public static CurrencyFormatter forLocale(final Locale theLocale, final Currency theCurrency) {
+        Objects.requireNonNull(theLocale);
+        Objects.requireNonNull(theCurrency);
+        return CACHE.computeIfAbsent(theLocale.toLanguageTag() + '|' + theCurrency.getCurrencyCode(),
+            theKey -> new CurrencyFormatter(theLocale, theCurrency));
+    }
+
+    /**
+     * Formats an amount.
+     * 
+     * @param theAmount the amount in the currency's major unit
+     * @return the formatted amount
+     */
+    public String format(final BigDecimal theAmount) {
+        final String result;
+        if (myDirect && theAmount.abs().compareTo(DIRECT_LIMIT) < 0) {
+            final StringBuilder text = new StringBuilder();
+            appendCents(text, theAmount.movePointRight(CENT_DIGITS).setScale(0, RoundingMode.HALF_EVEN)
+                                       .longValue(), theAmount.signum() < 0);
+            result = text.toString();
+        } else {
+            result = myFormats.get().format(theAmount);
+        }
+        return result;
+    }
+
+    /**
+     * Formats an amount given in {@link Money} units.
+     * 
+     * @param theUnits the amount in units
+     * @return the formatted amount
+     */
+    public String formatUnits(final long theUnits) {
+        final StringBuilder text = new StringBuilder();
+        appendUnits(text, theUnits);
+        return text.toString();
+    }
+
+    /**
+     * Appends an amount given in {@link Money} units.
+     * 
+     * @param theBuffer buffer to append to
+     * @param theUnits the amount in units
+     */
+    public void appendUnits(final StringBuilder theBuffer, final long theUnits) {
+        if (myDirect) {
+            appendCents(theBuffer, Money.toCents(theUnits), theUnits < 0);
+        } else {
+            theBuffer.append(myFormats.get().format(Money.toBigDecimal(theUnits)));
+        }
+    }
+
+    /**
+     * Get the locale.
+     * @return the locale money is written for
+     */
+    public Locale getMyLocale() {
+        return myLocale;
+    }
+
+    /**
+     * Get the currency.
+     * @return the currency
+     */
+    public Currency getMyCurrency() {
+        return myCurrency;
+    }
+
+    /**
+     * Writes a whole number of cents with this format's prefix, grouping and suffix.
+     * Like NumberFormat, an amount that was negative before rounding keeps its sign
+     * even when it rounds to zero.
+     * 
+     * @param theBuffer buffer to append to
+     * @param theCents the amount in cents
+     * @param theNegative whether the amount was negative before rounding
+     */
+    private void appendCents(final StringBuilder theBuffer, final long theCents, final boolean theNegative) {
+        final long cents = Math.abs(theCents);
+        if (theNegative) {
+            theBuffer.append(myNegativePrefix);
+        } else {
+            theBuffer.append(myPositivePrefix);
+        }
+        final long whole = cents / CENTS_PER_DOLLAR;
+        long power = 1;
+        int digits = 1;
+        while (power <= whole / TEN) {
+            power *= TEN;
+            digits++;
+        }
+        for (; digits > 0; digits--) {
+            theBuffer.append((char) ('0' + whole / power % TEN));
+            if (myGrouping && digits > 1 && (digits - 1) % GROUP_SIZE == 0) {
+                theBuffer.append(myGroupSeparator);
+            }
+            power /= TEN;
+        }
+        final long fraction = cents % CENTS_PER_DOLLAR;
+        theBuffer.append(myDecimalSeparator).append((char) ('0' + fraction / TEN))
+                 .append((char) ('0' + fraction % TEN));
+        if (theNegative) {
+            theBuffer.append(myNegativeSuffix);
+        } else {
+            theBuffer.append(myPositiveSuffix);
+        }
+    }
+}
@@ -61,6 +61,24 @@ public final class FileLoader {
         return userList;
     }
 
+    /**
+     * Reads user information the same way as {@link #readItemsFromFile(String)}, but
+     * memory-maps the file and parses it in parallel chunks without splitting lines
+     * into Strings. Meant for very large user files.
+     * 
+     * @param theFile the name of the file to load into a Map of Users
+     * @return a Map of user name to User created from data in an input file
+     */
+    public static Map<String, User> readItemsFromFileMapped(final String theFile) {
+        Map<String, User> userList = new HashMap<String, User>();
+        try {
+            userList = MappedUserFileReader.read(Paths.get(theFile).toAbsolutePath());
+        } catch (final IOException e) {
+            e.printStackTrace();
+        }
+        return userList;
+    }
+
     /**
      * Writes information to the file.
      * 
@@ -0,0 +1,522 @@
+/*
+ * Bulk fleet import and export.
+ */
+
+package utility;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.IntStream;
+import model.vehicles.AbstractVehicle;
+import model.vehicles.Bicycle;
+import model.vehicles.Car;
+import model.vehicles.MotorBike;
+import model.vehicles.VehicleFeature;
+import model.vehicles.VehicleType;
+
+/**
+ * Reads and writes vehicle files in a text or a compact binary format, building
+ * the vehicles of a file in parallel chunks.
+ *
+ * Text files have one vehicle per line: type,name,VIN,availability,extra. The type
+ * is a {@link VehicleType} name and availability is true or false. For cars and
+ * motor bikes extra lists {@link VehicleFeature} names separated by '|' (it may be
+ * empty); for bicycles it is the bicycle type, e.g. Mountain or Road. Blank lines and
+ * lines starting with '#' are skipped. Names and VINs cannot contain commas.
+ *
+ * Binary files start with the magic "RZFL", a short version and an int vehicle
+ * count, followed by one record per vehicle: a type ordinal byte, a flags byte (top
+ * bit availability, other bits the feature mask), and the name and VIN as a short
+ * length plus UTF-8 bytes. Bicycle records end with their bicycle type the same way.
+ *
+ * {@link #load} recognizes the format by the magic and records "read" and "parse"
+ * phases in the given timings. Vehicles are returned in file order; their IDs come
+ * from the vehicle ID allocator and follow file order only within a chunk.
+ *
+ * @author roys4
+ * @version Winter 2021
+ */
+public final class FleetLoader {
+
+    /**
+     * Binary file magic, "RZFL".
+     */
+    public static final int MAGIC = 0x525A464C;
+
+    /**
+     * Binary format version.
+     */
+    public static final short VERSION = 1;
+
+    /**
+     * Read phase name.
+     */
+    public static final String READ_PHASE = "read";
+
+    /**
+     * Parse phase name.
+     */
+    public static final String PARSE_PHASE = "parse";
+
+    /**
+     * Bytes of the binary header.
+     */
+    private static final int HEADER_BYTES = Integer.BYTES + Short.BYTES + Integer.BYTES;
+
+    /**
+     * Bytes before the strings of a binary record (type and flags).
+     */
+    private static final int RECORD_PREFIX_BYTES = 2;
+
+    /**
+     * Text chunks per available processor, to even out uneven chunks.
+     */
+    private static final int CHUNKS_PER_PROCESSOR = 4;
+
+    /**
+     * Availability bit of a binary flags byte.
+     */
+    private static final int AVAILABLE_BIT = 0x80;
+
+    /**
+     * Feature bits of a binary flags byte.
+     */
+    private static final int FEATURE_BITS = 0x7f;
+
+    /**
+     * Mask to read an unsigned short.
+     */
+    private static final int USHORT_MASK = 0xffff;
+
+    /**
+     * Mask to read an unsigned byte.
+     */
+    private static final int UBYTE_MASK = 0xff;
+
+    /**
+     * Smallest text chunk worth its own task.
+     */
+    private static final int MIN_CHUNK_BYTES = 1 << 18;
+
+    /**
+     * Binary records per parallel chunk.
+     */
+    private static final int CHUNK_RECORDS = 1 << 14;
+
+    /**
+     * Fields on a text line.
+     */
+    private static final int TEXT_FIELDS = 5;
+
+    /**
+     * Separator of the text fields.
+     */
+    private static final char FIELD_SEPARATOR = ',';
+
+    /**
+     * Separator of feature names in the text format.
+     */
+    private static final String FEATURE_SEPARATOR = "|";
+
+    /**
+     * All vehicle types, indexed by ordinal.
+     */
+    private static final VehicleType[] TYPES = VehicleType.values();
+
+    /**
+     * A private constructor, to prevent external instantiation.
+     */
+    private FleetLoader() {
+
+    }
+
+    /**
+     * Reads a text or binary vehicle file.
+     *
+     * @param theFile the vehicle file
+     * @param theTimings receives the read and parse phases
+     * @return the vehicles in file order
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the file is malformed
+     */
+    public static List<AbstractVehicle> load(final Path theFile, final PhaseTimings theTimings)
+        throws IOException {
+        final long start = System.nanoTime();
+        final byte[] data = Files.readAllBytes(theFile);
+        final long parseStart = theTimings.recordSince(READ_PHASE, start);
+        final AbstractVehicle[] vehicles;
+        if (data.length >= Integer.BYTES && ByteBuffer.wrap(data).getInt() == MAGIC) {
+            vehicles = parseBinary(data);
+        } else {
+            vehicles = parseText(data);
+        }
+        theTimings.recordSince(PARSE_PHASE, parseStart);
+        return Arrays.asList(vehicles);
+    }
+
+    /**
+     * Writes vehicles in the text format.
+     *
+     * @param theFile the file to write
+     * @param theVehicles the vehicles
+     * @throws IOException if the file cannot be written
+     */
+    public static void writeText(final Path theFile, final Collection<? extends AbstractVehicle> theVehicles)
+        throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(theFile, StandardCharsets.UTF_8)) {
+            final StringBuilder line = new StringBuilder();
+            for (final AbstractVehicle vehicle : theVehicles) {
+                line.setLength(0);
+                line.append(vehicle.getVehicleType().name()).append(FIELD_SEPARATOR)
+                    .append(vehicle.getMyName()).append(FIELD_SEPARATOR)
+                    .append(vehicle.getMyVIN()).append(FIELD_SEPARATOR)
+                    .append(vehicle.isAvailable()).append(FIELD_SEPARATOR);
+                if (vehicle instanceof Bicycle) {
+                    line.append(((Bicycle) vehicle).getMyType());
+                } else {
+                    String separator = "";
+                    for (final VehicleFeature feature : VehicleFeature.values()) {
+                        if ((vehicle.getFeatureMask() & feature.bit()) != 0) {
+                            line.append(separator).append(feature.name());
+                            separator = FEATURE_SEPARATOR;
+                        }
+                    }
+                }
+                out.append(line).append('\n');
+            }
+        }
+    }
+
+    /**
+     * Writes vehicles in the binary format.
+     *
+     * @param theFile the file to write
+     * @param theVehicles the vehicles
+     * @throws IOException if the file cannot be written
+     */
+    public static void writeBinary(final Path theFile, final Collection<? extends AbstractVehicle> theVehicles)
+        throws IOException {
+        final List<byte[]> records = new ArrayList<byte[]>(theVehicles.size());
+        int size = HEADER_BYTES;
+        for (final AbstractVehicle vehicle : theVehicles) {
+            final byte[] name = vehicle.getMyName().getBytes(StandardCharsets.UTF_8);
+            final byte[] vin = vehicle.getMyVIN().getBytes(StandardCharsets.UTF_8);
+            byte[] cycleType = null;
+            int length = RECORD_PREFIX_BYTES + Short.BYTES + name.length + Short.BYTES + vin.length;
+            if (vehicle instanceof Bicycle) {
+                cycleType = ((Bicycle) vehicle).getMyType().getBytes(StandardCharsets.UTF_8);
+                length += Short.BYTES + cycleType.length;
+            }
+            int flags = vehicle.getFeatureMask();
+            if (vehicle.isAvailable()) {
+                flags |= AVAILABLE_BIT;
+            }
+            final ByteBuffer record = ByteBuffer.allocate(length);
+            record.put((byte) vehicle.getVehicleType().ordinal()).put((byte) flags);
+            putString(record, name);
+            putString(record, vin);
+            if (cycleType != null) {
+                putString(record, cycleType);
+            }
+            records.add(record.array());
+            size += length;
+        }
+        final ByteBuffer file = ByteBuffer.allocate(size);
+        file.putInt(MAGIC).putShort(VERSION).putInt(records.size());
+        for (final byte[] record : records) {
+            file.put(record);
+        }
+        Files.write(theFile, file.array());
+    }
+
+    /**
+     * Builds a vehicle.
+     *
+     * @param theType vehicle type
+     * @param theName vehicle name
+     * @param theVIN vehicle VIN
+     * @param theAvailability whether it is available
+     * @param theFeatureMask features of cars and motor bikes
+     * @param theCycleType bicycle type, used for bicycles only
+     * @return the vehicle
+     */
+    private static AbstractVehicle create(final VehicleType theType, final String theName, final String theVIN,
+                                          final boolean theAvailability, final int theFeatureMask,
+                                          final String theCycleType) {
+        final AbstractVehicle result;
+        switch (theType) {
+            case CAR:
+                result = new Car(theName, theVIN, theAvailability, has(theFeatureMask, VehicleFeature.LUXURY),
+                                 has(theFeatureMask, VehicleFeature.NAVIGATION),
+                                 has(theFeatureMask, VehicleFeature.DRIVE_ASSIST));
+                break;
+            case MOTOR_BIKE:
+                result = new MotorBike(theName, theVIN, theAvailability,
+                                       has(theFeatureMask, VehicleFeature.TOURING));
+                break;
+            case BICYCLE:
+            default:
+                result = new Bicycle(theName, theVIN, theAvailability, theCycleType);
+                break;
+        }
+        return result;
+    }
+
+    /**
+     * Checks a feature bit.
+     *
+     * @param theFeatureMask feature mask
+     * @param theFeature the feature
+     * @return true if the mask has the feature
+     */
+    private static boolean has(final int theFeatureMask, final VehicleFeature theFeature) {
+        return (theFeatureMask & theFeature.bit()) != 0;
+    }
+
+    /**
+     * Parses a text file in parallel chunks that end on line boundaries.
+     *
+     * @param theData the file contents
+     * @return the vehicles in file order
+     */
+    private static AbstractVehicle[] parseText(final byte[] theData) {
+        final int parallelism = Runtime.getRuntime().availableProcessors();
+        final int chunks = Math.max(1, Math.min(parallelism * CHUNKS_PER_PROCESSOR, theData.length / MIN_CHUNK_BYTES));
+        final int[] bounds = new int[chunks + 1];
+        for (int i = 1; i < chunks; i++) {
+            int bound = Math.max(bounds[i - 1], (int) ((long) theData.length * i / chunks));
+            while (bound < theData.length && bound > 0 && theData[bound - 1] != '\n') {
+                bound++;
+            }
+            bounds[i] = bound;
+        }
+        bounds[chunks] = theData.length;
+        final List<List<AbstractVehicle>> parsed = new ArrayList<List<AbstractVehicle>>();
+        IntStream.range(0, chunks).parallel()
+                 .mapToObj(i -> parseTextChunk(theData, bounds[i], bounds[i + 1]))
+                 .forEachOrdered(parsed::add);
+        return concat(parsed);
+    }
+
+    /**
+     * Parses the lines of one text chunk.
+     *
+     * @param theData the file contents
+     * @param theStart first byte, the start of a line
+     * @param theEnd end (exclusive), the start of a line or the end of the file
+     * @return the vehicles in file order
+     */
+    private static List<AbstractVehicle> parseTextChunk(final byte[] theData, final int theStart,
+                                                        final int theEnd) {
+        final List<AbstractVehicle> vehicles = new ArrayList<AbstractVehicle>();
+        final int[] commas = new int[TEXT_FIELDS - 1];
+        int lineStart = theStart;
+        while (lineStart < theEnd) {
+            int lineEnd = lineStart;
+            int fields = 0;
+            while (lineEnd < theEnd && theData[lineEnd] != '\n') {
+                if (theData[lineEnd] == FIELD_SEPARATOR && fields < commas.length) {
+                    commas[fields] = lineEnd;
+                    fields++;
+                }
+                lineEnd++;
+            }
+            int contentEnd = lineEnd;
+            if (contentEnd > lineStart && theData[contentEnd - 1] == '\r') {
+                contentEnd--;
+            }
+            if (contentEnd > lineStart && theData[lineStart] != '#') {
+                if (fields != commas.length) {
+                    throw new IllegalArgumentException("Malformed vehicle line at byte " + lineStart);
+                }
+                vehicles.add(parseLine(theData, lineStart, contentEnd, commas));
+            }
+            lineStart = lineEnd + 1;
+        }
+        return vehicles;
+    }
+
+    /**
+     * Builds the vehicle of one text line.
+     *
+     * @param theData the file contents
+     * @param theStart first byte of the line
+     * @param theEnd end of the line content (exclusive)
+     * @param theCommas offsets of the four field separators
+     * @return the vehicle
+     */
+    private static AbstractVehicle parseLine(final byte[] theData, final int theStart, final int theEnd,
+                                             final int[] theCommas) {
+        final VehicleType type = VehicleType.valueOf(text(theData, theStart, theCommas[0]));
+        final String name = text(theData, theCommas[0] + 1, theCommas[1]);
+        final String vin = text(theData, theCommas[1] + 1, theCommas[2]);
+        final boolean available = Boolean.parseBoolean(text(theData, theCommas[2] + 1, theCommas[3]));
+        final String extra = text(theData, theCommas[3] + 1, theEnd);
+        int mask = 0;
+        if (type != VehicleType.BICYCLE && !extra.isEmpty()) {
+            int from = 0;
+            while (from <= extra.length()) {
+                int to = extra.indexOf(FEATURE_SEPARATOR, from);
+                if (to < 0) {
+                    to = extra.length();
+                }
+                mask |= VehicleFeature.valueOf(extra.substring(from, to)).bit();
+                from = to + 1;
+            }
+        }
+        return create(type, name, vin, available, mask, extra);
+    }
+
+    /**
+     * Decodes part of the file.
+     *
+     * @param theData the file contents
+     * @param theStart first byte
+     * @param theEnd end (exclusive)
+     * @return the UTF-8 text
+     */
+    private static String text(final byte[] theData, final int theStart, final int theEnd) {
+        return new String(theData, theStart, theEnd - theStart, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parses a binary file: one pass finds where every chunk of records starts, then
+     * the chunks are built in parallel.
+     *
+     * @param theData the file contents
+     * @return the vehicles in file order
+     */
+    private static AbstractVehicle[] parseBinary(final byte[] theData) {
+        final ByteBuffer header = ByteBuffer.wrap(theData);
+        header.getInt();
+        final short version = header.getShort();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported fleet file version " + version);
+        }
+        final int count = header.getInt();
+        if (count < 0) {
+            throw new IllegalArgumentException("Negative vehicle count");
+        }
+        final int chunks = (count + CHUNK_RECORDS - 1) / CHUNK_RECORDS;
+        final int[] starts = new int[chunks];
+        int offset = HEADER_BYTES;
+        for (int i = 0; i < count; i++) {
+            if (i % CHUNK_RECORDS == 0) {
+                starts[i / CHUNK_RECORDS] = offset;
+            }
+            offset = skipRecord(theData, offset);
+        }
+        final AbstractVehicle[] vehicles = new AbstractVehicle[count];
+        IntStream.range(0, chunks).parallel().forEach(chunk -> {
+            final ByteBuffer in = ByteBuffer.wrap(theData);
+            in.position(starts[chunk]);
+            final int end = Math.min(count, (chunk + 1) * CHUNK_RECORDS);
+            for (int i = chunk * CHUNK_RECORDS; i < end; i++) {
+                final VehicleType type = TYPES[in.get() & UBYTE_MASK];
+                final int flags = in.get() & UBYTE_MASK;
+                final String name = getString(in);
+                final String vin = getString(in);
+                String cycleType = null;
+                if (type == VehicleType.BICYCLE) {
+                    cycleType = getString(in);
+                }
+                vehicles[i] = create(type, name, vin, (flags & AVAILABLE_BIT) != 0, flags & FEATURE_BITS,
+                                     cycleType);
+            }
+        });
+        return vehicles;
+    }
+
+    /**
+     * Finds the end of a binary record.
+     *
+     * @param theData the file contents
+     * @param theOffset start of the record
+     * @return start of the next record
+     */
+    private static int skipRecord(final byte[] theData, final int theOffset) {
+        if (theOffset + RECORD_PREFIX_BYTES > theData.length || (theData[theOffset] & UBYTE_MASK) >= TYPES.length) {
+            throw new IllegalArgumentException("Malformed vehicle record at byte " + theOffset);
+        }
+        final boolean bicycle = TYPES[theData[theOffset]] == VehicleType.BICYCLE;
+        int offset = skipString(theData, skipString(theData, theOffset + RECORD_PREFIX_BYTES));
+        if (bicycle) {
+            offset = skipString(theData, offset);
+        }
+        return offset;
+    }
+
+    /**
+     * Finds the end of a length-prefixed string.
+     *
+     * @param theData the file contents
+     * @param theOffset start of the length
+     * @return the first byte after the string
+     */
+    private static int skipString(final byte[] theData, final int theOffset) {
+        if (theOffset + Short.BYTES > theData.length) {
+            throw new IllegalArgumentException("Truncated vehicle record at byte " + theOffset);
+        }
+        final int length = ByteBuffer.wrap(theData, theOffset, Short.BYTES).getShort() & USHORT_MASK;
+        final int end = theOffset + Short.BYTES + length;
+        if (end > theData.length) {
+            throw new IllegalArgumentException("Truncated vehicle record at byte " + theOffset);
+        }
+        return end;
+    }
+
+    /**
+     * Writes a length-prefixed string.
+     *
+     * @param theBuffer the record
+     * @param theBytes UTF-8 bytes, at most 65535
+     */
+    private static void putString(final ByteBuffer theBuffer, final byte[] theBytes) {
+        if (theBytes.length > USHORT_MASK) {
+            throw new IllegalArgumentException("String too long for the binary format");
+        }
+        theBuffer.putShort((short) theBytes.length).put(theBytes);
+    }
+
+    /**
+     * Reads a length-prefixed string.
+     *
+     * @param theBuffer positioned at the length
+     * @return the string
+     */
+    private static String getString(final ByteBuffer theBuffer) {
+        final int length = theBuffer.getShort() & USHORT_MASK;
+        final String result = new String(theBuffer.array(), theBuffer.position(), length, StandardCharsets.UTF_8);
+        theBuffer.position(theBuffer.position() + length);
+        return result;
+    }
+
+    /**
+     * Joins chunk results.
+     *
+     * @param theChunks vehicles per chunk, in file order
+     * @return all vehicles in file order
+     */
+    private static AbstractVehicle[] concat(final List<List<AbstractVehicle>> theChunks) {
+        int total = 0;
+        for (final List<AbstractVehicle> chunk : theChunks) {
+            total += chunk.size();
+        }
+        final AbstractVehicle[] result = new AbstractVehicle[total];
+        int next = 0;
+        for (final List<AbstractVehicle> chunk : theChunks) {
+            for (final AbstractVehicle vehicle : chunk) {
+                result[next++] = vehicle;
+            }
+        }
+        return result;
+    }
+}
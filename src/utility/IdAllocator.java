@@ -0,0 +1,23 @@
+/*
+ * Source of unique integer IDs.
+ */
+
+package utility;
+
+/**
+ * Hands out unique, positive integer IDs. Implementations must be safe to call
+ * from many threads at once.
+ * 
+ * @author roys4
+ * @version Winter 2021
+ */
+public interface IdAllocator {
+
+    /**
+     * Allocates the next ID.
+     * 
+     * @return an ID no other call to this allocator has returned
+     * @throws IllegalStateException if the ID space is exhausted or cannot be persisted
+     */
+    int nextId();
+}
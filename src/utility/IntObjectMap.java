@@ -0,0 +1,352 @@
+/*
+ * Open-addressing map from int keys to objects.
+ */
+
+package utility;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * A hash map from primitive int keys to non-null values, for registries keyed by
+ * numeric IDs. Keys are never boxed and there are no entry objects: keys and values
+ * sit in two parallel arrays probed linearly, kept at most half full.
+ *
+ * Writes are serialized; lookups never lock. A slot's key is written before its
+ * value is released, and lookups acquire the value before reading the key, so a
+ * lookup sees either the complete entry or nothing. A grown table is published
+ * only once it is filled. Entries are not removed one by one; {@link #clear()}
+ * empties the whole map. {@link #asMap()} offers a read-only java.util.Map view for
+ * callers written against the collections API.
+ *
+ * @param <V> value type
+ *
+ * @author roys4
+ * @version Winter 2021
+ */
+public final class IntObjectMap<V> {
+
+    /**
+     * Smallest table size.
+     */
+    private static final int MIN_CAPACITY = 16;
+
+    /**
+     * Largest table size.
+     */
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    /**
+     * Hash spreading multiplier (golden ratio).
+     */
+    private static final int SPREAD = 0x9E3779B9;
+
+    /**
+     * Release/acquire access to value slots.
+     */
+    private static final VarHandle VALUES = MethodHandles.arrayElementVarHandle(Object[].class);
+
+    /**
+     * Current table.
+     */
+    private volatile Table myTable;
+
+    /**
+     * Number of entries.
+     */
+    private volatile int mySize;
+
+    /**
+     * Creates an empty map.
+     */
+    public IntObjectMap() {
+        this(0);
+    }
+
+    /**
+     * Creates an empty map sized for a number of entries.
+     *
+     * @param theExpectedSize entries the map can hold without growing
+     */
+    public IntObjectMap(final int theExpectedSize) {
+        myTable = new Table(capacityFor(theExpectedSize));
+    }
+
+    /**
+     * Looks up a key.
+     *
+     * @param theKey the key
+     * @return its value, or null if absent
+     */
+    @SuppressWarnings("unchecked")
+    public V get(final int theKey) {
+        final Table table = myTable;
+        final int mask = table.myKeys.length - 1;
+        int slot = hash(theKey) & mask;
+        Object value = VALUES.getAcquire(table.myValues, slot);
+        while (value != null && table.myKeys[slot] != theKey) {
+            slot = (slot + 1) & mask;
+            value = VALUES.getAcquire(table.myValues, slot);
+        }
+        return (V) value;
+    }
+
+    /**
+     * Checks whether a key is present.
+     *
+     * @param theKey the key
+     * @return true if it has a value
+     */
+    public boolean containsKey(final int theKey) {
+        return get(theKey) != null;
+    }
+
+    /**
+     * Maps a key to a value.
+     *
+     * @param theKey the key
+     * @param theValue the value
+     * @return the previous value, or null
+     */
+    public synchronized V put(final int theKey, final V theValue) {
+        Objects.requireNonNull(theValue);
+        Table table = myTable;
+        int slot = find(table, theKey);
+        @SuppressWarnings("unchecked")
+        final V previous = (V) table.myValues[slot];
+        if (previous == null) {
+            if ((mySize + 1) * 2 > table.myKeys.length) {
+                table = grow(table, table.myKeys.length * 2);
+                slot = find(table, theKey);
+            }
+            table.myKeys[slot] = theKey;
+            mySize = mySize + 1;
+        }
+        VALUES.setRelease(table.myValues, slot, theValue);
+        return previous;
+    }
+
+    /**
+     * Maps a key to a value unless it already has one.
+     *
+     * @param theKey the key
+     * @param theValue the value
+     * @return the existing value, or null if theValue was stored
+     */
+    public synchronized V putIfAbsent(final int theKey, final V theValue) {
+        V result = get(theKey);
+        if (result == null) {
+            result = put(theKey, theValue);
+        }
+        return result;
+    }
+
+    /**
+     * Grows the table so a number of entries fit without further growth.
+     *
+     * @param theExpectedSize total entries expected
+     */
+    public synchronized void ensureCapacity(final int theExpectedSize) {
+        final int capacity = capacityFor(theExpectedSize);
+        if (capacity > myTable.myKeys.length) {
+            grow(myTable, capacity);
+        }
+    }
+
+    /**
+     * Number of entries.
+     *
+     * @return entry count
+     */
+    public int size() {
+        return mySize;
+    }
+
+    /**
+     * Checks whether the map is empty.
+     *
+     * @return true if there are no entries
+     */
+    public boolean isEmpty() {
+        return mySize == 0;
+    }
+
+    /**
+     * Removes every entry.
+     */
+    public synchronized void clear() {
+        myTable = new Table(MIN_CAPACITY);
+        mySize = 0;
+    }
+
+    /**
+     * Passes every value to an action, in table order.
+     *
+     * @param theAction the action
+     */
+    @SuppressWarnings("unchecked")
+    public void forEachValue(final Consumer<? super V> theAction) {
+        final Object[] values = myTable.myValues;
+        for (int i = 0; i < values.length; i++) {
+            final Object value = VALUES.getAcquire(values, i);
+            if (value != null) {
+                theAction.accept((V) value);
+            }
+        }
+    }
+
+    /**
+     * Returns a read-only view of this map. Lookups through the view box their key,
+     * and iterating it copies the entries present when the iteration starts.
+     *
+     * @return the view
+     */
+    public Map<Integer, V> asMap() {
+        return new MapView();
+    }
+
+    /**
+     * Finds a key's slot, or the empty slot where it would go.
+     *
+     * @param theTable the table
+     * @param theKey the key
+     * @return the slot
+     */
+    private static int find(final Table theTable, final int theKey) {
+        final int mask = theTable.myKeys.length - 1;
+        int slot = hash(theKey) & mask;
+        while (theTable.myValues[slot] != null && theTable.myKeys[slot] != theKey) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Copies the entries into a larger table and publishes it.
+     *
+     * @param theTable the current table
+     * @param theCapacity new table size, a power of two
+     * @return the new table
+     */
+    private Table grow(final Table theTable, final int theCapacity) {
+        if (theCapacity > MAX_CAPACITY) {
+            throw new IllegalStateException("Map is full");
+        }
+        final Table grown = new Table(theCapacity);
+        for (int i = 0; i < theTable.myKeys.length; i++) {
+            final Object value = theTable.myValues[i];
+            if (value != null) {
+                final int slot = find(grown, theTable.myKeys[i]);
+                grown.myKeys[slot] = theTable.myKeys[i];
+                grown.myValues[slot] = value;
+            }
+        }
+        myTable = grown;
+        return grown;
+    }
+
+    /**
+     * Table size that keeps a number of entries at most half full.
+     *
+     * @param theExpectedSize entries
+     * @return a power of two
+     */
+    private static int capacityFor(final int theExpectedSize) {
+        if (theExpectedSize < 0 || theExpectedSize > MAX_CAPACITY / 2) {
+            throw new IllegalArgumentException("Bad size: " + theExpectedSize);
+        }
+        int result = MIN_CAPACITY;
+        while (result < theExpectedSize * 2) {
+            result <<= 1;
+        }
+        return result;
+    }
+
+    /**
+     * Spreads sequential keys over the table.
+     *
+     * @param theKey the key
+     * @return its hash
+     */
+    private static int hash(final int theKey) {
+        final int h = theKey * SPREAD;
+        return h ^ (h >>> (Integer.SIZE / 2));
+    }
+
+    /**
+     * Read-only java.util.Map view of the enclosing map.
+     */
+    private final class MapView extends AbstractMap<Integer, V> {
+
+        @Override
+        public V get(final Object theKey) {
+            V result = null;
+            if (theKey instanceof Integer) {
+                result = IntObjectMap.this.get((Integer) theKey);
+            }
+            return result;
+        }
+
+        @Override
+        public boolean containsKey(final Object theKey) {
+            return get(theKey) != null;
+        }
+
+        @Override
+        public int size() {
+            return mySize;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return mySize == 0;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Set<Map.Entry<Integer, V>> entrySet() {
+            final Table table = myTable;
+            final Set<Map.Entry<Integer, V>> entries = new LinkedHashSet<Map.Entry<Integer, V>>();
+            for (int i = 0; i < table.myValues.length; i++) {
+                final Object value = VALUES.getAcquire(table.myValues, i);
+                if (value != null) {
+                    entries.add(new AbstractMap.SimpleImmutableEntry<Integer, V>(table.myKeys[i], (V) value));
+                }
+            }
+            return Collections.unmodifiableSet(entries);
+        }
+    }
+
+    /**
+     * Parallel key and value arrays; a slot is used when its value is non-null.
+     */
+    private static final class Table {
+
+        /**
+         * Keys.
+         */
+        private final int[] myKeys;
+
+        /**
+         * Values.
+         */
+        private final Object[] myValues;
+
+        /**
+         * Creates an empty table.
+         *
+         * @param theCapacity slot count, a power of two
+         */
+        Table(final int theCapacity) {
+            myKeys = new int[theCapacity];
+            myValues = new Object[theCapacity];
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Latency samples and their percentiles.
+ */
+
+package utility;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Collects latency samples in nanoseconds and reports count, percentiles and
+ * maximum. Samples are kept exactly (8 bytes each) and sorted when a percentile is
+ * first asked for. Not thread-safe; give each thread its own and {@link #addAll}
+ * them afterwards.
+ *
+ * @author roys4
+ * @version Winter 2021
+ */
+public final class LatencyStats {
+
+    /**
+     * Percentiles printed by {@link #toString()}.
+     */
+    private static final double[] REPORTED = {50, 90, 99, 99.9};
+
+    /**
+     * Highest percentile.
+     */
+    private static final double HUNDRED = 100.0;
+
+    /**
+     * Initial sample capacity.
+     */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * Nanoseconds per microsecond.
+     */
+    private static final double NANOS_PER_MICRO = 1000.0;
+
+    /**
+     * Samples in nanoseconds.
+     */
+    private long[] mySamples = new long[INITIAL_CAPACITY];
+
+    /**
+     * Number of samples.
+     */
+    private int myCount;
+
+    /**
+     * Whether the samples are sorted.
+     */
+    private boolean mySorted = true;
+
+    /**
+     * Adds a sample.
+     *
+     * @param theNanos latency in nanoseconds
+     */
+    public void record(final long theNanos) {
+        if (myCount == mySamples.length) {
+            mySamples = Arrays.copyOf(mySamples, myCount * 2);
+        }
+        mySamples[myCount++] = theNanos;
+        mySorted = false;
+    }
+
+    /**
+     * Adds every sample of another collector.
+     *
+     * @param theOther the other collector
+     */
+    public void addAll(final LatencyStats theOther) {
+        if (myCount + theOther.myCount > mySamples.length) {
+            mySamples = Arrays.copyOf(mySamples, Math.max(mySamples.length * 2, myCount + theOther.myCount));
+        }
+        System.arraycopy(theOther.mySamples, 0, mySamples, myCount, theOther.myCount);
+        myCount += theOther.myCount;
+        mySorted = false;
+    }
+
+    /**
+     * Number of samples.
+     *
+     * @return sample count
+     */
+    public int getCount() {
+        return myCount;
+    }
+
+    /**
+     * A percentile of the samples (nearest rank).
+     *
+     * @param thePercentile between 0 and 100
+     * @return latency in nanoseconds, 0 without samples
+     */
+    public long percentile(final double thePercentile) {
+        if (thePercentile < 0 || thePercentile > HUNDRED) {
+            throw new IllegalArgumentException("Bad percentile: " + thePercentile);
+        }
+        long result = 0;
+        if (myCount > 0) {
+            if (!mySorted) {
+                Arrays.sort(mySamples, 0, myCount);
+                mySorted = true;
+            }
+            final int rank = (int) Math.ceil(thePercentile / HUNDRED * myCount);
+            result = mySamples[Math.max(rank, 1) - 1];
+        }
+        return result;
+    }
+
+    /**
+     * Largest sample.
+     *
+     * @return latency in nanoseconds, 0 without samples
+     */
+    public long getMax() {
+        return percentile(HUNDRED);
+    }
+
+    /**
+     * Count, p50, p90, p99, p99.9 and maximum, in microseconds.
+     *
+     * @return the summary
+     */
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("n=").append(myCount);
+        for (final double percentile : REPORTED) {
+            sb.append(String.format(Locale.ROOT, ", p%s %.1f us", format(percentile),
+                                    percentile(percentile) / NANOS_PER_MICRO));
+        }
+        sb.append(String.format(Locale.ROOT, ", max %.1f us", getMax() / NANOS_PER_MICRO));
+        return sb.toString();
+    }
+
+    /**
+     * Prints a percentile without a needless fraction.
+     *
+     * @param thePercentile the percentile
+     * @return e.g. "99" or "99.9"
+     */
+    private static String format(final double thePercentile) {
+        String result = Double.toString(thePercentile);
+        if (thePercentile == Math.rint(thePercentile)) {
+            result = Long.toString((long) thePercentile);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ * Memory-mapped reader for the registered user file.
+ */
+
+package utility;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import model.User;
+
+/**
+ * Reads the comma separated user file by memory-mapping it and tokenizing the
+ * bytes in place. The file is cut into chunks that always end on a line boundary
+ * and the chunks are parsed in parallel. Results are merged in file order, so
+ * when a user name appears more than once the last line wins, exactly like
+ * {@link FileLoader#readItemsFromFile(String)}.
+ *
+ * Blank lines and lines without three fields are skipped.
+ *
+ * @author roys4
+ * @version Winter 2021
+ */
+final class MappedUserFileReader {
+
+    /**
+     * Smallest chunk worth handing to its own task.
+     */
+    private static final long MIN_CHUNK_BYTES = 1L << 20;
+
+    /**
+     * Largest chunk, kept well below the 2GB limit of a single mapping.
+     */
+    private static final long MAX_CHUNK_BYTES = 1L << 28;
+
+    /**
+     * Buffer size used while scanning forward for a line boundary.
+     */
+    private static final int SCAN_BUFFER_BYTES = 4096;
+
+    /**
+     * Initial size of the per-chunk token scratch buffer.
+     */
+    private static final int SCRATCH_BYTES = 256;
+
+    /**
+     * Number of fields on a user line (name, password, VIP flag).
+     */
+    private static final int FIELD_COUNT = 3;
+
+    /**
+     * Bit that folds an ASCII upper case letter to lower case.
+     */
+    private static final int LOWER_CASE_BIT = 0x20;
+
+    /**
+     * The bytes of "true", compared case-insensitively like Boolean.parseBoolean.
+     */
+    private static final byte[] TRUE_BYTES = "true".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * A private constructor, to prevent external instantiation.
+     */
+    private MappedUserFileReader() {
+
+    }
+
+    /**
+     * Reads all users from a file.
+     *
+     * @param thePath the user file
+     * @return map of user name to user, last line wins for duplicate names
+     * @throws IOException if the file cannot be read
+     */
+    static Map<String, User> read(final Path thePath) throws IOException {
+        return read(thePath, chunkSize(Files.size(thePath)));
+    }
+
+    /**
+     * Reads all users from a file cut into chunks of a given size.
+     *
+     * @param thePath the user file
+     * @param theChunkBytes bytes per chunk before it is extended to a line boundary
+     * @return map of user name to user, last line wins for duplicate names
+     * @throws IOException if the file cannot be read
+     */
+    static Map<String, User> read(final Path thePath, final long theChunkBytes) throws IOException {
+        if (theChunkBytes <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + theChunkBytes);
+        }
+        try (FileChannel channel = FileChannel.open(thePath, StandardOpenOption.READ)) {
+            final long[] bounds = chunkBounds(channel, theChunkBytes);
+            final List<List<User>> chunks;
+            try {
+                chunks = IntStream.range(0, bounds.length - 1).parallel()
+                                  .mapToObj(i -> parseChunk(channel, bounds[i], bounds[i + 1]))
+                                  .collect(Collectors.toList());
+            } catch (final UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            int total = 0;
+            for (final List<User> chunk : chunks) {
+                total += chunk.size();
+            }
+            final Map<String, User> userList = new HashMap<String, User>(capacityFor(total));
+            for (final List<User> chunk : chunks) {
+                for (final User user : chunk) {
+                    userList.put(user.getMyName(), user);
+                }
+            }
+            return userList;
+        }
+    }
+
+    /**
+     * HashMap capacity that holds the given number of entries without rehashing.
+     *
+     * @param theEntries expected number of entries
+     * @return initial capacity
+     */
+    static int capacityFor(final int theEntries) {
+        final float loadFactor = 0.75f;
+        return (int) (theEntries / loadFactor) + 1;
+    }
+
+    /**
+     * Chunk size that gives each processor a chunk, but no chunk smaller than
+     * {@link #MIN_CHUNK_BYTES} unless the file is.
+     *
+     * @param theSize the file size
+     * @return bytes per chunk
+     */
+    private static long chunkSize(final long theSize) {
+        final int parallelism = Runtime.getRuntime().availableProcessors();
+        final long wanted = Math.max(1, Math.min(parallelism, theSize / MIN_CHUNK_BYTES));
+        return Math.min(MAX_CHUNK_BYTES, Math.max(1, (theSize + wanted - 1) / wanted));
+    }
+
+    /**
+     * Splits the file into chunks which start right after a newline.
+     *
+     * @param theChannel the open file
+     * @param theChunkBytes bytes per chunk before it is extended to a line boundary
+     * @return chunk offsets, the last entry being the file size
+     * @throws IOException if the file cannot be read
+     */
+    private static long[] chunkBounds(final FileChannel theChannel, final long theChunkBytes)
+        throws IOException {
+        final long size = theChannel.size();
+        final long chunkSize = Math.min(MAX_CHUNK_BYTES, theChunkBytes);
+
+        final List<Long> bounds = new ArrayList<Long>();
+        bounds.add(0L);
+        long start = 0;
+        while (start < size) {
+            long end = Math.min(size, start + chunkSize);
+            if (end < size) {
+                end = nextLineStart(theChannel, end, size);
+            }
+            bounds.add(end);
+            start = end;
+        }
+        if (bounds.size() == 1) {
+            bounds.add(0L);
+        }
+        final long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Finds the offset of the first byte after the next newline at or after a position.
+     *
+     * @param theChannel the open file
+     * @param thePosition where to start looking
+     * @param theSize the file size
+     * @return start of the next line, or the file size if there is none
+     * @throws IOException if the file cannot be read
+     */
+    private static long nextLineStart(final FileChannel theChannel, final long thePosition,
+                                      final long theSize) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_BYTES);
+        long position = thePosition;
+        long result = theSize;
+        while (position < theSize && result == theSize) {
+            buffer.clear();
+            final int read = theChannel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    result = position + i + 1;
+                    break;
+                }
+            }
+            position += read;
+        }
+        return result;
+    }
+
+    /**
+     * Parses every user line in one chunk of the file.
+     *
+     * @param theChannel the open file
+     * @param theStart first byte of the chunk, always the start of a line
+     * @param theEnd end of the chunk (exclusive), always the start of a line or EOF
+     * @return the users in file order
+     */
+    private static List<User> parseChunk(final FileChannel theChannel, final long theStart,
+                                         final long theEnd) {
+        final List<User> users = new ArrayList<User>();
+        if (theEnd <= theStart) {
+            return users;
+        }
+        final MappedByteBuffer buffer;
+        try {
+            buffer = theChannel.map(FileChannel.MapMode.READ_ONLY, theStart, theEnd - theStart);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        final int limit = buffer.limit();
+        final int[] fieldStart = new int[FIELD_COUNT];
+        final int[] fieldEnd = new int[FIELD_COUNT];
+        byte[] scratch = new byte[SCRATCH_BYTES];
+        int lineStart = 0;
+        while (lineStart < limit) {
+            int lineEnd = lineStart;
+            int fields = 0;
+            int tokenStart = lineStart;
+            while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+                if (buffer.get(lineEnd) == ',' && fields < FIELD_COUNT) {
+                    fieldStart[fields] = tokenStart;
+                    fieldEnd[fields] = lineEnd;
+                    fields++;
+                    tokenStart = lineEnd + 1;
+                }
+                lineEnd++;
+            }
+            int contentEnd = lineEnd;
+            if (contentEnd > lineStart && buffer.get(contentEnd - 1) == '\r') {
+                contentEnd--;
+            }
+            if (fields < FIELD_COUNT && tokenStart <= contentEnd) {
+                fieldStart[fields] = tokenStart;
+                fieldEnd[fields] = Math.max(tokenStart, contentEnd);
+                fields++;
+            }
+
+            if (fields == FIELD_COUNT) {
+                final int longest = Math.max(fieldEnd[0] - fieldStart[0], fieldEnd[1] - fieldStart[1]);
+                if (longest > scratch.length) {
+                    scratch = new byte[longest];
+                }
+                final String name = decode(buffer, fieldStart[0], fieldEnd[0], scratch);
+                final String password = decode(buffer, fieldStart[1], fieldEnd[1], scratch);
+                final boolean isVIP = isTrue(buffer, fieldStart[2], fieldEnd[2]);
+                users.add(new User(name, password, isVIP));
+            }
+            lineStart = lineEnd + 1;
+        }
+        return users;
+    }
+
+    /**
+     * Decodes a UTF-8 token of the mapped buffer.
+     *
+     * @param theBuffer the mapped chunk
+     * @param theStart first byte of the token
+     * @param theEnd end of the token (exclusive)
+     * @param theScratch reusable copy buffer, at least as long as the token
+     * @return the token as a String
+     */
+    private static String decode(final ByteBuffer theBuffer, final int theStart, final int theEnd,
+                                 final byte[] theScratch) {
+        final int length = theEnd - theStart;
+        for (int i = 0; i < length; i++) {
+            theScratch[i] = theBuffer.get(theStart + i);
+        }
+        return new String(theScratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Same test as Boolean.parseBoolean, without building a String.
+     *
+     * @param theBuffer the mapped chunk
+     * @param theStart first byte of the token
+     * @param theEnd end of the token (exclusive)
+     * @return true if the token is "true" ignoring case
+     */
+    private static boolean isTrue(final ByteBuffer theBuffer, final int theStart, final int theEnd) {
+        boolean result = theEnd - theStart == TRUE_BYTES.length;
+        for (int i = 0; result && i < TRUE_BYTES.length; i++) {
+            result = (theBuffer.get(theStart + i) | LOWER_CASE_BIT) == TRUE_BYTES[i];
+        }
+        return result;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Fixed-point money helpers.
+ */
+
+package utility;
+
+import java.math.BigDecimal;
+
+/**
+ * Converts between BigDecimal dollar amounts and scaled long "units" of
+ * 10^-8 dollars. Daily rates have at most four decimal places, and billing adds two
+ * decimal places for insurance and two for tax, so every bill amount is exact in
+ * units and bill arithmetic can stay in primitive longs.
+ * 
+ * @author roys4
+ * @version Winter 2021
+ */
+public final class Money {
+
+    /**
+     * Decimal places of a unit.
+     */
+    public static final int SCALE = 8;
+
+    /**
+     * Units in one dollar.
+     */
+    public static final long UNITS_PER_DOLLAR = 100_000_000L;
+
+    /**
+     * Units in one cent.
+     */
+    public static final long UNITS_PER_CENT = UNITS_PER_DOLLAR / 100;
+
+    /**
+     * Most decimal places a daily rate may have.
+     */
+    public static final int RATE_SCALE = 4;
+
+    /**
+     * A private constructor, to prevent external instantiation.
+     */
+    private Money() {
+
+    }
+
+    /**
+     * Converts a dollar amount to units.
+     * 
+     * @param theAmount amount in dollars
+     * @return the same amount in units
+     * @throws ArithmeticException if the amount has more than {@link #SCALE} decimals
+     *         or does not fit in a long
+     */
+    public static long toUnits(final BigDecimal theAmount) {
+        return theAmount.movePointRight(SCALE).longValueExact();
+    }
+
+    /**
+     * Converts a daily rate to units, checking that billing on it stays exact.
+     * 
+     * @param theRate daily rate in dollars
+     * @return the rate in units
+     * @throws IllegalArgumentException if the rate has more than {@link #RATE_SCALE} decimals
+     */
+    public static long rateToUnits(final BigDecimal theRate) {
+        if (theRate.stripTrailingZeros().scale() > RATE_SCALE) {
+            throw new IllegalArgumentException("Rate has more than " + RATE_SCALE + " decimals: " + theRate);
+        }
+        return toUnits(theRate);
+    }
+
+    /**
+     * Converts units back to a dollar amount.
+     * 
+     * @param theUnits amount in units
+     * @return the same amount in dollars, with scale {@link #SCALE}
+     */
+    public static BigDecimal toBigDecimal(final long theUnits) {
+        return BigDecimal.valueOf(theUnits, SCALE);
+    }
+
+    /**
+     * Rounds units to whole cents, half to even like the currency formats do.
+     * 
+     * @param theUnits amount in units
+     * @return the amount in cents
+     */
+    public static long toCents(final long theUnits) {
+        long cents = Math.floorDiv(theUnits, UNITS_PER_CENT);
+        final long remainder = Math.floorMod(theUnits, UNITS_PER_CENT);
+        final long half = UNITS_PER_CENT / 2;
+        if (remainder > half || remainder == half && (cents & 1) != 0) {
+            cents++;
+        }
+        return cents;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Wall-clock timings of the phases of a multi-step operation.
+ */
+
+package utility;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Records how long each named phase of an operation took, in the order the phases
+ * ran. Recording the same phase twice adds the times. Not thread-safe; phases are
+ * recorded by the thread driving the operation.
+ *
+ * @author roys4
+ * @version Winter 2021
+ */
+public final class PhaseTimings {
+
+    /**
+     * Nanoseconds per millisecond.
+     */
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    /**
+     * Nanoseconds by phase, in order of first recording.
+     */
+    private final Map<String, Long> myNanos = new LinkedHashMap<String, Long>();
+
+    /**
+     * Adds time to a phase.
+     *
+     * @param thePhase phase name
+     * @param theNanos elapsed nanoseconds
+     */
+    public void record(final String thePhase, final long theNanos) {
+        myNanos.merge(thePhase, theNanos, Long::sum);
+    }
+
+    /**
+     * Adds the time since a System.nanoTime reading to a phase.
+     *
+     * @param thePhase phase name
+     * @param theStartNanos System.nanoTime when the phase started
+     * @return System.nanoTime now, to start the next phase with
+     */
+    public long recordSince(final String thePhase, final long theStartNanos) {
+        final long now = System.nanoTime();
+        record(thePhase, now - theStartNanos);
+        return now;
+    }
+
+    /**
+     * Time spent in a phase.
+     *
+     * @param thePhase phase name
+     * @return nanoseconds, 0 if the phase was never recorded
+     */
+    public long getNanos(final String thePhase) {
+        return myNanos.getOrDefault(thePhase, 0L);
+    }
+
+    /**
+     * Total time of all phases.
+     *
+     * @return nanoseconds
+     */
+    public long getTotalNanos() {
+        long result = 0;
+        for (final long nanos : myNanos.values()) {
+            result += nanos;
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        for (final Map.Entry<String, Long> phase : myNanos.entrySet()) {
+            sb.append(phase.getKey()).append(' ')
+              .append(String.format("%.1f", phase.getValue() / NANOS_PER_MILLI)).append(" ms, ");
+        }
+        sb.append("total ").append(String.format("%.1f", getTotalNanos() / NANOS_PER_MILLI)).append(" ms");
+        return sb.toString();
+    }
+}
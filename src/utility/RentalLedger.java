@@ -0,0 +1,1078 @@
+/*
+ * Append-only ledger of rentals, drop-offs and bills.
+ */
+
+package utility;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * A durable, append-only log of rent, drop-off, bill, void and clear events, with
+ * periodic checkpoints, from which the active rentals and bills are rebuilt after
+ * a restart.
+ *
+ * Events are queued by the renting threads and written by one background thread,
+ * which appends everything queued in a single FileChannel write followed by one
+ * fsync, like {@link UserFileWriter}. Every record carries its length and a CRC32,
+ * so a record torn by a crash is detected and cut off on the next open. A batch
+ * whose write or fsync fails is cut off right away and its events fail, so later
+ * records never follow a torn one; if even that fails, the ledger fails every
+ * later event.
+ *
+ * Vehicles are recorded by VIN, which, unlike vehicle IDs, stays the same across
+ * restarts.
+ *
+ * The writer thread also keeps the state the log describes (bills by ID and the
+ * VINs of rented vehicles). Every so many events it writes that state, with the log
+ * position it covers, to a checkpoint file next to the log, through a temporary
+ * file and an atomic move. Opening a ledger loads the checkpoint and replays only
+ * the events after it; a missing or damaged checkpoint means a full replay.
+ *
+ * Log record: int length, byte type, payload, int CRC32 of type and payload.
+ * Strings are a short byte count and UTF-8 bytes. Rent, bill and void payload: int
+ * bill ID, int days, long daily rate units, user name, VIN. Drop payload: VIN.
+ *
+ * @author roys4
+ * @version Winter 2021
+ */
+public final class RentalLedger implements Closeable {
+
+    /**
+     * Default number of events between checkpoints.
+     */
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 100_000;
+
+    /**
+     * Name of the timing phase that loads the checkpoint.
+     */
+    public static final String CHECKPOINT_PHASE = "checkpoint";
+
+    /**
+     * Name of the timing phase that replays the log after the checkpoint.
+     */
+    public static final String REPLAY_PHASE = "replay";
+
+    /**
+     * First int of a ledger log ("RZLG").
+     */
+    private static final int MAGIC = 0x525A4C47;
+
+    /**
+     * First int of a checkpoint file ("RZCK").
+     */
+    private static final int CHECKPOINT_MAGIC = 0x525A434B;
+
+    /**
+     * Format version.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Bytes of the log header (magic and version).
+     */
+    private static final int HEADER_BYTES = 2 * Integer.BYTES;
+
+    /**
+     * Suffix of the checkpoint file name.
+     */
+    private static final String CHECKPOINT_SUFFIX = ".ckpt";
+
+    /**
+     * Suffix of the temporary checkpoint file name.
+     */
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * Event type: a vehicle was rented and billed.
+     */
+    private static final byte RENT = 1;
+
+    /**
+     * Event type: a vehicle was dropped off.
+     */
+    private static final byte DROP = 2;
+
+    /**
+     * Event type: a bill was recorded without a rental.
+     */
+    private static final byte BILL = 3;
+
+    /**
+     * Event type: every rental and bill was cleared.
+     */
+    private static final byte CLEAR = 4;
+
+    /**
+     * Queue marker: write a checkpoint now; never logged.
+     */
+    private static final byte CHECKPOINT = 5;
+
+    /**
+     * Event type: a recorded rental was undone before the vehicle was handed over.
+     */
+    private static final byte VOID = 6;
+
+    /**
+     * Longest user name or VIN, in UTF-8 bytes.
+     */
+    private static final int MAX_STRING_BYTES = 0xffff;
+
+    /**
+     * Mask to read an unsigned short.
+     */
+    private static final int USHORT_MASK = 0xffff;
+
+    /**
+     * Fixed bytes of a bill entry: bill ID, days, rate and two string lengths.
+     */
+    private static final int BILL_FIXED_BYTES = 2 * Integer.BYTES + Long.BYTES + 2 * Short.BYTES;
+
+    /**
+     * Bytes a record adds around its type and payload: length and CRC.
+     */
+    private static final int FRAME_BYTES = 2 * Integer.BYTES;
+
+    /**
+     * Largest record.
+     */
+    private static final int MAX_RECORD_BYTES = FRAME_BYTES + 1 + BILL_FIXED_BYTES + 2 * MAX_STRING_BYTES;
+
+    /**
+     * Bound of the pending event queue.
+     */
+    private static final int QUEUE_CAPACITY = 8192;
+
+    /**
+     * Most events written in a single batch.
+     */
+    private static final int MAX_BATCH = 1024;
+
+    /**
+     * How long the writer thread waits for work before re-checking its state.
+     */
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    /**
+     * Size of the write and replay buffers.
+     */
+    private static final int BUFFER_BYTES = 1 << 20;
+
+    /**
+     * The log file.
+     */
+    private final Path myLog;
+
+    /**
+     * The checkpoint file.
+     */
+    private final Path myCheckpoint;
+
+    /**
+     * Events between checkpoints.
+     */
+    private final int myCheckpointInterval;
+
+    /**
+     * Pending events waiting for the writer thread.
+     */
+    private final BlockingQueue<PendingEvent> myQueue =
+        new ArrayBlockingQueue<PendingEvent>(QUEUE_CAPACITY);
+
+    /**
+     * Bills by ID, as of the last written event; only touched by the writer thread after open.
+     */
+    private final Map<Integer, BillEntry> myBills = new LinkedHashMap<Integer, BillEntry>();
+
+    /**
+     * VINs of rented vehicles, as of the last written event; only touched by the writer thread after open.
+     */
+    private final Set<String> myRented = new HashSet<String>();
+
+    /**
+     * Bills recovered when the ledger was opened.
+     */
+    private final List<BillEntry> myRecoveredBills;
+
+    /**
+     * VINs of vehicles rented when the ledger was opened.
+     */
+    private final List<String> myRecoveredRentals;
+
+    /**
+     * Reusable encode buffer, only touched by the writer thread.
+     */
+    private final ByteBuffer myBuffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+
+    /**
+     * Checksum of records, only touched by the writer thread after open.
+     */
+    private final CRC32 myCrc = new CRC32();
+
+    /**
+     * Open channel to the log, positioned at its end.
+     */
+    private final FileChannel myChannel;
+
+    /**
+     * The background thread doing all writes.
+     */
+    private final Thread myThread;
+
+    /**
+     * Events written since the last checkpoint.
+     */
+    private int myEventsSinceCheckpoint;
+
+    /**
+     * Failure that left the log end unknown, or null; only touched by the writer thread.
+     */
+    private IOException myFailure;
+
+    /**
+     * Events replayed from the log when it was opened.
+     */
+    private final long myReplayedEvents;
+
+    /**
+     * Cleared by close() to stop the writer thread once the queue is drained.
+     */
+    private volatile boolean myRunning = true;
+
+    /**
+     * Opens a ledger, recovering its state.
+     *
+     * @param theLog the log file
+     * @param theCheckpointInterval events between checkpoints
+     * @param theTimings receives the checkpoint and replay times
+     * @throws IOException if the files cannot be read or written, or the log is not a ledger
+     */
+    private RentalLedger(final Path theLog, final int theCheckpointInterval, final PhaseTimings theTimings)
+        throws IOException {
+        if (theCheckpointInterval <= 0) {
+            throw new IllegalArgumentException();
+        }
+        myLog = Objects.requireNonNull(theLog);
+        myCheckpoint = theLog.resolveSibling(theLog.getFileName() + CHECKPOINT_SUFFIX);
+        myCheckpointInterval = theCheckpointInterval;
+        myChannel = FileChannel.open(theLog, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                     StandardOpenOption.WRITE);
+        long replayed = 0;
+        try {
+            long start = System.nanoTime();
+            long position = readHeader();
+            position = Math.max(position, loadCheckpoint(myChannel.size()));
+            start = theTimings.recordSince(CHECKPOINT_PHASE, start);
+            replayed = replay(position);
+            theTimings.recordSince(REPLAY_PHASE, start);
+        } catch (final IOException e) {
+            myChannel.close();
+            throw e;
+        }
+        myReplayedEvents = replayed;
+        // A long replay is checkpointed soon, so the next open does not repeat it
+        myEventsSinceCheckpoint = (int) Math.min(replayed, theCheckpointInterval);
+        myRecoveredBills = Collections.unmodifiableList(new ArrayList<BillEntry>(myBills.values()));
+        myRecoveredRentals = Collections.unmodifiableList(new ArrayList<String>(myRented));
+        myThread = new Thread(this::runLoop, "rental-ledger-writer");
+        myThread.setDaemon(true);
+        myThread.start();
+    }
+
+    /**
+     * Opens a ledger with the default checkpoint interval, creating it if needed.
+     *
+     * @param theLog the log file; the checkpoint is stored next to it
+     * @return the ledger, with its recovered state
+     * @throws IOException if the files cannot be read or written, or the log is not a ledger
+     */
+    public static RentalLedger open(final Path theLog) throws IOException {
+        return open(theLog, DEFAULT_CHECKPOINT_INTERVAL, new PhaseTimings());
+    }
+
+    /**
+     * Opens a ledger, creating it if needed, and recovers its state from the last
+     * checkpoint and the events after it. A torn record at the end of the log is
+     * cut off.
+     *
+     * @param theLog the log file; the checkpoint is stored next to it
+     * @param theCheckpointInterval events between checkpoints
+     * @param theTimings receives the {@link #CHECKPOINT_PHASE} and {@link #REPLAY_PHASE} times
+     * @return the ledger, with its recovered state
+     * @throws IOException if the files cannot be read or written, or the log is not a ledger
+     */
+    public static RentalLedger open(final Path theLog, final int theCheckpointInterval,
+                                    final PhaseTimings theTimings) throws IOException {
+        return new RentalLedger(theLog, theCheckpointInterval, theTimings);
+    }
+
+    /**
+     * Bills recorded when the ledger was opened, in the order they were first recorded.
+     *
+     * @return the recovered bills
+     */
+    public List<BillEntry> getMyRecoveredBills() {
+        return myRecoveredBills;
+    }
+
+    /**
+     * Vehicles rented and not dropped off when the ledger was opened.
+     *
+     * @return their VINs
+     */
+    public List<String> getMyRecoveredRentals() {
+        return myRecoveredRentals;
+    }
+
+    /**
+     * Number of log events replayed after the checkpoint when the ledger was opened.
+     *
+     * @return event count
+     */
+    public long getMyReplayedEvents() {
+        return myReplayedEvents;
+    }
+
+    /**
+     * The log file.
+     *
+     * @return the log path
+     */
+    public Path getMyLog() {
+        return myLog;
+    }
+
+    /**
+     * Records a rental and its bill.
+     *
+     * @param theBill the bill of the rental
+     * @return future completed once the event is durable, or exceptionally on I/O failure
+     */
+    public CompletableFuture<Void> recordRent(final BillEntry theBill) {
+        return enqueue(new PendingEvent(RENT, Objects.requireNonNull(theBill), theBill.getMyVIN()));
+    }
+
+    /**
+     * Records a bill that is not tied to a rental of the live fleet.
+     *
+     * @param theBill the bill
+     * @return future completed once the event is durable, or exceptionally on I/O failure
+     */
+    public CompletableFuture<Void> recordBill(final BillEntry theBill) {
+        return enqueue(new PendingEvent(BILL, Objects.requireNonNull(theBill), theBill.getMyVIN()));
+    }
+
+    /**
+     * Records that a rental recorded by {@link #recordRent(BillEntry)} was undone: its
+     * bill is dropped and its vehicle is no longer rented.
+     *
+     * @param theBill the bill of the rental
+     * @return future completed once the event is durable, or exceptionally on I/O failure
+     */
+    public CompletableFuture<Void> recordVoid(final BillEntry theBill) {
+        return enqueue(new PendingEvent(VOID, Objects.requireNonNull(theBill), theBill.getMyVIN()));
+    }
+
+    /**
+     * Records a drop-off.
+     *
+     * @param theVIN VIN of the vehicle dropped off
+     * @return future completed once the event is durable, or exceptionally on I/O failure
+     * @throws IllegalArgumentException if the VIN is longer than 65535 UTF-8 bytes
+     */
+    public CompletableFuture<Void> recordDrop(final String theVIN) {
+        encode(theVIN);
+        return enqueue(new PendingEvent(DROP, null, theVIN));
+    }
+
+    /**
+     * Records that every rental and bill was cleared.
+     *
+     * @return future completed once the event is durable, or exceptionally on I/O failure
+     */
+    public CompletableFuture<Void> recordClear() {
+        return enqueue(new PendingEvent(CLEAR, null, null));
+    }
+
+    /**
+     * Writes a checkpoint of everything recorded so far.
+     *
+     * @return future completed once the checkpoint is in place
+     */
+    public CompletableFuture<Void> checkpoint() {
+        return enqueue(new PendingEvent(CHECKPOINT, null, null));
+    }
+
+    /**
+     * Writes everything still queued, checkpoints and stops the writer thread.
+     */
+    @Override
+    public void close() {
+        myRunning = false;
+        boolean interrupted = false;
+        while (myThread.isAlive()) {
+            try {
+                myThread.join();
+            } catch (final InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Queues an event, blocking while the queue is full.
+     *
+     * @param theEvent the event
+     * @return its future
+     */
+    private CompletableFuture<Void> enqueue(final PendingEvent theEvent) {
+        if (!myRunning) {
+            throw new IllegalStateException("Ledger is closed");
+        }
+        boolean queued = false;
+        try {
+            // Bounded waits, so a caller blocked on a full queue sees close()
+            while (!queued && myRunning) {
+                queued = myQueue.offer(theEvent, IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+            }
+            // Queued after the writer's last drain: nobody would complete it
+            if (!queued || !myRunning && myQueue.remove(theEvent)) {
+                theEvent.myFuture.completeExceptionally(new IllegalStateException("Ledger is closed"));
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            theEvent.myFuture.completeExceptionally(e);
+        }
+        return theEvent.myFuture;
+    }
+
+    /**
+     * Body of the writer thread.
+     */
+    private void runLoop() {
+        final List<PendingEvent> batch = new ArrayList<PendingEvent>(MAX_BATCH);
+        while (myRunning || !myQueue.isEmpty()) {
+            final PendingEvent first = pollQueue();
+            if (first != null) {
+                batch.add(first);
+                myQueue.drainTo(batch, MAX_BATCH - 1);
+                writeBatch(batch);
+                batch.clear();
+            }
+        }
+        final List<PendingEvent> late = new ArrayList<PendingEvent>();
+        myQueue.drainTo(late);
+        for (final PendingEvent event : late) {
+            event.myFuture.completeExceptionally(new IllegalStateException("Ledger is closed"));
+        }
+        try {
+            if (myEventsSinceCheckpoint > 0) {
+                writeCheckpoint();
+            }
+        } catch (final IOException e) {
+            e.printStackTrace();
+        }
+        try {
+            myChannel.close();
+        } catch (final IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Waits a bounded time for the next queued event.
+     *
+     * @return the next event, or null if none arrived
+     */
+    private PendingEvent pollQueue() {
+        PendingEvent result = null;
+        try {
+            result = myQueue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (final InterruptedException e) {
+            // only close() stops the writer; keep draining
+            result = null;
+        }
+        return result;
+    }
+
+    /**
+     * Appends a batch of events, fsyncs once, applies them and completes their
+     * futures, or fails them all if the batch cannot be made durable.
+     *
+     * @param theBatch the events
+     */
+    private void writeBatch(final List<PendingEvent> theBatch) {
+        IOException failure = myFailure;
+        if (failure == null) {
+            failure = append(theBatch);
+        }
+        if (failure != null) {
+            for (final PendingEvent event : theBatch) {
+                event.myFuture.completeExceptionally(failure);
+            }
+        } else {
+            boolean checkpointRequested = false;
+            for (final PendingEvent event : theBatch) {
+                if (event.myType == CHECKPOINT) {
+                    checkpointRequested = true;
+                } else {
+                    apply(event.myType, event.myBill, event.myVIN);
+                    myEventsSinceCheckpoint++;
+                }
+            }
+            if (checkpointRequested || myEventsSinceCheckpoint >= myCheckpointInterval) {
+                try {
+                    writeCheckpoint();
+                } catch (final IOException e) {
+                    // The log still has every event; the next checkpoint or a full replay covers them
+                    e.printStackTrace();
+                }
+            }
+            for (final PendingEvent event : theBatch) {
+                event.myFuture.complete(null);
+            }
+        }
+    }
+
+    /**
+     * Appends the records of a batch and fsyncs them. A batch that fails is cut off
+     * the log again; if that fails too, the ledger stops writing.
+     *
+     * @param theBatch the events
+     * @return null if the batch is durable, else the failure
+     */
+    private IOException append(final List<PendingEvent> theBatch) {
+        IOException result = null;
+        long start = -1;
+        try {
+            start = myChannel.position();
+            myBuffer.clear();
+            for (final PendingEvent event : theBatch) {
+                if (event.myType != CHECKPOINT) {
+                    if (myBuffer.remaining() < MAX_RECORD_BYTES) {
+                        flushBuffer();
+                    }
+                    encode(event);
+                }
+            }
+            flushBuffer();
+            myChannel.force(false);
+        } catch (final IOException e) {
+            result = e;
+            cutOff(start, e);
+        }
+        return result;
+    }
+
+    /**
+     * Removes a failed batch from the end of the log, or stops the ledger if the log
+     * end cannot be restored.
+     *
+     * @param theStart log position where the batch started, or -1 if unknown
+     * @param theFailure the failure of the batch
+     */
+    private void cutOff(final long theStart, final IOException theFailure) {
+        boolean cut = false;
+        if (theStart >= 0) {
+            // Made durable by the next batch's fsync, which needs the new length
+            try {
+                myChannel.truncate(theStart);
+                myChannel.position(theStart);
+                cut = true;
+            } catch (final IOException e) {
+                theFailure.addSuppressed(e);
+            }
+        }
+        if (!cut) {
+            myFailure = new IOException("Ledger stopped: a failed write could not be cut off "
+                                        + myLog, theFailure);
+        }
+    }
+
+    /**
+     * Writes out the encode buffer.
+     *
+     * @throws IOException if the write fails
+     */
+    private void flushBuffer() throws IOException {
+        myBuffer.flip();
+        while (myBuffer.hasRemaining()) {
+            myChannel.write(myBuffer);
+        }
+        myBuffer.clear();
+    }
+
+    /**
+     * Encodes one event record into the write buffer.
+     *
+     * @param theEvent the event
+     */
+    private void encode(final PendingEvent theEvent) {
+        final int start = myBuffer.position();
+        myBuffer.putInt(0);
+        myBuffer.put(theEvent.myType);
+        if (theEvent.myBill != null) {
+            putBill(myBuffer, theEvent.myBill);
+        } else if (theEvent.myType == DROP) {
+            putString(myBuffer, theEvent.myVIN.getBytes(StandardCharsets.UTF_8));
+        }
+        final int end = myBuffer.position();
+        myBuffer.putInt(start, end - start - Integer.BYTES);
+        myCrc.reset();
+        myCrc.update(myBuffer.duplicate().position(start + Integer.BYTES).limit(end));
+        myBuffer.putInt((int) myCrc.getValue());
+    }
+
+    /**
+     * Applies an event to the recorded state.
+     *
+     * @param theType event type
+     * @param theBill bill of a rent or bill event
+     * @param theVIN vehicle of a rent or drop event
+     */
+    private void apply(final byte theType, final BillEntry theBill, final String theVIN) {
+        if (theType == RENT) {
+            myBills.put(theBill.getMyBillID(), theBill);
+            myRented.add(theVIN);
+        } else if (theType == BILL) {
+            myBills.put(theBill.getMyBillID(), theBill);
+        } else if (theType == DROP) {
+            myRented.remove(theVIN);
+        } else if (theType == VOID) {
+            myBills.remove(theBill.getMyBillID());
+            myRented.remove(theVIN);
+        } else if (theType == CLEAR) {
+            myBills.clear();
+            myRented.clear();
+        }
+    }
+
+    /**
+     * Checks the log header, writing one to a new log.
+     *
+     * @return position of the first record
+     * @throws IOException if the log cannot be read or is not a ledger
+     */
+    private long readHeader() throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        if (myChannel.size() == 0) {
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            while (header.hasRemaining()) {
+                myChannel.write(header, header.position());
+            }
+            myChannel.force(true);
+        } else {
+            int read = 0;
+            while (header.hasRemaining() && read >= 0) {
+                read = myChannel.read(header, header.position());
+            }
+            header.flip();
+            if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Not a rental ledger: " + myLog);
+            }
+        }
+        return HEADER_BYTES;
+    }
+
+    /**
+     * Loads the checkpoint, if there is an intact one that the log still covers.
+     *
+     * @param theLogSize current log size
+     * @return log position the checkpoint covers, or 0 if none was loaded
+     * @throws IOException if the checkpoint exists but cannot be read
+     */
+    private long loadCheckpoint(final long theLogSize) throws IOException {
+        long result = 0;
+        if (Files.exists(myCheckpoint)) {
+            final ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(myCheckpoint));
+            final int body = data.remaining() - Integer.BYTES;
+            boolean valid = body >= HEADER_BYTES + Long.BYTES + 2 * Integer.BYTES;
+            if (valid) {
+                myCrc.reset();
+                myCrc.update(data.array(), 0, body);
+                valid = data.getInt(body) == (int) myCrc.getValue() && data.getInt() == CHECKPOINT_MAGIC
+                        && data.getInt() == VERSION;
+            }
+            if (valid) {
+                final long position = data.getLong();
+                if (position <= theLogSize) {
+                    final int bills = data.getInt();
+                    for (int i = 0; i < bills; i++) {
+                        final BillEntry bill = getBill(data);
+                        myBills.put(bill.getMyBillID(), bill);
+                    }
+                    final int rented = data.getInt();
+                    for (int i = 0; i < rented; i++) {
+                        myRented.add(getString(data));
+                    }
+                    result = position;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Replays log records from a position to the end, cutting off a torn or
+     * damaged tail, and leaves the channel positioned for appending.
+     *
+     * @param thePosition position of the first record to replay
+     * @return number of events replayed
+     * @throws IOException if the log cannot be read or truncated
+     */
+    private long replay(final long thePosition) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        long position = thePosition;
+        long readPosition = thePosition;
+        long events = 0;
+        boolean intact = true;
+        boolean atEnd = false;
+        while (intact && !atEnd) {
+            final int read = myChannel.read(buffer, readPosition);
+            atEnd = read < 0;
+            if (read > 0) {
+                readPosition += read;
+            }
+            buffer.flip();
+            // An incomplete record waits for the next read, unless the log ends here
+            boolean complete = true;
+            while (intact && complete && buffer.remaining() >= Integer.BYTES) {
+                final int length = buffer.getInt(buffer.position());
+                intact = length >= 1 && length <= MAX_RECORD_BYTES - FRAME_BYTES;
+                complete = buffer.remaining() >= length + FRAME_BYTES;
+                if (intact && complete) {
+                    intact = replayRecord(buffer, length);
+                    if (intact) {
+                        position += length + FRAME_BYTES;
+                        events++;
+                    }
+                }
+            }
+            buffer.compact();
+        }
+        if (position < myChannel.size()) {
+            myChannel.truncate(position);
+            myChannel.force(true);
+        }
+        myChannel.position(position);
+        return events;
+    }
+
+    /**
+     * Checks and applies one complete record.
+     *
+     * @param theBuffer buffer positioned at the record
+     * @param theLength type and payload length
+     * @return false if the record is damaged or of an unknown type
+     */
+    private boolean replayRecord(final ByteBuffer theBuffer, final int theLength) {
+        final int start = theBuffer.position() + Integer.BYTES;
+        myCrc.reset();
+        myCrc.update(theBuffer.duplicate().position(start).limit(start + theLength));
+        boolean result = theBuffer.getInt(start + theLength) == (int) myCrc.getValue();
+        if (result) {
+            final ByteBuffer record = theBuffer.duplicate().position(start + 1).limit(start + theLength);
+            final byte type = theBuffer.get(start);
+            if (type == RENT || type == BILL || type == VOID) {
+                final BillEntry bill = getBill(record);
+                apply(type, bill, bill.getMyVIN());
+            } else if (type == DROP) {
+                apply(type, null, getString(record));
+            } else {
+                result = type == CLEAR;
+                apply(type, null, null);
+            }
+            theBuffer.position(start + theLength + Integer.BYTES);
+        }
+        return result;
+    }
+
+    /**
+     * Writes the recorded state and the log position it covers to the checkpoint file.
+     *
+     * @throws IOException if the checkpoint cannot be written
+     */
+    private void writeCheckpoint() throws IOException {
+        final Path temp = myCheckpoint.resolveSibling(myCheckpoint.getFileName() + TEMP_SUFFIX);
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            myCrc.reset();
+            myBuffer.clear();
+            myBuffer.putInt(CHECKPOINT_MAGIC).putInt(VERSION).putLong(myChannel.position());
+            myBuffer.putInt(myBills.size());
+            for (final BillEntry bill : myBills.values()) {
+                if (myBuffer.remaining() < MAX_RECORD_BYTES) {
+                    writeChecksummed(channel);
+                }
+                putBill(myBuffer, bill);
+            }
+            if (myBuffer.remaining() < Integer.BYTES) {
+                writeChecksummed(channel);
+            }
+            myBuffer.putInt(myRented.size());
+            for (final String vin : myRented) {
+                if (myBuffer.remaining() < MAX_RECORD_BYTES) {
+                    writeChecksummed(channel);
+                }
+                putString(myBuffer, vin.getBytes(StandardCharsets.UTF_8));
+            }
+            writeChecksummed(channel);
+            myBuffer.putInt((int) myCrc.getValue()).flip();
+            while (myBuffer.hasRemaining()) {
+                channel.write(myBuffer);
+            }
+            myBuffer.clear();
+            channel.force(true);
+        }
+        Files.move(temp, myCheckpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        myEventsSinceCheckpoint = 0;
+    }
+
+    /**
+     * Adds the write buffer to the checksum and writes it out.
+     *
+     * @param theChannel the checkpoint channel
+     * @throws IOException if the write fails
+     */
+    private void writeChecksummed(final FileChannel theChannel) throws IOException {
+        myBuffer.flip();
+        myCrc.update(myBuffer.duplicate());
+        while (myBuffer.hasRemaining()) {
+            theChannel.write(myBuffer);
+        }
+        myBuffer.clear();
+    }
+
+    /**
+     * Encodes a bill.
+     *
+     * @param theBuffer destination
+     * @param theBill the bill
+     */
+    private static void putBill(final ByteBuffer theBuffer, final BillEntry theBill) {
+        theBuffer.putInt(theBill.getMyBillID()).putInt(theBill.getMyNumDays());
+        theBuffer.putLong(theBill.getMyDailyRateUnits());
+        putString(theBuffer, theBill.myUserNameBytes);
+        putString(theBuffer, theBill.myVINBytes);
+    }
+
+    /**
+     * Decodes a bill.
+     *
+     * @param theBuffer source
+     * @return the bill
+     */
+    private static BillEntry getBill(final ByteBuffer theBuffer) {
+        final int billID = theBuffer.getInt();
+        final int days = theBuffer.getInt();
+        final long rate = theBuffer.getLong();
+        final String user = getString(theBuffer);
+        return new BillEntry(billID, user, getString(theBuffer), days, rate);
+    }
+
+    /**
+     * Encodes a string.
+     *
+     * @param theBuffer destination
+     * @param theBytes UTF-8 bytes
+     */
+    private static void putString(final ByteBuffer theBuffer, final byte[] theBytes) {
+        theBuffer.putShort((short) theBytes.length).put(theBytes);
+    }
+
+    /**
+     * Decodes a string.
+     *
+     * @param theBuffer source
+     * @return the string
+     */
+    private static String getString(final ByteBuffer theBuffer) {
+        final byte[] bytes = new byte[theBuffer.getShort() & USHORT_MASK];
+        theBuffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * UTF-8 bytes of a user name or VIN.
+     *
+     * @param theString the string
+     * @return its bytes
+     * @throws IllegalArgumentException if there are more than 65535
+     */
+    private static byte[] encode(final String theString) {
+        final byte[] result = theString.getBytes(StandardCharsets.UTF_8);
+        if (result.length > MAX_STRING_BYTES) {
+            throw new IllegalArgumentException("String too long for the ledger");
+        }
+        return result;
+    }
+
+    /**
+     * A recorded bill: who rented which vehicle (by VIN), for how long, at what daily rate.
+     */
+    public static final class BillEntry {
+
+        /**
+         * Bill ID.
+         */
+        private final int myBillID;
+
+        /**
+         * Name of the billed user.
+         */
+        private final String myUserName;
+
+        /**
+         * UTF-8 user name.
+         */
+        private final byte[] myUserNameBytes;
+
+        /**
+         * VIN of the rented vehicle.
+         */
+        private final String myVIN;
+
+        /**
+         * UTF-8 VIN.
+         */
+        private final byte[] myVINBytes;
+
+        /**
+         * Rental days.
+         */
+        private final int myNumDays;
+
+        /**
+         * Daily rate in fixed-point units.
+         */
+        private final long myDailyRateUnits;
+
+        /**
+         * Creates a bill entry.
+         *
+         * @param theBillID bill ID
+         * @param theUserName name of the billed user
+         * @param theVIN VIN of the rented vehicle
+         * @param theNumDays rental days
+         * @param theDailyRateUnits daily rate in fixed-point units
+         * @throws IllegalArgumentException if the user name or VIN is longer than 65535 UTF-8 bytes
+         */
+        public BillEntry(final int theBillID, final String theUserName, final String theVIN,
+                         final int theNumDays, final long theDailyRateUnits) {
+            myBillID = theBillID;
+            myUserName = theUserName;
+            myUserNameBytes = encode(theUserName);
+            myVIN = theVIN;
+            myVINBytes = encode(theVIN);
+            myNumDays = theNumDays;
+            myDailyRateUnits = theDailyRateUnits;
+        }
+
+        /**
+         * Bill ID.
+         *
+         * @return the bill ID
+         */
+        public int getMyBillID() {
+            return myBillID;
+        }
+
+        /**
+         * Name of the billed user.
+         *
+         * @return the user name
+         */
+        public String getMyUserName() {
+            return myUserName;
+        }
+
+        /**
+         * VIN of the rented vehicle.
+         *
+         * @return the VIN
+         */
+        public String getMyVIN() {
+            return myVIN;
+        }
+
+        /**
+         * Rental days.
+         *
+         * @return number of days
+         */
+        public int getMyNumDays() {
+            return myNumDays;
+        }
+
+        /**
+         * Daily rate.
+         *
+         * @return daily rate in fixed-point units
+         */
+        public long getMyDailyRateUnits() {
+            return myDailyRateUnits;
+        }
+    }
+
+    /**
+     * A queued event and the future its caller waits on.
+     */
+    private static final class PendingEvent {
+
+        /**
+         * Event type.
+         */
+        private final byte myType;
+
+        /**
+         * Bill of a rent or bill event, else null.
+         */
+        private final BillEntry myBill;
+
+        /**
+         * VIN of a rent, bill or drop event.
+         */
+        private final String myVIN;
+
+        /**
+         * Completed once the event is durable.
+         */
+        private final CompletableFuture<Void> myFuture = new CompletableFuture<Void>();
+
+        /**
+         * Creates a pending event.
+         *
+         * @param theType event type
+         * @param theBill bill, or null
+         * @param theVIN VIN, or null
+         */
+        PendingEvent(final byte theType, final BillEntry theBill, final String theVIN) {
+            myType = theType;
+            myBill = theBill;
+            myVIN = theVIN;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Executors for blocking per-session work.
+ */
+
+package utility;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates executors for work that spends most of its time blocked, such as one
+ * operator session or a step waiting for the disk.
+ *
+ * On a runtime with virtual threads (Java 21 and later) every task gets its own
+ * virtual thread, so blocked tasks cost a small heap object rather than a platform
+ * thread. The factory is looked up reflectively, so this class also compiles and
+ * runs on older runtimes, where the executors fall back to platform threads.
+ *
+ * @author roys4
+ * @version Winter 2021
+ */
+public final class SessionExecutors {
+
+    /**
+     * Factory method of the virtual thread executor, or null if the runtime has none.
+     */
+    private static final Method VIRTUAL_FACTORY = findVirtualFactory();
+
+    /**
+     * Executor for steps forked by sessions, created on first use.
+     */
+    private static volatile ExecutorService ourStepExecutor;
+
+    /**
+     * A private constructor, to prevent external instantiation.
+     */
+    private SessionExecutors() {
+
+    }
+
+    /**
+     * Checks whether this runtime has virtual threads.
+     *
+     * @return true if {@link #newVirtualThreadExecutor()} returns an executor
+     */
+    public static boolean isVirtualThreadsAvailable() {
+        return VIRTUAL_FACTORY != null;
+    }
+
+    /**
+     * Creates an executor that runs every task on a new virtual thread.
+     *
+     * @return the executor, or null if the runtime has no virtual threads
+     */
+    public static ExecutorService newVirtualThreadExecutor() {
+        ExecutorService result = null;
+        if (VIRTUAL_FACTORY != null) {
+            try {
+                result = (ExecutorService) VIRTUAL_FACTORY.invoke(null);
+            } catch (final IllegalAccessException | InvocationTargetException e) {
+                throw new IllegalStateException("Cannot create virtual thread executor", e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Creates an executor for whole sessions: a virtual thread per session, or else a
+     * fixed pool, whose size caps the sessions that run at once while the rest queue.
+     *
+     * @param theFallbackThreads platform threads when virtual threads are unavailable
+     * @param theName name prefix of the platform threads
+     * @return the executor
+     */
+    public static ExecutorService newSessionExecutor(final int theFallbackThreads, final String theName) {
+        ExecutorService result = newVirtualThreadExecutor();
+        if (result == null) {
+            result = Executors.newFixedThreadPool(theFallbackThreads, daemonThreads(theName));
+        }
+        return result;
+    }
+
+    /**
+     * Shared executor for the subtasks sessions fork: a virtual thread per subtask,
+     * or else a growing pool of platform threads, so a subtask never waits behind the
+     * sessions that forked it.
+     *
+     * @return the shared executor
+     */
+    public static ExecutorService stepExecutor() {
+        ExecutorService result = ourStepExecutor;
+        if (result == null) {
+            synchronized (SessionExecutors.class) {
+                result = ourStepExecutor;
+                if (result == null) {
+                    result = newVirtualThreadExecutor();
+                    if (result == null) {
+                        result = Executors.newCachedThreadPool(daemonThreads("session-step"));
+                    }
+                    ourStepExecutor = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Creates a factory of numbered daemon platform threads.
+     *
+     * @param theName name prefix
+     * @return the factory
+     */
+    public static ThreadFactory daemonThreads(final String theName) {
+        final AtomicInteger count = new AtomicInteger();
+        return theTask -> {
+            final Thread thread = new Thread(theTask, theName + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Looks up Executors.newVirtualThreadPerTaskExecutor.
+     *
+     * @return the method, or null if the runtime has no virtual threads
+     */
+    private static Method findVirtualFactory() {
+        Method result = null;
+        try {
+            result = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (final NoSuchMethodException e) {
+            result = null;
+        }
+        return result;
+    }
+}
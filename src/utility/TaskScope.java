@@ -0,0 +1,213 @@
+/*
+ * Structured group of subtasks with a shared deadline.
+ */
+
+package utility;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs the subtasks of one step concurrently and bounds them by one deadline,
+ * in the manner of structured concurrency: subtasks are forked inside a
+ * try-with-resources block, {@link #join()} waits for all of them, and none of
+ * them outlives the block.
+ *
+ * The first subtask to fail, or the deadline passing, cancels (interrupts) every
+ * subtask still running and ends the join with that failure. Closing the scope
+ * cancels whatever was not joined and waits until every subtask has stopped
+ * running.
+ *
+ * A scope belongs to the thread that created it; only that thread forks, joins
+ * and closes it.
+ *
+ * @author roys4
+ * @version Winter 2021
+ */
+public final class TaskScope implements AutoCloseable {
+
+    /**
+     * Runs the subtasks.
+     */
+    private final Executor myExecutor;
+
+    /**
+     * Deadline on the System.nanoTime clock.
+     */
+    private final long myDeadline;
+
+    /**
+     * Every forked subtask.
+     */
+    private final List<Subtask<?>> mySubtasks = new ArrayList<Subtask<?>>();
+
+    /**
+     * Subtasks as they complete.
+     */
+    private final BlockingQueue<Subtask<?>> myCompleted = new LinkedBlockingQueue<Subtask<?>>();
+
+    /**
+     * Subtasks handed to the executor that have not finished running; guarded by this scope.
+     */
+    private int myRunning;
+
+    /**
+     * Opens a scope.
+     *
+     * @param theExecutor runs the subtasks; it must not be busy with the caller's own
+     *        work, or a subtask can wait for a thread forever
+     * @param theDeadlineNanos deadline on the {@link System#nanoTime()} clock
+     */
+    public TaskScope(final Executor theExecutor, final long theDeadlineNanos) {
+        myExecutor = Objects.requireNonNull(theExecutor);
+        myDeadline = theDeadlineNanos;
+    }
+
+    /**
+     * A deadline some time from now.
+     *
+     * @param theTimeout time from now
+     * @param theUnit unit of theTimeout
+     * @return deadline on the {@link System#nanoTime()} clock
+     */
+    public static long deadlineAfter(final long theTimeout, final TimeUnit theUnit) {
+        return System.nanoTime() + theUnit.toNanos(theTimeout);
+    }
+
+    /**
+     * Starts a subtask.
+     *
+     * @param <T> result type
+     * @param theTask the subtask
+     * @return its future; its result is ready after a successful {@link #join()}
+     * @throws RejectedExecutionException if the executor does not take the subtask
+     */
+    public <T> Future<T> fork(final Callable<T> theTask) {
+        final Subtask<T> subtask = new Subtask<T>(theTask);
+        mySubtasks.add(subtask);
+        synchronized (this) {
+            myRunning++;
+        }
+        try {
+            myExecutor.execute(subtask::runAndRelease);
+        } catch (final RejectedExecutionException e) {
+            subtask.release();
+            subtask.cancel(false);
+            throw e;
+        }
+        return subtask;
+    }
+
+    /**
+     * Waits for every forked subtask to succeed.
+     *
+     * @throws ExecutionException with the cause of the first subtask that failed
+     * @throws TimeoutException if the deadline passed first
+     * @throws InterruptedException if the calling thread was interrupted
+     */
+    public void join() throws ExecutionException, TimeoutException, InterruptedException {
+        boolean success = false;
+        try {
+            for (int done = 0; done < mySubtasks.size(); done++) {
+                final Subtask<?> subtask = myCompleted.poll(myDeadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (subtask == null) {
+                    throw new TimeoutException("Deadline passed with " + (mySubtasks.size() - done)
+                                               + " subtasks unfinished");
+                }
+                subtask.get();
+            }
+            success = true;
+        } catch (final CancellationException e) {
+            throw new ExecutionException(e);
+        } finally {
+            if (!success) {
+                cancelAll();
+            }
+        }
+    }
+
+    /**
+     * Cancels every unfinished subtask and waits until none is running.
+     */
+    @Override
+    public void close() {
+        cancelAll();
+        boolean interrupted = false;
+        synchronized (this) {
+            while (myRunning > 0) {
+                try {
+                    wait();
+                } catch (final InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Cancels every subtask that has not completed.
+     */
+    private void cancelAll() {
+        for (final Subtask<?> subtask : mySubtasks) {
+            subtask.cancel(true);
+        }
+    }
+
+    /**
+     * A forked subtask that reports its completion to the scope.
+     *
+     * @param <T> result type
+     */
+    private final class Subtask<T> extends FutureTask<T> {
+
+        /**
+         * Wraps a subtask.
+         *
+         * @param theTask the subtask
+         */
+        Subtask(final Callable<T> theTask) {
+            super(theTask);
+        }
+
+        /**
+         * Runs the subtask (unless it was cancelled first) and tells the scope it stopped.
+         */
+        void runAndRelease() {
+            try {
+                run();
+            } finally {
+                release();
+            }
+        }
+
+        /**
+         * Tells the scope this subtask is no longer running.
+         */
+        void release() {
+            synchronized (TaskScope.this) {
+                myRunning--;
+                TaskScope.this.notifyAll();
+            }
+        }
+
+        @Override
+        protected void done() {
+            myCompleted.add(this);
+        }
+    }
+}
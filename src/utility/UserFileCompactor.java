@@ -0,0 +1,272 @@
+/*
+ * Online compaction of the registered user file.
+ */
+
+package utility;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Rewrites the user file with one line per user while registrations keep going.
+ *
+ * The user file is append-only, so a user written twice stays in it twice, and
+ * {@link FileLoader#readItemsFromFile(String)} lets the last line win. Compaction
+ * keeps exactly that winning line for every user, in the order users first
+ * appeared, and drops blank lines.
+ *
+ * It works in two phases around the file's {@link UserFileWriter}. First, off the
+ * writer thread, everything written up to a snapshot point is collapsed into a
+ * temporary file next to the user file while new users keep being appended. Then,
+ * on the writer thread, the lines appended since the snapshot are copied to the
+ * end of the temporary file unchanged, which is forced to disk and atomically
+ * moved over the user file. Appends only wait for that short second phase, and a
+ * crash at any point leaves either the old or the new file, never a mix.
+ *
+ * @author roys4
+ * @version Winter 2021
+ */
+public final class UserFileCompactor {
+
+    /**
+     * Suffix of the temporary file next to the user file.
+     */
+    private static final String TEMP_SUFFIX = ".compact";
+
+    /**
+     * Line separator of the user file.
+     */
+    private static final char NEWLINE = '\n';
+
+    /**
+     * The writer that owns the user file.
+     */
+    private final UserFileWriter myWriter;
+
+    /**
+     * Creates a compactor for the file of a writer.
+     *
+     * @param theWriter the writer appending to the user file
+     */
+    public UserFileCompactor(final UserFileWriter theWriter) {
+        myWriter = Objects.requireNonNull(theWriter);
+    }
+
+    /**
+     * Compacts the user file. Users appended while this runs are kept.
+     *
+     * @return line counts of the compacted part of the file
+     * @throws IOException if the file cannot be read or replaced; the user file is
+     *         then left as it was
+     */
+    public Result compact() throws IOException {
+        final Path file = myWriter.getMyFile();
+        final Path temp = file.resolveSibling(file.getFileName() + TEMP_SUFFIX);
+        final Map<String, String> lines = new LinkedHashMap<String, String>();
+        final int rows;
+        // One compaction per writer at a time, since they share the temporary file
+        synchronized (myWriter) {
+            try {
+                final long snapshot = await(myWriter.runExclusive(() -> Files.size(file)));
+                rows = collapse(read(file, snapshot), lines);
+                writeLines(temp, lines);
+                await(myWriter.runExclusive(() -> {
+                    appendTail(file, snapshot, temp);
+                    myWriter.swapIn(temp);
+                    return null;
+                }));
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+        return new Result(rows, lines.size());
+    }
+
+    /**
+     * Reads the start of the user file.
+     *
+     * @param theFile the user file
+     * @param theLength bytes to read
+     * @return the text read
+     * @throws IOException if the file cannot be read
+     */
+    private static String read(final Path theFile, final long theLength) throws IOException {
+        if (theLength > Integer.MAX_VALUE) {
+            throw new IOException("User file too large to compact: " + theLength + " bytes");
+        }
+        final ByteBuffer bytes = ByteBuffer.allocate((int) theLength);
+        try (FileChannel channel = FileChannel.open(theFile, StandardOpenOption.READ)) {
+            int read = 0;
+            while (bytes.hasRemaining() && read >= 0) {
+                read = channel.read(bytes);
+            }
+        }
+        return new String(bytes.array(), 0, bytes.position(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Keeps the last line of every user, the one FileLoader would load.
+     *
+     * @param theText user file text
+     * @param theLines receives the last line of every user, keyed by user name, in
+     *        first-seen order
+     * @return number of non-blank lines read
+     */
+    private static int collapse(final String theText, final Map<String, String> theLines) {
+        int rows = 0;
+        int start = 0;
+        while (start <= theText.length()) {
+            int end = theText.indexOf(NEWLINE, start);
+            if (end < 0) {
+                end = theText.length();
+            }
+            final String line = theText.substring(start, end);
+            if (!line.trim().isEmpty()) {
+                rows++;
+                int name = line.indexOf(FileLoader.SPLIT_TOKEN);
+                if (name < 0) {
+                    name = line.length();
+                }
+                theLines.put(line.substring(0, name), line);
+            }
+            start = end + 1;
+        }
+        return rows;
+    }
+
+    /**
+     * Writes lines to a fresh file, newline separated with no trailing newline like
+     * the user file, and forces it to disk.
+     *
+     * @param theFile the file to write
+     * @param theLines the lines, keyed by user name
+     * @throws IOException if the file cannot be written
+     */
+    private static void writeLines(final Path theFile, final Map<String, String> theLines)
+        throws IOException {
+        final StringBuilder text = new StringBuilder();
+        for (final String line : theLines.values()) {
+            if (text.length() > 0) {
+                text.append(NEWLINE);
+            }
+            text.append(line);
+        }
+        final ByteBuffer bytes = ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8));
+        try (FileChannel channel = FileChannel.open(theFile, StandardOpenOption.CREATE,
+                                                    StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Copies what was appended to the user file after a snapshot point to the end of
+     * the compacted file and forces it to disk. Appended lines start with a newline,
+     * so they continue the compacted file's last line correctly.
+     *
+     * @param theFile the user file
+     * @param theSnapshot length of the user file when compaction started
+     * @param theCompacted the compacted file
+     * @throws IOException if either file cannot be accessed
+     */
+    private static void appendTail(final Path theFile, final long theSnapshot, final Path theCompacted)
+        throws IOException {
+        try (FileChannel source = FileChannel.open(theFile, StandardOpenOption.READ);
+             FileChannel target = FileChannel.open(theCompacted, StandardOpenOption.WRITE,
+                                                   StandardOpenOption.APPEND)) {
+            long position = theSnapshot;
+            final long end = source.size();
+            while (position < end) {
+                position += source.transferTo(position, end - position, target);
+            }
+            target.force(true);
+        }
+    }
+
+    /**
+     * Waits for a writer task, unwrapping its failure.
+     *
+     * @param <T> the task's result type
+     * @param theFuture the task's future
+     * @return the task's result
+     * @throws IOException if the task failed or the wait was interrupted
+     */
+    private static <T> T await(final Future<T> theFuture) throws IOException {
+        final T result;
+        try {
+            result = theFuture.get();
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("User file compaction failed", e.getCause());
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compacting the user file", e);
+        }
+        return result;
+    }
+
+    /**
+     * Line counts of one compaction, not counting lines appended while it ran.
+     */
+    public static final class Result {
+
+        /**
+         * Non-blank lines in the file before compaction.
+         */
+        private final int myRowsRead;
+
+        /**
+         * Lines written, one per user.
+         */
+        private final int myUsersWritten;
+
+        /**
+         * Creates a result.
+         *
+         * @param theRowsRead non-blank lines read
+         * @param theUsersWritten lines written
+         */
+        Result(final int theRowsRead, final int theUsersWritten) {
+            myRowsRead = theRowsRead;
+            myUsersWritten = theUsersWritten;
+        }
+
+        /**
+         * Non-blank lines in the file before compaction.
+         *
+         * @return lines read
+         */
+        public int getMyRowsRead() {
+            return myRowsRead;
+        }
+
+        /**
+         * Lines written, one per user.
+         *
+         * @return lines written
+         */
+        public int getMyUsersWritten() {
+            return myUsersWritten;
+        }
+
+        @Override
+        public String toString() {
+            return myRowsRead + " lines compacted to " + myUsersWritten + " users";
+        }
+    }
+}
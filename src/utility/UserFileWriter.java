@@ -0,0 +1,547 @@
+/*
+ * Group-commit writer for the registered user file.
+ */
+
+package utility;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import model.User;
+
+/**
+ * A long-lived writer that appends registered users to the user file.
+ *
+ * Callers queue users with {@link #append(User)} and get back a future that
+ * completes once the line is durable on disk. A single background thread drains
+ * the bounded queue and writes everything it finds in one FileChannel write, so a
+ * burst of sign-ups costs one write (and one fsync) instead of one open/close per
+ * user. Lines use the same format as {@link FileLoader#writeUserToFile(String, User)}.
+ *
+ * Because the writer thread owns the file, anything that must not interleave with
+ * appends (such as {@link UserFileCompactor} swapping in a rewritten file) runs on
+ * that thread through {@link #runExclusive(Callable)}, in queue order. Users written
+ * before such a task are forced to disk first, so the task only sees durable lines.
+ *
+ * A batch whose write or fsync fails is cut off the file again: its callers are told
+ * the users were not saved, so the lines must not be loaded after a restart, and a
+ * torn last line would stop the file from loading at all. If the cut-off fails too,
+ * the writer fails every later user.
+ *
+ * @author roys4
+ * @version Winter 2021
+ */
+public final class UserFileWriter implements UserJournal, Closeable {
+
+    /**
+     * When the writer forces appended lines to disk.
+     */
+    public enum FsyncPolicy {
+        /** Fsync after every group-committed batch. */
+        PER_BATCH,
+        /** Fsync at most once per interval; futures complete after the fsync. */
+        TIMED
+    }
+
+    /**
+     * Default bound of the pending write queue.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 8192;
+
+    /**
+     * Most users written in a single batch.
+     */
+    private static final int MAX_BATCH = 1024;
+
+    /**
+     * How long the writer thread waits for work before re-checking its state.
+     */
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    /**
+     * Initial size of the reusable write buffer.
+     */
+    private static final int INITIAL_BUFFER_BYTES = 64 * 1024;
+
+    /**
+     * Writers shared by every Registration using the same file.
+     */
+    private static final Map<Path, UserFileWriter> SHARED_WRITERS =
+        new ConcurrentHashMap<Path, UserFileWriter>();
+
+    /**
+     * The file users are appended to.
+     */
+    private final Path myFile;
+
+    /**
+     * Pending writes waiting for the writer thread.
+     */
+    private final BlockingQueue<PendingWrite> myQueue;
+
+    /**
+     * Fsync policy of this writer.
+     */
+    private final FsyncPolicy myPolicy;
+
+    /**
+     * Fsync interval for the TIMED policy, in nanoseconds.
+     */
+    private final long myFsyncIntervalNanos;
+
+    /**
+     * The background thread doing all file I/O.
+     */
+    private final Thread myThread;
+
+    /**
+     * Open channel to the user file, only touched by the writer thread.
+     */
+    private FileChannel myChannel;
+
+    /**
+     * Reusable encode buffer, only touched by the writer thread.
+     */
+    private ByteBuffer myBuffer = ByteBuffer.allocate(INITIAL_BUFFER_BYTES);
+
+    /**
+     * Length of the file up to the last line known to be on disk, only touched by
+     * the writer thread.
+     */
+    private long mySyncedLength;
+
+    /**
+     * Why writes are refused since a failed cut-off, or null; only touched by the
+     * writer thread.
+     */
+    private IOException myFailure;
+
+    /**
+     * Cleared by close() to stop the writer thread once the queue is drained.
+     */
+    private volatile boolean myRunning = true;
+
+    /**
+     * Starts a writer for a user file.
+     *
+     * @param theFile the user file to append to
+     * @param theQueueCapacity maximum number of queued, unwritten users
+     * @param thePolicy when to fsync
+     * @param theFsyncIntervalMillis fsync interval for {@link FsyncPolicy#TIMED}
+     * @throws IOException if the file cannot be opened
+     */
+    public UserFileWriter(final Path theFile, final int theQueueCapacity, final FsyncPolicy thePolicy,
+                          final long theFsyncIntervalMillis) throws IOException {
+        if (theQueueCapacity <= 0 || theFsyncIntervalMillis < 0) {
+            throw new IllegalArgumentException();
+        }
+        myFile = Objects.requireNonNull(theFile);
+        myPolicy = Objects.requireNonNull(thePolicy);
+        myFsyncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(theFsyncIntervalMillis);
+        myQueue = new ArrayBlockingQueue<PendingWrite>(theQueueCapacity);
+        myChannel = openChannel(theFile);
+        mySyncedLength = myChannel.size();
+        myThread = new Thread(this::runLoop, "user-file-writer");
+        myThread.setDaemon(true);
+        myThread.start();
+    }
+
+    /**
+     * Returns the writer shared by everyone appending to a file, starting it on first
+     * use with the per-batch fsync policy.
+     *
+     * @param theFile the user file
+     * @return the shared writer for that file
+     */
+    public static UserFileWriter forFile(final String theFile) {
+        final Path path = Paths.get(theFile).toAbsolutePath().normalize();
+        return SHARED_WRITERS.computeIfAbsent(path, thePath -> {
+            try {
+                return new UserFileWriter(thePath, DEFAULT_QUEUE_CAPACITY, FsyncPolicy.PER_BATCH, 0);
+            } catch (final IOException e) {
+                throw new IllegalStateException("Cannot open user file " + thePath, e);
+            }
+        });
+    }
+
+    /**
+     * Queues a user to be appended, blocking while the queue is full.
+     *
+     * @param theUser the user to write
+     * @return future completed when the user is durable, or exceptionally on I/O failure
+     */
+    @Override
+    public CompletableFuture<Void> append(final User theUser) {
+        Objects.requireNonNull(theUser);
+        final CompletableFuture<Void> future = new CompletableFuture<Void>();
+        enqueue(new PendingWrite(theUser, null, future));
+        return future;
+    }
+
+    /**
+     * Queues a task to run on the writer thread once every user queued before it is
+     * written; no user is written while it runs.
+     *
+     * @param <T> the task's result type
+     * @param theTask the task
+     * @return future completed with the task's result, or exceptionally if it throws
+     */
+    <T> CompletableFuture<T> runExclusive(final Callable<T> theTask) {
+        Objects.requireNonNull(theTask);
+        final CompletableFuture<T> future = new CompletableFuture<T>();
+        enqueue(new PendingWrite(null, () -> {
+            try {
+                future.complete(theTask.call());
+            } catch (final Exception e) {
+                future.completeExceptionally(e);
+            }
+        }, future));
+        return future;
+    }
+
+    /**
+     * Atomically replaces the user file and reopens it for appending. Must only be
+     * called from a task passed to {@link #runExclusive(Callable)}.
+     *
+     * @param theReplacement the new file contents, in the same directory
+     * @throws IOException if the file cannot be replaced or reopened; the writer
+     *         keeps appending to whichever file is then in place
+     */
+    void swapIn(final Path theReplacement) throws IOException {
+        if (Thread.currentThread() != myThread) {
+            throw new IllegalStateException("Not on the writer thread");
+        }
+        myChannel.close();
+        try {
+            Files.move(theReplacement, myFile, StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            myChannel = openChannel(myFile);
+            mySyncedLength = myChannel.size();
+        }
+    }
+
+    /**
+     * The file this writer appends to.
+     *
+     * @return the user file
+     */
+    public Path getMyFile() {
+        return myFile;
+    }
+
+    /**
+     * Queues a user or task, blocking while the queue is full. An entry that races
+     * with close() and lands after the writer thread's final drain is taken back out
+     * and failed, so its future always completes.
+     *
+     * @param theWrite the queued entry
+     */
+    private void enqueue(final PendingWrite theWrite) {
+        if (!myRunning) {
+            throw new IllegalStateException("Writer is closed");
+        }
+        boolean queued = false;
+        try {
+            while (!queued && myRunning) {
+                queued = myQueue.offer(theWrite, IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+            }
+            if (!queued || !myRunning && myQueue.remove(theWrite)) {
+                theWrite.myFuture.completeExceptionally(new IllegalStateException("Writer is closed"));
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            theWrite.myFuture.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Writes everything still queued, fsyncs and stops the writer thread.
+     */
+    @Override
+    public void close() {
+        myRunning = false;
+        SHARED_WRITERS.remove(myFile, this);
+        boolean interrupted = false;
+        while (myThread.isAlive()) {
+            try {
+                myThread.join();
+            } catch (final InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Body of the writer thread.
+     */
+    private void runLoop() {
+        final List<PendingWrite> batch = new ArrayList<PendingWrite>(MAX_BATCH);
+        final List<PendingWrite> unsynced = new ArrayList<PendingWrite>();
+        long lastSync = System.nanoTime();
+        while (myRunning || !myQueue.isEmpty()) {
+            final PendingWrite first = pollQueue();
+            if (first != null) {
+                batch.add(first);
+                myQueue.drainTo(batch, MAX_BATCH - 1);
+                writeInOrder(batch, unsynced);
+                batch.clear();
+            }
+            final boolean due = myPolicy == FsyncPolicy.PER_BATCH
+                                || System.nanoTime() - lastSync >= myFsyncIntervalNanos
+                                || !myRunning;
+            if (due && !unsynced.isEmpty()) {
+                sync(unsynced);
+                unsynced.clear();
+                lastSync = System.nanoTime();
+            }
+        }
+        final List<PendingWrite> late = new ArrayList<PendingWrite>();
+        myQueue.drainTo(late);
+        for (final PendingWrite write : late) {
+            write.myFuture.completeExceptionally(new IllegalStateException("Writer is closed"));
+        }
+        closeChannel();
+    }
+
+    /**
+     * Waits a bounded time for the next queued write.
+     *
+     * @return the next write, or null if none arrived
+     */
+    private PendingWrite pollQueue() {
+        long waitNanos = TimeUnit.MILLISECONDS.toNanos(IDLE_POLL_MILLIS);
+        if (myPolicy == FsyncPolicy.TIMED && myFsyncIntervalNanos > 0) {
+            waitNanos = Math.min(waitNanos, myFsyncIntervalNanos);
+        }
+        PendingWrite result = null;
+        try {
+            result = myQueue.poll(waitNanos, TimeUnit.NANOSECONDS);
+        } catch (final InterruptedException e) {
+            // only close() stops the writer; keep draining
+            result = null;
+        }
+        return result;
+    }
+
+    /**
+     * Writes a drained batch, running any tasks in it at their place in the queue.
+     *
+     * @param theBatch the drained users and tasks
+     * @param theUnsynced receives the users written
+     */
+    private void writeInOrder(final List<PendingWrite> theBatch, final List<PendingWrite> theUnsynced) {
+        final List<PendingWrite> users = new ArrayList<PendingWrite>(theBatch.size());
+        for (final PendingWrite write : theBatch) {
+            if (write.myTask == null) {
+                users.add(write);
+            } else {
+                if (!users.isEmpty() && writeBatch(users)) {
+                    theUnsynced.addAll(users);
+                }
+                users.clear();
+                if (!theUnsynced.isEmpty()) {
+                    sync(theUnsynced);
+                    theUnsynced.clear();
+                }
+                write.myTask.run();
+            }
+        }
+        if (!users.isEmpty() && writeBatch(users)) {
+            theUnsynced.addAll(users);
+        }
+    }
+
+    /**
+     * Encodes a batch of users and appends it with a single channel write. A batch
+     * that fails is cut off the file again.
+     *
+     * @param theBatch the users to write
+     * @return true if the batch was written, false if its futures were failed
+     */
+    private boolean writeBatch(final List<PendingWrite> theBatch) {
+        final StringBuilder lines = new StringBuilder();
+        for (final PendingWrite write : theBatch) {
+            appendLine(lines, write.myUser);
+        }
+        final byte[] bytes = lines.toString().getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > myBuffer.capacity()) {
+            myBuffer = ByteBuffer.allocate(Integer.highestOneBit(bytes.length) << 1);
+        }
+        myBuffer.clear();
+        myBuffer.put(bytes).flip();
+
+        boolean result = false;
+        long start = -1;
+        try {
+            checkFailure();
+            start = myChannel.position();
+            while (myBuffer.hasRemaining()) {
+                myChannel.write(myBuffer);
+            }
+            result = true;
+        } catch (final IOException e) {
+            cutOff(start, e);
+            fail(theBatch, e);
+        }
+        return result;
+    }
+
+    /**
+     * Forces written users to disk and completes their futures. If the fsync fails,
+     * everything written since the last one is cut off the file.
+     *
+     * @param theWrites users written since the last fsync
+     */
+    private void sync(final List<PendingWrite> theWrites) {
+        try {
+            checkFailure();
+            myChannel.force(false);
+            mySyncedLength = myChannel.position();
+            for (final PendingWrite write : theWrites) {
+                write.myFuture.complete(null);
+            }
+        } catch (final IOException e) {
+            cutOff(mySyncedLength, e);
+            fail(theWrites, e);
+        }
+    }
+
+    /**
+     * Throws if an earlier cut-off failed.
+     *
+     * @throws IOException wrapping the failed cut-off
+     */
+    private void checkFailure() throws IOException {
+        if (myFailure != null) {
+            throw new IOException("User file writer failed to cut off a batch", myFailure);
+        }
+    }
+
+    /**
+     * Truncates the file back to where failed lines started. Without a force: the
+     * next fsync makes the new length durable along with the lines after it. If the
+     * file cannot be cut, later writes are refused, since a torn line stops the file
+     * from loading and a whole one would bring back a user whose caller was told
+     * otherwise.
+     *
+     * @param theStart offset the failed lines started at, or -1 if unknown
+     * @param theCause why the lines failed
+     */
+    private void cutOff(final long theStart, final IOException theCause) {
+        if (myFailure == null) {
+            try {
+                if (theStart < 0) {
+                    throw new IOException("User file position unknown", theCause);
+                }
+                myChannel.truncate(theStart);
+                myChannel.position(theStart);
+            } catch (final IOException e) {
+                e.printStackTrace();
+                myFailure = e;
+            }
+        }
+    }
+
+    /**
+     * Fails every future of a list of writes.
+     *
+     * @param theWrites writes that did not become durable
+     * @param theCause the I/O error
+     */
+    private static void fail(final List<PendingWrite> theWrites, final IOException theCause) {
+        for (final PendingWrite write : theWrites) {
+            write.myFuture.completeExceptionally(theCause);
+        }
+    }
+
+    /**
+     * Closes the channel at the end of the writer thread.
+     */
+    private void closeChannel() {
+        try {
+            myChannel.close();
+        } catch (final IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Appends one user line, preceded by a newline like FileLoader.writeUserToFile.
+     *
+     * @param theLines buffer to append to
+     * @param theUser the user to encode
+     */
+    static void appendLine(final StringBuilder theLines, final User theUser) {
+        theLines.append('\n');
+        theLines.append(theUser.getMyName()).append(FileLoader.SPLIT_TOKEN);
+        theLines.append(theUser.getMyPassword()).append(FileLoader.SPLIT_TOKEN);
+        theLines.append(theUser.isVIP());
+    }
+
+    /**
+     * Opens a user file for appending, creating it if needed.
+     *
+     * @param theFile the user file
+     * @return an append-mode channel
+     * @throws IOException if the file cannot be opened
+     */
+    private static FileChannel openChannel(final Path theFile) throws IOException {
+        return FileChannel.open(theFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                StandardOpenOption.APPEND);
+    }
+
+    /**
+     * A queued user or task and the future its caller waits on.
+     */
+    private static final class PendingWrite {
+
+        /**
+         * The user to write, or null for a task.
+         */
+        private final User myUser;
+
+        /**
+         * The task to run, or null for a user.
+         */
+        private final Runnable myTask;
+
+        /**
+         * Completed once the user is durable or the task has run.
+         */
+        private final CompletableFuture<?> myFuture;
+
+        /**
+         * Creates a pending write.
+         *
+         * @param theUser the user to write, or null
+         * @param theTask the task to run, or null
+         * @param theFuture the future the caller waits on
+         */
+        PendingWrite(final User theUser, final Runnable theTask, final CompletableFuture<?> theFuture) {
+            myUser = theUser;
+            myTask = theTask;
+            myFuture = theFuture;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+/*
+ * Persistence hook used by Registration for new users.
+ */
+
+package utility;
+
+import java.util.concurrent.CompletableFuture;
+import model.User;
+
+/**
+ * Something that durably records newly registered users.
+ * 
+ * @author roys4
+ * @version Winter 2021
+ */
+public interface UserJournal {
+
+    /**
+     * Records a newly registered user.
+     * 
+     * @param theUser the user to record
+     * @return future completed once the user is durable, or exceptionally on failure
+     */
+    CompletableFuture<Void> append(User theUser);
+}
@@ -0,0 +1,663 @@
+/*
+ * Binary snapshot + write-ahead log store for registered users.
+ */
+
+package utility;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import model.User;
+
+/**
+ * Stores the registered user map as a compact binary snapshot plus an append-only
+ * write-ahead log (WAL) of users registered since that snapshot.
+ *
+ * Snapshot layout: magic, version, WAL generation, user count, the user records and
+ * a CRC32 of everything before it. WAL layout: magic, version, generation, then one
+ * record per user followed by the CRC32 of that record. A user record is the name
+ * length with the VIP flag packed into its top bit, the UTF-8 name, the password
+ * length and the UTF-8 password.
+ *
+ * {@link #load()} reads the snapshot and replays only the WAL written for the same
+ * generation; {@link #loadOrImport(String)} first converts the text user file when
+ * no snapshot exists yet. {@link #compact()} folds the WAL into a new snapshot of the next
+ * generation and starts an empty WAL; a crash between the two steps is harmless
+ * because a WAL from an older generation is ignored on the next load.
+ *
+ * A failed append is cut off the WAL again, so no later record lands behind a torn
+ * one, which replay would stop at. If the cut-off fails too, appends fail until the
+ * next {@link #load()} or {@link #compact()} rebuilds the WAL.
+ *
+ * @author roys4
+ * @version Winter 2021
+ */
+public final class UserStore implements UserJournal, Closeable {
+
+    /**
+     * Snapshot file magic ("RZUS").
+     */
+    private static final int SNAPSHOT_MAGIC = 0x525A5553;
+
+    /**
+     * WAL file magic ("RZUW").
+     */
+    private static final int WAL_MAGIC = 0x525A5557;
+
+    /**
+     * Current format version of both files.
+     */
+    private static final short VERSION = 1;
+
+    /**
+     * Bytes before the first snapshot record: magic, version, generation, count.
+     */
+    private static final int SNAPSHOT_HEADER_BYTES = 4 + 2 + 8 + 4;
+
+    /**
+     * Bytes before the first WAL record: magic, version, generation.
+     */
+    private static final int WAL_HEADER_BYTES = 4 + 2 + 8;
+
+    /**
+     * Size of a CRC32 value on disk.
+     */
+    private static final int CRC_BYTES = 4;
+
+    /**
+     * Size of a length prefix on disk.
+     */
+    private static final int LENGTH_BYTES = 2;
+
+    /**
+     * Top bit of the name length, set for VIP users.
+     */
+    private static final int VIP_FLAG = 0x8000;
+
+    /**
+     * Longest encodable name or password in bytes.
+     */
+    private static final int MAX_FIELD_BYTES = 0x7FFF;
+
+    /**
+     * Mask for reading an unsigned short.
+     */
+    private static final int UNSIGNED_SHORT = 0xFFFF;
+
+    /**
+     * Write buffer size for snapshots.
+     */
+    private static final int SNAPSHOT_BUFFER_BYTES = 1 << 16;
+
+    /**
+     * Suffix of temporary files swapped in atomically.
+     */
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * The snapshot file.
+     */
+    private final Path mySnapshot;
+
+    /**
+     * The write-ahead log file.
+     */
+    private final Path myWal;
+
+    /**
+     * Open WAL channel, guarded by this.
+     */
+    private FileChannel myWalChannel;
+
+    /**
+     * Generation of the current snapshot and WAL, guarded by this.
+     */
+    private long myGeneration;
+
+    /**
+     * Why appends are refused since a failed cut-off, or null; guarded by this.
+     */
+    private IOException myFailure;
+
+    /**
+     * Creates a store over a snapshot file and a WAL file. Nothing is read until
+     * {@link #load()} is called.
+     *
+     * @param theSnapshot the snapshot file
+     * @param theWal the write-ahead log file
+     */
+    public UserStore(final Path theSnapshot, final Path theWal) {
+        mySnapshot = Objects.requireNonNull(theSnapshot);
+        myWal = Objects.requireNonNull(theWal);
+    }
+
+    /**
+     * Loads the snapshot and replays the WAL tail, truncating a torn last record.
+     * Must be called before {@link #append(User)}.
+     *
+     * @return map of user name to user
+     * @throws IOException if the files cannot be read or are corrupt
+     */
+    public synchronized Map<String, User> load() throws IOException {
+        final Map<String, User> users = new HashMap<String, User>();
+        myGeneration = 0;
+        if (Files.exists(mySnapshot)) {
+            myGeneration = readSnapshot(mySnapshot, users);
+        }
+        closeWal();
+        myFailure = null;
+        if (Files.exists(myWal) && walGeneration(myWal) == myGeneration) {
+            myWalChannel = FileChannel.open(myWal, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            final long end = replayWal(myWalChannel, users);
+            myWalChannel.truncate(end);
+            myWalChannel.position(end);
+        } else {
+            resetWal(myGeneration);
+        }
+        return users;
+    }
+
+    /**
+     * Loads the store, first importing a comma separated user file if the store has
+     * no files yet (the first start after switching to this store).
+     *
+     * @param theCsvFile the registered user text file
+     * @return map of user name to user
+     * @throws IOException if the files cannot be read or are corrupt
+     */
+    public synchronized Map<String, User> loadOrImport(final String theCsvFile) throws IOException {
+        if (!Files.exists(mySnapshot) && !Files.exists(myWal) && Files.exists(Paths.get(theCsvFile))) {
+            importCsv(theCsvFile);
+        }
+        return load();
+    }
+
+    /**
+     * Appends a user to the WAL and forces it to disk before returning. A record
+     * that fails is cut off the WAL again.
+     *
+     * @param theUser the user to record
+     * @return an already completed future, or a failed one on I/O errors
+     */
+    @Override
+    public synchronized CompletableFuture<Void> append(final User theUser) {
+        Objects.requireNonNull(theUser);
+        if (myWalChannel == null) {
+            throw new IllegalStateException("load() has not been called");
+        }
+        final CompletableFuture<Void> result = new CompletableFuture<Void>();
+        final ByteBuffer record = encodeWalRecord(theUser);
+        if (myFailure == null) {
+            long start = -1;
+            try {
+                start = myWalChannel.position();
+                while (record.hasRemaining()) {
+                    myWalChannel.write(record);
+                }
+                myWalChannel.force(false);
+                result.complete(null);
+            } catch (final IOException e) {
+                cutOff(start, e);
+                result.completeExceptionally(e);
+            }
+        } else {
+            result.completeExceptionally(new IOException("User store failed to cut off a record", myFailure));
+        }
+        return result;
+    }
+
+    /**
+     * Truncates the WAL back to where a failed record started, so the next record
+     * follows the last intact one. Without a force: a later append's fsync makes the
+     * new length durable along with that record. If the WAL cannot be cut, appends
+     * are refused from then on, since replay would drop everything behind the torn
+     * record.
+     *
+     * @param theStart offset the failed record started at, or -1 if unknown
+     * @param theCause why the record failed
+     */
+    private void cutOff(final long theStart, final IOException theCause) {
+        try {
+            if (theStart < 0) {
+                throw new IOException("WAL position unknown", theCause);
+            }
+            myWalChannel.truncate(theStart);
+            myWalChannel.position(theStart);
+        } catch (final IOException e) {
+            e.printStackTrace();
+            myFailure = e;
+        }
+    }
+
+    /**
+     * Folds the WAL into a new snapshot and starts an empty WAL.
+     *
+     * @return number of users in the new snapshot
+     * @throws IOException if the files cannot be read or written
+     */
+    public synchronized int compact() throws IOException {
+        final Map<String, User> users = load();
+        writeSnapshot(users, myGeneration + 1);
+        resetWal(myGeneration + 1);
+        myGeneration++;
+        return users.size();
+    }
+
+    /**
+     * Compacts only when the WAL has grown beyond a size.
+     *
+     * @param theWalBytes WAL size that triggers compaction
+     * @return true if the store was compacted
+     * @throws IOException if the files cannot be read or written
+     */
+    public synchronized boolean compactIfLarger(final long theWalBytes) throws IOException {
+        boolean result = false;
+        if (myWalChannel != null && myWalChannel.size() > theWalBytes) {
+            compact();
+            result = true;
+        }
+        return result;
+    }
+
+    /**
+     * Schedules a periodic compaction job. A failed run is reported and does not
+     * stop later runs.
+     *
+     * @param theScheduler executor running the job
+     * @param thePeriodMillis time between checks
+     * @param theWalBytes WAL size that triggers compaction
+     * @return handle to cancel the job
+     */
+    public ScheduledFuture<?> scheduleCompaction(final ScheduledExecutorService theScheduler,
+                                                 final long thePeriodMillis, final long theWalBytes) {
+        return theScheduler.scheduleWithFixedDelay(() -> {
+            try {
+                compactIfLarger(theWalBytes);
+            } catch (final IOException | RuntimeException e) {
+                e.printStackTrace();
+            }
+        }, thePeriodMillis, thePeriodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Replaces the store contents with the users of a comma separated user file.
+     *
+     * @param theCsvFile the registered user text file
+     * @return number of users imported
+     * @throws IOException if the files cannot be read or written
+     */
+    public synchronized int importCsv(final String theCsvFile) throws IOException {
+        final Map<String, User> users = MappedUserFileReader.read(Paths.get(theCsvFile).toAbsolutePath());
+        final long generation = myGeneration + 1;
+        writeSnapshot(users, generation);
+        resetWal(generation);
+        myGeneration = generation;
+        return users.size();
+    }
+
+    /**
+     * Closes the WAL.
+     *
+     * @throws IOException if the WAL cannot be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        closeWal();
+    }
+
+    /**
+     * Writes a snapshot to a temporary file and swaps it in atomically.
+     *
+     * @param theUsers users to store
+     * @param theGeneration generation of the WAL that follows this snapshot
+     * @throws IOException if the snapshot cannot be written
+     */
+    private void writeSnapshot(final Map<String, User> theUsers, final long theGeneration)
+        throws IOException {
+        final Path temp = mySnapshot.resolveSibling(mySnapshot.getFileName() + TEMP_SUFFIX);
+        final CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                                                    StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new CrcOutputStream(Channels.newOutputStream(channel), crc),
+                SNAPSHOT_BUFFER_BYTES));
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeShort(VERSION);
+            out.writeLong(theGeneration);
+            out.writeInt(theUsers.size());
+            for (final User user : theUsers.values()) {
+                writeRecord(out, user);
+            }
+            out.flush();
+            out.writeInt((int) crc.getValue());
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temp, mySnapshot, StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a snapshot into a map.
+     *
+     * @param theFile the snapshot file
+     * @param theUsers map to fill
+     * @return the WAL generation recorded in the snapshot
+     * @throws IOException if the snapshot is unreadable or corrupt
+     */
+    private static long readSnapshot(final Path theFile, final Map<String, User> theUsers)
+        throws IOException {
+        final ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(theFile, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.limit() < SNAPSHOT_HEADER_BYTES + CRC_BYTES || buffer.getInt() != SNAPSHOT_MAGIC
+            || buffer.getShort() != VERSION) {
+            throw new IOException("Not a user snapshot: " + theFile);
+        }
+        // The checksum is verified before any record is trusted
+        final int payloadEnd = buffer.limit() - CRC_BYTES;
+        final CRC32 crc = new CRC32();
+        final ByteBuffer payload = buffer.duplicate();
+        payload.position(0).limit(payloadEnd);
+        crc.update(payload);
+        if ((int) crc.getValue() != buffer.getInt(payloadEnd)) {
+            throw new IOException("User snapshot checksum mismatch: " + theFile);
+        }
+        buffer.limit(payloadEnd);
+        final long generation = buffer.getLong();
+        final int count = buffer.getInt();
+        try {
+            for (int i = 0; i < count; i++) {
+                final User user = readRecord(buffer);
+                theUsers.put(user.getMyName(), user);
+            }
+        } catch (final BufferUnderflowException e) {
+            throw new IOException("User snapshot shorter than its user count: " + theFile, e);
+        }
+        if (buffer.hasRemaining()) {
+            throw new IOException("User snapshot longer than its user count: " + theFile);
+        }
+        return generation;
+    }
+
+    /**
+     * Replays every intact WAL record.
+     *
+     * @param theChannel the WAL channel
+     * @param theUsers map to apply records to
+     * @return offset just past the last intact record
+     * @throws IOException if the WAL cannot be read
+     */
+    private static long replayWal(final FileChannel theChannel, final Map<String, User> theUsers)
+        throws IOException {
+        final ByteBuffer buffer = theChannel.map(FileChannel.MapMode.READ_ONLY, 0, theChannel.size());
+        buffer.position(WAL_HEADER_BYTES);
+        final CRC32 crc = new CRC32();
+        int end = buffer.position();
+        boolean intact = true;
+        while (intact && buffer.remaining() > 0) {
+            final int start = buffer.position();
+            intact = hasField(buffer) && skipField(buffer) && hasField(buffer) && skipField(buffer)
+                     && buffer.remaining() >= CRC_BYTES;
+            if (intact) {
+                final ByteBuffer record = buffer.duplicate();
+                record.position(start).limit(buffer.position());
+                crc.reset();
+                crc.update(record);
+                intact = (int) crc.getValue() == buffer.getInt();
+            }
+            if (intact) {
+                buffer.position(start);
+                final User user = readRecord(buffer);
+                theUsers.put(user.getMyName(), user);
+                buffer.position(buffer.position() + CRC_BYTES);
+                end = buffer.position();
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Checks that a length prefix is readable.
+     *
+     * @param theBuffer buffer positioned at a length prefix
+     * @return true if the prefix is present
+     */
+    private static boolean hasField(final ByteBuffer theBuffer) {
+        return theBuffer.remaining() >= LENGTH_BYTES;
+    }
+
+    /**
+     * Skips a length-prefixed field if it is complete.
+     *
+     * @param theBuffer buffer positioned at a length prefix
+     * @return true if the whole field was present
+     */
+    private static boolean skipField(final ByteBuffer theBuffer) {
+        final int length = theBuffer.getShort() & MAX_FIELD_BYTES;
+        final boolean result = theBuffer.remaining() >= length;
+        if (result) {
+            theBuffer.position(theBuffer.position() + length);
+        }
+        return result;
+    }
+
+    /**
+     * Starts an empty WAL for a generation, replacing any existing WAL atomically.
+     *
+     * @param theGeneration the new generation
+     * @throws IOException if the WAL cannot be written
+     */
+    private void resetWal(final long theGeneration) throws IOException {
+        closeWal();
+        final Path temp = myWal.resolveSibling(myWal.getFileName() + TEMP_SUFFIX);
+        final ByteBuffer header = ByteBuffer.allocate(WAL_HEADER_BYTES);
+        header.putInt(WAL_MAGIC).putShort(VERSION).putLong(theGeneration).flip();
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                                                    StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, myWal, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        myWalChannel = FileChannel.open(myWal, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        myFailure = null;
+    }
+
+    /**
+     * Reads the generation from a WAL header.
+     *
+     * @param theFile the WAL file
+     * @return its generation, or -1 if the header is missing or invalid
+     * @throws IOException if the file cannot be read
+     */
+    private static long walGeneration(final Path theFile) throws IOException {
+        long result = -1;
+        try (FileChannel channel = FileChannel.open(theFile, StandardOpenOption.READ)) {
+            final ByteBuffer header = ByteBuffer.allocate(WAL_HEADER_BYTES);
+            int read = 0;
+            while (header.hasRemaining() && read >= 0) {
+                read = channel.read(header);
+            }
+            header.flip();
+            if (header.remaining() == WAL_HEADER_BYTES && header.getInt() == WAL_MAGIC
+                && header.getShort() == VERSION) {
+                result = header.getLong();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Closes the current WAL channel if one is open.
+     *
+     * @throws IOException if the channel cannot be closed
+     */
+    private void closeWal() throws IOException {
+        if (myWalChannel != null) {
+            myWalChannel.close();
+            myWalChannel = null;
+        }
+    }
+
+    /**
+     * Encodes a user record followed by its CRC32.
+     *
+     * @param theUser the user to encode
+     * @return buffer ready to be written
+     */
+    private static ByteBuffer encodeWalRecord(final User theUser) {
+        final byte[] name = fieldBytes(theUser.getMyName());
+        final byte[] password = fieldBytes(theUser.getMyPassword());
+        final ByteBuffer buffer = ByteBuffer.allocate(2 * LENGTH_BYTES + name.length + password.length
+                                                      + CRC_BYTES);
+        buffer.putShort(nameHeader(name.length, theUser.isVIP())).put(name);
+        buffer.putShort((short) password.length).put(password);
+        final CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc.getValue()).flip();
+        return buffer;
+    }
+
+    /**
+     * Writes a user record to a snapshot stream.
+     *
+     * @param theOut the snapshot stream
+     * @param theUser the user to write
+     * @throws IOException if the stream fails
+     */
+    private static void writeRecord(final DataOutputStream theOut, final User theUser)
+        throws IOException {
+        final byte[] name = fieldBytes(theUser.getMyName());
+        final byte[] password = fieldBytes(theUser.getMyPassword());
+        theOut.writeShort(nameHeader(name.length, theUser.isVIP()));
+        theOut.write(name);
+        theOut.writeShort(password.length);
+        theOut.write(password);
+    }
+
+    /**
+     * Reads a user record.
+     *
+     * @param theBuffer buffer positioned at a record
+     * @return the user
+     */
+    private static User readRecord(final ByteBuffer theBuffer) {
+        final int nameHeader = theBuffer.getShort() & UNSIGNED_SHORT;
+        final String name = readString(theBuffer, nameHeader & MAX_FIELD_BYTES);
+        final String password = readString(theBuffer, theBuffer.getShort() & MAX_FIELD_BYTES);
+        return new User(name, password, (nameHeader & VIP_FLAG) != 0);
+    }
+
+    /**
+     * Reads a UTF-8 string of a known length.
+     *
+     * @param theBuffer buffer positioned at the string bytes
+     * @param theLength number of bytes
+     * @return the decoded string
+     */
+    private static String readString(final ByteBuffer theBuffer, final int theLength) {
+        final byte[] bytes = new byte[theLength];
+        theBuffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Packs a name length and the VIP flag into one short.
+     *
+     * @param theLength name length in bytes
+     * @param theVIP the VIP flag
+     * @return the packed header
+     */
+    private static short nameHeader(final int theLength, final boolean theVIP) {
+        int header = theLength;
+        if (theVIP) {
+            header |= VIP_FLAG;
+        }
+        return (short) header;
+    }
+
+    /**
+     * UTF-8 bytes of a field, checking that they fit a length prefix.
+     *
+     * @param theField name or password
+     * @return the encoded bytes
+     */
+    private static byte[] fieldBytes(final String theField) {
+        final byte[] bytes = theField.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_FIELD_BYTES) {
+            throw new IllegalArgumentException("Field too long for user store");
+        }
+        return bytes;
+    }
+
+    /**
+     * Output stream that feeds every byte into a CRC32 before passing it on.
+     */
+    private static final class CrcOutputStream extends OutputStream {
+
+        /**
+         * The stream written to.
+         */
+        private final OutputStream myOut;
+
+        /**
+         * The running checksum.
+         */
+        private final CRC32 myCrc;
+
+        /**
+         * Wraps a stream.
+         *
+         * @param theOut the stream written to
+         * @param theCrc the running checksum
+         */
+        CrcOutputStream(final OutputStream theOut, final CRC32 theCrc) {
+            super();
+            myOut = theOut;
+            myCrc = theCrc;
+        }
+
+        @Override
+        public void write(final int theByte) throws IOException {
+            myCrc.update(theByte);
+            myOut.write(theByte);
+        }
+
+        @Override
+        public void write(final byte[] theBytes, final int theOffset, final int theLength)
+            throws IOException {
+            myCrc.update(theBytes, theOffset, theLength);
+            myOut.write(theBytes, theOffset, theLength);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            myOut.flush();
+        }
+    }
+}